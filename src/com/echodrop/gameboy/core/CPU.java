@@ -8,22 +8,28 @@
 
 package com.echodrop.gameboy.core;
 
-import java.util.HashMap;
+import java.nio.ByteBuffer;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import com.echodrop.gameboy.exceptions.InstructionNotImplementedException;
-import com.echodrop.gameboy.util.NumberUtils;
-import com.echodrop.gameboy.util.RegisterUtils;
+import com.echodrop.gameboy.interfaces.IStateful;
 import com.echodrop.gameboy.util.StringUtils;
 
 /**
  * Emulation core for Sharp LR35902 microprocessor
  */
-public class CPU {
+public class CPU implements IStateful {
 
 	private TailspinGB system;
 	private static final Logger logger = Logger.getLogger(CPU.class.getName());
 
+	/* Flag bits of the F register */
+	public static final int FLAG_Z = 0x80;
+	public static final int FLAG_N = 0x40;
+	public static final int FLAG_H = 0x20;
+	public static final int FLAG_C = 0x10;
+
 	/* CPU registers */
 	private Register a;
 	private Register b;
@@ -35,12 +41,11 @@ public class CPU {
 	private Register f;
 
 	/**
-	 * This flag is not present in the actual hardware, it's here for
-	 * convenience. Set to true if a conditional instruction is not run, and the
-	 * op's smaller time value should be added to the clock. Reset after each
-	 * instruction.
+	 * Z, N, H and C flags as computed by the last ALU operation. The generated
+	 * interpreter copies whichever of these the opcode table marks as affected
+	 * into F.
 	 */
-	private boolean conditionalNotExecFlag;
+	private int aluFlags;
 
 	/* Special registers */
 	private char pc; // program counter
@@ -53,27 +58,12 @@ public class CPU {
 	/* Memory Management Unit */
 	private MMU mem;
 
-	/* Opcode tables */
-	private HashMap<Byte, Opcode> opCodes;
-	private HashMap<Byte, Opcode> cbOpCodes;
-
+	private InterruptController interrupts;
+	private Scheduler scheduler;
+	private boolean halted;
 	private boolean running;
 
 	public CPU(TailspinGB system) {
-		this.initialize();
-		this.system = system;
-		this.mem = system.getMem();
-		this.opCodes = new HashMap<Byte, Opcode>();
-		this.cbOpCodes = new HashMap<Byte, Opcode>();
-		this.loadOpCodes();
-		this.loadCbOpCodes();
-		this.running = false;
-	}
-
-	/**
-	 * Resets the CPU to its initial state
-	 */
-	public void initialize() {
 		setA(new Register((byte) 0x0, "A"));
 		setB(new Register((byte) 0x0, "B"));
 		setC(new Register((byte) 0x0, "C"));
@@ -82,17 +72,36 @@ public class CPU {
 		setH(new Register((byte) 0x0, "H"));
 		setL(new Register((byte) 0x0, "L"));
 		setF(new Register((byte) 0x0, "F"));
+		setClockT(new Register((byte) 0x0, "Clock T"));
+		setClockM(new Register((byte) 0x0, "Clock M"));
+		this.initialize();
+		this.system = system;
+		this.mem = system.getMem();
+		this.interrupts = system.getInterrupts();
+		this.scheduler = system.getScheduler();
+		this.running = false;
+	}
 
-		setZeroFlag(false);
-		setOperationFlag(false);
-		setHalfCarryFlag(false);
-		setFullCarryFlag(false);
+	/**
+	 * Resets the CPU to its initial state. Registers are cleared in place.
+	 */
+	public void initialize() {
+		a.setValue(0);
+		b.setValue(0);
+		c.setValue(0);
+		d.setValue(0);
+		e.setValue(0);
+		h.setValue(0);
+		l.setValue(0);
+		f.setValue(0);
 
 		pc = 0;
 		sp = 0;
+		aluFlags = 0;
+		halted = false;
 
-		setClockT(new Register((byte) 0x0, "Clock T"));
-		setClockM(new Register((byte) 0x0, "Clock M"));
+		clockT.setValue(0);
+		clockM.setValue(0);
 	}
 
 	public void initLogging() {
@@ -100,12 +109,28 @@ public class CPU {
 	}
 
 	/**
-	 * Start emulation loop
+	 * Start emulation loop, a frame at a time at the system's frame pacer's
+	 * speed
 	 */
 	public void beginDispatch() {
 		this.running = true;
+		FramePacer pacer = system.getPacer();
+		pacer.start();
 
 		while (running) {
+			runFrame();
+			pacer.endFrame();
+		}
+	}
+
+	/**
+	 * Runs instructions until the clock reaches the end of the current frame.
+	 * Frames are FramePacer.CYCLES_PER_FRAME long and counted from reset, so
+	 * an instruction that runs past the end of one frame shortens the next.
+	 */
+	public void runFrame() {
+		long end = (scheduler.getCycles() / FramePacer.CYCLES_PER_FRAME + 1) * FramePacer.CYCLES_PER_FRAME;
+		while (scheduler.getCycles() < end) {
 			step();
 		}
 	}
@@ -114,800 +139,2394 @@ public class CPU {
 	 * Advances the emulation state by one instruction
 	 */
 	public void step() {
-		logger.info("Instruction pointer: 0x" + Integer.toHexString(pc));
-
-		/* Grab next instruction and increment instruction pointer */
-		byte opcode = mem.readByte(pc++);
-
-		logger.fine("Opcode: 0x" + Integer.toHexString(opcode & 0xFF));
+		int cycles = 0;
 
-		/* mask instruction pointer to 16 bits */
-		pc &= 65535;
-
-		/* Execute the instruction */
-		Opcode instruction;
-		if ((opcode & 0xFF) == 0xCB) {
-			logger.fine("CB prefixed opcode detected");
-			opcode = mem.readByte((char) (pc));
-			logger.fine("Opcode: 0x" + Integer.toHexString(opcode & 0xFF));
-			instruction = cbOpCodes.get(opcode);
-			pc++;
-		} else {
-			instruction = opCodes.get(opcode);
+		/* Covers both pending interrupts and a delayed EI */
+		if (interrupts.pending != 0) {
+			cycles = serviceInterrupts();
 		}
 
-		if (instruction != null) {
-			logger.fine(instruction.getMnemonic());
-			instruction.exec();
-
-			/*
-			 * Increment clocks by the amount of time that passed during the
-			 * instruction
-			 */
-
-			byte clockIncrement = 0;
-
-			if (isConditionalNotExecFlag()) {
-				clockIncrement = instruction.getConditional_time();
+		if (cycles == 0) {
+			if (halted && !interrupts.isRequested()) {
+				/*
+				 * Nothing can wake the CPU before the GPU's next mode change or
+				 * the next scheduled event, so skip straight to whichever is first
+				 */
+				cycles = system.getGpu().getCyclesToNextMode();
+				long toEvent = scheduler.getCyclesToNextEvent();
+				if (toEvent < cycles) {
+					cycles = Math.max(4, ((int) toEvent + 3) & ~3);
+				}
 			} else {
-				clockIncrement = instruction.getMTime();
-			}
-
-			getClockT().setValue(getClockT().getValue() + clockIncrement / 4);
-			getClockM().setValue(getClockM().getValue() + clockIncrement);
+				halted = false;
 
-			system.getGpu().incrementModeClock((byte) (clockIncrement / 4));
+				if (logger.isLoggable(Level.FINE)) {
+					logger.fine(StringUtils.charToReadableHex(pc) + ": " + OpcodeTable.get(mem.readByte(pc)));
+				}
 
-		} else {
-			logger.severe("Unimplemented instruction: " + Integer.toHexString(opcode & 0xFF));
-			throw new InstructionNotImplementedException(opcode, (char) (pc - 1));
+				/* Grab next instruction, increment instruction pointer and execute */
+				cycles = execute(mem.readByte(pc++) & 0xFF);
+			}
 		}
 
-		system.getGpu().clockStep();
-		setConditionalNotExecFlag(false);
-	}
+		/*
+		 * Increment clocks by the amount of time that passed during the
+		 * instruction
+		 */
+		getClockT().setValue(getClockT().getValue() + cycles / 4);
+		getClockM().setValue(getClockM().getValue() + cycles);
+		scheduler.advance(cycles);
 
-	/**
-	 * Writes a 16-bit value to two 8-bit registers as if they were a single
-	 * unit
-	 */
-	private void writeDualRegister(Register r1, Register r2, char value) {
-		byte[] bytes = NumberUtils.wordToBytes(value);
-		r2.setValue(bytes[0]);
-		r1.setValue(bytes[1]);
+		system.getGpu().incrementModeClock(cycles);
+		system.getGpu().clockStep();
 	}
 
 	/**
-	 * Reads a 16-bit value from two 8-bit registers as if they were a single
-	 * unit
+	 * Jumps to the vector of the highest priority pending interrupt, if
+	 * interrupts are enabled
+	 * 
+	 * @return clock cycles spent dispatching, or 0 if no interrupt was taken
 	 */
-	private char readDualRegister(Register r1, Register r2) {
-		return NumberUtils.bytesToWord(r2.getValue(), r1.getValue());
+	private int serviceInterrupts() {
+		int vector = interrupts.acknowledge();
+		if (vector < 0) {
+			return 0;
+		}
+		halted = false;
+		push(pc);
+		pc = (char) vector;
+		return 20;
 	}
 
-	/**
-	 * Pushes a memory address onto the stack
-	 */
-	private void push(char address) {
-		byte[] b = NumberUtils.wordToBytes(address);
-		byte b1 = b[0];
-		byte b2 = b[1];
-		sp--;
-		mem.writeByte(sp, b2);
-		sp--;
-		mem.writeByte(sp, b1);
-	}
+	/* BEGIN GENERATED INTERPRETER */
+	// Do not edit by hand: regenerate with InterpreterGenerator after changing OpcodeTable.
 
 	/**
-	 * Pops a memory address off the stack
+	 * Executes a single unprefixed instruction whose opcode has already been
+	 * fetched
+	 * 
+	 * @return the number of clock cycles the instruction took
 	 */
-	private char pop() {
-		byte b2 = mem.readByte(sp);
-		sp++;
-		byte b1 = mem.readByte(sp);
-		sp++;
-		return NumberUtils.bytesToWord(b2, b1);
+	private int execute(int opcode) {
+		char address;
+		switch (opcode) {
+		case 0x00: // NOP
+			return 4;
+		case 0x01: // LD BC,d16
+			writeBC(read16Immediate());
+			return 12;
+		case 0x02: // LD (BC),A
+			mem.writeByte(readBC(), a.getValue());
+			return 8;
+		case 0x03: // INC BC
+			writeBC((char) (readBC() + 1));
+			return 8;
+		case 0x04: // INC B
+			b.setValue(inc8(b.getValue()));
+			f.setValue((f.getValue() & 0x10) | (aluFlags & 0xA0));
+			return 4;
+		case 0x05: // DEC B
+			b.setValue(dec8(b.getValue()));
+			f.setValue((f.getValue() & 0x10) | 0x40 | (aluFlags & 0xA0));
+			return 4;
+		case 0x06: // LD B,d8
+			b.setValue(read8Immediate());
+			return 8;
+		case 0x07: // RLCA
+			a.setValue(rlc(a.getValue()));
+			f.setValue(aluFlags & 0x10);
+			return 4;
+		case 0x08: // LD (a16),SP
+			writeWord(read16Immediate(), sp);
+			return 20;
+		case 0x09: // ADD HL,BC
+			writeHL(add16(readHL(), readBC()));
+			f.setValue((f.getValue() & 0x80) | (aluFlags & 0x30));
+			return 8;
+		case 0x0A: // LD A,(BC)
+			a.setValue(mem.readByte(readBC()));
+			return 8;
+		case 0x0B: // DEC BC
+			writeBC((char) (readBC() - 1));
+			return 8;
+		case 0x0C: // INC C
+			c.setValue(inc8(c.getValue()));
+			f.setValue((f.getValue() & 0x10) | (aluFlags & 0xA0));
+			return 4;
+		case 0x0D: // DEC C
+			c.setValue(dec8(c.getValue()));
+			f.setValue((f.getValue() & 0x10) | 0x40 | (aluFlags & 0xA0));
+			return 4;
+		case 0x0E: // LD C,d8
+			c.setValue(read8Immediate());
+			return 8;
+		case 0x0F: // RRCA
+			a.setValue(rrc(a.getValue()));
+			f.setValue(aluFlags & 0x10);
+			return 4;
+		case 0x10: // STOP d8
+			read8Immediate();
+			stop();
+			return 4;
+		case 0x11: // LD DE,d16
+			writeDE(read16Immediate());
+			return 12;
+		case 0x12: // LD (DE),A
+			mem.writeByte(readDE(), a.getValue());
+			return 8;
+		case 0x13: // INC DE
+			writeDE((char) (readDE() + 1));
+			return 8;
+		case 0x14: // INC D
+			d.setValue(inc8(d.getValue()));
+			f.setValue((f.getValue() & 0x10) | (aluFlags & 0xA0));
+			return 4;
+		case 0x15: // DEC D
+			d.setValue(dec8(d.getValue()));
+			f.setValue((f.getValue() & 0x10) | 0x40 | (aluFlags & 0xA0));
+			return 4;
+		case 0x16: // LD D,d8
+			d.setValue(read8Immediate());
+			return 8;
+		case 0x17: // RLA
+			a.setValue(rl(a.getValue()));
+			f.setValue(aluFlags & 0x10);
+			return 4;
+		case 0x18: // JR r8
+			jr(read8Immediate());
+			return 12;
+		case 0x19: // ADD HL,DE
+			writeHL(add16(readHL(), readDE()));
+			f.setValue((f.getValue() & 0x80) | (aluFlags & 0x30));
+			return 8;
+		case 0x1A: // LD A,(DE)
+			a.setValue(mem.readByte(readDE()));
+			return 8;
+		case 0x1B: // DEC DE
+			writeDE((char) (readDE() - 1));
+			return 8;
+		case 0x1C: // INC E
+			e.setValue(inc8(e.getValue()));
+			f.setValue((f.getValue() & 0x10) | (aluFlags & 0xA0));
+			return 4;
+		case 0x1D: // DEC E
+			e.setValue(dec8(e.getValue()));
+			f.setValue((f.getValue() & 0x10) | 0x40 | (aluFlags & 0xA0));
+			return 4;
+		case 0x1E: // LD E,d8
+			e.setValue(read8Immediate());
+			return 8;
+		case 0x1F: // RRA
+			a.setValue(rr(a.getValue()));
+			f.setValue(aluFlags & 0x10);
+			return 4;
+		case 0x20: // JR NZ,r8
+			if ((f.getValue() & 0x80) == 0) {
+				jr(read8Immediate());
+				return 12;
+			}
+			pc++;
+			return 8;
+		case 0x21: // LD HL,d16
+			writeHL(read16Immediate());
+			return 12;
+		case 0x22: // LD (HL+),A
+			mem.writeByte(hlPostIncrement(), a.getValue());
+			return 8;
+		case 0x23: // INC HL
+			writeHL((char) (readHL() + 1));
+			return 8;
+		case 0x24: // INC H
+			h.setValue(inc8(h.getValue()));
+			f.setValue((f.getValue() & 0x10) | (aluFlags & 0xA0));
+			return 4;
+		case 0x25: // DEC H
+			h.setValue(dec8(h.getValue()));
+			f.setValue((f.getValue() & 0x10) | 0x40 | (aluFlags & 0xA0));
+			return 4;
+		case 0x26: // LD H,d8
+			h.setValue(read8Immediate());
+			return 8;
+		case 0x27: // DAA
+			daa();
+			f.setValue((f.getValue() & 0x40) | (aluFlags & 0x90));
+			return 4;
+		case 0x28: // JR Z,r8
+			if ((f.getValue() & 0x80) != 0) {
+				jr(read8Immediate());
+				return 12;
+			}
+			pc++;
+			return 8;
+		case 0x29: // ADD HL,HL
+			writeHL(add16(readHL(), readHL()));
+			f.setValue((f.getValue() & 0x80) | (aluFlags & 0x30));
+			return 8;
+		case 0x2A: // LD A,(HL+)
+			a.setValue(mem.readByte(hlPostIncrement()));
+			return 8;
+		case 0x2B: // DEC HL
+			writeHL((char) (readHL() - 1));
+			return 8;
+		case 0x2C: // INC L
+			l.setValue(inc8(l.getValue()));
+			f.setValue((f.getValue() & 0x10) | (aluFlags & 0xA0));
+			return 4;
+		case 0x2D: // DEC L
+			l.setValue(dec8(l.getValue()));
+			f.setValue((f.getValue() & 0x10) | 0x40 | (aluFlags & 0xA0));
+			return 4;
+		case 0x2E: // LD L,d8
+			l.setValue(read8Immediate());
+			return 8;
+		case 0x2F: // CPL
+			a.setValue(~a.getValue());
+			f.setValue((f.getValue() & 0x90) | 0x60);
+			return 4;
+		case 0x30: // JR NC,r8
+			if ((f.getValue() & 0x10) == 0) {
+				jr(read8Immediate());
+				return 12;
+			}
+			pc++;
+			return 8;
+		case 0x31: // LD SP,d16
+			sp = read16Immediate();
+			return 12;
+		case 0x32: // LD (HL-),A
+			mem.writeByte(hlPostDecrement(), a.getValue());
+			return 8;
+		case 0x33: // INC SP
+			sp = (char) (sp + 1);
+			return 8;
+		case 0x34: // INC (HL)
+			address = readHL();
+			mem.writeByte(address, (byte) (inc8(mem.readByte(address))));
+			f.setValue((f.getValue() & 0x10) | (aluFlags & 0xA0));
+			return 12;
+		case 0x35: // DEC (HL)
+			address = readHL();
+			mem.writeByte(address, (byte) (dec8(mem.readByte(address))));
+			f.setValue((f.getValue() & 0x10) | 0x40 | (aluFlags & 0xA0));
+			return 12;
+		case 0x36: // LD (HL),d8
+			mem.writeByte(readHL(), read8Immediate());
+			return 12;
+		case 0x37: // SCF
+			f.setValue((f.getValue() & 0x80) | 0x10);
+			return 4;
+		case 0x38: // JR C,r8
+			if ((f.getValue() & 0x10) != 0) {
+				jr(read8Immediate());
+				return 12;
+			}
+			pc++;
+			return 8;
+		case 0x39: // ADD HL,SP
+			writeHL(add16(readHL(), sp));
+			f.setValue((f.getValue() & 0x80) | (aluFlags & 0x30));
+			return 8;
+		case 0x3A: // LD A,(HL-)
+			a.setValue(mem.readByte(hlPostDecrement()));
+			return 8;
+		case 0x3B: // DEC SP
+			sp = (char) (sp - 1);
+			return 8;
+		case 0x3C: // INC A
+			a.setValue(inc8(a.getValue()));
+			f.setValue((f.getValue() & 0x10) | (aluFlags & 0xA0));
+			return 4;
+		case 0x3D: // DEC A
+			a.setValue(dec8(a.getValue()));
+			f.setValue((f.getValue() & 0x10) | 0x40 | (aluFlags & 0xA0));
+			return 4;
+		case 0x3E: // LD A,d8
+			a.setValue(read8Immediate());
+			return 8;
+		case 0x3F: // CCF
+			aluFlags = ~f.getValue() & 0x10;
+			f.setValue((f.getValue() & 0x80) | (aluFlags & 0x10));
+			return 4;
+		case 0x40: // LD B,B
+			b.setValue(b.getValue());
+			return 4;
+		case 0x41: // LD B,C
+			b.setValue(c.getValue());
+			return 4;
+		case 0x42: // LD B,D
+			b.setValue(d.getValue());
+			return 4;
+		case 0x43: // LD B,E
+			b.setValue(e.getValue());
+			return 4;
+		case 0x44: // LD B,H
+			b.setValue(h.getValue());
+			return 4;
+		case 0x45: // LD B,L
+			b.setValue(l.getValue());
+			return 4;
+		case 0x46: // LD B,(HL)
+			b.setValue(mem.readByte(readHL()));
+			return 8;
+		case 0x47: // LD B,A
+			b.setValue(a.getValue());
+			return 4;
+		case 0x48: // LD C,B
+			c.setValue(b.getValue());
+			return 4;
+		case 0x49: // LD C,C
+			c.setValue(c.getValue());
+			return 4;
+		case 0x4A: // LD C,D
+			c.setValue(d.getValue());
+			return 4;
+		case 0x4B: // LD C,E
+			c.setValue(e.getValue());
+			return 4;
+		case 0x4C: // LD C,H
+			c.setValue(h.getValue());
+			return 4;
+		case 0x4D: // LD C,L
+			c.setValue(l.getValue());
+			return 4;
+		case 0x4E: // LD C,(HL)
+			c.setValue(mem.readByte(readHL()));
+			return 8;
+		case 0x4F: // LD C,A
+			c.setValue(a.getValue());
+			return 4;
+		case 0x50: // LD D,B
+			d.setValue(b.getValue());
+			return 4;
+		case 0x51: // LD D,C
+			d.setValue(c.getValue());
+			return 4;
+		case 0x52: // LD D,D
+			d.setValue(d.getValue());
+			return 4;
+		case 0x53: // LD D,E
+			d.setValue(e.getValue());
+			return 4;
+		case 0x54: // LD D,H
+			d.setValue(h.getValue());
+			return 4;
+		case 0x55: // LD D,L
+			d.setValue(l.getValue());
+			return 4;
+		case 0x56: // LD D,(HL)
+			d.setValue(mem.readByte(readHL()));
+			return 8;
+		case 0x57: // LD D,A
+			d.setValue(a.getValue());
+			return 4;
+		case 0x58: // LD E,B
+			e.setValue(b.getValue());
+			return 4;
+		case 0x59: // LD E,C
+			e.setValue(c.getValue());
+			return 4;
+		case 0x5A: // LD E,D
+			e.setValue(d.getValue());
+			return 4;
+		case 0x5B: // LD E,E
+			e.setValue(e.getValue());
+			return 4;
+		case 0x5C: // LD E,H
+			e.setValue(h.getValue());
+			return 4;
+		case 0x5D: // LD E,L
+			e.setValue(l.getValue());
+			return 4;
+		case 0x5E: // LD E,(HL)
+			e.setValue(mem.readByte(readHL()));
+			return 8;
+		case 0x5F: // LD E,A
+			e.setValue(a.getValue());
+			return 4;
+		case 0x60: // LD H,B
+			h.setValue(b.getValue());
+			return 4;
+		case 0x61: // LD H,C
+			h.setValue(c.getValue());
+			return 4;
+		case 0x62: // LD H,D
+			h.setValue(d.getValue());
+			return 4;
+		case 0x63: // LD H,E
+			h.setValue(e.getValue());
+			return 4;
+		case 0x64: // LD H,H
+			h.setValue(h.getValue());
+			return 4;
+		case 0x65: // LD H,L
+			h.setValue(l.getValue());
+			return 4;
+		case 0x66: // LD H,(HL)
+			h.setValue(mem.readByte(readHL()));
+			return 8;
+		case 0x67: // LD H,A
+			h.setValue(a.getValue());
+			return 4;
+		case 0x68: // LD L,B
+			l.setValue(b.getValue());
+			return 4;
+		case 0x69: // LD L,C
+			l.setValue(c.getValue());
+			return 4;
+		case 0x6A: // LD L,D
+			l.setValue(d.getValue());
+			return 4;
+		case 0x6B: // LD L,E
+			l.setValue(e.getValue());
+			return 4;
+		case 0x6C: // LD L,H
+			l.setValue(h.getValue());
+			return 4;
+		case 0x6D: // LD L,L
+			l.setValue(l.getValue());
+			return 4;
+		case 0x6E: // LD L,(HL)
+			l.setValue(mem.readByte(readHL()));
+			return 8;
+		case 0x6F: // LD L,A
+			l.setValue(a.getValue());
+			return 4;
+		case 0x70: // LD (HL),B
+			mem.writeByte(readHL(), b.getValue());
+			return 8;
+		case 0x71: // LD (HL),C
+			mem.writeByte(readHL(), c.getValue());
+			return 8;
+		case 0x72: // LD (HL),D
+			mem.writeByte(readHL(), d.getValue());
+			return 8;
+		case 0x73: // LD (HL),E
+			mem.writeByte(readHL(), e.getValue());
+			return 8;
+		case 0x74: // LD (HL),H
+			mem.writeByte(readHL(), h.getValue());
+			return 8;
+		case 0x75: // LD (HL),L
+			mem.writeByte(readHL(), l.getValue());
+			return 8;
+		case 0x76: // HALT
+			halt();
+			return 4;
+		case 0x77: // LD (HL),A
+			mem.writeByte(readHL(), a.getValue());
+			return 8;
+		case 0x78: // LD A,B
+			a.setValue(b.getValue());
+			return 4;
+		case 0x79: // LD A,C
+			a.setValue(c.getValue());
+			return 4;
+		case 0x7A: // LD A,D
+			a.setValue(d.getValue());
+			return 4;
+		case 0x7B: // LD A,E
+			a.setValue(e.getValue());
+			return 4;
+		case 0x7C: // LD A,H
+			a.setValue(h.getValue());
+			return 4;
+		case 0x7D: // LD A,L
+			a.setValue(l.getValue());
+			return 4;
+		case 0x7E: // LD A,(HL)
+			a.setValue(mem.readByte(readHL()));
+			return 8;
+		case 0x7F: // LD A,A
+			a.setValue(a.getValue());
+			return 4;
+		case 0x80: // ADD A,B
+			a.setValue(add8(a.getValue(), b.getValue(), 0));
+			f.setValue(aluFlags & 0xB0);
+			return 4;
+		case 0x81: // ADD A,C
+			a.setValue(add8(a.getValue(), c.getValue(), 0));
+			f.setValue(aluFlags & 0xB0);
+			return 4;
+		case 0x82: // ADD A,D
+			a.setValue(add8(a.getValue(), d.getValue(), 0));
+			f.setValue(aluFlags & 0xB0);
+			return 4;
+		case 0x83: // ADD A,E
+			a.setValue(add8(a.getValue(), e.getValue(), 0));
+			f.setValue(aluFlags & 0xB0);
+			return 4;
+		case 0x84: // ADD A,H
+			a.setValue(add8(a.getValue(), h.getValue(), 0));
+			f.setValue(aluFlags & 0xB0);
+			return 4;
+		case 0x85: // ADD A,L
+			a.setValue(add8(a.getValue(), l.getValue(), 0));
+			f.setValue(aluFlags & 0xB0);
+			return 4;
+		case 0x86: // ADD A,(HL)
+			a.setValue(add8(a.getValue(), mem.readByte(readHL()), 0));
+			f.setValue(aluFlags & 0xB0);
+			return 8;
+		case 0x87: // ADD A,A
+			a.setValue(add8(a.getValue(), a.getValue(), 0));
+			f.setValue(aluFlags & 0xB0);
+			return 4;
+		case 0x88: // ADC A,B
+			a.setValue(add8(a.getValue(), b.getValue(), carry()));
+			f.setValue(aluFlags & 0xB0);
+			return 4;
+		case 0x89: // ADC A,C
+			a.setValue(add8(a.getValue(), c.getValue(), carry()));
+			f.setValue(aluFlags & 0xB0);
+			return 4;
+		case 0x8A: // ADC A,D
+			a.setValue(add8(a.getValue(), d.getValue(), carry()));
+			f.setValue(aluFlags & 0xB0);
+			return 4;
+		case 0x8B: // ADC A,E
+			a.setValue(add8(a.getValue(), e.getValue(), carry()));
+			f.setValue(aluFlags & 0xB0);
+			return 4;
+		case 0x8C: // ADC A,H
+			a.setValue(add8(a.getValue(), h.getValue(), carry()));
+			f.setValue(aluFlags & 0xB0);
+			return 4;
+		case 0x8D: // ADC A,L
+			a.setValue(add8(a.getValue(), l.getValue(), carry()));
+			f.setValue(aluFlags & 0xB0);
+			return 4;
+		case 0x8E: // ADC A,(HL)
+			a.setValue(add8(a.getValue(), mem.readByte(readHL()), carry()));
+			f.setValue(aluFlags & 0xB0);
+			return 8;
+		case 0x8F: // ADC A,A
+			a.setValue(add8(a.getValue(), a.getValue(), carry()));
+			f.setValue(aluFlags & 0xB0);
+			return 4;
+		case 0x90: // SUB B
+			a.setValue(sub8(a.getValue(), b.getValue(), 0));
+			f.setValue(0x40 | (aluFlags & 0xB0));
+			return 4;
+		case 0x91: // SUB C
+			a.setValue(sub8(a.getValue(), c.getValue(), 0));
+			f.setValue(0x40 | (aluFlags & 0xB0));
+			return 4;
+		case 0x92: // SUB D
+			a.setValue(sub8(a.getValue(), d.getValue(), 0));
+			f.setValue(0x40 | (aluFlags & 0xB0));
+			return 4;
+		case 0x93: // SUB E
+			a.setValue(sub8(a.getValue(), e.getValue(), 0));
+			f.setValue(0x40 | (aluFlags & 0xB0));
+			return 4;
+		case 0x94: // SUB H
+			a.setValue(sub8(a.getValue(), h.getValue(), 0));
+			f.setValue(0x40 | (aluFlags & 0xB0));
+			return 4;
+		case 0x95: // SUB L
+			a.setValue(sub8(a.getValue(), l.getValue(), 0));
+			f.setValue(0x40 | (aluFlags & 0xB0));
+			return 4;
+		case 0x96: // SUB (HL)
+			a.setValue(sub8(a.getValue(), mem.readByte(readHL()), 0));
+			f.setValue(0x40 | (aluFlags & 0xB0));
+			return 8;
+		case 0x97: // SUB A
+			a.setValue(sub8(a.getValue(), a.getValue(), 0));
+			f.setValue(0x40 | (aluFlags & 0xB0));
+			return 4;
+		case 0x98: // SBC A,B
+			a.setValue(sub8(a.getValue(), b.getValue(), carry()));
+			f.setValue(0x40 | (aluFlags & 0xB0));
+			return 4;
+		case 0x99: // SBC A,C
+			a.setValue(sub8(a.getValue(), c.getValue(), carry()));
+			f.setValue(0x40 | (aluFlags & 0xB0));
+			return 4;
+		case 0x9A: // SBC A,D
+			a.setValue(sub8(a.getValue(), d.getValue(), carry()));
+			f.setValue(0x40 | (aluFlags & 0xB0));
+			return 4;
+		case 0x9B: // SBC A,E
+			a.setValue(sub8(a.getValue(), e.getValue(), carry()));
+			f.setValue(0x40 | (aluFlags & 0xB0));
+			return 4;
+		case 0x9C: // SBC A,H
+			a.setValue(sub8(a.getValue(), h.getValue(), carry()));
+			f.setValue(0x40 | (aluFlags & 0xB0));
+			return 4;
+		case 0x9D: // SBC A,L
+			a.setValue(sub8(a.getValue(), l.getValue(), carry()));
+			f.setValue(0x40 | (aluFlags & 0xB0));
+			return 4;
+		case 0x9E: // SBC A,(HL)
+			a.setValue(sub8(a.getValue(), mem.readByte(readHL()), carry()));
+			f.setValue(0x40 | (aluFlags & 0xB0));
+			return 8;
+		case 0x9F: // SBC A,A
+			a.setValue(sub8(a.getValue(), a.getValue(), carry()));
+			f.setValue(0x40 | (aluFlags & 0xB0));
+			return 4;
+		case 0xA0: // AND B
+			a.setValue(and8(a.getValue(), b.getValue()));
+			f.setValue(0x20 | (aluFlags & 0x80));
+			return 4;
+		case 0xA1: // AND C
+			a.setValue(and8(a.getValue(), c.getValue()));
+			f.setValue(0x20 | (aluFlags & 0x80));
+			return 4;
+		case 0xA2: // AND D
+			a.setValue(and8(a.getValue(), d.getValue()));
+			f.setValue(0x20 | (aluFlags & 0x80));
+			return 4;
+		case 0xA3: // AND E
+			a.setValue(and8(a.getValue(), e.getValue()));
+			f.setValue(0x20 | (aluFlags & 0x80));
+			return 4;
+		case 0xA4: // AND H
+			a.setValue(and8(a.getValue(), h.getValue()));
+			f.setValue(0x20 | (aluFlags & 0x80));
+			return 4;
+		case 0xA5: // AND L
+			a.setValue(and8(a.getValue(), l.getValue()));
+			f.setValue(0x20 | (aluFlags & 0x80));
+			return 4;
+		case 0xA6: // AND (HL)
+			a.setValue(and8(a.getValue(), mem.readByte(readHL())));
+			f.setValue(0x20 | (aluFlags & 0x80));
+			return 8;
+		case 0xA7: // AND A
+			a.setValue(and8(a.getValue(), a.getValue()));
+			f.setValue(0x20 | (aluFlags & 0x80));
+			return 4;
+		case 0xA8: // XOR B
+			a.setValue(xor8(a.getValue(), b.getValue()));
+			f.setValue(aluFlags & 0x80);
+			return 4;
+		case 0xA9: // XOR C
+			a.setValue(xor8(a.getValue(), c.getValue()));
+			f.setValue(aluFlags & 0x80);
+			return 4;
+		case 0xAA: // XOR D
+			a.setValue(xor8(a.getValue(), d.getValue()));
+			f.setValue(aluFlags & 0x80);
+			return 4;
+		case 0xAB: // XOR E
+			a.setValue(xor8(a.getValue(), e.getValue()));
+			f.setValue(aluFlags & 0x80);
+			return 4;
+		case 0xAC: // XOR H
+			a.setValue(xor8(a.getValue(), h.getValue()));
+			f.setValue(aluFlags & 0x80);
+			return 4;
+		case 0xAD: // XOR L
+			a.setValue(xor8(a.getValue(), l.getValue()));
+			f.setValue(aluFlags & 0x80);
+			return 4;
+		case 0xAE: // XOR (HL)
+			a.setValue(xor8(a.getValue(), mem.readByte(readHL())));
+			f.setValue(aluFlags & 0x80);
+			return 8;
+		case 0xAF: // XOR A
+			a.setValue(xor8(a.getValue(), a.getValue()));
+			f.setValue(aluFlags & 0x80);
+			return 4;
+		case 0xB0: // OR B
+			a.setValue(or8(a.getValue(), b.getValue()));
+			f.setValue(aluFlags & 0x80);
+			return 4;
+		case 0xB1: // OR C
+			a.setValue(or8(a.getValue(), c.getValue()));
+			f.setValue(aluFlags & 0x80);
+			return 4;
+		case 0xB2: // OR D
+			a.setValue(or8(a.getValue(), d.getValue()));
+			f.setValue(aluFlags & 0x80);
+			return 4;
+		case 0xB3: // OR E
+			a.setValue(or8(a.getValue(), e.getValue()));
+			f.setValue(aluFlags & 0x80);
+			return 4;
+		case 0xB4: // OR H
+			a.setValue(or8(a.getValue(), h.getValue()));
+			f.setValue(aluFlags & 0x80);
+			return 4;
+		case 0xB5: // OR L
+			a.setValue(or8(a.getValue(), l.getValue()));
+			f.setValue(aluFlags & 0x80);
+			return 4;
+		case 0xB6: // OR (HL)
+			a.setValue(or8(a.getValue(), mem.readByte(readHL())));
+			f.setValue(aluFlags & 0x80);
+			return 8;
+		case 0xB7: // OR A
+			a.setValue(or8(a.getValue(), a.getValue()));
+			f.setValue(aluFlags & 0x80);
+			return 4;
+		case 0xB8: // CP B
+			sub8(a.getValue(), b.getValue(), 0);
+			f.setValue(0x40 | (aluFlags & 0xB0));
+			return 4;
+		case 0xB9: // CP C
+			sub8(a.getValue(), c.getValue(), 0);
+			f.setValue(0x40 | (aluFlags & 0xB0));
+			return 4;
+		case 0xBA: // CP D
+			sub8(a.getValue(), d.getValue(), 0);
+			f.setValue(0x40 | (aluFlags & 0xB0));
+			return 4;
+		case 0xBB: // CP E
+			sub8(a.getValue(), e.getValue(), 0);
+			f.setValue(0x40 | (aluFlags & 0xB0));
+			return 4;
+		case 0xBC: // CP H
+			sub8(a.getValue(), h.getValue(), 0);
+			f.setValue(0x40 | (aluFlags & 0xB0));
+			return 4;
+		case 0xBD: // CP L
+			sub8(a.getValue(), l.getValue(), 0);
+			f.setValue(0x40 | (aluFlags & 0xB0));
+			return 4;
+		case 0xBE: // CP (HL)
+			sub8(a.getValue(), mem.readByte(readHL()), 0);
+			f.setValue(0x40 | (aluFlags & 0xB0));
+			return 8;
+		case 0xBF: // CP A
+			sub8(a.getValue(), a.getValue(), 0);
+			f.setValue(0x40 | (aluFlags & 0xB0));
+			return 4;
+		case 0xC0: // RET NZ
+			if ((f.getValue() & 0x80) == 0) {
+				pc = pop();
+				return 20;
+			}
+			return 8;
+		case 0xC1: // POP BC
+			writeBC(pop());
+			return 12;
+		case 0xC2: // JP NZ,a16
+			if ((f.getValue() & 0x80) == 0) {
+				pc = read16Immediate();
+				return 16;
+			}
+			pc += 2;
+			return 12;
+		case 0xC3: // JP a16
+			pc = read16Immediate();
+			return 16;
+		case 0xC4: // CALL NZ,a16
+			if ((f.getValue() & 0x80) == 0) {
+				call(read16Immediate());
+				return 24;
+			}
+			pc += 2;
+			return 12;
+		case 0xC5: // PUSH BC
+			push(readBC());
+			return 16;
+		case 0xC6: // ADD A,d8
+			a.setValue(add8(a.getValue(), read8Immediate(), 0));
+			f.setValue(aluFlags & 0xB0);
+			return 8;
+		case 0xC7: // RST 00H
+			call((char) 0x00);
+			return 16;
+		case 0xC8: // RET Z
+			if ((f.getValue() & 0x80) != 0) {
+				pc = pop();
+				return 20;
+			}
+			return 8;
+		case 0xC9: // RET
+			pc = pop();
+			return 16;
+		case 0xCA: // JP Z,a16
+			if ((f.getValue() & 0x80) != 0) {
+				pc = read16Immediate();
+				return 16;
+			}
+			pc += 2;
+			return 12;
+		case 0xCB: // PREFIX CB
+			return executeExtended(read8Immediate() & 0xFF);
+		case 0xCC: // CALL Z,a16
+			if ((f.getValue() & 0x80) != 0) {
+				call(read16Immediate());
+				return 24;
+			}
+			pc += 2;
+			return 12;
+		case 0xCD: // CALL a16
+			call(read16Immediate());
+			return 24;
+		case 0xCE: // ADC A,d8
+			a.setValue(add8(a.getValue(), read8Immediate(), carry()));
+			f.setValue(aluFlags & 0xB0);
+			return 8;
+		case 0xCF: // RST 08H
+			call((char) 0x08);
+			return 16;
+		case 0xD0: // RET NC
+			if ((f.getValue() & 0x10) == 0) {
+				pc = pop();
+				return 20;
+			}
+			return 8;
+		case 0xD1: // POP DE
+			writeDE(pop());
+			return 12;
+		case 0xD2: // JP NC,a16
+			if ((f.getValue() & 0x10) == 0) {
+				pc = read16Immediate();
+				return 16;
+			}
+			pc += 2;
+			return 12;
+		case 0xD4: // CALL NC,a16
+			if ((f.getValue() & 0x10) == 0) {
+				call(read16Immediate());
+				return 24;
+			}
+			pc += 2;
+			return 12;
+		case 0xD5: // PUSH DE
+			push(readDE());
+			return 16;
+		case 0xD6: // SUB d8
+			a.setValue(sub8(a.getValue(), read8Immediate(), 0));
+			f.setValue(0x40 | (aluFlags & 0xB0));
+			return 8;
+		case 0xD7: // RST 10H
+			call((char) 0x10);
+			return 16;
+		case 0xD8: // RET C
+			if ((f.getValue() & 0x10) != 0) {
+				pc = pop();
+				return 20;
+			}
+			return 8;
+		case 0xD9: // RETI
+			pc = pop();
+			reti();
+			return 16;
+		case 0xDA: // JP C,a16
+			if ((f.getValue() & 0x10) != 0) {
+				pc = read16Immediate();
+				return 16;
+			}
+			pc += 2;
+			return 12;
+		case 0xDC: // CALL C,a16
+			if ((f.getValue() & 0x10) != 0) {
+				call(read16Immediate());
+				return 24;
+			}
+			pc += 2;
+			return 12;
+		case 0xDE: // SBC A,d8
+			a.setValue(sub8(a.getValue(), read8Immediate(), carry()));
+			f.setValue(0x40 | (aluFlags & 0xB0));
+			return 8;
+		case 0xDF: // RST 18H
+			call((char) 0x18);
+			return 16;
+		case 0xE0: // LDH (a8),A
+			mem.writeByte((char) (0xFF00 | (read8Immediate() & 0xFF)), a.getValue());
+			return 12;
+		case 0xE1: // POP HL
+			writeHL(pop());
+			return 12;
+		case 0xE2: // LD (C),A
+			mem.writeByte((char) (0xFF00 | (c.getValue() & 0xFF)), a.getValue());
+			return 8;
+		case 0xE5: // PUSH HL
+			push(readHL());
+			return 16;
+		case 0xE6: // AND d8
+			a.setValue(and8(a.getValue(), read8Immediate()));
+			f.setValue(0x20 | (aluFlags & 0x80));
+			return 8;
+		case 0xE7: // RST 20H
+			call((char) 0x20);
+			return 16;
+		case 0xE8: // ADD SP,r8
+			sp = addSpSigned(read8Immediate());
+			f.setValue(aluFlags & 0x30);
+			return 16;
+		case 0xE9: // JP (HL)
+			pc = readHL();
+			return 4;
+		case 0xEA: // LD (a16),A
+			mem.writeByte(read16Immediate(), a.getValue());
+			return 16;
+		case 0xEE: // XOR d8
+			a.setValue(xor8(a.getValue(), read8Immediate()));
+			f.setValue(aluFlags & 0x80);
+			return 8;
+		case 0xEF: // RST 28H
+			call((char) 0x28);
+			return 16;
+		case 0xF0: // LDH A,(a8)
+			a.setValue(mem.readByte((char) (0xFF00 | (read8Immediate() & 0xFF))));
+			return 12;
+		case 0xF1: // POP AF
+			writeAF(pop());
+			aluFlags = f.getValue();
+			f.setValue(aluFlags & 0xF0);
+			return 12;
+		case 0xF2: // LD A,(C)
+			a.setValue(mem.readByte((char) (0xFF00 | (c.getValue() & 0xFF))));
+			return 8;
+		case 0xF3: // DI
+			di();
+			return 4;
+		case 0xF5: // PUSH AF
+			push(readAF());
+			return 16;
+		case 0xF6: // OR d8
+			a.setValue(or8(a.getValue(), read8Immediate()));
+			f.setValue(aluFlags & 0x80);
+			return 8;
+		case 0xF7: // RST 30H
+			call((char) 0x30);
+			return 16;
+		case 0xF8: // LD HL,SP+r8
+			writeHL(addSpSigned(read8Immediate()));
+			f.setValue(aluFlags & 0x30);
+			return 12;
+		case 0xF9: // LD SP,HL
+			sp = readHL();
+			return 8;
+		case 0xFA: // LD A,(a16)
+			a.setValue(mem.readByte(read16Immediate()));
+			return 16;
+		case 0xFB: // EI
+			ei();
+			return 4;
+		case 0xFE: // CP d8
+			sub8(a.getValue(), read8Immediate(), 0);
+			f.setValue(0x40 | (aluFlags & 0xB0));
+			return 8;
+		case 0xFF: // RST 38H
+			call((char) 0x38);
+			return 16;
+		default:
+			throw new InstructionNotImplementedException((byte) opcode, (char) (pc - 1));
+		}
 	}
 
 	/**
-	 * Builds basic opcode table
+	 * Executes a single CB prefixed instruction
+	 * 
+	 * @return the number of clock cycles the instruction took, including the
+	 *         prefix
 	 */
-	private void loadOpCodes() {
-		opCodes.put((byte) 0x00, new Opcode("NOP", () -> nop(), (byte) 4));
-		opCodes.put((byte) 0x17, new Opcode("RLA", () -> rl(getA()), (byte) 4));
-		opCodes.put((byte) 0x1F, new Opcode("RRA", () -> rr(getA()), (byte) 4));
-		opCodes.put((byte) 0x2F, new Opcode("CPL", () -> complement(), (byte) 4));
-		opCodes.put((byte) 0xFB, new Opcode("EI", () -> setInterruptsEnabled(true), (byte) 4));
-		opCodes.put((byte) 0xF3, new Opcode("DI", () -> setInterruptsEnabled(false), (byte) 4));
-		opCodes.put((byte) 0xBE, new Opcode("CP (HL)", () -> compareAddress(getH(), getL()), (byte) 8));
-		opCodes.put((byte) 0xAF, new Opcode("XOR A", () -> xor(getA()), (byte) 4));
-		opCodes.put((byte) 0xA9, new Opcode("XOR C", () -> xor(getC()), (byte) 4));
-		opCodes.put((byte) 0xE6, new Opcode("AND n", () -> and(), (byte) 8));
-		opCodes.put((byte) 0xA1, new Opcode("AND C", () -> and(getC()), (byte) 4));
-		opCodes.put((byte) 0xA7, new Opcode("AND A", () -> and(getA()), (byte) 4));
-		opCodes.put((byte) 0xB1, new Opcode("OR C", () -> or(getC()), (byte) 4));
-		opCodes.put((byte) 0xB0, new Opcode("OR B", () -> or(getB()), (byte) 4));
-		opCodes.put((byte) 0xB3, new Opcode("OR E", () -> or(getE()), (byte) 4));
-		opCodes.put((byte) 0x86, new Opcode("ADD A,(HL)", () -> addAddress(getA(), getH(), getL()), (byte) 8));
-		opCodes.put((byte) 0x87, new Opcode("ADD A,A", () -> add(getA()), (byte) 4));
-		opCodes.put((byte) 0x19, new Opcode("ADD HL, DE", () -> add(getH(), getL(), getD(), getE()), (byte) 8));
-		opCodes.put((byte) 0x90, new Opcode("SUB B", () -> subtract(getB()), (byte) 4));
-		opCodes.put((byte) 0x7B, new Opcode("LD A, E", () -> load(getA(), getE()), (byte) 4));
-		opCodes.put((byte) 0x7A, new Opcode("LD A, D", () -> load(getA(), getD()), (byte) 4));
-		opCodes.put((byte) 0x7F, new Opcode("LD A, A", () -> load(getA(), getA()), (byte) 4));
-		opCodes.put((byte) 0x5F, new Opcode("LD E, A", () -> load(getE(), getA()), (byte) 4));
-		opCodes.put((byte) 0x4f, new Opcode("LD C, A", () -> load(getC(), getA()), (byte) 4));
-		opCodes.put((byte) 0x67, new Opcode("LD H, A", () -> load(getH(), getA()), (byte) 4));
-		opCodes.put((byte) 0x79, new Opcode("LD A, C", () -> load(getA(), getC()), (byte) 4));
-		opCodes.put((byte) 0x57, new Opcode("LD D, A", () -> load(getD(), getA()), (byte) 4));
-		opCodes.put((byte) 0x47, new Opcode("LD B, A", () -> load(getB(), getA()), (byte) 4));
-		opCodes.put((byte) 0x7C, new Opcode("LD A, H", () -> load(getA(), getH()), (byte) 4));
-		opCodes.put((byte) 0x7D, new Opcode("LD A, L", () -> load(getA(), getL()), (byte) 4));
-		opCodes.put((byte) 0x6F, new Opcode("LD L, A", () -> load(getL(), getA()), (byte) 4));
-		opCodes.put((byte) 0x78, new Opcode("LD A, B", () -> load(getA(), getB()), (byte) 4));
-		opCodes.put((byte) 0x0E, new Opcode("LD C, n", () -> load(getC(), read8Immediate()), (byte) 8));
-		opCodes.put((byte) 0x16, new Opcode("LD D, n", () -> load(getD(), read8Immediate()), (byte) 8));
-		opCodes.put((byte) 0x26, new Opcode("LD H, n", () -> load(getH(), read8Immediate()), (byte) 8));
-		opCodes.put((byte) 0x3E, new Opcode("LD A, n", () -> load(getA(), read8Immediate()), (byte) 8));
-		opCodes.put((byte) 0x06, new Opcode("LD B, n", () -> load(getB(), read8Immediate()), (byte) 8));
-		opCodes.put((byte) 0x1E, new Opcode("LD E, n", () -> load(getE(), read8Immediate()), (byte) 8));
-		opCodes.put((byte) 0x2e, new Opcode("LD L, n", () -> load(getL(), read8Immediate()), (byte) 8));
-		opCodes.put((byte) 0x31, new Opcode("LD SP, nn", () -> sp = read16Immediate(), (byte) 12));
-		opCodes.put((byte) 0x21, new Opcode("LD HL, nn", () -> load(getH(), getL(), read16Immediate()), (byte) 12));
-		opCodes.put((byte) 0x11, new Opcode("LD DE, nn", () -> load(getD(), getE(), read16Immediate()), (byte) 12));
-		opCodes.put((byte) 0x01, new Opcode("LD BC, nn", () -> load(getB(), getC(), read16Immediate()), (byte) 12));
-		opCodes.put((byte) 0x5E, new Opcode("LD E, (HL)", () -> load(getE(), getH(), getL(), false), (byte) 8));
-		opCodes.put((byte) 0x6E, new Opcode("LD L, (HL)", () -> load(getL(), getH(), getL(), false), (byte) 8));
-		opCodes.put((byte) 0x1A, new Opcode("LD A, (DE)", () -> load(getA(), getD(), getE(), false), (byte) 8));
-		opCodes.put((byte) 0x7E, new Opcode("LD A, (HL)", () -> load(getA(), getH(), getL(), false), (byte) 8));
-		opCodes.put((byte) 0x4E, new Opcode("LD C, (HL)", () -> load(getC(), getH(), getL(), false), (byte) 8));
-		opCodes.put((byte) 0x46, new Opcode("LD B, (HL)", () -> load(getB(), getH(), getL(), false), (byte) 8));
-		opCodes.put((byte) 0x56, new Opcode("LD D, (HL)", () -> load(getD(), getH(), getL(), false), (byte) 8));
-		opCodes.put((byte) 0x77, new Opcode("LD (HL), A", () -> load(getH(), getL(), getA(), true), (byte) 8));
-		opCodes.put((byte) 0x73, new Opcode("LD (HL), E", () -> load(getH(), getL(), getE(), true), (byte) 8));
-		opCodes.put((byte) 0x70, new Opcode("LD (HL), B", () -> load(getH(), getL(), getB(), true), (byte) 8));
-		opCodes.put((byte) 0x71, new Opcode("LD (HL), C", () -> load(getH(), getL(), getC(), true), (byte) 8));
-		opCodes.put((byte) 0x12, new Opcode("LD (DE), A", () -> load(getD(), getE(), getA(), true), (byte) 8));
-		opCodes.put((byte) 0x36, new Opcode("LD (HL), n", () -> load(getH(), getL(), read8Immediate()), (byte) 12));
-		opCodes.put((byte) 0x32, new Opcode("LDD (HL), A", () -> loadDecrement(getH(), getL(), getA()), (byte) 8));
-		opCodes.put((byte) 0x22,
-				new Opcode("LDI (HL), A", () -> loadIncrement(getH(), getL(), getA(), true), (byte) 8));
-		opCodes.put((byte) 0xEA, new Opcode("LD nn A", () -> load(read16Immediate(), getA()), (byte) 16));
-		opCodes.put((byte) 0xE0,
-				new Opcode("LDH (n), A", () -> load((char) (0xFF00 + read8Immediate()), getA()), (byte) 12));
-		opCodes.put((byte) 0xF0,
-				new Opcode("LDH A, (n)", () -> load(getA(), (char) (0xFF00 + read8Immediate())), (byte) 12));
-		opCodes.put((byte) 0x2A,
-				new Opcode("LD A, (HL+)", () -> loadIncrement(getA(), getH(), getL(), false), (byte) 8));
-		opCodes.put((byte) 0xFA, new Opcode("LD A, (a16)", () -> load(getA(), read16Immediate()), (byte) 16));
-		opCodes.put((byte) 0xE2, new Opcode("LDH (C), A", () -> ldh(getC(), getA()), (byte) 8));
-		opCodes.put((byte) 0x9F, new Opcode("SBC A, A", () -> subtractWithCarry(getA()), (byte) 8));
-		opCodes.put((byte) 0x0C, new Opcode("INC C", () -> increment(getC()), (byte) 4));
-		opCodes.put((byte) 0x1C, new Opcode("INC E", () -> increment(getE()), (byte) 4));
-		opCodes.put((byte) 0x3C, new Opcode("INC A", () -> increment(getA()), (byte) 4));
-		opCodes.put((byte) 0x2C, new Opcode("INC L", () -> increment(getL()), (byte) 4));
-		opCodes.put((byte) 0x14, new Opcode("INC D", () -> increment(getD()), (byte) 4));
-		opCodes.put((byte) 0x04, new Opcode("INC B", () -> increment(getB()), (byte) 4));
-		opCodes.put((byte) 0x24, new Opcode("INC H", () -> increment(getH()), (byte) 4));
-		opCodes.put((byte) 0x23, new Opcode("INC HL", () -> increment(getH(), getL()), (byte) 8));
-		opCodes.put((byte) 0x13, new Opcode("INC DE", () -> increment(getD(), getE()), (byte) 8));
-		opCodes.put((byte) 0x05, new Opcode("DEC B", () -> decrement(getB()), (byte) 4));
-		opCodes.put((byte) 0x3D, new Opcode("DEC A", () -> decrement(getA()), (byte) 4));
-		opCodes.put((byte) 0x1D, new Opcode("DEC E", () -> decrement(getE()), (byte) 4));
-		opCodes.put((byte) 0x15, new Opcode("DEC D", () -> decrement(getD()), (byte) 4));
-		opCodes.put((byte) 0x0D, new Opcode("DEC C", () -> decrement(getC()), (byte) 4));
-		opCodes.put((byte) 0x0B, new Opcode("DEC BC", () -> decrement(getB(), getC()), (byte) 8));
-		opCodes.put((byte) 0x1B, new Opcode("DEC DE", () -> decrement(getD(), getE()), (byte) 8));
-		opCodes.put((byte) 0xc5, new Opcode("PUSH BC", () -> pushFrom(getB(), getC()), (byte) 16));
-		opCodes.put((byte) 0xD5, new Opcode("PUSH DE", () -> pushFrom(getD(), getE()), (byte) 16));
-		opCodes.put((byte) 0xE5, new Opcode("PUSH HL", () -> pushFrom(getH(), getL()), (byte) 16));
-		opCodes.put((byte) 0xF5, new Opcode("PUSH AF", () -> pushFrom(getA(), getF()), (byte) 16));
-		opCodes.put((byte) 0xC1, new Opcode("POP BC", () -> popTo(getB(), getC()), (byte) 12));
-		opCodes.put((byte) 0xD1, new Opcode("POP DE", () -> popTo(getD(), getE()), (byte) 12));
-		opCodes.put((byte) 0xE1, new Opcode("POP HL", () -> popTo(getH(), getL()), (byte) 12));
-		opCodes.put((byte) 0xF1, new Opcode("POP AF", () -> popTo(getA(), getF()), (byte) 12));
-		opCodes.put((byte) 0xCD, new Opcode("CALL nn", () -> call(), (byte) 24));
-		opCodes.put((byte) 0xC9, new Opcode("RET", () -> ret(true), (byte) 16));
-		opCodes.put((byte) 0xC0, new Opcode("RET NZ", () -> ret(!isZeroFlag()), (byte) 20, (byte) 8));
-		opCodes.put((byte) 0xD0, new Opcode("RET NC", () -> ret(!isFullCarryFlag()), (byte) 20, (byte) 8));
-		opCodes.put((byte) 0xC8, new Opcode("RET Z", () -> ret(isZeroFlag()), (byte) 20, (byte) 8));
-		opCodes.put((byte) 0xFE, new Opcode("CP n", () -> compare(), (byte) 8));
-		opCodes.put((byte) 0x28,
-				new Opcode("JR Z, n", () -> relativeJump(isZeroFlag(), read8Immediate()), (byte) 12, (byte) 8));
-		opCodes.put((byte) 0x18, new Opcode("JR n", () -> relativeJump(true, read8Immediate()), (byte) 12));
-		opCodes.put((byte) 0xC3, new Opcode("JP nn", () -> pc = read16Immediate(), (byte) 16));
-		opCodes.put((byte) 0xE9, new Opcode("JP (HL)", () -> jump(true, readDualRegister(getH(), getL())), (byte) 4));
-		opCodes.put((byte) 0xCA,
-				new Opcode("JP Z a16", () -> jump(isZeroFlag(), read16Immediate()), (byte) 16, (byte) 12));
-		opCodes.put((byte) 0xC2,
-				new Opcode("JP NZ a16", () -> jump(!isZeroFlag(), read16Immediate()), (byte) 16, (byte) 12));
-		opCodes.put((byte) 0x20,
-				new Opcode("JR NZ, n", () -> relativeJump(!isZeroFlag(), read8Immediate()), (byte) 12, (byte) 8));
-		opCodes.put((byte) 0xEF, new Opcode("RST 28H", () -> rst((byte) 0x28), (byte) 16));
+	private int executeExtended(int opcode) {
+		char address;
+		switch (opcode) {
+		case 0x00: // RLC B
+			b.setValue(rlc(b.getValue()));
+			f.setValue(aluFlags & 0x90);
+			return 8;
+		case 0x01: // RLC C
+			c.setValue(rlc(c.getValue()));
+			f.setValue(aluFlags & 0x90);
+			return 8;
+		case 0x02: // RLC D
+			d.setValue(rlc(d.getValue()));
+			f.setValue(aluFlags & 0x90);
+			return 8;
+		case 0x03: // RLC E
+			e.setValue(rlc(e.getValue()));
+			f.setValue(aluFlags & 0x90);
+			return 8;
+		case 0x04: // RLC H
+			h.setValue(rlc(h.getValue()));
+			f.setValue(aluFlags & 0x90);
+			return 8;
+		case 0x05: // RLC L
+			l.setValue(rlc(l.getValue()));
+			f.setValue(aluFlags & 0x90);
+			return 8;
+		case 0x06: // RLC (HL)
+			address = readHL();
+			mem.writeByte(address, (byte) (rlc(mem.readByte(address))));
+			f.setValue(aluFlags & 0x90);
+			return 16;
+		case 0x07: // RLC A
+			a.setValue(rlc(a.getValue()));
+			f.setValue(aluFlags & 0x90);
+			return 8;
+		case 0x08: // RRC B
+			b.setValue(rrc(b.getValue()));
+			f.setValue(aluFlags & 0x90);
+			return 8;
+		case 0x09: // RRC C
+			c.setValue(rrc(c.getValue()));
+			f.setValue(aluFlags & 0x90);
+			return 8;
+		case 0x0A: // RRC D
+			d.setValue(rrc(d.getValue()));
+			f.setValue(aluFlags & 0x90);
+			return 8;
+		case 0x0B: // RRC E
+			e.setValue(rrc(e.getValue()));
+			f.setValue(aluFlags & 0x90);
+			return 8;
+		case 0x0C: // RRC H
+			h.setValue(rrc(h.getValue()));
+			f.setValue(aluFlags & 0x90);
+			return 8;
+		case 0x0D: // RRC L
+			l.setValue(rrc(l.getValue()));
+			f.setValue(aluFlags & 0x90);
+			return 8;
+		case 0x0E: // RRC (HL)
+			address = readHL();
+			mem.writeByte(address, (byte) (rrc(mem.readByte(address))));
+			f.setValue(aluFlags & 0x90);
+			return 16;
+		case 0x0F: // RRC A
+			a.setValue(rrc(a.getValue()));
+			f.setValue(aluFlags & 0x90);
+			return 8;
+		case 0x10: // RL B
+			b.setValue(rl(b.getValue()));
+			f.setValue(aluFlags & 0x90);
+			return 8;
+		case 0x11: // RL C
+			c.setValue(rl(c.getValue()));
+			f.setValue(aluFlags & 0x90);
+			return 8;
+		case 0x12: // RL D
+			d.setValue(rl(d.getValue()));
+			f.setValue(aluFlags & 0x90);
+			return 8;
+		case 0x13: // RL E
+			e.setValue(rl(e.getValue()));
+			f.setValue(aluFlags & 0x90);
+			return 8;
+		case 0x14: // RL H
+			h.setValue(rl(h.getValue()));
+			f.setValue(aluFlags & 0x90);
+			return 8;
+		case 0x15: // RL L
+			l.setValue(rl(l.getValue()));
+			f.setValue(aluFlags & 0x90);
+			return 8;
+		case 0x16: // RL (HL)
+			address = readHL();
+			mem.writeByte(address, (byte) (rl(mem.readByte(address))));
+			f.setValue(aluFlags & 0x90);
+			return 16;
+		case 0x17: // RL A
+			a.setValue(rl(a.getValue()));
+			f.setValue(aluFlags & 0x90);
+			return 8;
+		case 0x18: // RR B
+			b.setValue(rr(b.getValue()));
+			f.setValue(aluFlags & 0x90);
+			return 8;
+		case 0x19: // RR C
+			c.setValue(rr(c.getValue()));
+			f.setValue(aluFlags & 0x90);
+			return 8;
+		case 0x1A: // RR D
+			d.setValue(rr(d.getValue()));
+			f.setValue(aluFlags & 0x90);
+			return 8;
+		case 0x1B: // RR E
+			e.setValue(rr(e.getValue()));
+			f.setValue(aluFlags & 0x90);
+			return 8;
+		case 0x1C: // RR H
+			h.setValue(rr(h.getValue()));
+			f.setValue(aluFlags & 0x90);
+			return 8;
+		case 0x1D: // RR L
+			l.setValue(rr(l.getValue()));
+			f.setValue(aluFlags & 0x90);
+			return 8;
+		case 0x1E: // RR (HL)
+			address = readHL();
+			mem.writeByte(address, (byte) (rr(mem.readByte(address))));
+			f.setValue(aluFlags & 0x90);
+			return 16;
+		case 0x1F: // RR A
+			a.setValue(rr(a.getValue()));
+			f.setValue(aluFlags & 0x90);
+			return 8;
+		case 0x20: // SLA B
+			b.setValue(sla(b.getValue()));
+			f.setValue(aluFlags & 0x90);
+			return 8;
+		case 0x21: // SLA C
+			c.setValue(sla(c.getValue()));
+			f.setValue(aluFlags & 0x90);
+			return 8;
+		case 0x22: // SLA D
+			d.setValue(sla(d.getValue()));
+			f.setValue(aluFlags & 0x90);
+			return 8;
+		case 0x23: // SLA E
+			e.setValue(sla(e.getValue()));
+			f.setValue(aluFlags & 0x90);
+			return 8;
+		case 0x24: // SLA H
+			h.setValue(sla(h.getValue()));
+			f.setValue(aluFlags & 0x90);
+			return 8;
+		case 0x25: // SLA L
+			l.setValue(sla(l.getValue()));
+			f.setValue(aluFlags & 0x90);
+			return 8;
+		case 0x26: // SLA (HL)
+			address = readHL();
+			mem.writeByte(address, (byte) (sla(mem.readByte(address))));
+			f.setValue(aluFlags & 0x90);
+			return 16;
+		case 0x27: // SLA A
+			a.setValue(sla(a.getValue()));
+			f.setValue(aluFlags & 0x90);
+			return 8;
+		case 0x28: // SRA B
+			b.setValue(sra(b.getValue()));
+			f.setValue(aluFlags & 0x90);
+			return 8;
+		case 0x29: // SRA C
+			c.setValue(sra(c.getValue()));
+			f.setValue(aluFlags & 0x90);
+			return 8;
+		case 0x2A: // SRA D
+			d.setValue(sra(d.getValue()));
+			f.setValue(aluFlags & 0x90);
+			return 8;
+		case 0x2B: // SRA E
+			e.setValue(sra(e.getValue()));
+			f.setValue(aluFlags & 0x90);
+			return 8;
+		case 0x2C: // SRA H
+			h.setValue(sra(h.getValue()));
+			f.setValue(aluFlags & 0x90);
+			return 8;
+		case 0x2D: // SRA L
+			l.setValue(sra(l.getValue()));
+			f.setValue(aluFlags & 0x90);
+			return 8;
+		case 0x2E: // SRA (HL)
+			address = readHL();
+			mem.writeByte(address, (byte) (sra(mem.readByte(address))));
+			f.setValue(aluFlags & 0x90);
+			return 16;
+		case 0x2F: // SRA A
+			a.setValue(sra(a.getValue()));
+			f.setValue(aluFlags & 0x90);
+			return 8;
+		case 0x30: // SWAP B
+			b.setValue(swap(b.getValue()));
+			f.setValue(aluFlags & 0x80);
+			return 8;
+		case 0x31: // SWAP C
+			c.setValue(swap(c.getValue()));
+			f.setValue(aluFlags & 0x80);
+			return 8;
+		case 0x32: // SWAP D
+			d.setValue(swap(d.getValue()));
+			f.setValue(aluFlags & 0x80);
+			return 8;
+		case 0x33: // SWAP E
+			e.setValue(swap(e.getValue()));
+			f.setValue(aluFlags & 0x80);
+			return 8;
+		case 0x34: // SWAP H
+			h.setValue(swap(h.getValue()));
+			f.setValue(aluFlags & 0x80);
+			return 8;
+		case 0x35: // SWAP L
+			l.setValue(swap(l.getValue()));
+			f.setValue(aluFlags & 0x80);
+			return 8;
+		case 0x36: // SWAP (HL)
+			address = readHL();
+			mem.writeByte(address, (byte) (swap(mem.readByte(address))));
+			f.setValue(aluFlags & 0x80);
+			return 16;
+		case 0x37: // SWAP A
+			a.setValue(swap(a.getValue()));
+			f.setValue(aluFlags & 0x80);
+			return 8;
+		case 0x38: // SRL B
+			b.setValue(srl(b.getValue()));
+			f.setValue(aluFlags & 0x90);
+			return 8;
+		case 0x39: // SRL C
+			c.setValue(srl(c.getValue()));
+			f.setValue(aluFlags & 0x90);
+			return 8;
+		case 0x3A: // SRL D
+			d.setValue(srl(d.getValue()));
+			f.setValue(aluFlags & 0x90);
+			return 8;
+		case 0x3B: // SRL E
+			e.setValue(srl(e.getValue()));
+			f.setValue(aluFlags & 0x90);
+			return 8;
+		case 0x3C: // SRL H
+			h.setValue(srl(h.getValue()));
+			f.setValue(aluFlags & 0x90);
+			return 8;
+		case 0x3D: // SRL L
+			l.setValue(srl(l.getValue()));
+			f.setValue(aluFlags & 0x90);
+			return 8;
+		case 0x3E: // SRL (HL)
+			address = readHL();
+			mem.writeByte(address, (byte) (srl(mem.readByte(address))));
+			f.setValue(aluFlags & 0x90);
+			return 16;
+		case 0x3F: // SRL A
+			a.setValue(srl(a.getValue()));
+			f.setValue(aluFlags & 0x90);
+			return 8;
+		case 0x40: // BIT 0,B
+			bit(0, b.getValue());
+			f.setValue((f.getValue() & 0x10) | 0x20 | (aluFlags & 0x80));
+			return 8;
+		case 0x41: // BIT 0,C
+			bit(0, c.getValue());
+			f.setValue((f.getValue() & 0x10) | 0x20 | (aluFlags & 0x80));
+			return 8;
+		case 0x42: // BIT 0,D
+			bit(0, d.getValue());
+			f.setValue((f.getValue() & 0x10) | 0x20 | (aluFlags & 0x80));
+			return 8;
+		case 0x43: // BIT 0,E
+			bit(0, e.getValue());
+			f.setValue((f.getValue() & 0x10) | 0x20 | (aluFlags & 0x80));
+			return 8;
+		case 0x44: // BIT 0,H
+			bit(0, h.getValue());
+			f.setValue((f.getValue() & 0x10) | 0x20 | (aluFlags & 0x80));
+			return 8;
+		case 0x45: // BIT 0,L
+			bit(0, l.getValue());
+			f.setValue((f.getValue() & 0x10) | 0x20 | (aluFlags & 0x80));
+			return 8;
+		case 0x46: // BIT 0,(HL)
+			bit(0, mem.readByte(readHL()));
+			f.setValue((f.getValue() & 0x10) | 0x20 | (aluFlags & 0x80));
+			return 12;
+		case 0x47: // BIT 0,A
+			bit(0, a.getValue());
+			f.setValue((f.getValue() & 0x10) | 0x20 | (aluFlags & 0x80));
+			return 8;
+		case 0x48: // BIT 1,B
+			bit(1, b.getValue());
+			f.setValue((f.getValue() & 0x10) | 0x20 | (aluFlags & 0x80));
+			return 8;
+		case 0x49: // BIT 1,C
+			bit(1, c.getValue());
+			f.setValue((f.getValue() & 0x10) | 0x20 | (aluFlags & 0x80));
+			return 8;
+		case 0x4A: // BIT 1,D
+			bit(1, d.getValue());
+			f.setValue((f.getValue() & 0x10) | 0x20 | (aluFlags & 0x80));
+			return 8;
+		case 0x4B: // BIT 1,E
+			bit(1, e.getValue());
+			f.setValue((f.getValue() & 0x10) | 0x20 | (aluFlags & 0x80));
+			return 8;
+		case 0x4C: // BIT 1,H
+			bit(1, h.getValue());
+			f.setValue((f.getValue() & 0x10) | 0x20 | (aluFlags & 0x80));
+			return 8;
+		case 0x4D: // BIT 1,L
+			bit(1, l.getValue());
+			f.setValue((f.getValue() & 0x10) | 0x20 | (aluFlags & 0x80));
+			return 8;
+		case 0x4E: // BIT 1,(HL)
+			bit(1, mem.readByte(readHL()));
+			f.setValue((f.getValue() & 0x10) | 0x20 | (aluFlags & 0x80));
+			return 12;
+		case 0x4F: // BIT 1,A
+			bit(1, a.getValue());
+			f.setValue((f.getValue() & 0x10) | 0x20 | (aluFlags & 0x80));
+			return 8;
+		case 0x50: // BIT 2,B
+			bit(2, b.getValue());
+			f.setValue((f.getValue() & 0x10) | 0x20 | (aluFlags & 0x80));
+			return 8;
+		case 0x51: // BIT 2,C
+			bit(2, c.getValue());
+			f.setValue((f.getValue() & 0x10) | 0x20 | (aluFlags & 0x80));
+			return 8;
+		case 0x52: // BIT 2,D
+			bit(2, d.getValue());
+			f.setValue((f.getValue() & 0x10) | 0x20 | (aluFlags & 0x80));
+			return 8;
+		case 0x53: // BIT 2,E
+			bit(2, e.getValue());
+			f.setValue((f.getValue() & 0x10) | 0x20 | (aluFlags & 0x80));
+			return 8;
+		case 0x54: // BIT 2,H
+			bit(2, h.getValue());
+			f.setValue((f.getValue() & 0x10) | 0x20 | (aluFlags & 0x80));
+			return 8;
+		case 0x55: // BIT 2,L
+			bit(2, l.getValue());
+			f.setValue((f.getValue() & 0x10) | 0x20 | (aluFlags & 0x80));
+			return 8;
+		case 0x56: // BIT 2,(HL)
+			bit(2, mem.readByte(readHL()));
+			f.setValue((f.getValue() & 0x10) | 0x20 | (aluFlags & 0x80));
+			return 12;
+		case 0x57: // BIT 2,A
+			bit(2, a.getValue());
+			f.setValue((f.getValue() & 0x10) | 0x20 | (aluFlags & 0x80));
+			return 8;
+		case 0x58: // BIT 3,B
+			bit(3, b.getValue());
+			f.setValue((f.getValue() & 0x10) | 0x20 | (aluFlags & 0x80));
+			return 8;
+		case 0x59: // BIT 3,C
+			bit(3, c.getValue());
+			f.setValue((f.getValue() & 0x10) | 0x20 | (aluFlags & 0x80));
+			return 8;
+		case 0x5A: // BIT 3,D
+			bit(3, d.getValue());
+			f.setValue((f.getValue() & 0x10) | 0x20 | (aluFlags & 0x80));
+			return 8;
+		case 0x5B: // BIT 3,E
+			bit(3, e.getValue());
+			f.setValue((f.getValue() & 0x10) | 0x20 | (aluFlags & 0x80));
+			return 8;
+		case 0x5C: // BIT 3,H
+			bit(3, h.getValue());
+			f.setValue((f.getValue() & 0x10) | 0x20 | (aluFlags & 0x80));
+			return 8;
+		case 0x5D: // BIT 3,L
+			bit(3, l.getValue());
+			f.setValue((f.getValue() & 0x10) | 0x20 | (aluFlags & 0x80));
+			return 8;
+		case 0x5E: // BIT 3,(HL)
+			bit(3, mem.readByte(readHL()));
+			f.setValue((f.getValue() & 0x10) | 0x20 | (aluFlags & 0x80));
+			return 12;
+		case 0x5F: // BIT 3,A
+			bit(3, a.getValue());
+			f.setValue((f.getValue() & 0x10) | 0x20 | (aluFlags & 0x80));
+			return 8;
+		case 0x60: // BIT 4,B
+			bit(4, b.getValue());
+			f.setValue((f.getValue() & 0x10) | 0x20 | (aluFlags & 0x80));
+			return 8;
+		case 0x61: // BIT 4,C
+			bit(4, c.getValue());
+			f.setValue((f.getValue() & 0x10) | 0x20 | (aluFlags & 0x80));
+			return 8;
+		case 0x62: // BIT 4,D
+			bit(4, d.getValue());
+			f.setValue((f.getValue() & 0x10) | 0x20 | (aluFlags & 0x80));
+			return 8;
+		case 0x63: // BIT 4,E
+			bit(4, e.getValue());
+			f.setValue((f.getValue() & 0x10) | 0x20 | (aluFlags & 0x80));
+			return 8;
+		case 0x64: // BIT 4,H
+			bit(4, h.getValue());
+			f.setValue((f.getValue() & 0x10) | 0x20 | (aluFlags & 0x80));
+			return 8;
+		case 0x65: // BIT 4,L
+			bit(4, l.getValue());
+			f.setValue((f.getValue() & 0x10) | 0x20 | (aluFlags & 0x80));
+			return 8;
+		case 0x66: // BIT 4,(HL)
+			bit(4, mem.readByte(readHL()));
+			f.setValue((f.getValue() & 0x10) | 0x20 | (aluFlags & 0x80));
+			return 12;
+		case 0x67: // BIT 4,A
+			bit(4, a.getValue());
+			f.setValue((f.getValue() & 0x10) | 0x20 | (aluFlags & 0x80));
+			return 8;
+		case 0x68: // BIT 5,B
+			bit(5, b.getValue());
+			f.setValue((f.getValue() & 0x10) | 0x20 | (aluFlags & 0x80));
+			return 8;
+		case 0x69: // BIT 5,C
+			bit(5, c.getValue());
+			f.setValue((f.getValue() & 0x10) | 0x20 | (aluFlags & 0x80));
+			return 8;
+		case 0x6A: // BIT 5,D
+			bit(5, d.getValue());
+			f.setValue((f.getValue() & 0x10) | 0x20 | (aluFlags & 0x80));
+			return 8;
+		case 0x6B: // BIT 5,E
+			bit(5, e.getValue());
+			f.setValue((f.getValue() & 0x10) | 0x20 | (aluFlags & 0x80));
+			return 8;
+		case 0x6C: // BIT 5,H
+			bit(5, h.getValue());
+			f.setValue((f.getValue() & 0x10) | 0x20 | (aluFlags & 0x80));
+			return 8;
+		case 0x6D: // BIT 5,L
+			bit(5, l.getValue());
+			f.setValue((f.getValue() & 0x10) | 0x20 | (aluFlags & 0x80));
+			return 8;
+		case 0x6E: // BIT 5,(HL)
+			bit(5, mem.readByte(readHL()));
+			f.setValue((f.getValue() & 0x10) | 0x20 | (aluFlags & 0x80));
+			return 12;
+		case 0x6F: // BIT 5,A
+			bit(5, a.getValue());
+			f.setValue((f.getValue() & 0x10) | 0x20 | (aluFlags & 0x80));
+			return 8;
+		case 0x70: // BIT 6,B
+			bit(6, b.getValue());
+			f.setValue((f.getValue() & 0x10) | 0x20 | (aluFlags & 0x80));
+			return 8;
+		case 0x71: // BIT 6,C
+			bit(6, c.getValue());
+			f.setValue((f.getValue() & 0x10) | 0x20 | (aluFlags & 0x80));
+			return 8;
+		case 0x72: // BIT 6,D
+			bit(6, d.getValue());
+			f.setValue((f.getValue() & 0x10) | 0x20 | (aluFlags & 0x80));
+			return 8;
+		case 0x73: // BIT 6,E
+			bit(6, e.getValue());
+			f.setValue((f.getValue() & 0x10) | 0x20 | (aluFlags & 0x80));
+			return 8;
+		case 0x74: // BIT 6,H
+			bit(6, h.getValue());
+			f.setValue((f.getValue() & 0x10) | 0x20 | (aluFlags & 0x80));
+			return 8;
+		case 0x75: // BIT 6,L
+			bit(6, l.getValue());
+			f.setValue((f.getValue() & 0x10) | 0x20 | (aluFlags & 0x80));
+			return 8;
+		case 0x76: // BIT 6,(HL)
+			bit(6, mem.readByte(readHL()));
+			f.setValue((f.getValue() & 0x10) | 0x20 | (aluFlags & 0x80));
+			return 12;
+		case 0x77: // BIT 6,A
+			bit(6, a.getValue());
+			f.setValue((f.getValue() & 0x10) | 0x20 | (aluFlags & 0x80));
+			return 8;
+		case 0x78: // BIT 7,B
+			bit(7, b.getValue());
+			f.setValue((f.getValue() & 0x10) | 0x20 | (aluFlags & 0x80));
+			return 8;
+		case 0x79: // BIT 7,C
+			bit(7, c.getValue());
+			f.setValue((f.getValue() & 0x10) | 0x20 | (aluFlags & 0x80));
+			return 8;
+		case 0x7A: // BIT 7,D
+			bit(7, d.getValue());
+			f.setValue((f.getValue() & 0x10) | 0x20 | (aluFlags & 0x80));
+			return 8;
+		case 0x7B: // BIT 7,E
+			bit(7, e.getValue());
+			f.setValue((f.getValue() & 0x10) | 0x20 | (aluFlags & 0x80));
+			return 8;
+		case 0x7C: // BIT 7,H
+			bit(7, h.getValue());
+			f.setValue((f.getValue() & 0x10) | 0x20 | (aluFlags & 0x80));
+			return 8;
+		case 0x7D: // BIT 7,L
+			bit(7, l.getValue());
+			f.setValue((f.getValue() & 0x10) | 0x20 | (aluFlags & 0x80));
+			return 8;
+		case 0x7E: // BIT 7,(HL)
+			bit(7, mem.readByte(readHL()));
+			f.setValue((f.getValue() & 0x10) | 0x20 | (aluFlags & 0x80));
+			return 12;
+		case 0x7F: // BIT 7,A
+			bit(7, a.getValue());
+			f.setValue((f.getValue() & 0x10) | 0x20 | (aluFlags & 0x80));
+			return 8;
+		case 0x80: // RES 0,B
+			b.setValue(b.getValue() & ~0x01);
+			return 8;
+		case 0x81: // RES 0,C
+			c.setValue(c.getValue() & ~0x01);
+			return 8;
+		case 0x82: // RES 0,D
+			d.setValue(d.getValue() & ~0x01);
+			return 8;
+		case 0x83: // RES 0,E
+			e.setValue(e.getValue() & ~0x01);
+			return 8;
+		case 0x84: // RES 0,H
+			h.setValue(h.getValue() & ~0x01);
+			return 8;
+		case 0x85: // RES 0,L
+			l.setValue(l.getValue() & ~0x01);
+			return 8;
+		case 0x86: // RES 0,(HL)
+			address = readHL();
+			mem.writeByte(address, (byte) (mem.readByte(address) & ~0x01));
+			return 16;
+		case 0x87: // RES 0,A
+			a.setValue(a.getValue() & ~0x01);
+			return 8;
+		case 0x88: // RES 1,B
+			b.setValue(b.getValue() & ~0x02);
+			return 8;
+		case 0x89: // RES 1,C
+			c.setValue(c.getValue() & ~0x02);
+			return 8;
+		case 0x8A: // RES 1,D
+			d.setValue(d.getValue() & ~0x02);
+			return 8;
+		case 0x8B: // RES 1,E
+			e.setValue(e.getValue() & ~0x02);
+			return 8;
+		case 0x8C: // RES 1,H
+			h.setValue(h.getValue() & ~0x02);
+			return 8;
+		case 0x8D: // RES 1,L
+			l.setValue(l.getValue() & ~0x02);
+			return 8;
+		case 0x8E: // RES 1,(HL)
+			address = readHL();
+			mem.writeByte(address, (byte) (mem.readByte(address) & ~0x02));
+			return 16;
+		case 0x8F: // RES 1,A
+			a.setValue(a.getValue() & ~0x02);
+			return 8;
+		case 0x90: // RES 2,B
+			b.setValue(b.getValue() & ~0x04);
+			return 8;
+		case 0x91: // RES 2,C
+			c.setValue(c.getValue() & ~0x04);
+			return 8;
+		case 0x92: // RES 2,D
+			d.setValue(d.getValue() & ~0x04);
+			return 8;
+		case 0x93: // RES 2,E
+			e.setValue(e.getValue() & ~0x04);
+			return 8;
+		case 0x94: // RES 2,H
+			h.setValue(h.getValue() & ~0x04);
+			return 8;
+		case 0x95: // RES 2,L
+			l.setValue(l.getValue() & ~0x04);
+			return 8;
+		case 0x96: // RES 2,(HL)
+			address = readHL();
+			mem.writeByte(address, (byte) (mem.readByte(address) & ~0x04));
+			return 16;
+		case 0x97: // RES 2,A
+			a.setValue(a.getValue() & ~0x04);
+			return 8;
+		case 0x98: // RES 3,B
+			b.setValue(b.getValue() & ~0x08);
+			return 8;
+		case 0x99: // RES 3,C
+			c.setValue(c.getValue() & ~0x08);
+			return 8;
+		case 0x9A: // RES 3,D
+			d.setValue(d.getValue() & ~0x08);
+			return 8;
+		case 0x9B: // RES 3,E
+			e.setValue(e.getValue() & ~0x08);
+			return 8;
+		case 0x9C: // RES 3,H
+			h.setValue(h.getValue() & ~0x08);
+			return 8;
+		case 0x9D: // RES 3,L
+			l.setValue(l.getValue() & ~0x08);
+			return 8;
+		case 0x9E: // RES 3,(HL)
+			address = readHL();
+			mem.writeByte(address, (byte) (mem.readByte(address) & ~0x08));
+			return 16;
+		case 0x9F: // RES 3,A
+			a.setValue(a.getValue() & ~0x08);
+			return 8;
+		case 0xA0: // RES 4,B
+			b.setValue(b.getValue() & ~0x10);
+			return 8;
+		case 0xA1: // RES 4,C
+			c.setValue(c.getValue() & ~0x10);
+			return 8;
+		case 0xA2: // RES 4,D
+			d.setValue(d.getValue() & ~0x10);
+			return 8;
+		case 0xA3: // RES 4,E
+			e.setValue(e.getValue() & ~0x10);
+			return 8;
+		case 0xA4: // RES 4,H
+			h.setValue(h.getValue() & ~0x10);
+			return 8;
+		case 0xA5: // RES 4,L
+			l.setValue(l.getValue() & ~0x10);
+			return 8;
+		case 0xA6: // RES 4,(HL)
+			address = readHL();
+			mem.writeByte(address, (byte) (mem.readByte(address) & ~0x10));
+			return 16;
+		case 0xA7: // RES 4,A
+			a.setValue(a.getValue() & ~0x10);
+			return 8;
+		case 0xA8: // RES 5,B
+			b.setValue(b.getValue() & ~0x20);
+			return 8;
+		case 0xA9: // RES 5,C
+			c.setValue(c.getValue() & ~0x20);
+			return 8;
+		case 0xAA: // RES 5,D
+			d.setValue(d.getValue() & ~0x20);
+			return 8;
+		case 0xAB: // RES 5,E
+			e.setValue(e.getValue() & ~0x20);
+			return 8;
+		case 0xAC: // RES 5,H
+			h.setValue(h.getValue() & ~0x20);
+			return 8;
+		case 0xAD: // RES 5,L
+			l.setValue(l.getValue() & ~0x20);
+			return 8;
+		case 0xAE: // RES 5,(HL)
+			address = readHL();
+			mem.writeByte(address, (byte) (mem.readByte(address) & ~0x20));
+			return 16;
+		case 0xAF: // RES 5,A
+			a.setValue(a.getValue() & ~0x20);
+			return 8;
+		case 0xB0: // RES 6,B
+			b.setValue(b.getValue() & ~0x40);
+			return 8;
+		case 0xB1: // RES 6,C
+			c.setValue(c.getValue() & ~0x40);
+			return 8;
+		case 0xB2: // RES 6,D
+			d.setValue(d.getValue() & ~0x40);
+			return 8;
+		case 0xB3: // RES 6,E
+			e.setValue(e.getValue() & ~0x40);
+			return 8;
+		case 0xB4: // RES 6,H
+			h.setValue(h.getValue() & ~0x40);
+			return 8;
+		case 0xB5: // RES 6,L
+			l.setValue(l.getValue() & ~0x40);
+			return 8;
+		case 0xB6: // RES 6,(HL)
+			address = readHL();
+			mem.writeByte(address, (byte) (mem.readByte(address) & ~0x40));
+			return 16;
+		case 0xB7: // RES 6,A
+			a.setValue(a.getValue() & ~0x40);
+			return 8;
+		case 0xB8: // RES 7,B
+			b.setValue(b.getValue() & ~0x80);
+			return 8;
+		case 0xB9: // RES 7,C
+			c.setValue(c.getValue() & ~0x80);
+			return 8;
+		case 0xBA: // RES 7,D
+			d.setValue(d.getValue() & ~0x80);
+			return 8;
+		case 0xBB: // RES 7,E
+			e.setValue(e.getValue() & ~0x80);
+			return 8;
+		case 0xBC: // RES 7,H
+			h.setValue(h.getValue() & ~0x80);
+			return 8;
+		case 0xBD: // RES 7,L
+			l.setValue(l.getValue() & ~0x80);
+			return 8;
+		case 0xBE: // RES 7,(HL)
+			address = readHL();
+			mem.writeByte(address, (byte) (mem.readByte(address) & ~0x80));
+			return 16;
+		case 0xBF: // RES 7,A
+			a.setValue(a.getValue() & ~0x80);
+			return 8;
+		case 0xC0: // SET 0,B
+			b.setValue(b.getValue() | 0x01);
+			return 8;
+		case 0xC1: // SET 0,C
+			c.setValue(c.getValue() | 0x01);
+			return 8;
+		case 0xC2: // SET 0,D
+			d.setValue(d.getValue() | 0x01);
+			return 8;
+		case 0xC3: // SET 0,E
+			e.setValue(e.getValue() | 0x01);
+			return 8;
+		case 0xC4: // SET 0,H
+			h.setValue(h.getValue() | 0x01);
+			return 8;
+		case 0xC5: // SET 0,L
+			l.setValue(l.getValue() | 0x01);
+			return 8;
+		case 0xC6: // SET 0,(HL)
+			address = readHL();
+			mem.writeByte(address, (byte) (mem.readByte(address) | 0x01));
+			return 16;
+		case 0xC7: // SET 0,A
+			a.setValue(a.getValue() | 0x01);
+			return 8;
+		case 0xC8: // SET 1,B
+			b.setValue(b.getValue() | 0x02);
+			return 8;
+		case 0xC9: // SET 1,C
+			c.setValue(c.getValue() | 0x02);
+			return 8;
+		case 0xCA: // SET 1,D
+			d.setValue(d.getValue() | 0x02);
+			return 8;
+		case 0xCB: // SET 1,E
+			e.setValue(e.getValue() | 0x02);
+			return 8;
+		case 0xCC: // SET 1,H
+			h.setValue(h.getValue() | 0x02);
+			return 8;
+		case 0xCD: // SET 1,L
+			l.setValue(l.getValue() | 0x02);
+			return 8;
+		case 0xCE: // SET 1,(HL)
+			address = readHL();
+			mem.writeByte(address, (byte) (mem.readByte(address) | 0x02));
+			return 16;
+		case 0xCF: // SET 1,A
+			a.setValue(a.getValue() | 0x02);
+			return 8;
+		case 0xD0: // SET 2,B
+			b.setValue(b.getValue() | 0x04);
+			return 8;
+		case 0xD1: // SET 2,C
+			c.setValue(c.getValue() | 0x04);
+			return 8;
+		case 0xD2: // SET 2,D
+			d.setValue(d.getValue() | 0x04);
+			return 8;
+		case 0xD3: // SET 2,E
+			e.setValue(e.getValue() | 0x04);
+			return 8;
+		case 0xD4: // SET 2,H
+			h.setValue(h.getValue() | 0x04);
+			return 8;
+		case 0xD5: // SET 2,L
+			l.setValue(l.getValue() | 0x04);
+			return 8;
+		case 0xD6: // SET 2,(HL)
+			address = readHL();
+			mem.writeByte(address, (byte) (mem.readByte(address) | 0x04));
+			return 16;
+		case 0xD7: // SET 2,A
+			a.setValue(a.getValue() | 0x04);
+			return 8;
+		case 0xD8: // SET 3,B
+			b.setValue(b.getValue() | 0x08);
+			return 8;
+		case 0xD9: // SET 3,C
+			c.setValue(c.getValue() | 0x08);
+			return 8;
+		case 0xDA: // SET 3,D
+			d.setValue(d.getValue() | 0x08);
+			return 8;
+		case 0xDB: // SET 3,E
+			e.setValue(e.getValue() | 0x08);
+			return 8;
+		case 0xDC: // SET 3,H
+			h.setValue(h.getValue() | 0x08);
+			return 8;
+		case 0xDD: // SET 3,L
+			l.setValue(l.getValue() | 0x08);
+			return 8;
+		case 0xDE: // SET 3,(HL)
+			address = readHL();
+			mem.writeByte(address, (byte) (mem.readByte(address) | 0x08));
+			return 16;
+		case 0xDF: // SET 3,A
+			a.setValue(a.getValue() | 0x08);
+			return 8;
+		case 0xE0: // SET 4,B
+			b.setValue(b.getValue() | 0x10);
+			return 8;
+		case 0xE1: // SET 4,C
+			c.setValue(c.getValue() | 0x10);
+			return 8;
+		case 0xE2: // SET 4,D
+			d.setValue(d.getValue() | 0x10);
+			return 8;
+		case 0xE3: // SET 4,E
+			e.setValue(e.getValue() | 0x10);
+			return 8;
+		case 0xE4: // SET 4,H
+			h.setValue(h.getValue() | 0x10);
+			return 8;
+		case 0xE5: // SET 4,L
+			l.setValue(l.getValue() | 0x10);
+			return 8;
+		case 0xE6: // SET 4,(HL)
+			address = readHL();
+			mem.writeByte(address, (byte) (mem.readByte(address) | 0x10));
+			return 16;
+		case 0xE7: // SET 4,A
+			a.setValue(a.getValue() | 0x10);
+			return 8;
+		case 0xE8: // SET 5,B
+			b.setValue(b.getValue() | 0x20);
+			return 8;
+		case 0xE9: // SET 5,C
+			c.setValue(c.getValue() | 0x20);
+			return 8;
+		case 0xEA: // SET 5,D
+			d.setValue(d.getValue() | 0x20);
+			return 8;
+		case 0xEB: // SET 5,E
+			e.setValue(e.getValue() | 0x20);
+			return 8;
+		case 0xEC: // SET 5,H
+			h.setValue(h.getValue() | 0x20);
+			return 8;
+		case 0xED: // SET 5,L
+			l.setValue(l.getValue() | 0x20);
+			return 8;
+		case 0xEE: // SET 5,(HL)
+			address = readHL();
+			mem.writeByte(address, (byte) (mem.readByte(address) | 0x20));
+			return 16;
+		case 0xEF: // SET 5,A
+			a.setValue(a.getValue() | 0x20);
+			return 8;
+		case 0xF0: // SET 6,B
+			b.setValue(b.getValue() | 0x40);
+			return 8;
+		case 0xF1: // SET 6,C
+			c.setValue(c.getValue() | 0x40);
+			return 8;
+		case 0xF2: // SET 6,D
+			d.setValue(d.getValue() | 0x40);
+			return 8;
+		case 0xF3: // SET 6,E
+			e.setValue(e.getValue() | 0x40);
+			return 8;
+		case 0xF4: // SET 6,H
+			h.setValue(h.getValue() | 0x40);
+			return 8;
+		case 0xF5: // SET 6,L
+			l.setValue(l.getValue() | 0x40);
+			return 8;
+		case 0xF6: // SET 6,(HL)
+			address = readHL();
+			mem.writeByte(address, (byte) (mem.readByte(address) | 0x40));
+			return 16;
+		case 0xF7: // SET 6,A
+			a.setValue(a.getValue() | 0x40);
+			return 8;
+		case 0xF8: // SET 7,B
+			b.setValue(b.getValue() | 0x80);
+			return 8;
+		case 0xF9: // SET 7,C
+			c.setValue(c.getValue() | 0x80);
+			return 8;
+		case 0xFA: // SET 7,D
+			d.setValue(d.getValue() | 0x80);
+			return 8;
+		case 0xFB: // SET 7,E
+			e.setValue(e.getValue() | 0x80);
+			return 8;
+		case 0xFC: // SET 7,H
+			h.setValue(h.getValue() | 0x80);
+			return 8;
+		case 0xFD: // SET 7,L
+			l.setValue(l.getValue() | 0x80);
+			return 8;
+		case 0xFE: // SET 7,(HL)
+			address = readHL();
+			mem.writeByte(address, (byte) (mem.readByte(address) | 0x80));
+			return 16;
+		case 0xFF: // SET 7,A
+			a.setValue(a.getValue() | 0x80);
+			return 8;
+		default:
+			throw new InstructionNotImplementedException((byte) opcode, (char) (pc - 1));
+		}
 	}
 
-	/**
-	 * Builds extended opcode table (CB prefixed opcodes)
-	 */
-	private void loadCbOpCodes() {
-		cbOpCodes.put((byte) 0x7C, new Opcode("BIT 7 H", () -> bit(7, getH()), (byte) 8));
-		cbOpCodes.put((byte) 0x7F, new Opcode("BIT 7 F", () -> bit(7, getF()), (byte) 8));
-		cbOpCodes.put((byte) 0x11, new Opcode("RL C", () -> rl(getC()), (byte) 8));
-		cbOpCodes.put((byte) 0x87, new Opcode("RES 0, A", () -> res(0, getA()), (byte) 8));
-		cbOpCodes.put((byte) 0x37, new Opcode("SWAP A", () -> swap(getA()), (byte) 8));
+	/* END GENERATED INTERPRETER */
 
-	}
+	/* Register pair access */
 
-	public Logger getLogger() {
-		return logger;
+	private char readAF() {
+		return (char) ((a.getValue() & 0xFF) << 8 | (f.getValue() & 0xF0));
 	}
 
-	public char getPc() {
-		return this.pc;
+	private void writeAF(char value) {
+		a.setValue(value >> 8);
+		f.setValue(value & 0xF0);
 	}
 
-	public char getSp() {
-		return this.sp;
+	private char readBC() {
+		return (char) ((b.getValue() & 0xFF) << 8 | (c.getValue() & 0xFF));
 	}
 
-	public Register getA() {
-		return a;
+	private void writeBC(char value) {
+		b.setValue(value >> 8);
+		c.setValue(value);
 	}
 
-	public Register getB() {
-		return b;
+	private char readDE() {
+		return (char) ((d.getValue() & 0xFF) << 8 | (e.getValue() & 0xFF));
 	}
 
-	public Register getC() {
-		return c;
+	private void writeDE(char value) {
+		d.setValue(value >> 8);
+		e.setValue(value);
 	}
 
-	public Register getD() {
-		return d;
+	private char readHL() {
+		return (char) ((h.getValue() & 0xFF) << 8 | (l.getValue() & 0xFF));
 	}
 
-	public Register getE() {
-		return e;
+	private void writeHL(char value) {
+		h.setValue(value >> 8);
+		l.setValue(value);
 	}
 
-	public Register getH() {
-		return h;
+	/**
+	 * @return the value of HL, which is then incremented
+	 */
+	private char hlPostIncrement() {
+		char hl = readHL();
+		writeHL((char) (hl + 1));
+		return hl;
 	}
 
-	public Register getL() {
-		return l;
+	/**
+	 * @return the value of HL, which is then decremented
+	 */
+	private char hlPostDecrement() {
+		char hl = readHL();
+		writeHL((char) (hl - 1));
+		return hl;
 	}
 
-	public Register getF() {
-		return f;
+	/**
+	 * Reads 8 bits from memory beginning at pc, and increments pc
+	 */
+	private byte read8Immediate() {
+		return mem.readByte(pc++);
 	}
 
-	public boolean isZeroFlag() {
-		return RegisterUtils.readBit(7, getF());
+	/**
+	 * Reads 16 bits from memory beginning at pc, and increments pc
+	 */
+	private char read16Immediate() {
+		int low = mem.readByte(pc++) & 0xFF;
+		int high = mem.readByte(pc++) & 0xFF;
+		return (char) (high << 8 | low);
 	}
 
-	public boolean isOperationFlag() {
-		return RegisterUtils.readBit(6, getF());
+	/**
+	 * Writes a 16-bit value to memory, low byte first
+	 */
+	private void writeWord(char address, char value) {
+		mem.writeByte(address, (byte) value);
+		mem.writeByte((char) (address + 1), (byte) (value >> 8));
 	}
 
-	public boolean isHalfCarryFlag() {
-		return RegisterUtils.readBit(5, getF());
+	/**
+	 * Pushes a memory address onto the stack
+	 */
+	private void push(char address) {
+		sp--;
+		mem.writeByte(sp, (byte) (address >> 8));
+		sp--;
+		mem.writeByte(sp, (byte) address);
 	}
 
-	public boolean isFullCarryFlag() {
-		return RegisterUtils.readBit(4, getF());
+	/**
+	 * Pops a memory address off the stack
+	 */
+	private char pop() {
+		int low = mem.readByte(sp++) & 0xFF;
+		int high = mem.readByte(sp++) & 0xFF;
+		return (char) (high << 8 | low);
 	}
 
-	public boolean isConditionalNotExecFlag() {
-		return conditionalNotExecFlag;
+	/**
+	 * Call routine at address
+	 */
+	private void call(char address) {
+		push(pc);
+		pc = address;
 	}
 
-	public Register getClockM() {
-		return clockM;
+	/**
+	 * Relative jump by SIGNED 8-bit offset
+	 */
+	private void jr(byte offset) {
+		pc += offset;
 	}
 
-	private void setClockM(Register clockM) {
-		this.clockM = clockM;
+	/**
+	 * @return 1 if the carry flag is set, otherwise 0
+	 */
+	private int carry() {
+		return (f.getValue() & FLAG_C) >> 4;
 	}
 
-	public Register getClockT() {
-		return clockT;
-	}
+	/* ALU operations. Each returns its result and leaves its flags in aluFlags. */
 
-	public int getOpcodeCount() {
-		return this.opCodes.size();
+	private int add8(int x, int y, int carry) {
+		x &= 0xFF;
+		y &= 0xFF;
+		int result = x + y + carry;
+		aluFlags = ((result & 0xFF) == 0 ? FLAG_Z : 0) | ((x & 0xF) + (y & 0xF) + carry > 0xF ? FLAG_H : 0)
+				| (result > 0xFF ? FLAG_C : 0);
+		return result;
 	}
 
-	public int getCbOpcodeCount() {
-		return this.cbOpCodes.size();
+	private int sub8(int x, int y, int carry) {
+		x &= 0xFF;
+		y &= 0xFF;
+		int result = x - y - carry;
+		aluFlags = ((result & 0xFF) == 0 ? FLAG_Z : 0) | FLAG_N | ((x & 0xF) - (y & 0xF) - carry < 0 ? FLAG_H : 0)
+				| (result < 0 ? FLAG_C : 0);
+		return result;
 	}
 
-	public int getTotalOpcodeCount() {
-		return getCbOpcodeCount() + getOpcodeCount();
+	private int and8(int x, int y) {
+		int result = x & y & 0xFF;
+		aluFlags = (result == 0 ? FLAG_Z : 0) | FLAG_H;
+		return result;
 	}
 
-	private void setClockT(Register clockT) {
-		this.clockT = clockT;
+	private int xor8(int x, int y) {
+		int result = (x ^ y) & 0xFF;
+		aluFlags = result == 0 ? FLAG_Z : 0;
+		return result;
 	}
 
-	private void setConditionalNotExecFlag(boolean conditionalNotExecFlag) {
-		this.conditionalNotExecFlag = conditionalNotExecFlag;
+	private int or8(int x, int y) {
+		int result = (x | y) & 0xFF;
+		aluFlags = result == 0 ? FLAG_Z : 0;
+		return result;
 	}
 
-	private void setFullCarryFlag(boolean fullCarryFlag) {
-		getF().setValue(RegisterUtils.setBit(4, getF(), fullCarryFlag));
+	private int inc8(int x) {
+		int result = (x + 1) & 0xFF;
+		aluFlags = (result == 0 ? FLAG_Z : 0) | ((x & 0xF) == 0xF ? FLAG_H : 0);
+		return result;
 	}
 
-	private void setHalfCarryFlag(boolean halfCarryFlag) {
-		getF().setValue(RegisterUtils.setBit(5, getF(), halfCarryFlag));
+	private int dec8(int x) {
+		int result = (x - 1) & 0xFF;
+		aluFlags = (result == 0 ? FLAG_Z : 0) | FLAG_N | ((x & 0xF) == 0 ? FLAG_H : 0);
+		return result;
 	}
 
-	private void setOperationFlag(boolean operationFlag) {
-		getF().setValue(RegisterUtils.setBit(6, getF(), operationFlag));
+	private char add16(int x, int y) {
+		int result = x + y;
+		aluFlags = ((x & 0xFFF) + (y & 0xFFF) > 0xFFF ? FLAG_H : 0) | (result > 0xFFFF ? FLAG_C : 0);
+		return (char) result;
 	}
 
-	private void setZeroFlag(boolean zeroFlag) {
-		getF().setValue(RegisterUtils.setBit(7, getF(), zeroFlag));
+	/**
+	 * Adds a SIGNED 8-bit offset to SP. Carries are computed on the low byte.
+	 */
+	private char addSpSigned(byte offset) {
+		int result = sp + offset;
+		aluFlags = ((sp & 0xF) + (offset & 0xF) > 0xF ? FLAG_H : 0)
+				| ((sp & 0xFF) + (offset & 0xFF) > 0xFF ? FLAG_C : 0);
+		return (char) result;
 	}
 
-	private void setF(Register f) {
-		this.f = f;
+	/**
+	 * Decimal-adjusts A after a BCD addition or subtraction
+	 */
+	private void daa() {
+		int value = a.getValue() & 0xFF;
+		int flags = f.getValue();
+		int correction = 0;
+		boolean carry = (flags & FLAG_C) != 0;
+		boolean subtract = (flags & FLAG_N) != 0;
+
+		if ((flags & FLAG_H) != 0 || (!subtract && (value & 0xF) > 9)) {
+			correction |= 0x06;
+		}
+		if (carry || (!subtract && value > 0x99)) {
+			correction |= 0x60;
+			carry = true;
+		}
+		value = (subtract ? value - correction : value + correction) & 0xFF;
+		a.setValue(value);
+		aluFlags = (value == 0 ? FLAG_Z : 0) | (carry ? FLAG_C : 0);
 	}
 
-	private void setL(Register l) {
-		this.l = l;
+	private int rlc(int x) {
+		x &= 0xFF;
+		int result = (x << 1 | x >> 7) & 0xFF;
+		aluFlags = (result == 0 ? FLAG_Z : 0) | (x > 0x7F ? FLAG_C : 0);
+		return result;
 	}
 
-	private void setH(Register h) {
-		this.h = h;
+	private int rrc(int x) {
+		x &= 0xFF;
+		int result = (x >> 1 | x << 7) & 0xFF;
+		aluFlags = (result == 0 ? FLAG_Z : 0) | ((x & 1) != 0 ? FLAG_C : 0);
+		return result;
 	}
 
-	private void setE(Register e) {
-		this.e = e;
+	/**
+	 * Left-rotate through carry
+	 */
+	private int rl(int x) {
+		x &= 0xFF;
+		int result = (x << 1 | carry()) & 0xFF;
+		aluFlags = (result == 0 ? FLAG_Z : 0) | (x > 0x7F ? FLAG_C : 0);
+		return result;
 	}
 
-	private void setD(Register d) {
-		this.d = d;
+	/**
+	 * Right-rotate through carry
+	 */
+	private int rr(int x) {
+		x &= 0xFF;
+		int result = x >> 1 | carry() << 7;
+		aluFlags = (result == 0 ? FLAG_Z : 0) | ((x & 1) != 0 ? FLAG_C : 0);
+		return result;
 	}
 
-	private void setC(Register c) {
-		this.c = c;
+	private int sla(int x) {
+		x &= 0xFF;
+		int result = (x << 1) & 0xFF;
+		aluFlags = (result == 0 ? FLAG_Z : 0) | (x > 0x7F ? FLAG_C : 0);
+		return result;
 	}
 
-	private void setB(Register b) {
-		this.b = b;
+	private int sra(int x) {
+		x &= 0xFF;
+		int result = x >> 1 | (x & 0x80);
+		aluFlags = (result == 0 ? FLAG_Z : 0) | ((x & 1) != 0 ? FLAG_C : 0);
+		return result;
 	}
 
-	private void setA(Register a) {
-		this.a = a;
+	private int srl(int x) {
+		x &= 0xFF;
+		int result = x >> 1;
+		aluFlags = (result == 0 ? FLAG_Z : 0) | ((x & 1) != 0 ? FLAG_C : 0);
+		return result;
 	}
 
 	/**
-	 * Reads 8 bits from memory beginning at pc, and increments pc
+	 * Swaps high and low nibbles
 	 */
-	private byte read8Immediate() {
-		byte d8 = mem.readByte(pc);
-		pc++;
-		return d8;
+	private int swap(int x) {
+		x &= 0xFF;
+		int result = (x << 4 | x >> 4) & 0xFF;
+		aluFlags = result == 0 ? FLAG_Z : 0;
+		return result;
 	}
 
 	/**
-	 * Reads 16 bits from memory beginning at pc, and increments pc
+	 * Tests bit number bitno of value
 	 */
-	private char read16Immediate() {
-		byte b2 = mem.readByte(pc);
-		pc++;
-		byte b1 = mem.readByte(pc);
-		pc++;
-		return NumberUtils.bytesToWord(b2, b1);
+	private void bit(int bitno, int value) {
+		aluFlags = (value & (1 << bitno)) == 0 ? FLAG_Z : 0;
 	}
 
 	/**
-	 * Adds value at address pointed to by s1s2 to destination.
+	 * Enable interrupts after the next instruction
 	 */
-	private void addAddress(Register destination, Register s1, Register s2) {
-		setOperationFlag(false);
-		byte memAtDual = mem.readByte(readDualRegister(s1, s2));
-		setFullCarryFlag(NumberUtils.byteAdditionOverflow(destination.getValue(), memAtDual));
-		setHalfCarryFlag(NumberUtils.byteAdditionNibbleOverflow(destination.getValue(), memAtDual));
-		destination.setValue(destination.getValue() + memAtDual);
-		setZeroFlag((destination.getValue() == 0));
+	private void ei() {
+		interrupts.enableAfterNextInstruction();
 	}
 
 	/**
-	 * Subtracts the value of a register from A
+	 * Disable interrupts
 	 */
-	private void subtract(Register r) {
-		setHalfCarryFlag(NumberUtils.byteSubtractionNibbleBorrow(getA().getValue(), r.getValue()));
-		setFullCarryFlag(NumberUtils.byteSubtractionBorrow(getA().getValue(), r.getValue()));
-		getA().setValue(getA().getValue() - r.getValue());
-		setZeroFlag(getA().getValue() == 0);
-		setOperationFlag(true);
+	private void di() {
+		interrupts.setMasterEnabled(false);
 	}
 
 	/**
-	 * Subtracts the value of r + the carry flag from A
+	 * Return from an interrupt handler, re-enabling interrupts immediately
 	 */
-	private void subtractWithCarry(Register r) {
-		byte toSub = (byte) (r.getValue() + (isFullCarryFlag() ? 1 : 0));
-		setHalfCarryFlag(NumberUtils.byteSubtractionNibbleBorrow(getA().getValue(), toSub));
-		getA().setValue(getA().getValue() - toSub);
-		setZeroFlag(getA().getValue() == 0);
-		setOperationFlag(true);
-		if (getA().getValue() < 0) {
-			setFullCarryFlag(true);
-		}
+	private void reti() {
+		interrupts.setMasterEnabled(true);
 	}
 
 	/**
-	 * Decrements a register
+	 * Suspend execution until an interrupt occurs
 	 */
-	private void decrement(Register r) {
-		setHalfCarryFlag(NumberUtils.byteSubtractionNibbleBorrow(r.getValue(), (byte) 1));
-		r.setValue(r.getValue() - 1);
-		setZeroFlag(r.getValue() == 0);
-		setOperationFlag(true);
+	private void halt() {
+		halted = true;
 	}
 
 	/**
-	 * Swaps high and low nibbles of a register
-	 * 
-	 * @param r
-	 *            register to swap
+	 * Enter low power mode until a button is pressed
 	 */
-	private void swap(Register r) {
-		String bin = StringUtils.zeroLeftPad(Integer.toBinaryString(r.getValue()), 8);
-		String upper = bin.substring(0, 4);
-		String lower = bin.substring(4);
-		byte result = (byte) (Integer.parseInt(lower + upper, 2));
-		r.setValue(result);
-		setZeroFlag(r.getValue() == 0);
-		setHalfCarryFlag(false);
-		setFullCarryFlag(false);
-		setOperationFlag(false);
+	private void stop() {
+		halted = true;
+	}
+
+	@Override
+	public void saveState(ByteBuffer buffer) {
+		buffer.put(a.getValue()).put(b.getValue()).put(c.getValue()).put(d.getValue());
+		buffer.put(e.getValue()).put(h.getValue()).put(l.getValue()).put(f.getValue());
+		buffer.putChar(pc).putChar(sp);
+		buffer.put(clockT.getValue()).put(clockM.getValue());
+		buffer.put((byte) (halted ? 1 : 0));
+	}
+
+	@Override
+	public void loadState(ByteBuffer buffer) {
+		a.setValue(buffer.get());
+		b.setValue(buffer.get());
+		c.setValue(buffer.get());
+		d.setValue(buffer.get());
+		e.setValue(buffer.get());
+		h.setValue(buffer.get());
+		l.setValue(buffer.get());
+		f.setValue(buffer.get());
+		pc = buffer.getChar();
+		sp = buffer.getChar();
+		clockT.setValue(buffer.get());
+		clockM.setValue(buffer.get());
+		halted = buffer.get() != 0;
 	}
 
-	/**
-	 * Decrements a dual register
-	 */
-	private void decrement(Register r1, Register r2) {
-		char value = readDualRegister(r1, r2);
-		value--;
-		writeDualRegister(r1, r2, value);
+	public Logger getLogger() {
+		return logger;
 	}
 
-	/**
-	 * XOR value of r with A, result in A
-	 */
-	private void xor(Register r) {
-		getA().setValue(getA().getValue() ^ r.getValue());
-		setZeroFlag(getA().getValue() == 0);
-		setHalfCarryFlag(false);
-		setFullCarryFlag(false);
-		setOperationFlag(false);
+	public char getPc() {
+		return this.pc;
 	}
 
-	/**
-	 * Bitwise OR A with r. Result in A.
-	 */
-	private void or(Register r) {
-		getA().setValue(getA().getValue() | r.getValue());
-		setZeroFlag(getA().getValue() == 0);
-		setHalfCarryFlag(false);
-		setFullCarryFlag(false);
-		setOperationFlag(false);
+	public char getSp() {
+		return this.sp;
 	}
 
-	/**
-	 * Bitwise AND A with 8-bit immediate. Result in A.
-	 */
-	private void and() {
-		byte val = mem.readByte(pc);
-		pc++;
-		getA().setValue(getA().getValue() & val);
-		setZeroFlag(getA().getValue() == 0);
-		setOperationFlag(false);
-		setHalfCarryFlag(true);
-		setFullCarryFlag(false);
+	public void setPc(char pc) {
+		this.pc = pc;
 	}
 
-	/**
-	 * Bitwise AND A with r. Result in A.
-	 */
-	private void and(Register r) {
-		getA().setValue(getA().getValue() & r.getValue());
-		setZeroFlag(getA().getValue() == 0);
-		setOperationFlag(false);
-		setHalfCarryFlag(true);
-		setFullCarryFlag(false);
+	public void setSp(char sp) {
+		this.sp = sp;
 	}
 
-	/**
-	 * Increments a register
-	 */
-	private void increment(Register r) {
-		setHalfCarryFlag(NumberUtils.byteAdditionNibbleOverflow(r.getValue(), (byte) 1));
-		r.setValue(r.getValue() + 1);
-		setZeroFlag(r.getValue() == 0);
-		setOperationFlag(false);
+	public Register getA() {
+		return a;
 	}
 
-	/**
-	 * Increments a dual register
-	 */
-	private void increment(Register r1, Register r2) {
-		char dual = readDualRegister(r1, r2);
-		writeDualRegister(r1, r2, (char) (dual + 1));
+	public Register getB() {
+		return b;
 	}
 
-	private void load(Register destination, Register source) {
-		destination.setValue(source.getValue());
+	public Register getC() {
+		return c;
 	}
 
-	private void load(Register destination, char sourceAddress) {
-		destination.setValue(mem.readByte(sourceAddress));
+	public Register getD() {
+		return d;
 	}
 
-	private void load(Register destination, byte value) {
-		destination.setValue(value);
+	public Register getE() {
+		return e;
 	}
 
-	private void load(Register d1, Register d2, char value) {
-		writeDualRegister(d1, d2, value);
+	public Register getH() {
+		return h;
 	}
 
-	private void load(Register addressDest1, Register addressDest2, byte value) {
-		mem.writeByte(readDualRegister(addressDest1, addressDest2), value);
+	public Register getL() {
+		return l;
 	}
 
-	private void load(Register r1, Register r2, Register r3, boolean loadToAddress) {
-		if (loadToAddress) {
-			mem.writeByte(readDualRegister(r1, r2), r3.getValue());
-		} else {
-			r1.setValue(mem.readByte(readDualRegister(r2, r3)));
-		}
+	public Register getF() {
+		return f;
 	}
 
-	private void load(char address, Register source) {
-		mem.writeByte(address, source.getValue());
+	public boolean isZeroFlag() {
+		return (getF().getValue() & FLAG_Z) != 0;
 	}
 
-	/**
-	 * Loads the value of src into the memory address pointed to by d1d2, then
-	 * decrements d1d2.
-	 */
-	private void loadDecrement(Register d1, Register d2, Register src) {
-		char address = readDualRegister(d1, d2);
-		mem.writeByte(address, src.getValue());
-		address--;
-		writeDualRegister(d1, d2, address);
+	public boolean isOperationFlag() {
+		return (getF().getValue() & FLAG_N) != 0;
 	}
 
-	/**
-	 * Loads the value of source into the address pointed to by d1d2
-	 */
-	private void loadIncrement(Register r1, Register r2, Register r3, boolean loadToAddress) {
-		if (loadToAddress) {
-			char dual = readDualRegister(r1, r2);
-			mem.writeByte(dual, r3.getValue());
-			writeDualRegister(r1, r2, (char) (dual + 1));
-		} else {
-			char dual = readDualRegister(r2, r3);
-			r1.setValue(mem.readByte(dual));
-			dual++;
-			writeDualRegister(r2, r3, dual);
-		}
+	public boolean isHalfCarryFlag() {
+		return (getF().getValue() & FLAG_H) != 0;
 	}
 
-	/**
-	 * Loads the value of source into the address pointed to by 0xFF00 +
-	 * destination
-	 */
-	private void ldh(Register destination, Register source) {
-		char address = (char) (0xFF00 + destination.getValue());
-		mem.writeByte(address, source.getValue());
+	public boolean isFullCarryFlag() {
+		return (getF().getValue() & FLAG_C) != 0;
 	}
 
-	/**
-	 * Pushes the 16-bit value in r1r2 onto the stack
-	 */
-	private void pushFrom(Register r1, Register r2) {
-		char stackValue = readDualRegister(r1, r2);
-		push(stackValue);
+	public boolean isInterruptsEnabled() {
+		return interrupts.isMasterEnabled();
 	}
 
-	/**
-	 * Pops a 16-bit value off the stack and stores it in r1r2
-	 */
-	private void popTo(Register r1, Register r2) {
-		char stackValue = pop();
-		writeDualRegister(r1, r2, stackValue);
+	public boolean isHalted() {
+		return halted;
 	}
 
-	/**
-	 * Flips every bit in register A
-	 */
-	private void complement() {
-		String bin = StringUtils.zeroLeftPad(Integer.toBinaryString(getA().getValue()), 8);
-		String res = "";
-		for (int i = 0; i < 8; i++) {
-			res += (bin.charAt(i) == '0' ? '1' : '0');
-		}
-		getA().setValue(Integer.parseInt(res, 2));
-		setOperationFlag(true);
-		setHalfCarryFlag(true);
+	public Register getClockM() {
+		return clockM;
 	}
 
-	/**
-	 * Performs a left-rotate-through-carry on r
-	 */
-	private void rl(Register r) {
-		setFullCarryFlag(RegisterUtils.leftRotateThroughCarry(r, isFullCarryFlag()));
-		setZeroFlag(r.getValue() == 0);
-		setOperationFlag(false);
-		setHalfCarryFlag(false);
+	private void setClockM(Register clockM) {
+		this.clockM = clockM;
 	}
 
-	/**
-	 * Performs a right-rotate-through-carry on r
-	 */
-	private void rr(Register r) {
-		setFullCarryFlag(RegisterUtils.rightRotateThroughCarry(r, isFullCarryFlag()));
-		setZeroFlag(r.getValue() == 0);
-		setOperationFlag(false);
-		setHalfCarryFlag(false);
+	public Register getClockT() {
+		return clockT;
 	}
 
-	// XXX: Should these two be generalized into one function?
-	// Check if there are more "compare" instructions
+	public int getOpcodeCount() {
+		return OpcodeTable.getOpcodeCount();
+	}
 
-	/**
-	 * Compare 8-bit immediate to A
-	 */
-	private void compare() {
-		byte immediate = read8Immediate();
-		setOperationFlag(true);
-		setHalfCarryFlag(NumberUtils.byteSubtractionNibbleBorrow(getA().getValue(), immediate));
-
-		if (getA().getValue() == immediate) {
-			setZeroFlag(true);
-		} else {
-			setZeroFlag(false);
-			if (getA().getValue() < immediate) {
-				setFullCarryFlag(true);
-			}
-		}
+	public int getCbOpcodeCount() {
+		return OpcodeTable.getCbOpcodeCount();
 	}
 
-	/**
-	 * Compares the value pointed to by r1r2 to register A
-	 */
-	private void compareAddress(Register r1, Register r2) {
-		setOperationFlag(true);
-		byte memAtDual = mem.readByte(readDualRegister(r1, r2));
-		setZeroFlag(getA().getValue() == memAtDual);
-		setHalfCarryFlag(NumberUtils.byteSubtractionNibbleBorrow(getA().getValue(), memAtDual));
-		setFullCarryFlag(NumberUtils.byteSubtractionBorrow(getA().getValue(), memAtDual));
+	public int getTotalOpcodeCount() {
+		return getCbOpcodeCount() + getOpcodeCount();
 	}
 
-	/**
-	 * Returns to last address pushed onto the stack if condition evaluates to
-	 * true
-	 */
-	private void ret(boolean condition) {
-		if (condition) {
-			char address = pop();
-			logger.fine("RET called, returning to " + Integer.toHexString(address & 0xFFFF));
-			pc = address;
-		} else {
-			setConditionalNotExecFlag(true);
-		}
+	private void setClockT(Register clockT) {
+		this.clockT = clockT;
 	}
 
-	/**
-	 * Call routine at 16-bit immediate
-	 */
-	private void call() {
-		char address = read16Immediate();
-		push(pc);
-		logger.fine("Pushed address " + Integer.toHexString(pc & 0xFFFF) + " to stack");
-		pc = address;
-		logger.fine("Calling subroutine at 0x" + Integer.toHexString(address & 0xFFFF));
+	private void setF(Register f) {
+		this.f = f;
 	}
 
-	/**
-	 * Enable interrupts
-	 */
-	private void setInterruptsEnabled(boolean enabled) {
-		/* this will be important later, but for now it's a nop */
-		// TODO: Implement CPU interrupts
-		logger.finer("Enable interrupts");
-		logger.warning("Interrupts not yet implemented");
+	private void setL(Register l) {
+		this.l = l;
 	}
 
-	/**
-	 * No operation
-	 */
-	private void nop() {
-		logger.finer("no op");
+	private void setH(Register h) {
+		this.h = h;
 	}
 
-	/**
-	 * Tests bit number bitno of register r
-	 */
-	private void bit(int bitno, Register r) {
-		boolean bitOn = RegisterUtils.readBit(bitno, r);
-		if (!bitOn) {
-			setZeroFlag(true);
-		} else {
-			setZeroFlag(false);
-		}
-		setOperationFlag(false);
-		setHalfCarryFlag(true);
-		logger.finer("Testing bit " + bitno + " of " + r + ": zeroFlag = " + isZeroFlag());
+	private void setE(Register e) {
+		this.e = e;
 	}
 
-	/**
-	 * Resets specified bit of register r
-	 */
-	private void res(int bitNumber, Register r) {
-		r.setValue(RegisterUtils.setBit(bitNumber, r, false));
+	private void setD(Register d) {
+		this.d = d;
 	}
 
-	/**
-	 * Absolute jump to 16-bit immediate address if condition is met.
-	 */
-	private void jump(boolean condition, char address) {
-		if (condition) {
-			logger.finer("Jumping to " + StringUtils.charToReadableHex(address));
-			pc = address;
-		} else {
-			setConditionalNotExecFlag(true);
-			logger.finer("Jump condition not met; no jmp");
-		}
+	private void setC(Register c) {
+		this.c = c;
 	}
 
-	/**
-	 * Relative jump by SIGNED 8-bit immediate if condition is met.
-	 */
-	private void relativeJump(boolean condition, byte value) {
-		if (condition) {
-			logger.finer("Relative jump by " + StringUtils.byteToReadableHex(value));
-			pc += value;
-		} else {
-			setConditionalNotExecFlag(true);
-			logger.finer("Jump condition not met; no jmp");
-		}
+	private void setB(Register b) {
+		this.b = b;
 	}
 
-	/**
-	 * Jump to reset vector
-	 */
-	private void rst(byte resetVector) {
-		push(pc);
-		pc = (char) resetVector;
+	private void setA(Register a) {
+		this.a = a;
 	}
 
-	/**
-	 * Adds value of r to the accumulator
-	 */
-	private void add(Register r) {
-		byte a = getA().getValue();
-		boolean fullCarry = NumberUtils.byteAdditionOverflow(a, a);
-		setFullCarryFlag(fullCarry);
-		boolean halfCarry = NumberUtils.byteAdditionNibbleOverflow(a, a);
-		setHalfCarryFlag(halfCarry);
-		setOperationFlag(false);
-		setZeroFlag(a + a == 0);
-		getA().setValue(a + a);
-	}
-
-	private void add(Register a1, Register a2, Register b1, Register b2) {
-		int a = readDualRegister(a1, a2);
-		int b = readDualRegister(b1, b2);
-		setOperationFlag(false);
-		// TODO:Half/full carry flags
-		writeDualRegister(a1, a2, (char) (a + b));
-	}
-
-}
\ No newline at end of file
+}
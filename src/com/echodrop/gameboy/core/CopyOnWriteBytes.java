@@ -0,0 +1,89 @@
+/**
+ * CopyOnWriteBytes.java
+ *
+ * @author anewkirk
+ *
+ * Licensing information can be found in the root directory of the project.
+ */
+
+package com.echodrop.gameboy.core;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A byte array that forked emulator instances share until one of them writes
+ * to it. Each instance holds its own CopyOnWriteBytes; the ones sharing an
+ * array share a count of how many of them still use it. The first to write
+ * copies the array and drops out of the count, and the last one left takes
+ * the array over without copying.
+ *
+ * The count is the only thing touched by more than one thread. A shared array
+ * is never written, and an instance only drops out of the count after it has
+ * finished copying, so the instance that finds itself alone can write in
+ * place.
+ */
+public class CopyOnWriteBytes {
+
+	private byte[] data;
+
+	/**
+	 * Instances using data, or null if data is not shared
+	 */
+	private AtomicInteger users;
+
+	public CopyOnWriteBytes(byte[] data) {
+		this.data = data;
+	}
+
+	/**
+	 * @return the array, which must not be modified while isShared() is true
+	 */
+	public byte[] get() {
+		return data;
+	}
+
+	public boolean isShared() {
+		return users != null;
+	}
+
+	/**
+	 * @return a new holder of the same array, for a fork. Both this and the
+	 *         fork are shared afterwards.
+	 */
+	public CopyOnWriteBytes share() {
+		if (users == null) {
+			users = new AtomicInteger(1);
+		}
+		users.incrementAndGet();
+		CopyOnWriteBytes fork = new CopyOnWriteBytes(data);
+		fork.users = users;
+		return fork;
+	}
+
+	/**
+	 * @return an array that only this holder uses, copying the shared one if
+	 *         another holder still uses it
+	 */
+	public byte[] getWritable() {
+		if (users != null) {
+			if (users.get() > 1) {
+				data = data.clone();
+				users.decrementAndGet();
+			}
+			users = null;
+		}
+		return data;
+	}
+
+	/**
+	 * Replaces the array, leaving any sharing of the old one
+	 */
+	public void set(byte[] data) {
+		if (users != null) {
+			users.decrementAndGet();
+			users = null;
+		}
+		this.data = data;
+	}
+
+}
@@ -0,0 +1,159 @@
+/**
+ * DmaController.java
+ * 
+ * @author anewkirk
+ * 
+ * Licensing information can be found in the root directory of the project.
+ */
+
+package com.echodrop.gameboy.core;
+
+import java.nio.ByteBuffer;
+import java.util.logging.Logger;
+
+import com.echodrop.gameboy.interfaces.IIoDevice;
+import com.echodrop.gameboy.interfaces.IScheduledEvent;
+import com.echodrop.gameboy.interfaces.IStateful;
+
+/**
+ * Emulation of OAM DMA (0xFF46). Writing a value XX copies 0xXX00 - 0xXX9F
+ * into sprite attribute memory.
+ * 
+ * The copy is done in one go through the MMU's page table as soon as the
+ * register is written. On hardware the transfer takes 160 machine cycles,
+ * during which the CPU cannot use the bus the source is on, nor OAM; that
+ * window is modeled by locking those pages and scheduling an event to unlock
+ * them, so nothing is stepped per byte.
+ */
+public class DmaController implements IIoDevice, IScheduledEvent, IStateful {
+
+	private static final Logger logger = Logger.getLogger(DmaController.class.getName());
+
+	public static final char DMA_ADDRESS = 0xFF46;
+
+	/**
+	 * Length of the transfer in clock cycles (160 machine cycles)
+	 */
+	public static final int TRANSFER_CYCLES = 640;
+	public static final int TRANSFER_LENGTH = 0xA0;
+
+	private static final int OAM_PAGE = 0xFE;
+
+	private TailspinGB system;
+	private Scheduler scheduler;
+
+	/**
+	 * Last value written to 0xFF46
+	 */
+	private int source;
+	private boolean active;
+
+	public DmaController(TailspinGB system) {
+		this.system = system;
+		this.scheduler = system.getScheduler();
+		scheduler.setHandler(Scheduler.OAM_DMA, this);
+		this.initialize();
+	}
+
+	/**
+	 * Sets the DMA controller to its initial state
+	 */
+	public void initialize() {
+		if (active) {
+			lockBus(false);
+		}
+		source = 0;
+		active = false;
+		scheduler.cancel(Scheduler.OAM_DMA);
+	}
+
+	public void initLogging() {
+		logger.setParent(system.getLogger());
+	}
+
+	/**
+	 * Starts a transfer from the specified source page
+	 */
+	public void start(int page) {
+		if (active) {
+			lockBus(false);
+		}
+		source = page & 0xFF;
+
+		/* 0xE0 - 0xFF read the WRAM shadow */
+		int from = source >= 0xE0 ? source - 0x20 : source;
+		MemoryRegion oam = system.getGpu().getOam();
+		oam.unshare();
+		system.getMem().copyFromPage(from, oam.getContents(), oam.getOffset(), TRANSFER_LENGTH);
+		oam.markAllDirty();
+
+		active = true;
+		lockBus(true);
+		scheduler.schedule(Scheduler.OAM_DMA, scheduler.getCycles() + TRANSFER_CYCLES);
+		logger.fine("OAM DMA from page " + Integer.toHexString(source));
+	}
+
+	/**
+	 * Locks or unlocks OAM and the bus the transfer reads from: VRAM, or
+	 * everything else below 0xFE00
+	 */
+	private void lockBus(boolean locked) {
+		MMU mem = system.getMem();
+		int from = source >= 0xE0 ? source - 0x20 : source;
+		if (from >= 0x80 && from <= 0x9F) {
+			mem.setPagesLocked(0x80, 0x9F, locked);
+		} else {
+			mem.setPagesLocked(0x00, 0x7F, locked);
+			mem.setPagesLocked(0xA0, 0xFD, locked);
+		}
+		mem.setPagesLocked(OAM_PAGE, OAM_PAGE, locked);
+	}
+
+	@Override
+	public void onEvent(int event, long cycle) {
+		lockBus(false);
+		active = false;
+	}
+
+	/**
+	 * The page locks and the end of transfer event are restored with the MMU
+	 * and the scheduler
+	 */
+	@Override
+	public void saveState(ByteBuffer buffer) {
+		buffer.put((byte) source);
+		buffer.put((byte) (active ? 1 : 0));
+	}
+
+	@Override
+	public void loadState(ByteBuffer buffer) {
+		source = buffer.get() & 0xFF;
+		active = buffer.get() != 0;
+	}
+
+	/**
+	 * Makes the page locks match the transfer state, after the state has been
+	 * changed by something other than the transfer itself
+	 */
+	public void syncBusLocks() {
+		system.getMem().setPagesLocked(0x00, OAM_PAGE, false);
+		if (active) {
+			lockBus(true);
+		}
+	}
+
+	public boolean isActive() {
+		return active;
+	}
+
+	@Override
+	public byte readIo(char address) {
+		return (byte) source;
+	}
+
+	@Override
+	public void writeIo(char address, byte data) {
+		start(data);
+	}
+
+}
@@ -0,0 +1,140 @@
+/**
+ * EmulatorPool.java
+ * 
+ * @author anewkirk
+ * 
+ * Licensing information can be found in the root directory of the project.
+ */
+
+package com.echodrop.gameboy.core;
+
+import java.util.ArrayDeque;
+import java.util.logging.Logger;
+
+import com.echodrop.gameboy.exceptions.MapperNotImplementedException;
+import com.echodrop.gameboy.rom.RomImage;
+
+/**
+ * A pool of emulator instances that all run the same ROM. Instances are
+ * created with the ROM already loaded and are reset in place when they are
+ * returned, so running many short jobs does not reallocate an emulator (or
+ * reload the ROM) per run. All instances share the pool's ROM image.
+ * 
+ * Pooled instances do not use save files, so that every run starts from the
+ * same state. Unless a bootstrap is set, they skip the bootstrap and start at
+ * the cartridge's entry point.
+ */
+public class EmulatorPool {
+
+	private static final Logger logger = Logger.getLogger(EmulatorPool.class.getName());
+
+	private final RomImage image;
+	private final ArrayDeque<TailspinGB> idle = new ArrayDeque<TailspinGB>();
+	private byte[] bootstrap;
+	private boolean closed;
+
+	/**
+	 * @param image
+	 *            the ROM to run. The pool takes over the caller's reference
+	 *            and releases it when closed.
+	 */
+	public EmulatorPool(RomImage image) {
+		this.image = image;
+	}
+
+	/**
+	 * Sets the bootstrap loaded into instances created from now on
+	 */
+	public synchronized void setBootstrap(byte[] bootstrap) {
+		this.bootstrap = bootstrap;
+	}
+
+	/**
+	 * Creates instances ahead of time so that the next count calls to acquire()
+	 * do not have to
+	 */
+	public void prewarm(int count) throws MapperNotImplementedException {
+		for (int i = 0; i < count; i++) {
+			TailspinGB system = create();
+			synchronized (this) {
+				idle.push(system);
+			}
+		}
+	}
+
+	/**
+	 * @return an instance in its power-on state with the ROM loaded
+	 */
+	public TailspinGB acquire() throws MapperNotImplementedException {
+		synchronized (this) {
+			if (closed) {
+				throw new IllegalStateException("Emulator pool is closed");
+			}
+			if (!idle.isEmpty()) {
+				return idle.pop();
+			}
+		}
+		return create();
+	}
+
+	/**
+	 * Resets an instance obtained from acquire() and returns it to the pool
+	 */
+	public void release(TailspinGB system) {
+		system.reset();
+		synchronized (this) {
+			if (!closed) {
+				idle.push(system);
+				return;
+			}
+		}
+		system.shutdown();
+	}
+
+	private TailspinGB create() throws MapperNotImplementedException {
+		TailspinGB system = new TailspinGB();
+		synchronized (this) {
+			if (bootstrap != null) {
+				system.getMem().loadBootstrap(bootstrap);
+			} else {
+				system.setFastBoot(true);
+			}
+		}
+		system.getMem().setSaveFilesEnabled(false);
+		system.getMem().loadRom(image.retain());
+		if (system.isFastBoot()) {
+			system.skipBootstrap();
+		}
+		logger.fine("Created pooled emulator instance");
+		return system;
+	}
+
+	public synchronized int getIdleCount() {
+		return idle.size();
+	}
+
+	/**
+	 * Shuts down the idle instances and releases the pool's reference to the
+	 * ROM. Instances still in use are shut down when they are released.
+	 */
+	public void close() {
+		synchronized (this) {
+			if (closed) {
+				return;
+			}
+			closed = true;
+		}
+		while (true) {
+			TailspinGB system;
+			synchronized (this) {
+				system = idle.poll();
+			}
+			if (system == null) {
+				break;
+			}
+			system.shutdown();
+		}
+		image.release();
+	}
+
+}
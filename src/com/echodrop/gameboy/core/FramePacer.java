@@ -0,0 +1,141 @@
+/**
+ * FramePacer.java
+ *
+ * @author anewkirk
+ *
+ * Licensing information can be found in the root directory of the project.
+ */
+
+package com.echodrop.gameboy.core;
+
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Logger;
+
+/**
+ * Keeps emulation in step with the wall clock. The emulation loop runs a whole
+ * frame at a time (see CPU.runFrame()) and then calls endFrame(), which waits
+ * until that frame is due. Frames are due at 59.73 Hz times the speed, so a
+ * speed below 1 is slow motion and above 1 is fast-forward.
+ *
+ * Waiting sleeps until shortly before the deadline and spins the rest of the
+ * way, since a sleep can overshoot by a millisecond or more. Deadlines follow
+ * on from each other rather than from when the wait ended, so small errors do
+ * not add up. If emulation falls more than a few frames behind (the host is
+ * too slow, or the emulator was paused in a debugger) the schedule restarts
+ * from the current time instead of rushing to catch up.
+ */
+public class FramePacer {
+
+	private static final Logger logger = Logger.getLogger(FramePacer.class.getName());
+
+	public static final int CYCLES_PER_FRAME = 70224;
+	public static final int CLOCK_RATE = 4194304;
+
+	/**
+	 * About 59.73 frames per second
+	 */
+	public static final double FRAME_RATE = (double) CLOCK_RATE / CYCLES_PER_FRAME;
+
+	public static final double REAL_TIME = 1.0;
+	public static final double MIN_SPEED = 0.25;
+	public static final double UNLIMITED = Double.POSITIVE_INFINITY;
+
+	/**
+	 * Time before a deadline at which sleeping gives way to spinning
+	 */
+	private static final long SPIN_NANOS = 1000000;
+
+	/**
+	 * Frames behind schedule at which the schedule is restarted
+	 */
+	private static final int MAX_LAG_FRAMES = 4;
+
+	/**
+	 * Set by UI threads
+	 */
+	private volatile double speed = UNLIMITED;
+
+	/**
+	 * When the next frame is due, in System.nanoTime() terms
+	 */
+	private long deadline;
+	private boolean started;
+
+	/**
+	 * Whether the last frame finished after it was due
+	 */
+	private boolean behind;
+
+	/**
+	 * Starts a new schedule, with the next frame due one frame from now.
+	 * Called when emulation starts or resumes.
+	 */
+	public void start() {
+		deadline = System.nanoTime();
+		started = true;
+	}
+
+	/**
+	 * Called by the emulation loop after each frame. Waits until the frame is
+	 * due, or returns at once if the speed is unlimited.
+	 */
+	public void endFrame() {
+		double speed = this.speed;
+		if (speed == UNLIMITED) {
+			started = false;
+			behind = false;
+			return;
+		}
+		if (!started) {
+			start();
+		}
+
+		long period = (long) (1e9 / (FRAME_RATE * speed));
+		deadline += period;
+		long now = System.nanoTime();
+		behind = now - deadline > 0;
+		if (now - deadline > period * MAX_LAG_FRAMES) {
+			logger.fine("Frame pacing fell behind; restarting the schedule");
+			deadline = now;
+			return;
+		}
+
+		long remaining;
+		while ((remaining = deadline - System.nanoTime()) > SPIN_NANOS) {
+			LockSupport.parkNanos(remaining - SPIN_NANOS);
+		}
+		while (deadline - System.nanoTime() > 0) {
+			Thread.yield();
+		}
+	}
+
+	public double getSpeed() {
+		return speed;
+	}
+
+	/**
+	 * Sets the speed as a multiple of real time, from MIN_SPEED up, or
+	 * UNLIMITED to run as fast as the host allows. May be called from any
+	 * thread; takes effect from the next frame.
+	 */
+	public void setSpeed(double speed) {
+		if (!(speed >= MIN_SPEED)) {
+			throw new IllegalArgumentException("Speed must be at least " + MIN_SPEED);
+		}
+		this.speed = speed;
+		logger.info("Speed set to " + (speed == UNLIMITED ? "unlimited" : speed + "x"));
+	}
+
+	/**
+	 * @return true if the last frame was finished after it was due, i.e. the
+	 *         host is not keeping up with the speed
+	 */
+	public boolean isBehind() {
+		return behind;
+	}
+
+	public boolean isUnlimited() {
+		return speed == UNLIMITED;
+	}
+
+}
@@ -0,0 +1,204 @@
+/**
+ * InterruptController.java
+ * 
+ * @author anewkirk
+ * 
+ * Licensing information can be found in the root directory of the project.
+ */
+
+package com.echodrop.gameboy.core;
+
+import java.nio.ByteBuffer;
+import java.util.logging.Logger;
+
+import com.echodrop.gameboy.interfaces.IIoDevice;
+import com.echodrop.gameboy.interfaces.IStateful;
+
+/**
+ * Emulation of the interrupt enable (IE, 0xFFFF) and interrupt flag (IF,
+ * 0xFF0F) registers, and the CPU's interrupt master enable (IME).
+ * 
+ * Rather than having the CPU combine IE, IF and IME before every instruction,
+ * the controller keeps the combined result in a single field that is
+ * recomputed whenever any of them changes. A pending EI is folded into the
+ * same field, so the CPU only has to test one value per instruction.
+ */
+public class InterruptController implements IIoDevice, IStateful {
+
+	private static final Logger logger = Logger.getLogger(InterruptController.class.getName());
+
+	/* Interrupt sources, in order of priority */
+	public static final int VBLANK = 0x01;
+	public static final int STAT = 0x02;
+	public static final int TIMER = 0x04;
+	public static final int SERIAL = 0x08;
+	public static final int JOYPAD = 0x10;
+
+	public static final char IF_ADDRESS = 0xFF0F;
+	public static final char IE_ADDRESS = 0xFFFF;
+
+	/**
+	 * Set in pending while an EI instruction is waiting to take effect
+	 */
+	static final int EI_DELAY = 0x100;
+
+	private TailspinGB system;
+
+	/* IE */
+	private byte enabled;
+
+	/* IF */
+	private int requested;
+
+	/* IME */
+	private boolean masterEnabled;
+
+	/**
+	 * Number of instruction boundaries left before a pending EI sets IME
+	 */
+	private int enableDelay;
+
+	/**
+	 * IE & IF when IME is set, plus EI_DELAY while an EI is pending. Nonzero
+	 * means the CPU has work to do before its next instruction.
+	 */
+	int pending;
+
+	public InterruptController(TailspinGB system) {
+		this.system = system;
+		this.initialize();
+	}
+
+	/**
+	 * Sets the interrupt controller to its initial state
+	 */
+	public void initialize() {
+		enabled = 0;
+		requested = 0;
+		masterEnabled = false;
+		enableDelay = 0;
+		update();
+	}
+
+	public void initLogging() {
+		logger.setParent(system.getLogger());
+	}
+
+	/**
+	 * Raises one or more interrupt request lines
+	 */
+	public void request(int interrupts) {
+		requested |= interrupts & 0x1F;
+		update();
+	}
+
+	/**
+	 * Called by the CPU when pending is nonzero. Advances a delayed EI and, if
+	 * an interrupt is ready to be serviced, acknowledges it.
+	 * 
+	 * @return the address of the interrupt vector to jump to, or -1 if no
+	 *         interrupt should be dispatched before the next instruction
+	 */
+	int acknowledge() {
+		if (enableDelay > 0) {
+			enableDelay--;
+			if (enableDelay > 0) {
+				update();
+				return -1;
+			}
+			masterEnabled = true;
+			update();
+		}
+
+		int ready = pending & 0x1F;
+		if (ready == 0) {
+			return -1;
+		}
+
+		int source = Integer.numberOfTrailingZeros(ready);
+		requested &= ~(1 << source);
+		masterEnabled = false;
+		update();
+		logger.fine("Dispatching interrupt " + source);
+		return 0x40 + source * 8;
+	}
+
+	/**
+	 * EI: IME is set after the instruction following EI has executed
+	 */
+	void enableAfterNextInstruction() {
+		if (!masterEnabled) {
+			enableDelay = 2;
+			update();
+		}
+	}
+
+	/**
+	 * @return true if any enabled interrupt is requested, regardless of IME.
+	 *         This is the condition that wakes the CPU from HALT.
+	 */
+	public boolean isRequested() {
+		return (enabled & requested & 0x1F) != 0;
+	}
+
+	public boolean isMasterEnabled() {
+		return masterEnabled;
+	}
+
+	/**
+	 * Sets IME immediately (DI, RETI), cancelling any pending EI
+	 */
+	public void setMasterEnabled(boolean masterEnabled) {
+		this.masterEnabled = masterEnabled;
+		this.enableDelay = 0;
+		update();
+	}
+
+	public byte getEnabled() {
+		return enabled;
+	}
+
+	public byte getRequested() {
+		return (byte) (0xE0 | requested);
+	}
+
+	@Override
+	public void saveState(ByteBuffer buffer) {
+		buffer.put(enabled);
+		buffer.put((byte) requested);
+		buffer.put((byte) (masterEnabled ? 1 : 0));
+		buffer.put((byte) enableDelay);
+	}
+
+	@Override
+	public void loadState(ByteBuffer buffer) {
+		enabled = buffer.get();
+		requested = buffer.get() & 0x1F;
+		masterEnabled = buffer.get() != 0;
+		enableDelay = buffer.get();
+		update();
+	}
+
+	private void update() {
+		pending = (masterEnabled ? enabled & requested & 0x1F : 0) | (enableDelay > 0 ? EI_DELAY : 0);
+	}
+
+	@Override
+	public byte readIo(char address) {
+		if (address == IE_ADDRESS) {
+			return getEnabled();
+		}
+		return getRequested();
+	}
+
+	@Override
+	public void writeIo(char address, byte data) {
+		if (address == IE_ADDRESS) {
+			enabled = data;
+		} else {
+			requested = data & 0x1F;
+		}
+		update();
+	}
+
+}
@@ -0,0 +1,226 @@
+/**
+ * Joypad.java
+ *
+ * @author anewkirk
+ *
+ * Licensing information can be found in the root directory of the project.
+ */
+
+package com.echodrop.gameboy.core;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+import com.echodrop.gameboy.interfaces.IIoDevice;
+import com.echodrop.gameboy.interfaces.IScheduledEvent;
+import com.echodrop.gameboy.interfaces.IStateful;
+
+/**
+ * Emulation of the joypad register (P1, 0xFF00). The game selects the
+ * direction keys and/or the buttons with bits 4 and 5, and reads the selected
+ * keys in the low nibble; a pressed key reads as 0.
+ *
+ * The keys held on the host live in a single atomic field, written by UI
+ * threads with press(), release() or setInput() and read by the emulation
+ * thread without locking. Normally the game sees them as soon as they change,
+ * since every read of P1 samples the field. When the joypad is latched, it
+ * only sees the keys passed to setButtons(), which is how input is tied to
+ * frame boundaries for recording and replaying movies.
+ *
+ * The joypad interrupt is raised when a selected key goes from released to
+ * pressed. Key changes arrive from another thread rather than from the
+ * emulated clock, so the joypad polls for them once a scanline through the
+ * scheduler, which also wakes a halted or stopped CPU waiting for a key.
+ */
+public class Joypad implements IIoDevice, IScheduledEvent, IStateful {
+
+	private static final Logger logger = Logger.getLogger(Joypad.class.getName());
+
+	public static final char P1_ADDRESS = 0xFF00;
+
+	/* Key bits, as used by setInput() and setButtons() */
+	public static final int RIGHT = 0x01;
+	public static final int LEFT = 0x02;
+	public static final int UP = 0x04;
+	public static final int DOWN = 0x08;
+	public static final int A = 0x10;
+	public static final int B = 0x20;
+	public static final int SELECT = 0x40;
+	public static final int START = 0x80;
+
+	/**
+	 * Clock cycles between polls for new key presses (one scanline)
+	 */
+	public static final int POLL_CYCLES = 456;
+
+	private TailspinGB system;
+	private Scheduler scheduler;
+
+	/**
+	 * Bits 4 and 5 of P1, as last written
+	 */
+	private int select;
+
+	/**
+	 * Keys held on the host. Written by UI threads.
+	 */
+	private final AtomicInteger input = new AtomicInteger();
+
+	/**
+	 * Keys visible to the game at the last poll
+	 */
+	private int polled;
+
+	/**
+	 * Keys seen by the game while latched
+	 */
+	private int buttons;
+	private boolean latched;
+
+	public Joypad(TailspinGB system) {
+		this.system = system;
+		this.scheduler = system.getScheduler();
+		scheduler.setHandler(Scheduler.JOYPAD_POLL, this);
+		this.initialize();
+	}
+
+	/**
+	 * Sets the joypad to its initial state. Host input and the latched mode
+	 * are kept.
+	 */
+	public void initialize() {
+		select = 0x30;
+		buttons = 0;
+		polled = getButtons();
+		scheduler.schedule(Scheduler.JOYPAD_POLL, scheduler.getCycles() + POLL_CYCLES);
+	}
+
+	public void initLogging() {
+		logger.setParent(system.getLogger());
+	}
+
+	/**
+	 * @return the keys currently visible to the game
+	 */
+	public int getButtons() {
+		return latched ? buttons : input.get();
+	}
+
+	/**
+	 * Sets the keys visible to the game while latched
+	 */
+	public void setButtons(int buttons) {
+		this.buttons = buttons & 0xFF;
+	}
+
+	public int getInput() {
+		return input.get();
+	}
+
+	/**
+	 * Sets the keys held on the host. May be called from any thread.
+	 */
+	public void setInput(int input) {
+		this.input.set(input & 0xFF);
+	}
+
+	/**
+	 * Adds keys to those held on the host. May be called from any thread.
+	 */
+	public void press(int keys) {
+		int held;
+		do {
+			held = input.get();
+		} while (!input.compareAndSet(held, held | (keys & 0xFF)));
+	}
+
+	/**
+	 * Removes keys from those held on the host. May be called from any
+	 * thread.
+	 */
+	public void release(int keys) {
+		int held;
+		do {
+			held = input.get();
+		} while (!input.compareAndSet(held, held & ~keys));
+	}
+
+	/**
+	 * Makes the keys held on the host visible to the game, while latched
+	 */
+	public void latch() {
+		buttons = input.get();
+	}
+
+	public boolean isLatched() {
+		return latched;
+	}
+
+	/**
+	 * Selects whether the game sees host input as it changes, or only the
+	 * keys set by setButtons() or latch()
+	 */
+	public void setLatched(boolean latched) {
+		this.latched = latched;
+	}
+
+	@Override
+	public byte readIo(char address) {
+		int held = getButtons();
+		int keys = 0;
+		if ((select & 0x10) == 0) {
+			keys |= held & 0x0F;
+		}
+		if ((select & 0x20) == 0) {
+			keys |= held >> 4;
+		}
+		return (byte) (0xC0 | select | (~keys & 0x0F));
+	}
+
+	@Override
+	public void writeIo(char address, byte data) {
+		select = data & 0x30;
+	}
+
+	/**
+	 * Raises the joypad interrupt if a selected key has been pressed since
+	 * the last poll, and schedules the next poll
+	 */
+	@Override
+	public void onEvent(int event, long cycle) {
+		int held = getButtons();
+		int pressed = held & ~polled;
+		polled = held;
+		int lines = 0;
+		if ((select & 0x10) == 0) {
+			lines |= pressed & 0x0F;
+		}
+		if ((select & 0x20) == 0) {
+			lines |= pressed >> 4;
+		}
+		if (lines != 0) {
+			system.getInterrupts().request(InterruptController.JOYPAD);
+		}
+		scheduler.schedule(Scheduler.JOYPAD_POLL, cycle + POLL_CYCLES);
+	}
+
+	/**
+	 * Saves the selection and the keys seen by the game; host input is not
+	 * part of the machine state. The poll is restored with the scheduler.
+	 */
+	@Override
+	public void saveState(ByteBuffer buffer) {
+		buffer.put((byte) select);
+		buffer.put((byte) buttons);
+		buffer.put((byte) polled);
+	}
+
+	@Override
+	public void loadState(ByteBuffer buffer) {
+		select = buffer.get() & 0x30;
+		buttons = buffer.get() & 0xFF;
+		polled = buffer.get() & 0xFF;
+	}
+
+}
@@ -8,19 +8,29 @@
 
 package com.echodrop.gameboy.core;
 
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
 import java.util.logging.Logger;
 
 import com.echodrop.gameboy.exceptions.MapperNotImplementedException;
 import com.echodrop.gameboy.exceptions.MemoryAccessException;
 import com.echodrop.gameboy.exceptions.RomFileSizeException;
+import com.echodrop.gameboy.interfaces.IIoDevice;
+import com.echodrop.gameboy.interfaces.IMemoryTrap;
+import com.echodrop.gameboy.interfaces.IMemoryWatch;
+import com.echodrop.gameboy.interfaces.IStateful;
+import com.echodrop.gameboy.rom.BatteryRam;
 import com.echodrop.gameboy.rom.RomFile;
+import com.echodrop.gameboy.rom.RomImage;
 import com.echodrop.gameboy.util.NumberUtils;
 
 /**
  * Emulation core for GameBoy Memory Management Unit.
  * 
  */
-public class MMU {
+public class MMU implements IStateful {
 
 	private static final Logger logger = Logger.getLogger(MMU.class.getName());
 	private TailspinGB system;
@@ -39,28 +49,438 @@ public class MMU {
 	private MemoryRegion externalRam;
 	private MemoryRegion zeroPage;
 	private RomFile loadedRomFile;
+	private long saveFlushInterval = BatteryRam.DEFAULT_FLUSH_INTERVAL;
+	private boolean saveFilesEnabled = true;
 
-	public MMU(TailspinGB system) {
-		this.system = system;
-		this.initialize();
-	}
+	/**
+	 * Whether cartridge clocks follow host time rather than emulated time
+	 */
+	private boolean realTimeClock;
 
 	/**
-	 * Sets MMU to initial state
+	 * Devices handling the I/O registers at 0xFF00 - 0xFFFF, indexed by the
+	 * low byte of the address. Registrations survive initialize().
 	 */
-	public void initialize() {
+	private IIoDevice[] ioDevices = new IIoDevice[0x100];
+
+	/*
+	 * Page table. The address space is split into 256 byte pages; each page
+	 * that is backed by plain memory points straight at the backing array of
+	 * its MemoryRegion, so most reads and writes are a single array access.
+	 * Pages that are null (I/O, OAM, ROM for writes, locked pages) fall back
+	 * to the slower address decoding below.
+	 */
+	public static final int PAGE_SIZE = 0x100;
+	public static final int PAGE_COUNT = 0x100;
+
+	/**
+	 * Index into the page's backing array of the first byte of each page,
+	 * less the offset of the 16KB window the page is in
+	 */
+	private int[] pageOffsets = new int[PAGE_COUNT];
+
+	/**
+	 * Offset added to the pages of each 16KB window when they are read. It is
+	 * the start of the mapped bank for the two ROM windows, so that switching
+	 * banks moves the whole window at once, and 0 for the others, which
+	 * contain every writable page.
+	 */
+	private int[] windowOffsets = new int[4];
+
+	/* The memory map: the region each page is mapped onto, and whether the CPU can write it */
+	private MemoryRegion[] pageRegions = new MemoryRegion[PAGE_COUNT];
+	private boolean[] writablePages = new boolean[PAGE_COUNT];
+
+	/*
+	 * Pages as mapped by the memory map. Writable pages of a region that is
+	 * shared with a fork are left out of mappedWritePages until the first
+	 * write gives the region its own copy.
+	 */
+	private byte[][] mappedReadPages = new byte[PAGE_COUNT][];
+	private byte[][] mappedWritePages = new byte[PAGE_COUNT][];
+
+	/* Pages as seen by readByte/writeByte, i.e. less any locked pages */
+	private byte[][] readPages = new byte[PAGE_COUNT][];
+	private byte[][] writePages = new byte[PAGE_COUNT][];
+
+	/**
+	 * Pages that the CPU cannot currently access (e.g. during OAM DMA).
+	 * Reads return 0xFF and writes are ignored.
+	 */
+	private boolean[] lockedPages = new boolean[PAGE_COUNT];
+
+	/**
+	 * Pages written through the page table since they were last passed on to
+	 * the memory they are mapped onto by flushDirtyPages()
+	 */
+	private boolean[] dirtyPages = new boolean[PAGE_COUNT];
+
+	/**
+	 * If set, every write goes through the slow path and is reported here
+	 * first
+	 */
+	private IMemoryTrap writeTrap;
+
+	/**
+	 * Told about reads and writes to the watched pages, which are left out of
+	 * readPages or writePages. Watched pages survive initialize().
+	 */
+	private IMemoryWatch memoryWatch;
+	private boolean[] readWatchedPages = new boolean[PAGE_COUNT];
+	private boolean[] writeWatchedPages = new boolean[PAGE_COUNT];
+
+	public MMU(TailspinGB system) {
+		this.system = system;
 		setBios(new MemoryRegion((char) 0x0000, (char) 0x00ff, "bios"));
 		setRomBank0(new MemoryRegion((char) 0x0000, (char) 0x3fff, "romBank0"));
 		setRomBank(new MemoryRegion((char) 0x4000, (char) 0x7FFF, "romBank"));
 		setWorkingRam(new MemoryRegion((char) 0xc000, (char) 0xdfff, "workingRam"));
 		setZeroPage(new MemoryRegion((char) 0xff80, (char) 0xffff, "zeroPage"));
 		setExternalRam(new MemoryRegion((char) 0xa000, (char) 0xbfff, "externalRam"));
+		this.initialize();
+	}
+
+	/**
+	 * Creates the memory of a fork of original's system. Its regions share
+	 * original's memory copy-on-write instead of allocating their own; the
+	 * page table is built once the rest of the fork exists.
+	 */
+	MMU(TailspinGB system, MMU original) {
+		this.system = system;
+		setBios(original.getBios().share());
+		setRomBank0(original.getRomBank0().share());
+		setRomBank(original.getRomBank().share());
+		setWorkingRam(original.getWorkingRam().share());
+		setZeroPage(original.getZeroPage().share());
+		setExternalRam(original.getExternalRam().share());
+		this.biosMapped = original.biosMapped;
+		this.realTimeClock = original.realTimeClock;
+		this.saveFilesEnabled = false;
+	}
+
+	/**
+	 * Sets MMU to initial state. Memory is cleared in place; the bootstrap and
+	 * the loaded cartridge are kept, and the cartridge is returned to its
+	 * power-on state.
+	 */
+	public void initialize() {
+		getRomBank0().clear();
+		getRomBank().clear();
+		getWorkingRam().clear();
+		getZeroPage().clear();
+		getExternalRam().clear();
+		biosMapped = true;
+		Arrays.fill(lockedPages, false);
+		mapMemory();
+		if (loadedRomFile != null) {
+			loadedRomFile.attach(this);
+		}
+	}
+
+	/**
+	 * Rebuilds the page table from the current memory regions
+	 */
+	public void mapMemory() {
+		for (int i = 0; i < PAGE_COUNT; i++) {
+			mapPage(i, null, 0, false);
+		}
+		mapPage(0x00, biosMapped ? getBios() : getRomBank0(), 0x0000, false);
+		mapRegion(getRomBank0(), 0x0100, 0x3FFF, false);
+		mapRegion(getRomBank(), 0x4000, 0x7FFF, false);
+		if (system.getGpu() != null) {
+			mapRegion(system.getGpu().getVram(), 0x8000, 0x9FFF, true);
+		}
+		mapRegion(getExternalRam(), 0xA000, 0xBFFF, true);
+		mapRegion(getWorkingRam(), 0xC000, 0xDFFF, true);
+
+		// WRAM shadow
+		for (int page = 0xE0; page <= 0xFD; page++) {
+			mapPage(page, getWorkingRam(), (page << 8) - 0x2000, true);
+		}
+
+		if (loadedRomFile != null) {
+			loadedRomFile.remap();
+		}
+	}
+
+	/**
+	 * Maps 16KB of a cartridge ROM, starting at offset, into 0x0000 - 0x3FFF
+	 * or 0x4000 - 0x7FFF. Called by the cartridge's memory bank controller.
+	 */
+	public void mapRomBank(char start, byte[] rom, int offset) {
+		MemoryRegion r = start == 0 ? getRomBank0() : getRomBank();
+		int window = start >> 14;
+		if (r.getContents() == rom && pageRegions[(start >> 8) + 0x3F] == r) {
+			/* another bank of the same ROM: only the window moves */
+			int shift = offset - r.getOffset();
+			r.setContents(rom, offset);
+			windowOffsets[window] += shift;
+			if (pageRegions[start >> 8] != r) {
+				/* the bootstrap stays where it is */
+				pageOffsets[start >> 8] -= shift;
+			}
+			return;
+		}
+		r.setContents(rom, offset);
+		mapRegion(r, start, start + 0x3FFF, false);
+		if (start == 0 && biosMapped) {
+			mapPage(0x00, getBios(), 0x0000, false);
+		}
+	}
+
+	/**
+	 * Maps 8KB of cartridge RAM, starting at offset, into 0xA000 - 0xBFFF. If
+	 * ram is null, reads and writes there are passed to the cartridge instead;
+	 * if it is not writable, only writes are.
+	 */
+	public void mapRamBank(byte[] ram, int offset, boolean writable) {
+		if (ram == null) {
+			for (int page = 0xA0; page <= 0xBF; page++) {
+				mapPage(page, null, 0, false);
+			}
+		} else {
+			getExternalRam().setContents(ram, offset);
+			mapRegion(getExternalRam(), 0xA000, 0xBFFF, writable);
+		}
+	}
+
+	/**
+	 * Maps the pages from start to end (inclusive) onto the region's memory at
+	 * the same addresses
+	 */
+	private void mapRegion(MemoryRegion r, int start, int end, boolean writable) {
+		for (int page = start >> 8; page <= end >> 8; page++) {
+			mapPage(page, r, page << 8, writable);
+		}
+	}
+
+	/**
+	 * Maps a page onto region's memory, starting at the specified address
+	 * within the region
+	 */
+	private void mapPage(int page, MemoryRegion r, int address, boolean writable) {
+		if (dirtyPages[page]) {
+			flushDirtyPage(page);
+		}
+		pageRegions[page] = r;
+		writablePages[page] = r != null && writable;
+		if (r != null) {
+			pageOffsets[page] = r.getOffset() + address - r.getStart() - windowOffsets[page >> 6];
+		}
+		updateMapping(page);
+	}
+
+	/**
+	 * Points a page at the current backing array of the region it is mapped
+	 * onto
+	 */
+	private void updateMapping(int page) {
+		MemoryRegion r = pageRegions[page];
+		if (r == null) {
+			mappedReadPages[page] = null;
+			mappedWritePages[page] = null;
+		} else {
+			mappedReadPages[page] = r.getContents();
+			mappedWritePages[page] = writablePages[page] && !r.isShared() ? r.getContents() : null;
+		}
+		refreshPage(page);
+	}
+
+	/**
+	 * Points every page at the current backing arrays of the mapped regions,
+	 * without changing what is mapped where. Needed after regions start or
+	 * stop sharing memory with a fork.
+	 */
+	public void refreshMappings() {
+		for (int page = 0; page < PAGE_COUNT; page++) {
+			updateMapping(page);
+		}
+	}
+
+	/**
+	 * Passes on the dirty flags of pages written through the page table to
+	 * the regions and cartridge RAM they are mapped onto, where StateHash
+	 * reads them. Pages are also flushed before they are remapped, so that
+	 * writes to a RAM bank are credited to that bank.
+	 */
+	public void flushDirtyPages() {
+		for (int page = 0; page < PAGE_COUNT; page++) {
+			if (dirtyPages[page]) {
+				flushDirtyPage(page);
+			}
+		}
+	}
+
+	private void flushDirtyPage(int page) {
+		dirtyPages[page] = false;
+		MemoryRegion r = pageRegions[page];
+		if (r == null) {
+			return;
+		}
+		if (loadedRomFile != null && r.getContents() == loadedRomFile.ram) {
+			loadedRomFile.markRamDirty(pageOffsets[page]);
+		} else {
+			r.markDirty(pageOffsets[page] - r.getOffset());
+		}
+	}
+
+	/**
+	 * Gives a region shared with a fork its own copy of its memory, and
+	 * remaps the pages mapped onto it
+	 */
+	private void unshare(MemoryRegion r) {
+		r.unshare();
+		for (int page = 0; page < PAGE_COUNT; page++) {
+			if (pageRegions[page] == r) {
+				updateMapping(page);
+			}
+		}
+	}
+
+	private void refreshPage(int page) {
+		readPages[page] = lockedPages[page] || readWatchedPages[page] ? null : mappedReadPages[page];
+		writePages[page] = lockedPages[page] || writeTrap != null || writeWatchedPages[page] ? null
+				: mappedWritePages[page];
+	}
+
+	/**
+	 * Locks or unlocks CPU access to a range of pages
+	 */
+	public void setPagesLocked(int firstPage, int lastPage, boolean locked) {
+		for (int page = firstPage; page <= lastPage; page++) {
+			lockedPages[page] = locked;
+			refreshPage(page);
+		}
+	}
+
+	/**
+	 * @return true if the CPU cannot currently access address
+	 */
+	public boolean isLocked(char address) {
+		return lockedPages[address >> 8];
+	}
+
+	/**
+	 * Sets the trap that is told about every write, or removes it if trap is
+	 * null
+	 */
+	public void setWriteTrap(IMemoryTrap trap) {
+		this.writeTrap = trap;
+		for (int page = 0; page < PAGE_COUNT; page++) {
+			refreshPage(page);
+		}
+	}
+
+	/**
+	 * Sets the watch told about accesses to watched pages, or removes it if
+	 * watch is null. Removing it also stops watching every page.
+	 */
+	public void setMemoryWatch(IMemoryWatch watch) {
+		this.memoryWatch = watch;
+		if (watch == null) {
+			clearWatchedPages();
+		}
+	}
+
+	public IMemoryWatch getMemoryWatch() {
+		return memoryWatch;
+	}
+
+	/**
+	 * Sends reads and/or writes to a range of pages through the slow path,
+	 * where the memory watch is told about them
+	 */
+	public void watchPages(int firstPage, int lastPage, boolean reads, boolean writes) {
+		for (int page = firstPage; page <= lastPage; page++) {
+			readWatchedPages[page] |= reads;
+			writeWatchedPages[page] |= writes;
+			refreshPage(page);
+		}
+	}
+
+	/**
+	 * Returns every watched page to the fast path
+	 */
+	public void clearWatchedPages() {
+		Arrays.fill(readWatchedPages, false);
+		Arrays.fill(writeWatchedPages, false);
+		for (int page = 0; page < PAGE_COUNT; page++) {
+			refreshPage(page);
+		}
+	}
+
+	public IMemoryTrap getWriteTrap() {
+		return writeTrap;
+	}
+
+	/**
+	 * Copies memory starting at the beginning of a page into dest, bypassing
+	 * any page locks. Plain memory is copied directly from its backing array.
+	 */
+	public void copyFromPage(int page, byte[] dest, int destOffset, int length) {
+		byte[] contents = mappedReadPages[page];
+		if (contents != null) {
+			System.arraycopy(contents, pageOffsets[page] + windowOffsets[page >> 6], dest, destOffset, length);
+		} else {
+			for (int i = 0; i < length; i++) {
+				dest[destOffset + i] = readByte((char) ((page << 8) + i));
+			}
+		}
+	}
+
+	/**
+	 * Saves RAM, the page locks and the cartridge. The layout depends on
+	 * whether a cartridge is loaded, so a state must be restored with the
+	 * same cartridge it was saved with.
+	 */
+	@Override
+	public void saveState(ByteBuffer buffer) {
+		buffer.put((byte) (biosMapped ? 1 : 0));
+		for (boolean locked : lockedPages) {
+			buffer.put((byte) (locked ? 1 : 0));
+		}
+		getWorkingRam().saveState(buffer);
+		getZeroPage().saveState(buffer);
+		if (loadedRomFile != null) {
+			loadedRomFile.saveState(buffer);
+		} else {
+			getExternalRam().saveState(buffer);
+		}
+	}
+
+	@Override
+	public void loadState(ByteBuffer buffer) {
+		biosMapped = buffer.get() != 0;
+		for (int i = 0; i < PAGE_COUNT; i++) {
+			lockedPages[i] = buffer.get() != 0;
+		}
+		getWorkingRam().loadState(buffer);
+		getZeroPage().loadState(buffer);
+		if (loadedRomFile == null) {
+			getExternalRam().loadState(buffer);
+		}
+
+		/* the cartridge maps its banks again once its registers are restored */
+		mapMemory();
+		if (loadedRomFile != null) {
+			loadedRomFile.loadState(buffer);
+		}
 	}
 
 	public void initLogging() {
 		logger.setParent(system.getLogger());
 	}
 
+	/**
+	 * Routes reads and writes of an I/O register to device
+	 */
+	public void registerIoDevice(char address, IIoDevice device) {
+		if (address < 0xFF00) {
+			throw new MemoryAccessException(address);
+		}
+		ioDevices[address & 0xFF] = device;
+	}
+
 	/**
 	 * Loads the DMG bootstrap into memory
 	 */
@@ -72,45 +492,121 @@ public class MMU {
 			getBios().setMem((char) i, (byte) (gbBios[i] & 0xFF));
 		}
 		biosMapped = true;
+		mapPage(0x00, getBios(), 0x0000, false);
 		logger.info("Bootstrap loaded: " + gbBios.length + " bytes");
 	}
 
 	/**
-	 * Loads a ROM binary with the specified filename into memory
+	 * Loads a ROM binary into memory
 	 * 
 	 * @throws MapperNotImplementedException
 	 *             if the ROM uses an unsupported MBC
 	 */
 	public void loadRom(byte[] romData) throws MapperNotImplementedException {
+		loadRom(RomImage.wrap(romData));
+	}
 
-		RomFile rf = new RomFile(romData);
+	/**
+	 * Loads a shared ROM image into memory. The MMU takes over the caller's
+	 * reference to the image and releases it when the ROM is unloaded.
+	 * 
+	 * @throws MapperNotImplementedException
+	 *             if the ROM uses an unsupported MBC
+	 */
+	public void loadRom(RomImage image) throws MapperNotImplementedException {
+
+		RomFile rf;
+		try {
+			rf = RomFile.create(image);
+		} catch (MapperNotImplementedException e) {
+			image.release();
+			throw e;
+		}
+		unloadRom();
 		loadedRomFile = rf;
 		logger.info("Attempting to load ROM...");
 		logger.info(rf.toString());
 
-		// Load first 16kb regardless of what type of cartridge it is
-		for (int i = 0; i < 0x4000; i++) {
-			getRomBank0().setMem((char) i, (byte) (romData[i] & 0xFF));
+		rf.setRealTimeClock(realTimeClock);
+		if (saveFilesEnabled && rf.hasBattery() && image.getPath() != null) {
+			File saveFile = BatteryRam.saveFileFor(image.getPath());
+			try {
+				rf.openSaveFile(saveFile, saveFlushInterval);
+			} catch (IOException e) {
+				logger.warning("Unable to open save file " + saveFile + ": " + e.getMessage());
+			}
 		}
 
-		// Switch on cartridge type to load the rest; for now only need to
-		// support
-		// ctype 0 and MBC1
-		switch (loadedRomFile.cartridgeType) {
-		case 0:
-			// No MBC (32kb ROM)
-			for (int i = 0x4000; i < 0x8000; i++) {
-				getRomBank().setMem((char) i, (byte) (romData[i] & 0xFF));
-			}
-			break;
-		case 1:
-			// MBC1
-			break;
-		default:
-			throw new MapperNotImplementedException();
+		/* The ROM is mapped in place; banks are switched through the page table */
+		rf.attach(this);
+
+		logger.info("ROM data loaded: " + image.getData().length + " bytes");
+	}
+
+	/**
+	 * Removes the cartridge, releasing its ROM image
+	 */
+	public void unloadRom() {
+		if (loadedRomFile == null) {
+			return;
+		}
+		loadedRomFile.closeSaveFile();
+		loadedRomFile.getImage().release();
+		loadedRomFile = null;
+		getRomBank0().clear();
+		getRomBank().clear();
+		getExternalRam().clear();
+		mapMemory();
+	}
+
+	/**
+	 * @return milliseconds between background writes of battery backed RAM
+	 */
+	public long getSaveFlushInterval() {
+		return saveFlushInterval;
+	}
+
+	/**
+	 * Sets the interval for save files opened by subsequent ROM loads
+	 */
+	public void setSaveFlushInterval(long saveFlushInterval) {
+		this.saveFlushInterval = saveFlushInterval;
+	}
+
+	public boolean isSaveFilesEnabled() {
+		return saveFilesEnabled;
+	}
+
+	/**
+	 * Sets whether subsequent ROM loads read and write the cartridge's save
+	 * file. Instances that run the same ROM side by side should not share one.
+	 */
+	public void setSaveFilesEnabled(boolean saveFilesEnabled) {
+		this.saveFilesEnabled = saveFilesEnabled;
+	}
+
+	public boolean isRealTimeClock() {
+		return realTimeClock;
+	}
+
+	/**
+	 * Selects whether cartridge clocks follow host time (real time mode) or
+	 * emulated time. Emulated time is the default, so that runs are
+	 * reproducible.
+	 */
+	public void setRealTimeClock(boolean realTimeClock) {
+		this.realTimeClock = realTimeClock;
+		if (loadedRomFile != null) {
+			loadedRomFile.setRealTimeClock(realTimeClock);
 		}
+	}
 
-		logger.info("ROM data loaded: " + romData.length + " bytes");
+	public TailspinGB getSystem() {
+		return system;
+	}
+
+	public RomFile getLoadedRomFile() {
+		return loadedRomFile;
 	}
 
 	/**
@@ -199,11 +695,33 @@ public class MMU {
 	 * @return an 8-bit value from the address specified.
 	 */
 	public byte readByte(char address) {
+		int page = address >> 8;
+		byte[] contents = readPages[page];
+		if (contents != null) {
+			return contents[pageOffsets[page] + windowOffsets[page >> 6] + (address & 0xFF)];
+		}
+		byte value = peekByte(address);
+		if (readWatchedPages[page] && memoryWatch != null) {
+			memoryWatch.afterRead(address, value);
+		}
+		return value;
+	}
+
+	/**
+	 * Reads an 8-bit value like readByte, but without telling the memory
+	 * watch. Used by the debugger to look at memory.
+	 */
+	public byte peekByte(char address) {
+		int page = address >> 8;
+		if (lockedPages[page]) {
+			return (byte) 0xFF;
+		}
+		byte[] contents = mappedReadPages[page];
+		if (contents != null) {
+			return contents[pageOffsets[page] + windowOffsets[page >> 6] + (address & 0xFF)];
+		}
 
 		switch (address) {
-		case 0xFF00:
-			// D-pad
-			return 0;
 		case 0xFF01:
 			// Link cable: data
 			return 0;
@@ -211,8 +729,13 @@ public class MMU {
 			// Link cable: serial transfer control
 			return (byte) 0x81; // 0b10000001, "START TRANSFER"
 		default:
-			if (address >= 0xFF33 && address <= 0xFF7F) {
+			if (address >= 0xFF00 && ioDevices[address & 0xFF] != null) {
+				return ioDevices[address & 0xFF].readIo(address);
+			} else if (address >= 0xFF33 && address <= 0xFF7F) {
 				return system.getGpu().readByte(address);
+			} else if (address >= 0xA000 && address <= 0xBFFF) {
+				/* external RAM that is disabled, or not plain memory */
+				return loadedRomFile != null ? loadedRomFile.readRam(address) : (byte) 0xFF;
 			} else if (address >= 0xE000 && address <= 0xFDFF) {
 				address -= 0x2000;
 			}
@@ -262,15 +785,79 @@ public class MMU {
 		return NumberUtils.bytesToWord(b1, b2);
 	}
 
+	/**
+	 * Replaces the bootstrap with the first page of the cartridge, as the
+	 * bootstrap does by writing to 0xFF50 when it finishes
+	 */
+	public void unmapBios() {
+		setBiosMapped(false);
+		logger.info("[!] BIOS unmapped from memory");
+	}
+
+	/**
+	 * Maps the bootstrap or the cartridge into 0x0000 - 0x00FF
+	 */
+	public void setBiosMapped(boolean biosMapped) {
+		this.biosMapped = biosMapped;
+		mapPage(0x00, biosMapped ? getBios() : getRomBank0(), 0x0000, false);
+	}
+
 	/**
 	 * Writes an 8-bit value into the address specified.
 	 */
 	public void writeByte(char address, byte data) {
+		int page = address >> 8;
+		byte[] contents = writePages[page];
+		if (contents == null && writablePages[page] && pageRegions[page].isShared()) {
+			unshare(pageRegions[page]);
+			contents = writePages[page];
+		}
+		if (contents != null) {
+			contents[pageOffsets[page] + (address & 0xFF)] = data;
+			dirtyPages[page] = true;
+			return;
+		}
+		if (writeWatchedPages[page] && memoryWatch != null) {
+			byte oldValue = peekByte(address);
+			writeByteSlow(address, data);
+			memoryWatch.afterWrite(address, oldValue, peekByte(address));
+		} else {
+			writeByteSlow(address, data);
+		}
+	}
+
+	/**
+	 * Writes through the trap and the address decoding, for pages that are
+	 * not in writePages
+	 */
+	private void writeByteSlow(char address, byte data) {
+		int page = address >> 8;
+		if (writeTrap != null) {
+			writeTrap.beforeWrite(address, data);
+		}
+		if (lockedPages[page]) {
+			return;
+		}
+		byte[] contents = mappedWritePages[page];
+		if (contents != null) {
+			contents[pageOffsets[page] + (address & 0xFF)] = data;
+			dirtyPages[page] = true;
+			return;
+		}
+
 		if (address == 0xFF50 && data == 1) {
-			biosMapped = false;
-			logger.info("[!] BIOS unmapped from memory");
-		} else if (address == 0xFF00) {
-			// D-pad
+			unmapBios();
+		} else if (address < 0x8000) {
+			// Memory bank controller registers
+			if (loadedRomFile != null) {
+				loadedRomFile.writeControl(address, data);
+			}
+		} else if (address >= 0xA000 && address <= 0xBFFF) {
+			if (loadedRomFile != null) {
+				loadedRomFile.writeRam(address, data);
+			}
+		} else if (address >= 0xFF00 && ioDevices[address & 0xFF] != null) {
+			ioDevices[address & 0xFF].writeIo(address, data);
 		} else if (address == 0xFF01) {
 			// Link-cable: data
 			// TODO: out this to the logger instead of syso
@@ -8,20 +8,42 @@
 
 package com.echodrop.gameboy.core;
 
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
 import com.echodrop.gameboy.exceptions.MemoryAccessException;
+import com.echodrop.gameboy.interfaces.IStateful;
 import com.echodrop.gameboy.util.StringUtils;
 
 /**
  * Represents a logical block of memory in the emulator's RAM
  */
-public class MemoryRegion {
+public class MemoryRegion implements IStateful {
 
 	// Size of memory region in bytes
 	public int size;
 	private char start;
 	private byte[] contents;
+
+	/**
+	 * The array allocated for this region, kept while it is a window onto
+	 * another array. Shared copy-on-write with forks of the system.
+	 */
+	private CopyOnWriteBytes ownContents;
+
+	/**
+	 * Index in contents of the byte at start. Nonzero for regions that are a
+	 * window onto a larger array, e.g. the current bank of a cartridge ROM.
+	 */
+	private int offset;
 	private String name;
 
+	/**
+	 * One flag per 256 bytes of the region's own memory, set when it changes
+	 * other than through the MMU's page table. See StateHash.
+	 */
+	private final boolean[] dirtyPages;
+
 	/**
 	 * @param start
 	 *            The address in emulated ram where the MemoryRegion begins.
@@ -35,6 +57,17 @@ public class MemoryRegion {
 		this.start = start;
 		this.size = end - start + 1;
 		this.contents = new byte[size];
+		this.ownContents = new CopyOnWriteBytes(contents);
+		this.dirtyPages = new boolean[(size + 0xFF) >> 8];
+	}
+
+	private MemoryRegion(MemoryRegion original) {
+		this.setName(original.getName());
+		this.start = original.start;
+		this.size = original.size;
+		this.ownContents = original.ownContents.share();
+		this.contents = ownContents.get();
+		this.dirtyPages = new boolean[(size + 0xFF) >> 8];
 	}
 
 	/**
@@ -42,10 +75,10 @@ public class MemoryRegion {
 	 */
 	public byte getMem(char addr) {
 		int index = addr - start;
-		if (index < 0 || index > contents.length) {
+		if (index < 0 || index >= size) {
 			throw new MemoryAccessException(addr, this);
 		}
-		return contents[index];
+		return contents[offset + index];
 	}
 
 	/**
@@ -53,10 +86,123 @@ public class MemoryRegion {
 	 */
 	public void setMem(char addr, byte content) {
 		int index = addr - start;
-		if (index < 0 || index > contents.length) {
+		if (index < 0 || index >= size) {
 			throw new MemoryAccessException(addr, this);
 		}
-		contents[index] = content;
+		if (isShared()) {
+			unshare();
+		}
+		contents[offset + index] = content;
+		dirtyPages[index >> 8] = true;
+	}
+
+	/**
+	 * @return the address in emulated ram where the MemoryRegion begins
+	 */
+	public char getStart() {
+		return start;
+	}
+
+	/**
+	 * @return the backing array, for components that map or copy memory in
+	 *         bulk rather than a byte at a time. The region begins at index
+	 *         getOffset(). The array must not be modified while the region
+	 *         is shared.
+	 */
+	public byte[] getContents() {
+		return contents;
+	}
+
+	public int getOffset() {
+		return offset;
+	}
+
+	/**
+	 * Points the region at size bytes of another array, starting at offset
+	 */
+	public void setContents(byte[] contents, int offset) {
+		this.contents = contents;
+		this.offset = offset;
+	}
+
+	/**
+	 * Points the region back at its own memory, if it was a window onto
+	 * another array, and zeroes it
+	 */
+	public void clear() {
+		if (ownContents.isShared()) {
+			ownContents.set(new byte[size]);
+		} else {
+			Arrays.fill(ownContents.get(), (byte) 0);
+		}
+		contents = ownContents.get();
+		offset = 0;
+		markAllDirty();
+	}
+
+	/**
+	 * Flags the 256 byte page containing index (relative to the start of the
+	 * region) as changed
+	 */
+	public void markDirty(int index) {
+		dirtyPages[index >> 8] = true;
+	}
+
+	public void markAllDirty() {
+		Arrays.fill(dirtyPages, true);
+	}
+
+	/**
+	 * @return whether a page of the region has changed since the last call,
+	 *         clearing its flag
+	 */
+	public boolean takeDirty(int page) {
+		boolean dirty = dirtyPages[page];
+		dirtyPages[page] = false;
+		return dirty;
+	}
+
+	/**
+	 * @return true if the region's memory is its own and is still shared with
+	 *         a fork of the system
+	 */
+	public boolean isShared() {
+		return contents == ownContents.get() && ownContents.isShared();
+	}
+
+	/**
+	 * Gives the region a copy of its memory that no fork shares, if it does
+	 * not have one already. This replaces the backing array, so pages mapped
+	 * onto the region must be remapped.
+	 */
+	public void unshare() {
+		if (isShared()) {
+			contents = ownContents.getWritable();
+		}
+	}
+
+	/**
+	 * @return a region over the same addresses whose memory is a
+	 *         copy-on-write view of this region's own memory, for a fork of
+	 *         the system. No memory is allocated until one of them writes.
+	 */
+	public MemoryRegion share() {
+		return new MemoryRegion(this);
+	}
+
+	/**
+	 * Writes the region's memory, wherever it currently points
+	 */
+	@Override
+	public void saveState(ByteBuffer buffer) {
+		buffer.put(contents, offset, size);
+	}
+
+	@Override
+	public void loadState(ByteBuffer buffer) {
+		unshare();
+		buffer.get(contents, offset, size);
+		markAllDirty();
 	}
 
 	/**
@@ -75,7 +221,7 @@ public class MemoryRegion {
 		String table = "        00 01 02 03 04 05 06 07 08 09 0A 0B 0C 0D 0E 0F\n";
 		table += "        -----------------------------------------------\n";
 
-		for (int i = 0; i < contents.length / 16; i++) {
+		for (int i = 0; i < size / 16; i++) {
 
 			table += "0x" + StringUtils.zeroLeftPad(Integer.toHexString((i * 16 + start)), 4) + "| ";
 
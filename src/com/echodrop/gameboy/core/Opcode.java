@@ -1,47 +1,83 @@
 /**
  * OpCode.java
- * 
+ *
  * @author anewkirk
- * 
+ *
  * Licensing information can be found in the root directory of the project.
  */
 
 package com.echodrop.gameboy.core;
 
 /**
- * Represents a GameBoy Z80 CPU instruction
+ * Declarative description of a GameBoy Z80 CPU instruction. Instances are
+ * built by OpcodeTable and drive both the generated interpreter in CPU and the
+ * disassembler.
  */
 public class Opcode {
-	
-	private Runnable instruction;
+
+	private int code;
+	private boolean extended;
 	private String disassembly;
+	private String operation;
+	private Operand[] operands;
+
+	/**
+	 * Bit index for BIT/RES/SET, vector address for RST
+	 */
+	private int parameter;
 	private byte mTime;
 	private byte conditionalTime;
-	
-	public Opcode(String disassembly, Runnable instruction, byte m_time) {
+
+	/**
+	 * Flag effects in Z N H C order: '-' unaffected, '0' reset, '1' set, or
+	 * the flag's letter if it is computed from the result
+	 */
+	private String flags;
+
+	public Opcode(int code, boolean extended, String disassembly, byte m_time, byte conditional_time, String flags) {
+		this.code = code;
+		this.extended = extended;
 		this.setDisassembly(disassembly);
-		this.setInstruction(instruction);
 		this.setMTime(m_time);
+		this.setConditionalTime(conditional_time);
+		this.flags = flags;
+		parse();
 	}
-	
-	public Opcode(String disassembly, Runnable instruction, byte m_time, byte conditional_time) {
-		this(disassembly, instruction, m_time);
-		this.setConditionalTime(conditionalTime);
-	}
-	
+
 	/**
-	 * Executes the CPU instruction
+	 * Splits the mnemonic into its operation and operand kinds
 	 */
-	public void exec() {
-		instruction.run();
+	private void parse() {
+		String[] parts = disassembly.split(" ", 2);
+		operation = parts[0];
+		if (parts.length == 1 || operation.equals("PREFIX")) {
+			operands = new Operand[0];
+			return;
+		}
+		String[] tokens = parts[1].split(",");
+		operands = new Operand[tokens.length];
+		boolean branch = operation.equals("JP") || operation.equals("JR") || operation.equals("CALL")
+				|| operation.equals("RET");
+		for (int i = 0; i < tokens.length; i++) {
+			boolean conditional = branch && i == 0 && (tokens.length == 2 || operation.equals("RET"));
+			operands[i] = Operand.parse(tokens[i], conditional);
+			if (operands[i] == Operand.BIT) {
+				parameter = Integer.parseInt(tokens[i]);
+			} else if (operands[i] == Operand.VECTOR) {
+				parameter = Integer.parseInt(tokens[i].substring(0, 2), 16);
+			}
+		}
 	}
 
-	public Runnable getInstruction() {
-		return instruction;
+	public int getCode() {
+		return code;
 	}
 
-	public void setInstruction(Runnable instruction) {
-		this.instruction = instruction;
+	/**
+	 * @return true if this is a CB prefixed opcode
+	 */
+	public boolean isExtended() {
+		return extended;
 	}
 
 	public String getMnemonic() {
@@ -52,6 +88,37 @@ public class Opcode {
 		this.disassembly = disassembly;
 	}
 
+	public String getOperation() {
+		return operation;
+	}
+
+	public Operand[] getOperands() {
+		return operands;
+	}
+
+	public int getParameter() {
+		return parameter;
+	}
+
+	public String getFlags() {
+		return flags;
+	}
+
+	/**
+	 * @return total instruction length in bytes, including the CB prefix
+	 */
+	public int getLength() {
+		int length = extended ? 2 : 1;
+		for (Operand o : operands) {
+			length += o.getLength();
+		}
+		return length;
+	}
+
+	public boolean isConditional() {
+		return operands.length > 0 && operands[0].isCondition();
+	}
+
 	public byte getMTime() {
 		return mTime;
 	}
@@ -68,4 +135,9 @@ public class Opcode {
 		this.conditionalTime = conditionalTime;
 	}
 
+	@Override
+	public String toString() {
+		return disassembly;
+	}
+
 }
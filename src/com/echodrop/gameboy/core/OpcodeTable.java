@@ -0,0 +1,241 @@
+/**
+ * OpcodeTable.java
+ *
+ * @author anewkirk
+ *
+ * Licensing information can be found in the root directory of the project.
+ */
+
+package com.echodrop.gameboy.core;
+
+/**
+ * Declarative table of the complete LR35902 instruction set. This is the single
+ * source of truth for mnemonics, operand kinds, timings and flag effects; the
+ * interpreter in CPU is generated from it by InterpreterGenerator, and the
+ * disassembler reads it directly.
+ *
+ * Timings are in clock cycles. Conditional instructions list the time taken
+ * when the branch is taken, followed by the time taken when it is not.
+ */
+public class OpcodeTable {
+
+	private static final String[] REGISTERS = { "B", "C", "D", "E", "H", "L", "(HL)", "A" };
+	private static final String[] ALU_OPS = { "ADD A,", "ADC A,", "SUB ", "SBC A,", "AND ", "XOR ", "OR ", "CP " };
+	private static final String[] ALU_FLAGS = { "Z0HC", "Z0HC", "Z1HC", "Z1HC", "Z010", "Z000", "Z000", "Z1HC" };
+	private static final String[] SHIFT_OPS = { "RLC", "RRC", "RL", "RR", "SLA", "SRA", "SWAP", "SRL" };
+
+	private static final Opcode[] opcodes = new Opcode[256];
+	private static final Opcode[] cbOpcodes = new Opcode[256];
+
+	static {
+		op(0x00, "NOP", 4, "----");
+		op(0x01, "LD BC,d16", 12, "----");
+		op(0x02, "LD (BC),A", 8, "----");
+		op(0x03, "INC BC", 8, "----");
+		op(0x04, "INC B", 4, "Z0H-");
+		op(0x05, "DEC B", 4, "Z1H-");
+		op(0x06, "LD B,d8", 8, "----");
+		op(0x07, "RLCA", 4, "000C");
+		op(0x08, "LD (a16),SP", 20, "----");
+		op(0x09, "ADD HL,BC", 8, "-0HC");
+		op(0x0A, "LD A,(BC)", 8, "----");
+		op(0x0B, "DEC BC", 8, "----");
+		op(0x0C, "INC C", 4, "Z0H-");
+		op(0x0D, "DEC C", 4, "Z1H-");
+		op(0x0E, "LD C,d8", 8, "----");
+		op(0x0F, "RRCA", 4, "000C");
+
+		op(0x10, "STOP d8", 4, "----");
+		op(0x11, "LD DE,d16", 12, "----");
+		op(0x12, "LD (DE),A", 8, "----");
+		op(0x13, "INC DE", 8, "----");
+		op(0x14, "INC D", 4, "Z0H-");
+		op(0x15, "DEC D", 4, "Z1H-");
+		op(0x16, "LD D,d8", 8, "----");
+		op(0x17, "RLA", 4, "000C");
+		op(0x18, "JR r8", 12, "----");
+		op(0x19, "ADD HL,DE", 8, "-0HC");
+		op(0x1A, "LD A,(DE)", 8, "----");
+		op(0x1B, "DEC DE", 8, "----");
+		op(0x1C, "INC E", 4, "Z0H-");
+		op(0x1D, "DEC E", 4, "Z1H-");
+		op(0x1E, "LD E,d8", 8, "----");
+		op(0x1F, "RRA", 4, "000C");
+
+		op(0x20, "JR NZ,r8", 12, 8, "----");
+		op(0x21, "LD HL,d16", 12, "----");
+		op(0x22, "LD (HL+),A", 8, "----");
+		op(0x23, "INC HL", 8, "----");
+		op(0x24, "INC H", 4, "Z0H-");
+		op(0x25, "DEC H", 4, "Z1H-");
+		op(0x26, "LD H,d8", 8, "----");
+		op(0x27, "DAA", 4, "Z-0C");
+		op(0x28, "JR Z,r8", 12, 8, "----");
+		op(0x29, "ADD HL,HL", 8, "-0HC");
+		op(0x2A, "LD A,(HL+)", 8, "----");
+		op(0x2B, "DEC HL", 8, "----");
+		op(0x2C, "INC L", 4, "Z0H-");
+		op(0x2D, "DEC L", 4, "Z1H-");
+		op(0x2E, "LD L,d8", 8, "----");
+		op(0x2F, "CPL", 4, "-11-");
+
+		op(0x30, "JR NC,r8", 12, 8, "----");
+		op(0x31, "LD SP,d16", 12, "----");
+		op(0x32, "LD (HL-),A", 8, "----");
+		op(0x33, "INC SP", 8, "----");
+		op(0x34, "INC (HL)", 12, "Z0H-");
+		op(0x35, "DEC (HL)", 12, "Z1H-");
+		op(0x36, "LD (HL),d8", 12, "----");
+		op(0x37, "SCF", 4, "-001");
+		op(0x38, "JR C,r8", 12, 8, "----");
+		op(0x39, "ADD HL,SP", 8, "-0HC");
+		op(0x3A, "LD A,(HL-)", 8, "----");
+		op(0x3B, "DEC SP", 8, "----");
+		op(0x3C, "INC A", 4, "Z0H-");
+		op(0x3D, "DEC A", 4, "Z1H-");
+		op(0x3E, "LD A,d8", 8, "----");
+		op(0x3F, "CCF", 4, "-00C");
+
+		/* 0x40 - 0x7F: 8-bit register to register loads */
+		for (int i = 0; i < 64; i++) {
+			String dst = REGISTERS[i >> 3];
+			String src = REGISTERS[i & 7];
+			if (i == 0x36) {
+				op(0x76, "HALT", 4, "----");
+			} else {
+				op(0x40 + i, "LD " + dst + "," + src, (i >> 3) == 6 || (i & 7) == 6 ? 8 : 4, "----");
+			}
+		}
+
+		/* 0x80 - 0xBF: 8-bit arithmetic/logic on A */
+		for (int i = 0; i < 64; i++) {
+			String src = REGISTERS[i & 7];
+			op(0x80 + i, ALU_OPS[i >> 3] + src, (i & 7) == 6 ? 8 : 4, ALU_FLAGS[i >> 3]);
+		}
+
+		op(0xC0, "RET NZ", 20, 8, "----");
+		op(0xC1, "POP BC", 12, "----");
+		op(0xC2, "JP NZ,a16", 16, 12, "----");
+		op(0xC3, "JP a16", 16, "----");
+		op(0xC4, "CALL NZ,a16", 24, 12, "----");
+		op(0xC5, "PUSH BC", 16, "----");
+		op(0xC6, "ADD A,d8", 8, "Z0HC");
+		op(0xC7, "RST 00H", 16, "----");
+		op(0xC8, "RET Z", 20, 8, "----");
+		op(0xC9, "RET", 16, "----");
+		op(0xCA, "JP Z,a16", 16, 12, "----");
+		op(0xCB, "PREFIX CB", 4, "----");
+		op(0xCC, "CALL Z,a16", 24, 12, "----");
+		op(0xCD, "CALL a16", 24, "----");
+		op(0xCE, "ADC A,d8", 8, "Z0HC");
+		op(0xCF, "RST 08H", 16, "----");
+
+		op(0xD0, "RET NC", 20, 8, "----");
+		op(0xD1, "POP DE", 12, "----");
+		op(0xD2, "JP NC,a16", 16, 12, "----");
+		op(0xD4, "CALL NC,a16", 24, 12, "----");
+		op(0xD5, "PUSH DE", 16, "----");
+		op(0xD6, "SUB d8", 8, "Z1HC");
+		op(0xD7, "RST 10H", 16, "----");
+		op(0xD8, "RET C", 20, 8, "----");
+		op(0xD9, "RETI", 16, "----");
+		op(0xDA, "JP C,a16", 16, 12, "----");
+		op(0xDC, "CALL C,a16", 24, 12, "----");
+		op(0xDE, "SBC A,d8", 8, "Z1HC");
+		op(0xDF, "RST 18H", 16, "----");
+
+		op(0xE0, "LDH (a8),A", 12, "----");
+		op(0xE1, "POP HL", 12, "----");
+		op(0xE2, "LD (C),A", 8, "----");
+		op(0xE5, "PUSH HL", 16, "----");
+		op(0xE6, "AND d8", 8, "Z010");
+		op(0xE7, "RST 20H", 16, "----");
+		op(0xE8, "ADD SP,r8", 16, "00HC");
+		op(0xE9, "JP (HL)", 4, "----");
+		op(0xEA, "LD (a16),A", 16, "----");
+		op(0xEE, "XOR d8", 8, "Z000");
+		op(0xEF, "RST 28H", 16, "----");
+
+		op(0xF0, "LDH A,(a8)", 12, "----");
+		op(0xF1, "POP AF", 12, "ZNHC");
+		op(0xF2, "LD A,(C)", 8, "----");
+		op(0xF3, "DI", 4, "----");
+		op(0xF5, "PUSH AF", 16, "----");
+		op(0xF6, "OR d8", 8, "Z000");
+		op(0xF7, "RST 30H", 16, "----");
+		op(0xF8, "LD HL,SP+r8", 12, "00HC");
+		op(0xF9, "LD SP,HL", 8, "----");
+		op(0xFA, "LD A,(a16)", 16, "----");
+		op(0xFB, "EI", 4, "----");
+		op(0xFE, "CP d8", 8, "Z1HC");
+		op(0xFF, "RST 38H", 16, "----");
+
+		/* CB prefixed opcodes. Timings include the prefix. */
+		for (int i = 0; i < 256; i++) {
+			String target = REGISTERS[i & 7];
+			boolean memory = (i & 7) == 6;
+			int bit = (i >> 3) & 7;
+			switch (i >> 6) {
+			case 0:
+				cb(i, SHIFT_OPS[i >> 3] + " " + target, memory ? 16 : 8, SHIFT_OPS[i >> 3].equals("SWAP") ? "Z000"
+						: "Z00C");
+				break;
+			case 1:
+				cb(i, "BIT " + bit + "," + target, memory ? 12 : 8, "Z01-");
+				break;
+			case 2:
+				cb(i, "RES " + bit + "," + target, memory ? 16 : 8, "----");
+				break;
+			case 3:
+				cb(i, "SET " + bit + "," + target, memory ? 16 : 8, "----");
+				break;
+			}
+		}
+	}
+
+	private static void op(int code, String mnemonic, int time, String flags) {
+		op(code, mnemonic, time, time, flags);
+	}
+
+	private static void op(int code, String mnemonic, int time, int conditionalTime, String flags) {
+		opcodes[code] = new Opcode(code, false, mnemonic, (byte) time, (byte) conditionalTime, flags);
+	}
+
+	private static void cb(int code, String mnemonic, int time, String flags) {
+		cbOpcodes[code] = new Opcode(code, true, mnemonic, (byte) time, (byte) time, flags);
+	}
+
+	/**
+	 * @return the opcode with the specified value, or null if the value is not
+	 *         a valid LR35902 instruction
+	 */
+	public static Opcode get(int code) {
+		return opcodes[code & 0xFF];
+	}
+
+	/**
+	 * @return the CB prefixed opcode with the specified value
+	 */
+	public static Opcode getExtended(int code) {
+		return cbOpcodes[code & 0xFF];
+	}
+
+	public static int getOpcodeCount() {
+		return count(opcodes);
+	}
+
+	public static int getCbOpcodeCount() {
+		return count(cbOpcodes);
+	}
+
+	private static int count(Opcode[] table) {
+		int count = 0;
+		for (Opcode o : table) {
+			if (o != null) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+}
@@ -0,0 +1,127 @@
+/**
+ * Operand.java
+ *
+ * @author anewkirk
+ *
+ * Licensing information can be found in the root directory of the project.
+ */
+
+package com.echodrop.gameboy.core;
+
+/**
+ * Operand kinds used by the LR35902 instruction set. The text of each operand
+ * matches the notation used in the opcode table (see
+ * http://www.pastraiser.com/cpu/gameboy/gameboy_opcodes.html)
+ */
+public enum Operand {
+
+	/* 8-bit registers */
+	A("A", 0),
+	B("B", 0),
+	C("C", 0),
+	D("D", 0),
+	E("E", 0),
+	H("H", 0),
+	L("L", 0),
+
+	/* 16-bit register pairs */
+	AF("AF", 0),
+	BC("BC", 0),
+	DE("DE", 0),
+	HL("HL", 0),
+	SP("SP", 0),
+
+	/* Register indirect */
+	IND_BC("(BC)", 0),
+	IND_DE("(DE)", 0),
+	IND_HL("(HL)", 0),
+	IND_HL_INC("(HL+)", 0),
+	IND_HL_DEC("(HL-)", 0),
+	IND_C("(C)", 0),
+
+	/* Immediates */
+	D8("d8", 1),
+	D16("d16", 2),
+	A8("(a8)", 1),
+	A16("a16", 2),
+	IND_A16("(a16)", 2),
+	R8("r8", 1),
+	SP_R8("SP+r8", 1),
+
+	/* Branch conditions */
+	COND_NZ("NZ", 0),
+	COND_Z("Z", 0),
+	COND_NC("NC", 0),
+	COND_C("C", 0),
+
+	/* Constants encoded in the opcode itself (bit index, reset vector) */
+	BIT("n", 0),
+	VECTOR("nnH", 0);
+
+	private final String text;
+
+	/**
+	 * Number of bytes this operand occupies after the opcode
+	 */
+	private final int length;
+
+	private Operand(String text, int length) {
+		this.text = text;
+		this.length = length;
+	}
+
+	public String getText() {
+		return text;
+	}
+
+	public int getLength() {
+		return length;
+	}
+
+	public boolean isCondition() {
+		return this == COND_NZ || this == COND_Z || this == COND_NC || this == COND_C;
+	}
+
+	/**
+	 * @return true if the operand names a 16-bit register pair or a 16-bit
+	 *         immediate
+	 */
+	public boolean isWide() {
+		return this == AF || this == BC || this == DE || this == HL || this == SP || this == D16;
+	}
+
+	/**
+	 * Parses an operand as written in the opcode table.
+	 *
+	 * @param conditional
+	 *            true if the operand is in the condition position of a branch,
+	 *            which disambiguates "C" (carry) from the C register
+	 */
+	public static Operand parse(String token, boolean conditional) {
+		if (conditional) {
+			switch (token) {
+			case "NZ":
+				return COND_NZ;
+			case "Z":
+				return COND_Z;
+			case "NC":
+				return COND_NC;
+			case "C":
+				return COND_C;
+			}
+		}
+		if (token.matches("[0-7]")) {
+			return BIT;
+		}
+		if (token.matches("[0-3][08]H")) {
+			return VECTOR;
+		}
+		for (Operand o : values()) {
+			if (!o.isCondition() && o != BIT && o != VECTOR && o.text.equals(token)) {
+				return o;
+			}
+		}
+		throw new IllegalArgumentException("Unknown operand: " + token);
+	}
+
+}
@@ -0,0 +1,99 @@
+/**
+ * RunAhead.java
+ *
+ * @author anewkirk
+ *
+ * Licensing information can be found in the root directory of the project.
+ */
+
+package com.echodrop.gameboy.core;
+
+import java.util.logging.Logger;
+
+import com.echodrop.gameboy.exceptions.SaveStateException;
+import com.echodrop.gameboy.graphics.GPU;
+
+/**
+ * Hides some of a game's own input lag by showing frames from slightly in the
+ * future. Most games take a frame or more to react to a key press; with
+ * run-ahead, each real frame is emulated without drawing, then the state is
+ * saved, the next few frames are emulated with the keys currently held and the
+ * last of them is drawn, and the state is restored. What is on screen is the
+ * frame the game would show a few frames from now if the keys did not change,
+ * so a press shows up that many frames sooner.
+ *
+ * The frames emulated ahead are thrown away, so GPU observers are not notified
+ * of them. Observers are notified once per real frame, after the state has
+ * been restored and the frame buffer holds the frame from ahead. The write
+ * journal should be disabled while running ahead, since it would record the
+ * discarded frames too.
+ */
+public class RunAhead {
+
+	private static final Logger logger = Logger.getLogger(RunAhead.class.getName());
+
+	public static final int MAX_FRAMES = 6;
+
+	private final TailspinGB system;
+	private final SaveState state = new SaveState();
+
+	/**
+	 * Frames emulated ahead of the real one; 0 is off. Set by the UI thread.
+	 */
+	private volatile int frames;
+
+	public RunAhead(TailspinGB system) {
+		this.system = system;
+	}
+
+	/**
+	 * Emulates one real frame (see CPU.runFrame()), then runs ahead if it is
+	 * on. Must be called on the emulation thread.
+	 */
+	public void runFrame() {
+		int frames = this.frames;
+		if (frames == 0) {
+			system.getProcessor().runFrame();
+			return;
+		}
+
+		GPU gpu = system.getGpu();
+		boolean rendering = gpu.isRendering();
+		gpu.setNotifying(false);
+		try {
+			gpu.setRendering(false);
+			system.getProcessor().runFrame();
+
+			state.capture(system);
+			for (int i = 1; i <= frames; i++) {
+				gpu.setRendering(rendering && i == frames);
+				system.getProcessor().runFrame();
+			}
+			state.restore(system);
+		} catch (SaveStateException e) {
+			/* the state was captured from this system a moment ago */
+			throw new IllegalStateException(e);
+		} finally {
+			gpu.setRendering(rendering);
+			gpu.setNotifying(true);
+		}
+		gpu.notifyObservers(gpu.isFrameDrawn());
+	}
+
+	public int getFrames() {
+		return frames;
+	}
+
+	/**
+	 * Sets the number of frames to run ahead, from 0 (off) to MAX_FRAMES. May
+	 * be called from any thread; takes effect from the next frame.
+	 */
+	public void setFrames(int frames) {
+		if (frames < 0 || frames > MAX_FRAMES) {
+			throw new IllegalArgumentException("Run-ahead must be between 0 and " + MAX_FRAMES + " frames");
+		}
+		this.frames = frames;
+		logger.info("Run-ahead set to " + frames + " frames");
+	}
+
+}
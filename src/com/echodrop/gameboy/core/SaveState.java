@@ -0,0 +1,167 @@
+/**
+ * SaveState.java
+ * 
+ * @author anewkirk
+ * 
+ * Licensing information can be found in the root directory of the project.
+ */
+
+package com.echodrop.gameboy.core;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+import com.echodrop.gameboy.exceptions.SaveStateException;
+import com.echodrop.gameboy.rom.RomFile;
+
+/**
+ * A snapshot of the whole machine. The state is written straight into a
+ * reusable direct buffer by each component in turn, and a file is written or
+ * read with a single channel operation, so capturing a state every frame is
+ * cheap.
+ * 
+ * Format (little endian): a 16 byte header of magic number, format version,
+ * cartridge checksum and body length, followed by the body written by
+ * TailspinGB.saveState(). The body has no field tags; any change to what a
+ * component saves must bump VERSION.
+ */
+public class SaveState {
+
+	/**
+	 * "TSGS"
+	 */
+	public static final int MAGIC = 0x53475354;
+	public static final int VERSION = 3;
+	public static final int HEADER_LENGTH = 16;
+
+	/**
+	 * Room for everything but cartridge RAM
+	 */
+	private static final int BASE_CAPACITY = 0x8000;
+
+	private ByteBuffer buffer;
+
+	/**
+	 * Captures the system's current state, replacing the one held
+	 */
+	public void capture(TailspinGB system) {
+		RomFile cartridge = system.getMem().getLoadedRomFile();
+		int capacity = BASE_CAPACITY + (cartridge != null ? cartridge.ram.length : 0);
+		if (buffer == null || buffer.capacity() < capacity) {
+			buffer = ByteBuffer.allocateDirect(capacity).order(ByteOrder.LITTLE_ENDIAN);
+		}
+
+		buffer.clear();
+		buffer.putInt(MAGIC);
+		buffer.putInt(VERSION);
+		buffer.putInt(getCartridgeId(system));
+		buffer.putInt(0);
+		system.saveState(buffer);
+		buffer.putInt(12, buffer.position() - HEADER_LENGTH);
+		buffer.flip();
+	}
+
+	/**
+	 * Puts the system back in the captured state. The state can be restored
+	 * any number of times.
+	 * 
+	 * @throws SaveStateException
+	 *             if the state is from another version or cartridge; the
+	 *             system is left untouched
+	 */
+	public void restore(TailspinGB system) throws SaveStateException {
+		if (buffer == null) {
+			throw new SaveStateException("No state has been captured");
+		}
+		ByteBuffer state = buffer.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+		if (state.remaining() < HEADER_LENGTH || state.getInt() != MAGIC) {
+			throw new SaveStateException("Not a save state");
+		}
+		int version = state.getInt();
+		if (version != VERSION) {
+			throw new SaveStateException("Unsupported save state version " + version);
+		}
+		if (state.getInt() != getCartridgeId(system)) {
+			throw new SaveStateException("Save state is for a different cartridge");
+		}
+		if (state.getInt() != state.remaining()) {
+			throw new SaveStateException("Save state is truncated");
+		}
+		system.loadState(state);
+	}
+
+	/**
+	 * Writes the captured state to a file
+	 */
+	public void write(File file) throws IOException {
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+				StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+			ByteBuffer data = buffer.duplicate();
+			while (data.hasRemaining()) {
+				channel.write(data);
+			}
+		}
+	}
+
+	/**
+	 * @return the state stored in a file by write()
+	 */
+	public static SaveState read(File file) throws IOException {
+		SaveState result = new SaveState();
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			ByteBuffer data = ByteBuffer.allocateDirect((int) channel.size()).order(ByteOrder.LITTLE_ENDIAN);
+			while (data.hasRemaining()) {
+				if (channel.read(data) < 0) {
+					break;
+				}
+			}
+			data.flip();
+			result.buffer = data;
+		}
+		return result;
+	}
+
+	/**
+	 * Copies the captured state, getLength() bytes, into dest
+	 */
+	public void toArray(byte[] dest) {
+		buffer.duplicate().get(dest, 0, buffer.limit());
+	}
+
+	/**
+	 * Replaces the captured state with length bytes of src, as produced by
+	 * toArray()
+	 */
+	public void fromArray(byte[] src, int length) {
+		if (buffer == null || buffer.capacity() < length) {
+			buffer = ByteBuffer.allocateDirect(length).order(ByteOrder.LITTLE_ENDIAN);
+		}
+		buffer.clear();
+		buffer.put(src, 0, length);
+		buffer.flip();
+	}
+
+	/**
+	 * @return the length in bytes of the captured state, 0 if there is none
+	 */
+	public int getLength() {
+		return buffer == null ? 0 : buffer.limit();
+	}
+
+	/**
+	 * Identifies the cartridge by its checksums, so that a state is not
+	 * restored over a different game
+	 */
+	public static int getCartridgeId(TailspinGB system) {
+		RomFile cartridge = system.getMem().getLoadedRomFile();
+		if (cartridge == null) {
+			return -1;
+		}
+		return (cartridge.headerChecksum & 0xFF) << 16 | cartridge.cartridgeChecksum;
+	}
+
+}
@@ -0,0 +1,153 @@
+/**
+ * Scheduler.java
+ * 
+ * @author anewkirk
+ * 
+ * Licensing information can be found in the root directory of the project.
+ */
+
+package com.echodrop.gameboy.core;
+
+import java.nio.ByteBuffer;
+
+import com.echodrop.gameboy.interfaces.IScheduledEvent;
+import com.echodrop.gameboy.interfaces.IStateful;
+
+/**
+ * Keeps the global clock cycle count and runs timed hardware events when it is
+ * reached. Components that only need to do something at a known point in the
+ * future (a timer overflow, the end of a DMA transfer) schedule an event here
+ * rather than being stepped after every instruction, so the only per
+ * instruction cost is a single comparison against the earliest deadline.
+ * 
+ * Each kind of event has a fixed slot, and at most one instance of it can be
+ * pending at a time; scheduling a slot again replaces its deadline.
+ */
+public class Scheduler implements IStateful {
+
+	/* Event slots */
+	public static final int TIMER_OVERFLOW = 0;
+	public static final int OAM_DMA = 1;
+	public static final int JOYPAD_POLL = 2;
+	public static final int EVENT_COUNT = 3;
+
+	private static final long NEVER = Long.MAX_VALUE;
+
+	/**
+	 * Clock cycles elapsed since reset
+	 */
+	private long cycles;
+
+	/**
+	 * Earliest deadline of all scheduled events
+	 */
+	private long nextEvent;
+
+	private long[] deadlines = new long[EVENT_COUNT];
+	private IScheduledEvent[] handlers = new IScheduledEvent[EVENT_COUNT];
+
+	public Scheduler() {
+		this.initialize();
+	}
+
+	/**
+	 * Resets the clock and cancels all events. Handlers stay registered.
+	 */
+	public void initialize() {
+		cycles = 0;
+		for (int i = 0; i < EVENT_COUNT; i++) {
+			deadlines[i] = NEVER;
+		}
+		nextEvent = NEVER;
+	}
+
+	/**
+	 * Registers the component that handles an event slot
+	 */
+	public void setHandler(int event, IScheduledEvent handler) {
+		handlers[event] = handler;
+	}
+
+	/**
+	 * Schedules event to run once the clock reaches cycle
+	 */
+	public void schedule(int event, long cycle) {
+		deadlines[event] = cycle;
+		if (cycle < nextEvent) {
+			nextEvent = cycle;
+		}
+	}
+
+	public void cancel(int event) {
+		deadlines[event] = NEVER;
+		updateNextEvent();
+	}
+
+	public boolean isScheduled(int event) {
+		return deadlines[event] != NEVER;
+	}
+
+	/**
+	 * Moves the clock forward and runs any events that have come due
+	 */
+	public void advance(int elapsed) {
+		cycles += elapsed;
+		if (cycles >= nextEvent) {
+			runEvents();
+		}
+	}
+
+	private void runEvents() {
+		while (cycles >= nextEvent) {
+			int due = 0;
+			for (int i = 1; i < EVENT_COUNT; i++) {
+				if (deadlines[i] < deadlines[due]) {
+					due = i;
+				}
+			}
+			long deadline = deadlines[due];
+			deadlines[due] = NEVER;
+			updateNextEvent();
+			handlers[due].onEvent(due, deadline);
+		}
+	}
+
+	private void updateNextEvent() {
+		nextEvent = NEVER;
+		for (long deadline : deadlines) {
+			if (deadline < nextEvent) {
+				nextEvent = deadline;
+			}
+		}
+	}
+
+	@Override
+	public void saveState(ByteBuffer buffer) {
+		buffer.putLong(cycles);
+		for (long deadline : deadlines) {
+			buffer.putLong(deadline);
+		}
+	}
+
+	@Override
+	public void loadState(ByteBuffer buffer) {
+		cycles = buffer.getLong();
+		for (int i = 0; i < EVENT_COUNT; i++) {
+			deadlines[i] = buffer.getLong();
+		}
+		updateNextEvent();
+	}
+
+	public long getCycles() {
+		return cycles;
+	}
+
+	/**
+	 * @return clock cycles until the next scheduled event, or Long.MAX_VALUE
+	 *         if nothing is scheduled
+	 */
+	public long getCyclesToNextEvent() {
+		return nextEvent == NEVER ? NEVER : Math.max(0, nextEvent - cycles);
+	}
+
+}
@@ -0,0 +1,267 @@
+/**
+ * StateHash.java
+ *
+ * @author anewkirk
+ *
+ * Licensing information can be found in the root directory of the project.
+ */
+
+package com.echodrop.gameboy.core;
+
+import java.nio.ByteBuffer;
+import java.util.logging.Logger;
+
+import com.echodrop.gameboy.rom.RomFile;
+import com.echodrop.gameboy.util.StringUtils;
+
+/**
+ * A 64-bit hash of the whole machine state, kept up to date incrementally so
+ * that it can be taken every frame. Two systems with the same hash are, for
+ * all practical purposes, in the same state, which makes it cheap to check
+ * that a replay or a fork stays in step with the original.
+ *
+ * The state is split into units: the register state of every component (see
+ * TailspinGB.saveRegisterState()), OAM, HRAM, and each 256 byte page of WRAM,
+ * VRAM and cartridge RAM. Each unit has its own hash, seeded with its index,
+ * and the state hash is their sum. update() rehashes only the registers and
+ * the pages that have changed since the last update, using the dirty flags
+ * kept by the MMU, the memory regions and the cartridge, and adjusts the sum.
+ *
+ * The dirty flags are cleared as they are read, so only one StateHash should
+ * track a system at a time.
+ */
+public class StateHash {
+
+	private static final Logger logger = Logger.getLogger(StateHash.class.getName());
+
+	private static final long PRIME1 = 0x9E3779B185EBCA87L;
+	private static final long PRIME2 = 0xC2B2AE3D27D4EB4FL;
+	private static final long PRIME3 = 0x165667B19E3779F9L;
+
+	private static final int PAGE_SIZE = 0x100;
+
+	/* Fixed units; pages follow */
+	public static final int REGISTERS = 0;
+	public static final int OAM = 1;
+	public static final int HRAM = 2;
+	private static final int WRAM_BASE = 3;
+	private static final int VRAM_BASE = WRAM_BASE + 0x20;
+	private static final int EXTERNAL_RAM_BASE = VRAM_BASE + 0x20;
+
+	private final TailspinGB system;
+	private final ByteBuffer registers = ByteBuffer.allocate(TailspinGB.REGISTER_STATE_LENGTH);
+
+	private long[] unitHashes = new long[0];
+	private long hash;
+
+	/**
+	 * The cartridge the units were laid out for
+	 */
+	private RomFile cartridge;
+	private boolean initialized;
+	private int unitsHashed;
+
+	public StateHash(TailspinGB system) {
+		this.system = system;
+	}
+
+	/**
+	 * Brings the hash up to date with the current state. Meant to be called
+	 * once a frame, e.g. from an IGraphicsObserver.
+	 *
+	 * @return the hash of the current state
+	 */
+	public long update() {
+		MMU mem = system.getMem();
+		RomFile loaded = mem.getLoadedRomFile();
+		mem.flushDirtyPages();
+		if (!initialized || loaded != cartridge) {
+			return rehash();
+		}
+
+		unitsHashed = 0;
+		registers.clear();
+		system.saveRegisterState(registers);
+		setUnit(REGISTERS, registers.array(), 0, registers.position());
+		if (system.getGpu().getOam().takeDirty(0)) {
+			setUnit(OAM, system.getGpu().getOam());
+		}
+		if (mem.getZeroPage().takeDirty(0)) {
+			setUnit(HRAM, mem.getZeroPage());
+		}
+		updatePages(WRAM_BASE, mem.getWorkingRam());
+		updatePages(VRAM_BASE, system.getGpu().getVram());
+		if (cartridge != null) {
+			for (int i = 0; EXTERNAL_RAM_BASE + i < unitHashes.length; i++) {
+				if (cartridge.takeRamDirty(i)) {
+					setUnit(EXTERNAL_RAM_BASE + i, cartridge.ram, i * PAGE_SIZE, ramPageLength(i));
+				}
+			}
+		} else {
+			updatePages(EXTERNAL_RAM_BASE, mem.getExternalRam());
+		}
+		return hash;
+	}
+
+	/**
+	 * Hashes the whole state from scratch, ignoring the dirty flags
+	 *
+	 * @return the hash of the current state
+	 */
+	public long rehash() {
+		MMU mem = system.getMem();
+		mem.flushDirtyPages();
+		cartridge = mem.getLoadedRomFile();
+		int ramPages = cartridge != null ? (cartridge.ram.length + PAGE_SIZE - 1) / PAGE_SIZE : 0x20;
+		if (unitHashes.length != EXTERNAL_RAM_BASE + ramPages) {
+			unitHashes = new long[EXTERNAL_RAM_BASE + ramPages];
+		}
+		hash = 0;
+		unitsHashed = 0;
+		for (int i = 0; i < unitHashes.length; i++) {
+			unitHashes[i] = 0;
+		}
+
+		registers.clear();
+		system.saveRegisterState(registers);
+		setUnit(REGISTERS, registers.array(), 0, registers.position());
+		system.getGpu().getOam().takeDirty(0);
+		setUnit(OAM, system.getGpu().getOam());
+		mem.getZeroPage().takeDirty(0);
+		setUnit(HRAM, mem.getZeroPage());
+		rehashPages(WRAM_BASE, mem.getWorkingRam());
+		rehashPages(VRAM_BASE, system.getGpu().getVram());
+		if (cartridge != null) {
+			for (int i = 0; i < ramPages; i++) {
+				cartridge.takeRamDirty(i);
+				setUnit(EXTERNAL_RAM_BASE + i, cartridge.ram, i * PAGE_SIZE, ramPageLength(i));
+			}
+		} else {
+			rehashPages(EXTERNAL_RAM_BASE, mem.getExternalRam());
+		}
+		initialized = true;
+		logger.fine("State hash rebuilt from " + unitHashes.length + " units");
+		return hash;
+	}
+
+	private void updatePages(int base, MemoryRegion r) {
+		for (int i = 0; i < r.size / PAGE_SIZE; i++) {
+			if (r.takeDirty(i)) {
+				setUnit(base + i, r.getContents(), r.getOffset() + i * PAGE_SIZE, PAGE_SIZE);
+			}
+		}
+	}
+
+	private void rehashPages(int base, MemoryRegion r) {
+		for (int i = 0; i < r.size / PAGE_SIZE; i++) {
+			r.takeDirty(i);
+			setUnit(base + i, r.getContents(), r.getOffset() + i * PAGE_SIZE, PAGE_SIZE);
+		}
+	}
+
+	private int ramPageLength(int page) {
+		return Math.min(PAGE_SIZE, cartridge.ram.length - page * PAGE_SIZE);
+	}
+
+	private void setUnit(int unit, MemoryRegion r) {
+		setUnit(unit, r.getContents(), r.getOffset(), r.size);
+	}
+
+	private void setUnit(int unit, byte[] data, int offset, int length) {
+		long h = hashBytes(data, offset, length, unit);
+		hash += h - unitHashes[unit];
+		unitHashes[unit] = h;
+		unitsHashed++;
+	}
+
+	/**
+	 * @return a 64-bit hash of length bytes of data, starting at offset
+	 */
+	public static long hashBytes(byte[] data, int offset, int length, long seed) {
+		long h = seed * PRIME3 + length;
+		int i = offset;
+		int end = offset + length;
+		for (; i + 8 <= end; i += 8) {
+			long v = (data[i] & 0xFFL) | (data[i + 1] & 0xFFL) << 8 | (data[i + 2] & 0xFFL) << 16
+					| (data[i + 3] & 0xFFL) << 24 | (data[i + 4] & 0xFFL) << 32 | (data[i + 5] & 0xFFL) << 40
+					| (data[i + 6] & 0xFFL) << 48 | (data[i + 7] & 0xFFL) << 56;
+			h = Long.rotateLeft(h + v * PRIME2, 31) * PRIME1;
+		}
+		for (; i < end; i++) {
+			h = Long.rotateLeft(h + (data[i] & 0xFFL) * PRIME3, 11) * PRIME1;
+		}
+
+		/* finalizer from MurmurHash3 */
+		h ^= h >>> 33;
+		h *= 0xFF51AFD7ED558CCDL;
+		h ^= h >>> 33;
+		h *= 0xC4CEB9FE1A85EC53L;
+		h ^= h >>> 33;
+		return h;
+	}
+
+	/**
+	 * @return the hash as of the last update
+	 */
+	public long getHash() {
+		return hash;
+	}
+
+	/**
+	 * @return the number of units rehashed by the last update
+	 */
+	public int getUnitsHashed() {
+		return unitsHashed;
+	}
+
+	public int getUnitCount() {
+		return unitHashes.length;
+	}
+
+	/**
+	 * Finds where two states differ. Both hashes should have just been
+	 * updated.
+	 *
+	 * @return the first unit whose hash differs from the other's, or -1 if
+	 *         the states match. If the states have different layouts (e.g.
+	 *         different cartridges) the first unit past the shorter one is
+	 *         returned.
+	 */
+	public int findDivergence(StateHash other) {
+		int units = Math.min(unitHashes.length, other.unitHashes.length);
+		for (int i = 0; i < units; i++) {
+			if (unitHashes[i] != other.unitHashes[i]) {
+				return i;
+			}
+		}
+		return unitHashes.length == other.unitHashes.length ? -1 : units;
+	}
+
+	/**
+	 * @return a human readable name for a unit, e.g. "WRAM $C100-$C1FF"
+	 */
+	public String describeUnit(int unit) {
+		switch (unit) {
+		case REGISTERS:
+			return "registers";
+		case OAM:
+			return "OAM";
+		case HRAM:
+			return "HRAM";
+		}
+		if (unit < VRAM_BASE) {
+			return "WRAM " + pageRange(0xC000 + (unit - WRAM_BASE) * PAGE_SIZE);
+		} else if (unit < EXTERNAL_RAM_BASE) {
+			return "VRAM " + pageRange(0x8000 + (unit - VRAM_BASE) * PAGE_SIZE);
+		}
+		int index = (unit - EXTERNAL_RAM_BASE) * PAGE_SIZE;
+		int bank = index / 0x2000;
+		return "cartridge RAM bank " + bank + " " + pageRange(0xA000 + index % 0x2000);
+	}
+
+	private static String pageRange(int start) {
+		return "$" + StringUtils.zeroLeftPad(Integer.toHexString(start).toUpperCase(), 4) + "-$"
+				+ StringUtils.zeroLeftPad(Integer.toHexString(start + PAGE_SIZE - 1).toUpperCase(), 4);
+	}
+
+}
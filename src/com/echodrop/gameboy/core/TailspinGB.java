@@ -8,27 +8,88 @@
 
 package com.echodrop.gameboy.core;
 
+import java.nio.ByteBuffer;
 import java.util.logging.Handler;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import com.echodrop.gameboy.exceptions.MapperNotImplementedException;
 import com.echodrop.gameboy.graphics.GPU;
+import com.echodrop.gameboy.interfaces.IStateful;
+import com.echodrop.gameboy.rom.RomFile;
 
 /**
  * This class represents a combination of the components required for the
  * emulator to run
  */
-public class TailspinGB {
+public class TailspinGB implements IStateful {
 
 	private static final Logger logger = Logger.getLogger(TailspinGB.class.getName());
+
+	/**
+	 * Upper bound on the bytes written by saveRegisterState()
+	 */
+	public static final int REGISTER_STATE_LENGTH = 128;
 	private CPU processor;
 	private GPU gpu;
 	private MMU mem;
+	private InterruptController interrupts;
+	private Scheduler scheduler;
+	private Timer timer;
+	private DmaController dma;
+	private Joypad joypad;
+
+	/**
+	 * Paces beginDispatch(); not part of the machine state
+	 */
+	private FramePacer pacer;
+
+	/**
+	 * If true, reset() leaves the system in the state the bootstrap would
+	 * leave it in rather than running the bootstrap
+	 */
+	private boolean fastBoot;
+
+	/**
+	 * If true, the GPU does not draw frames unless asked to (see
+	 * setHeadless())
+	 */
+	private boolean headless;
+
+	/**
+	 * The bootstrap's registered trademark tile, drawn after the logo
+	 */
+	private static final byte[] TRADEMARK_TILE = { 0x3C, 0x42, (byte) 0xB9, (byte) 0xA5, (byte) 0xB9, (byte) 0xA5,
+			0x42, 0x3C };
 
 	public TailspinGB() {
-		this.setMem(new MMU(this));
+		this(null);
+	}
+
+	/**
+	 * @param original
+	 *            the system this one is a fork of, whose memory it shares, or
+	 *            null for a new system
+	 */
+	private TailspinGB(TailspinGB original) {
+		this.setScheduler(new Scheduler());
+		this.setMem(original == null ? new MMU(this) : new MMU(this, original.mem));
+		this.setInterrupts(new InterruptController(this));
+		this.setTimer(new Timer(this));
 		this.setProcessor(new CPU(this));
-		this.setGpu(new GPU(this));
+		this.setGpu(original == null ? new GPU(this) : new GPU(this, original.gpu));
+		this.setDma(new DmaController(this));
+		this.setJoypad(new Joypad(this));
+		this.setPacer(new FramePacer());
+		mem.mapMemory();
+
+		mem.registerIoDevice(InterruptController.IF_ADDRESS, interrupts);
+		mem.registerIoDevice(InterruptController.IE_ADDRESS, interrupts);
+		for (char address = Timer.DIV_ADDRESS; address <= Timer.TAC_ADDRESS; address++) {
+			mem.registerIoDevice(address, timer);
+		}
+		mem.registerIoDevice(DmaController.DMA_ADDRESS, dma);
+		mem.registerIoDevice(Joypad.P1_ADDRESS, joypad);
 	}
 
 
@@ -44,6 +105,10 @@ public class TailspinGB {
 		logger.addHandler(handler);
 
 		mem.initLogging();
+		interrupts.initLogging();
+		timer.initLogging();
+		dma.initLogging();
+		joypad.initLogging();
 		processor.initLogging();
 		gpu.initLogging();
 	}
@@ -52,9 +117,205 @@ public class TailspinGB {
 	 * Initilaize each component of the emulator
 	 */
 	public void reset() {
+		if (mem.getLoadedRomFile() != null) {
+			mem.getLoadedRomFile().beforeReset();
+		}
+		scheduler.initialize();
 		processor.initialize();
+		dma.initialize();
 		gpu.initialize();
 		mem.initialize();
+		interrupts.initialize();
+		timer.initialize();
+		joypad.initialize();
+		if (fastBoot) {
+			skipBootstrap();
+		}
+	}
+
+	/**
+	 * Puts the system in the state the DMG bootstrap leaves it in when it
+	 * jumps to the cartridge at 0x0100: post-boot CPU and I/O registers, the
+	 * cartridge's logo in VRAM and the bootstrap unmapped. This lets the
+	 * emulator start without a copy of the bootstrap, and without spending
+	 * the bootstrap's ~2.5 seconds of emulated time scrolling the logo.
+	 * 
+	 * Should be called with the cartridge loaded, since the logo is copied
+	 * from its header.
+	 */
+	public void skipBootstrap() {
+		processor.getA().setValue(0x01);
+		processor.getF().setValue(0xB0);
+		processor.getB().setValue(0x00);
+		processor.getC().setValue(0x13);
+		processor.getD().setValue(0x00);
+		processor.getE().setValue(0xD8);
+		processor.getH().setValue(0x01);
+		processor.getL().setValue(0x4D);
+		processor.setSp((char) 0xFFFE);
+		processor.setPc((char) 0x0100);
+
+		writeLogoTiles();
+
+		mem.writeByte((char) 0xFF40, (byte) 0x91);
+		mem.writeByte((char) 0xFF42, (byte) 0x00);
+		mem.writeByte((char) 0xFF47, (byte) 0xFC);
+		mem.writeByte(InterruptController.IE_ADDRESS, (byte) 0x00);
+		mem.writeByte(InterruptController.IF_ADDRESS, (byte) 0xE1);
+		timer.setCounter(0xABCC);
+		mem.unmapBios();
+		logger.info("Skipped bootstrap");
+	}
+
+	/**
+	 * Decompresses the logo in the cartridge header (0x0104 - 0x0133) into
+	 * tiles 1 - 24 and lays them out in the background map, the same way the
+	 * bootstrap does. Each bit of the logo becomes a 2x2 block of pixels.
+	 */
+	private void writeLogoTiles() {
+		char tile = 0x8010;
+		for (char address = 0x0104; address < 0x0134; address++) {
+			int data = mem.readByte(address) & 0xFF;
+			for (int nibble = 1; nibble >= 0; nibble--) {
+				int row = 0;
+				for (int bit = 3; bit >= 0; bit--) {
+					int pixel = (data >> (nibble * 4 + bit)) & 1;
+					row = row << 2 | pixel * 3;
+				}
+				mem.writeByte(tile, (byte) row);
+				mem.writeByte((char) (tile + 2), (byte) row);
+				tile += 4;
+			}
+		}
+		for (int i = 0; i < TRADEMARK_TILE.length; i++) {
+			mem.writeByte((char) (0x8190 + i * 2), TRADEMARK_TILE[i]);
+		}
+
+		for (int i = 0; i < 12; i++) {
+			mem.writeByte((char) (0x9904 + i), (byte) (i + 1));
+			mem.writeByte((char) (0x9924 + i), (byte) (i + 13));
+		}
+		mem.writeByte((char) 0x9910, (byte) 0x19);
+	}
+
+	/**
+	 * Releases the resources held by the emulator: writes out and closes the
+	 * cartridge's save file and releases its ROM image
+	 */
+	public void shutdown() {
+		mem.unloadRom();
+	}
+
+	/**
+	 * Creates an independent system in the same state as this one, e.g. to
+	 * try several inputs from one state. Memory is not copied: the fork shares
+	 * RAM, VRAM, OAM and cartridge RAM with this system copy-on-write, and
+	 * either side copies a region the first time it writes to it. The ROM
+	 * image is shared outright.
+	 * 
+	 * The two systems can then be run on different threads. fork() must be
+	 * called on the thread running this system, or while it is stopped. The
+	 * fork does not use save files, has no graphics observers, and its frame
+	 * buffer is blank until it renders a frame. It is headless if this system
+	 * is.
+	 */
+	public TailspinGB fork() {
+		TailspinGB fork = new TailspinGB(this);
+		fork.setFastBoot(fastBoot);
+		if (headless) {
+			fork.setHeadless(true);
+		}
+		MMU forkMem = fork.getMem();
+
+		RomFile cartridge = mem.getLoadedRomFile();
+		if (cartridge != null) {
+			try {
+				forkMem.loadRom(cartridge.getImage().retain());
+			} catch (MapperNotImplementedException e) {
+				/* this cartridge's mapper was created from the same image */
+				throw new IllegalStateException(e);
+			}
+			cartridge.shareRam(forkMem.getLoadedRomFile());
+		}
+
+		/* this system has to copy shared memory before writing to it too */
+		mem.refreshMappings();
+
+		ByteBuffer registers = ByteBuffer.allocate(REGISTER_STATE_LENGTH);
+		saveRegisterState(registers);
+		registers.flip();
+		fork.loadRegisterState(registers);
+		logger.fine("Forked system");
+		return fork;
+	}
+
+	/**
+	 * Writes the state of every component. See SaveState for the file format.
+	 */
+	@Override
+	public void saveState(ByteBuffer buffer) {
+		scheduler.saveState(buffer);
+		processor.saveState(buffer);
+		interrupts.saveState(buffer);
+		timer.saveState(buffer);
+		dma.saveState(buffer);
+		joypad.saveState(buffer);
+		gpu.saveState(buffer);
+		mem.saveState(buffer);
+	}
+
+	@Override
+	public void loadState(ByteBuffer buffer) {
+		scheduler.loadState(buffer);
+		processor.loadState(buffer);
+		interrupts.loadState(buffer);
+		timer.loadState(buffer);
+		dma.loadState(buffer);
+		joypad.loadState(buffer);
+		gpu.loadState(buffer);
+		mem.loadState(buffer);
+	}
+
+	/**
+	 * Writes the state of every component except memory: registers, timing
+	 * and the cartridge's bank registers. Together with the contents of
+	 * memory this is the whole machine state.
+	 */
+	public void saveRegisterState(ByteBuffer buffer) {
+		scheduler.saveState(buffer);
+		processor.saveState(buffer);
+		interrupts.saveState(buffer);
+		timer.saveState(buffer);
+		dma.saveState(buffer);
+		joypad.saveState(buffer);
+		gpu.saveRegisters(buffer);
+		buffer.put((byte) (mem.isBiosMapped() ? 1 : 0));
+		if (mem.getLoadedRomFile() != null) {
+			mem.getLoadedRomFile().saveControlState(buffer);
+		}
+	}
+
+	public void loadRegisterState(ByteBuffer buffer) {
+		scheduler.loadState(buffer);
+		processor.loadState(buffer);
+		interrupts.loadState(buffer);
+		timer.loadState(buffer);
+		dma.loadState(buffer);
+		joypad.loadState(buffer);
+		gpu.loadRegisters(buffer);
+		mem.setBiosMapped(buffer.get() != 0);
+		if (mem.getLoadedRomFile() != null) {
+			mem.getLoadedRomFile().loadControlState(buffer);
+		}
+		dma.syncBusLocks();
+	}
+
+	public boolean isFastBoot() {
+		return fastBoot;
+	}
+
+	public void setFastBoot(boolean fastBoot) {
+		this.fastBoot = fastBoot;
 	}
 
 	public MMU getMem() {
@@ -65,6 +326,72 @@ public class TailspinGB {
 		this.mem = mem;
 	}
 
+	public InterruptController getInterrupts() {
+		return interrupts;
+	}
+
+	public void setInterrupts(InterruptController interrupts) {
+		this.interrupts = interrupts;
+	}
+
+	public Scheduler getScheduler() {
+		return scheduler;
+	}
+
+	public void setScheduler(Scheduler scheduler) {
+		this.scheduler = scheduler;
+	}
+
+	public Timer getTimer() {
+		return timer;
+	}
+
+	public void setTimer(Timer timer) {
+		this.timer = timer;
+	}
+
+	public DmaController getDma() {
+		return dma;
+	}
+
+	public void setDma(DmaController dma) {
+		this.dma = dma;
+	}
+
+	public Joypad getJoypad() {
+		return joypad;
+	}
+
+	public void setJoypad(Joypad joypad) {
+		this.joypad = joypad;
+	}
+
+	public boolean isHeadless() {
+		return headless;
+	}
+
+	/**
+	 * Switches headless mode, for batch runs that need no picture. A headless
+	 * system runs at unlimited speed and the GPU does not draw frames, though
+	 * its timing, LY, STAT and interrupts are exact; a frame is drawn only if
+	 * requested with GPU.requestFrame(). Leaving headless mode turns drawing
+	 * back on and sets the speed to real time.
+	 */
+	public void setHeadless(boolean headless) {
+		this.headless = headless;
+		gpu.setRendering(!headless);
+		pacer.setSpeed(headless ? FramePacer.UNLIMITED : FramePacer.REAL_TIME);
+		logger.info("Headless mode " + (headless ? "on" : "off"));
+	}
+
+	public FramePacer getPacer() {
+		return pacer;
+	}
+
+	public void setPacer(FramePacer pacer) {
+		this.pacer = pacer;
+	}
+
 	public GPU getGpu() {
 		return gpu;
 	}
@@ -0,0 +1,240 @@
+/**
+ * Timer.java
+ * 
+ * @author anewkirk
+ * 
+ * Licensing information can be found in the root directory of the project.
+ */
+
+package com.echodrop.gameboy.core;
+
+import java.nio.ByteBuffer;
+import java.util.logging.Logger;
+
+import com.echodrop.gameboy.interfaces.IIoDevice;
+import com.echodrop.gameboy.interfaces.IScheduledEvent;
+import com.echodrop.gameboy.interfaces.IStateful;
+
+/**
+ * Emulation of the divider and timer registers (DIV 0xFF04, TIMA 0xFF05, TMA
+ * 0xFF06, TAC 0xFF07).
+ * 
+ * Nothing here is ticked by the CPU. DIV is the upper byte of a counter that
+ * runs with the scheduler's cycle count, so it is computed when read. TIMA
+ * counts how many times the counter has crossed a multiple of the selected
+ * period since it was last brought up to date, and is likewise only brought up
+ * to date when it is accessed. The cycle at which TIMA will next overflow is
+ * known in advance, so it is handed to the scheduler as an event, which is
+ * when the timer interrupt is raised and TIMA reloaded from TMA.
+ */
+public class Timer implements IIoDevice, IScheduledEvent, IStateful {
+
+	private static final Logger logger = Logger.getLogger(Timer.class.getName());
+
+	public static final char DIV_ADDRESS = 0xFF04;
+	public static final char TIMA_ADDRESS = 0xFF05;
+	public static final char TMA_ADDRESS = 0xFF06;
+	public static final char TAC_ADDRESS = 0xFF07;
+
+	/**
+	 * log2 of the TIMA period in clock cycles for each TAC clock select value
+	 * (4096Hz, 262144Hz, 65536Hz, 16384Hz)
+	 */
+	private static final int[] PERIOD_SHIFT = { 10, 4, 6, 8 };
+
+	private TailspinGB system;
+	private Scheduler scheduler;
+
+	/**
+	 * Cycle at which the internal divider counter was last zero
+	 */
+	private long divBase;
+
+	/**
+	 * Value of TIMA as of timaBase
+	 */
+	private int tima;
+	private long timaBase;
+
+	private int tma;
+	private int tac;
+
+	public Timer(TailspinGB system) {
+		this.system = system;
+		this.scheduler = system.getScheduler();
+		scheduler.setHandler(Scheduler.TIMER_OVERFLOW, this);
+		this.initialize();
+	}
+
+	/**
+	 * Sets the timer to its initial state
+	 */
+	public void initialize() {
+		divBase = scheduler.getCycles();
+		timaBase = divBase;
+		tima = 0;
+		tma = 0;
+		tac = 0;
+		scheduler.cancel(Scheduler.TIMER_OVERFLOW);
+	}
+
+	public void initLogging() {
+		logger.setParent(system.getLogger());
+	}
+
+	private boolean isRunning() {
+		return (tac & 0x04) != 0;
+	}
+
+	private int getPeriodShift() {
+		return PERIOD_SHIFT[tac & 0x03];
+	}
+
+	/**
+	 * @return the internal 16 bit divider counter at the specified cycle
+	 */
+	private int getCounter(long cycle) {
+		return (int) (cycle - divBase) & 0xFFFF;
+	}
+
+	/**
+	 * Brings TIMA up to date with the specified cycle, handling an overflow if
+	 * the overflow event has not run yet
+	 */
+	private void sync(long now) {
+		if (isRunning()) {
+			int shift = getPeriodShift();
+			long ticks = ((now - divBase) >> shift) - ((timaBase - divBase) >> shift);
+			if (ticks > 0) {
+				addTicks(ticks);
+			}
+		}
+		timaBase = now;
+	}
+
+	private void addTicks(long ticks) {
+		long total = tima + ticks;
+		if (total > 0xFF) {
+			/* after an overflow, counting restarts from TMA */
+			long span = 0x100 - tma;
+			tima = (int) (tma + (total - 0x100) % span);
+			system.getInterrupts().request(InterruptController.TIMER);
+			logger.fine("TIMA overflow");
+		} else {
+			tima = (int) total;
+		}
+	}
+
+	/**
+	 * Schedules the overflow event for the current TIMA, TMA and TAC values.
+	 * Must be called after sync() whenever one of them changes.
+	 */
+	private void reschedule() {
+		if (!isRunning()) {
+			scheduler.cancel(Scheduler.TIMER_OVERFLOW);
+			return;
+		}
+		int shift = getPeriodShift();
+		long lastTick = (timaBase - divBase) >> shift;
+		long overflowTick = lastTick + (0x100 - tima);
+		scheduler.schedule(Scheduler.TIMER_OVERFLOW, divBase + (overflowTick << shift));
+	}
+
+	@Override
+	public void onEvent(int event, long cycle) {
+		sync(cycle);
+		reschedule();
+	}
+
+	@Override
+	public byte readIo(char address) {
+		long now = scheduler.getCycles();
+		switch (address) {
+		case DIV_ADDRESS:
+			return (byte) (getCounter(now) >> 8);
+		case TIMA_ADDRESS:
+			sync(now);
+			return (byte) tima;
+		case TMA_ADDRESS:
+			return (byte) tma;
+		default:
+			return (byte) (0xF8 | tac);
+		}
+	}
+
+	@Override
+	public void writeIo(char address, byte data) {
+		long now = scheduler.getCycles();
+		sync(now);
+		switch (address) {
+		case DIV_ADDRESS:
+			/*
+			 * Resetting the divider while the bit TIMA watches is high looks
+			 * like a falling edge to the timer
+			 */
+			if (isRunning() && (getCounter(now) & (1 << (getPeriodShift() - 1))) != 0) {
+				addTicks(1);
+			}
+			divBase = now;
+			break;
+		case TIMA_ADDRESS:
+			tima = data & 0xFF;
+			break;
+		case TMA_ADDRESS:
+			tma = data & 0xFF;
+			break;
+		default:
+			tac = data & 0x07;
+			break;
+		}
+		reschedule();
+	}
+
+	/**
+	 * Sets the internal 16 bit divider counter, as if the timer had been
+	 * running since power-on
+	 */
+	public void setCounter(int counter) {
+		long now = scheduler.getCycles();
+		sync(now);
+		divBase = now - (counter & 0xFFFF);
+		timaBase = now;
+		reschedule();
+	}
+
+	/**
+	 * The overflow event is restored with the scheduler
+	 */
+	@Override
+	public void saveState(ByteBuffer buffer) {
+		buffer.putLong(divBase);
+		buffer.putLong(timaBase);
+		buffer.put((byte) tima).put((byte) tma).put((byte) tac);
+	}
+
+	@Override
+	public void loadState(ByteBuffer buffer) {
+		divBase = buffer.getLong();
+		timaBase = buffer.getLong();
+		tima = buffer.get() & 0xFF;
+		tma = buffer.get() & 0xFF;
+		tac = buffer.get() & 0x07;
+	}
+
+	public byte getDiv() {
+		return readIo(DIV_ADDRESS);
+	}
+
+	public byte getTima() {
+		return readIo(TIMA_ADDRESS);
+	}
+
+	public byte getTma() {
+		return (byte) tma;
+	}
+
+	public byte getTac() {
+		return (byte) (0xF8 | tac);
+	}
+
+}
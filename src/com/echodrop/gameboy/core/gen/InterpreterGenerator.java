@@ -0,0 +1,464 @@
+/**
+ * InterpreterGenerator.java
+ *
+ * @author anewkirk
+ *
+ * Licensing information can be found in the root directory of the project.
+ */
+
+package com.echodrop.gameboy.core.gen;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import com.echodrop.gameboy.core.Opcode;
+import com.echodrop.gameboy.core.OpcodeTable;
+import com.echodrop.gameboy.core.Operand;
+
+/**
+ * Generates the CPU's instruction dispatch from OpcodeTable. The output is a
+ * pair of flat switch statements that are spliced into CPU.java between the
+ * generated code markers, replacing whatever was there before.
+ *
+ * Usage: InterpreterGenerator [path to CPU.java]
+ */
+public class InterpreterGenerator {
+
+	private static final String BEGIN_MARKER = "\t/* BEGIN GENERATED INTERPRETER */";
+	private static final String END_MARKER = "\t/* END GENERATED INTERPRETER */";
+	private static final String DEFAULT_PATH = "src/com/echodrop/gameboy/core/CPU.java";
+
+	private static final int FLAG_Z = 0x80;
+	private static final int FLAG_N = 0x40;
+	private static final int FLAG_H = 0x20;
+	private static final int FLAG_C = 0x10;
+	private static final int[] FLAG_BITS = { FLAG_Z, FLAG_N, FLAG_H, FLAG_C };
+
+	private StringBuilder out = new StringBuilder();
+
+	public static void main(String[] args) throws IOException {
+		Path cpu = Paths.get(args.length > 0 ? args[0] : DEFAULT_PATH);
+		String source = new String(Files.readAllBytes(cpu), StandardCharsets.UTF_8);
+		int begin = source.indexOf(BEGIN_MARKER);
+		int end = source.indexOf(END_MARKER);
+		if (begin < 0 || end < begin) {
+			throw new IllegalStateException("Generated code markers not found in " + cpu);
+		}
+
+		String generated = new InterpreterGenerator().generate();
+		source = source.substring(0, begin + BEGIN_MARKER.length()) + "\n" + generated
+				+ source.substring(end);
+		Files.write(cpu, source.getBytes(StandardCharsets.UTF_8));
+		System.out.println("Wrote " + (OpcodeTable.getOpcodeCount() + OpcodeTable.getCbOpcodeCount())
+				+ " opcodes to " + cpu);
+	}
+
+	/**
+	 * @return source for the execute() and executeExtended() methods
+	 */
+	public String generate() {
+		line(1, "// Do not edit by hand: regenerate with InterpreterGenerator after changing OpcodeTable.");
+		line(0, "");
+		line(1, "/**");
+		line(1, " * Executes a single unprefixed instruction whose opcode has already been");
+		line(1, " * fetched");
+		line(1, " * ");
+		line(1, " * @return the number of clock cycles the instruction took");
+		line(1, " */");
+		line(1, "private int execute(int opcode) {");
+		line(2, "char address;");
+		line(2, "switch (opcode) {");
+		for (int i = 0; i < 256; i++) {
+			Opcode o = OpcodeTable.get(i);
+			if (o != null) {
+				emitCase(o);
+			}
+		}
+		line(2, "default:");
+		line(3, "throw new InstructionNotImplementedException((byte) opcode, (char) (pc - 1));");
+		line(2, "}");
+		line(1, "}");
+		line(0, "");
+		line(1, "/**");
+		line(1, " * Executes a single CB prefixed instruction");
+		line(1, " * ");
+		line(1, " * @return the number of clock cycles the instruction took, including the");
+		line(1, " *         prefix");
+		line(1, " */");
+		line(1, "private int executeExtended(int opcode) {");
+		line(2, "char address;");
+		line(2, "switch (opcode) {");
+		for (int i = 0; i < 256; i++) {
+			emitCase(OpcodeTable.getExtended(i));
+		}
+		line(2, "default:");
+		line(3, "throw new InstructionNotImplementedException((byte) opcode, (char) (pc - 1));");
+		line(2, "}");
+		line(1, "}");
+		line(0, "");
+		return out.toString();
+	}
+
+	private void emitCase(Opcode o) {
+		line(2, "case " + hex(o.getCode()) + ": // " + o.getMnemonic());
+		Operand[] ops = o.getOperands();
+		String op = o.getOperation();
+
+		if (o.isConditional()) {
+			emitConditional(o);
+			return;
+		}
+
+		switch (op) {
+		case "NOP":
+			break;
+		case "LD":
+		case "LDH":
+			emitLoad(ops[0], ops[1]);
+			break;
+		case "INC":
+		case "DEC":
+			if (ops[0].isWide()) {
+				line(3, write16(ops[0], "(char) (" + read16(ops[0]) + (op.equals("INC") ? " + 1)" : " - 1)")) + ";");
+			} else {
+				emitReadModifyWrite(ops[0], op.toLowerCase() + "8(%s)");
+			}
+			break;
+		case "ADD":
+			if (ops[0] == Operand.HL) {
+				line(3, "writeHL(add16(readHL(), " + read16(ops[1]) + "));");
+			} else if (ops[0] == Operand.SP) {
+				line(3, "sp = addSpSigned(read8Immediate());");
+			} else {
+				line(3, "a.setValue(add8(a.getValue(), " + read8(ops[1]) + ", 0));");
+			}
+			break;
+		case "ADC":
+			line(3, "a.setValue(add8(a.getValue(), " + read8(ops[1]) + ", carry()));");
+			break;
+		case "SUB":
+			line(3, "a.setValue(sub8(a.getValue(), " + read8(ops[0]) + ", 0));");
+			break;
+		case "SBC":
+			line(3, "a.setValue(sub8(a.getValue(), " + read8(ops[1]) + ", carry()));");
+			break;
+		case "CP":
+			line(3, "sub8(a.getValue(), " + read8(ops[0]) + ", 0);");
+			break;
+		case "AND":
+		case "XOR":
+		case "OR":
+			line(3, "a.setValue(" + op.toLowerCase() + "8(a.getValue(), " + read8(ops[0]) + "));");
+			break;
+		case "RLCA":
+		case "RLA":
+		case "RRCA":
+		case "RRA":
+			line(3, "a.setValue(" + op.substring(0, op.length() - 1).toLowerCase() + "(a.getValue()));");
+			break;
+		case "RLC":
+		case "RRC":
+		case "RL":
+		case "RR":
+		case "SLA":
+		case "SRA":
+		case "SWAP":
+		case "SRL":
+			emitReadModifyWrite(ops[0], op.toLowerCase() + "(%s)");
+			break;
+		case "BIT":
+			line(3, "bit(" + o.getParameter() + ", " + read8(ops[1]) + ");");
+			break;
+		case "RES":
+			emitReadModifyWrite(ops[1], "%s & ~" + hex(1 << o.getParameter()));
+			break;
+		case "SET":
+			emitReadModifyWrite(ops[1], "%s | " + hex(1 << o.getParameter()));
+			break;
+		case "DAA":
+			line(3, "daa();");
+			break;
+		case "CPL":
+			line(3, "a.setValue(~a.getValue());");
+			break;
+		case "SCF":
+			break;
+		case "CCF":
+			line(3, "aluFlags = ~f.getValue() & " + hex(FLAG_C) + ";");
+			break;
+		case "JP":
+			line(3, "pc = " + (ops[0] == Operand.IND_HL ? "readHL()" : "read16Immediate()") + ";");
+			break;
+		case "JR":
+			line(3, "jr(read8Immediate());");
+			break;
+		case "CALL":
+			line(3, "call(read16Immediate());");
+			break;
+		case "RET":
+			line(3, "pc = pop();");
+			break;
+		case "RETI":
+			line(3, "pc = pop();");
+			line(3, "reti();");
+			break;
+		case "RST":
+			line(3, "call((char) " + hex(o.getParameter()) + ");");
+			break;
+		case "PUSH":
+			line(3, "push(" + read16(ops[0]) + ");");
+			break;
+		case "POP":
+			line(3, write16(ops[0], "pop()") + ";");
+			if (ops[0] == Operand.AF) {
+				line(3, "aluFlags = f.getValue();");
+			}
+			break;
+		case "DI":
+			line(3, "di();");
+			break;
+		case "EI":
+			line(3, "ei();");
+			break;
+		case "HALT":
+			line(3, "halt();");
+			break;
+		case "STOP":
+			line(3, "read8Immediate();");
+			line(3, "stop();");
+			break;
+		case "PREFIX":
+			line(3, "return executeExtended(read8Immediate() & 0xFF);");
+			return;
+		default:
+			throw new IllegalStateException("No template for " + o.getMnemonic());
+		}
+
+		emitFlags(o.getFlags());
+		line(3, "return " + o.getMTime() + ";");
+	}
+
+	/**
+	 * Emits a branch that takes the longer timing when its condition is met
+	 */
+	private void emitConditional(Opcode o) {
+		String op = o.getOperation();
+		line(3, "if (" + condition(o.getOperands()[0]) + ") {");
+		switch (op) {
+		case "JP":
+			line(4, "pc = read16Immediate();");
+			break;
+		case "JR":
+			line(4, "jr(read8Immediate());");
+			break;
+		case "CALL":
+			line(4, "call(read16Immediate());");
+			break;
+		case "RET":
+			line(4, "pc = pop();");
+			break;
+		default:
+			throw new IllegalStateException("No conditional template for " + o.getMnemonic());
+		}
+		line(4, "return " + o.getMTime() + ";");
+		line(3, "}");
+		int skip = o.getLength() - 1;
+		if (skip == 1) {
+			line(3, "pc++;");
+		} else if (skip > 1) {
+			line(3, "pc += " + skip + ";");
+		}
+		line(3, "return " + o.getConditional_time() + ";");
+	}
+
+	private void emitLoad(Operand dst, Operand src) {
+		if (dst == Operand.HL && src == Operand.SP_R8) {
+			line(3, "writeHL(addSpSigned(read8Immediate()));");
+		} else if (dst == Operand.SP && src == Operand.HL) {
+			line(3, "sp = readHL();");
+		} else if (dst == Operand.IND_A16 && src == Operand.SP) {
+			line(3, "writeWord(read16Immediate(), sp);");
+		} else if (dst.isWide()) {
+			line(3, write16(dst, read16(src)) + ";");
+		} else {
+			line(3, write8(dst, read8(src)) + ";");
+		}
+	}
+
+	/**
+	 * Emits an operation that reads an 8-bit operand, transforms it, and writes
+	 * it back to the same place. expression is a format string in which %s is
+	 * replaced with the operand's current value.
+	 */
+	private void emitReadModifyWrite(Operand target, String expression) {
+		if (target == Operand.IND_HL) {
+			line(3, "address = readHL();");
+			line(3, "mem.writeByte(address, (byte) (" + String.format(expression, "mem.readByte(address)") + "));");
+		} else {
+			String r = register(target);
+			line(3, r + ".setValue(" + String.format(expression, r + ".getValue()") + ");");
+		}
+	}
+
+	/**
+	 * Emits the flag update described by a Z N H C flag specification
+	 */
+	private void emitFlags(String flags) {
+		int keep = 0;
+		int set = 0;
+		int computed = 0;
+		for (int i = 0; i < 4; i++) {
+			switch (flags.charAt(i)) {
+			case '-':
+				keep |= FLAG_BITS[i];
+				break;
+			case '0':
+				break;
+			case '1':
+				set |= FLAG_BITS[i];
+				break;
+			default:
+				computed |= FLAG_BITS[i];
+			}
+		}
+		if (keep == 0xF0) {
+			return;
+		}
+		StringBuilder expression = new StringBuilder();
+		if (keep != 0) {
+			expression.append("(f.getValue() & " + hex(keep) + ")");
+		}
+		if (set != 0) {
+			expression.append(expression.length() > 0 ? " | " : "").append(hex(set));
+		}
+		if (computed != 0) {
+			String flagsExpression = "aluFlags & " + hex(computed);
+			expression.append(expression.length() > 0 ? " | (" + flagsExpression + ")" : flagsExpression);
+		}
+		if (expression.length() == 0) {
+			expression.append("0");
+		}
+		line(3, "f.setValue(" + expression + ");");
+	}
+
+	private String condition(Operand o) {
+		switch (o) {
+		case COND_NZ:
+			return "(f.getValue() & " + hex(FLAG_Z) + ") == 0";
+		case COND_Z:
+			return "(f.getValue() & " + hex(FLAG_Z) + ") != 0";
+		case COND_NC:
+			return "(f.getValue() & " + hex(FLAG_C) + ") == 0";
+		case COND_C:
+			return "(f.getValue() & " + hex(FLAG_C) + ") != 0";
+		default:
+			throw new IllegalArgumentException(o + " is not a condition");
+		}
+	}
+
+	private String register(Operand o) {
+		switch (o) {
+		case A:
+		case B:
+		case C:
+		case D:
+		case E:
+		case H:
+		case L:
+			return o.name().toLowerCase();
+		default:
+			throw new IllegalArgumentException(o + " is not an 8-bit register");
+		}
+	}
+
+	/**
+	 * @return an expression for the address an indirect operand refers to
+	 */
+	private String address(Operand o) {
+		switch (o) {
+		case IND_BC:
+			return "readBC()";
+		case IND_DE:
+			return "readDE()";
+		case IND_HL:
+			return "readHL()";
+		case IND_HL_INC:
+			return "hlPostIncrement()";
+		case IND_HL_DEC:
+			return "hlPostDecrement()";
+		case IND_C:
+			return "(char) (0xFF00 | (c.getValue() & 0xFF))";
+		case A8:
+			return "(char) (0xFF00 | (read8Immediate() & 0xFF))";
+		case IND_A16:
+			return "read16Immediate()";
+		default:
+			throw new IllegalArgumentException(o + " is not an indirect operand");
+		}
+	}
+
+	private String read8(Operand o) {
+		switch (o) {
+		case D8:
+			return "read8Immediate()";
+		case A:
+		case B:
+		case C:
+		case D:
+		case E:
+		case H:
+		case L:
+			return register(o) + ".getValue()";
+		default:
+			return "mem.readByte(" + address(o) + ")";
+		}
+	}
+
+	private String write8(Operand o, String value) {
+		switch (o) {
+		case A:
+		case B:
+		case C:
+		case D:
+		case E:
+		case H:
+		case L:
+			return register(o) + ".setValue(" + value + ")";
+		default:
+			return "mem.writeByte(" + address(o) + ", " + value + ")";
+		}
+	}
+
+	private String read16(Operand o) {
+		switch (o) {
+		case D16:
+			return "read16Immediate()";
+		case SP:
+			return "sp";
+		default:
+			return "read" + o.name() + "()";
+		}
+	}
+
+	private String write16(Operand o, String value) {
+		if (o == Operand.SP) {
+			return "sp = " + value;
+		}
+		return "write" + o.name() + "(" + value + ")";
+	}
+
+	private static String hex(int value) {
+		return "0x" + (value < 0x10 ? "0" : "") + Integer.toHexString(value).toUpperCase();
+	}
+
+	private void line(int indent, String text) {
+		for (int i = 0; i < indent; i++) {
+			out.append('\t');
+		}
+		out.append(text).append('\n');
+	}
+
+}
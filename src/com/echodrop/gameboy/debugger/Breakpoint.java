@@ -17,6 +17,11 @@ import com.echodrop.gameboy.util.StringUtils;
  */
 public class Breakpoint {
 
+	/**
+	 * Bank qualifier for a breakpoint that triggers whichever bank is mapped
+	 */
+	public static final int ANY_BANK = -1;
+
 	/**
 	 * Set to true if the breakpoint will trigger based on an equality condition
 	 */
@@ -38,6 +43,12 @@ public class Breakpoint {
 	 */
 	private char address;
 
+	/**
+	 * The ROM bank that must be mapped at address for the breakpoint to
+	 * trigger, or ANY_BANK
+	 */
+	private int bank = ANY_BANK;
+
 	public Breakpoint(boolean conditional, Register watched, byte targetValue, char address) {
 		this.conditional = conditional;
 		this.watched = watched;
@@ -88,6 +99,18 @@ public class Breakpoint {
 		return false;
 	}
 
+	/**
+	 * @param bank
+	 *            the ROM bank mapped at pc, or ANY_BANK if pc is not in ROM
+	 * @return true if conditions are met for this breakpoint to trigger
+	 */
+	public boolean trigger(char pc, int bank) {
+		if (this.bank != ANY_BANK && this.bank != bank) {
+			return false;
+		}
+		return trigger(pc);
+	}
+
 	public char getAddress() {
 		return address;
 	}
@@ -96,9 +119,20 @@ public class Breakpoint {
 		this.address = address;
 	}
 
+	public int getBank() {
+		return bank;
+	}
+
+	public void setBank(int bank) {
+		this.bank = bank;
+	}
+
 	@Override
 	public String toString() {
 		String result = StringUtils.charToReadableHex(getAddress());
+		if (bank != ANY_BANK) {
+			result += " (bank " + bank + ")";
+		}
 		if (isConditional()) {
 			result += "\n";
 			if(getWatched() instanceof Register) {
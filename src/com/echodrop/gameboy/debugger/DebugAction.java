@@ -34,5 +34,13 @@ public enum DebugAction {
 	VIDEO,
 	TILEWRITETEST,
 	RENDER,
-	LOADBIOS;
+	LOADBIOS,
+	DISASM,
+	REWIND,
+	STEPBACK,
+	REVERSECONTINUE,
+	JOURNAL,
+	WATCH,
+	LSWATCH,
+	CLRWATCH;
 }
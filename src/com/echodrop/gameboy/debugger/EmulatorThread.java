@@ -0,0 +1,389 @@
+/**
+ * EmulatorThread.java
+ *
+ * @author anewkirk
+ *
+ * Licensing information can be found in the root directory of the project.
+ */
+
+package com.echodrop.gameboy.debugger;
+
+import java.io.File;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.echodrop.gameboy.core.FramePacer;
+import com.echodrop.gameboy.core.SaveState;
+import com.echodrop.gameboy.core.TailspinGB;
+import com.echodrop.gameboy.interfaces.IEmulatorCommand;
+import com.echodrop.gameboy.movie.Movie;
+import com.echodrop.gameboy.movie.MovieRecorder;
+import com.echodrop.gameboy.rom.RomImage;
+import com.echodrop.gameboy.util.MpscQueue;
+
+/**
+ * The one thread that runs a system. Other threads (UIs, the debugger) never
+ * touch the system directly; they queue commands, which this thread executes
+ * between batches of instructions: after each frame while running, or after
+ * each STEP_BATCH instructions while stepping. Commands therefore never race
+ * with emulation, and queueing one never blocks, since the queue is lock-free.
+ * While paused with nothing to do the thread sleeps until a command arrives.
+ *
+ * The common commands have methods here. Anything else can be queued with
+ * submit().
+ *
+ * Snapshots of the system are published while running and whenever emulation
+ * stops, for other threads to inspect; see getSnapshots().
+ */
+public class EmulatorThread implements Runnable {
+
+	private static final Logger logger = Logger.getLogger(EmulatorThread.class.getName());
+
+	/**
+	 * Instructions stepped between checks for commands
+	 */
+	public static final int STEP_BATCH = 4096;
+
+	private final TailspinDebugger tdb;
+	private final MpscQueue<IEmulatorCommand> commands = new MpscQueue<IEmulatorCommand>();
+	private final SnapshotPublisher snapshots = new SnapshotPublisher();
+	private volatile Thread thread;
+	private volatile boolean shutdown;
+
+	/**
+	 * Whether emulation is running freely, rather than paused. Only written
+	 * by the emulation thread.
+	 */
+	private volatile boolean running;
+
+	/**
+	 * Instructions left to step while paused
+	 */
+	private long steps;
+
+	private volatile Thread.UncaughtExceptionHandler errorHandler;
+
+	/**
+	 * Records movies; only used by the emulation thread
+	 */
+	private MovieRecorder recorder;
+	private volatile boolean recording;
+
+	public EmulatorThread(TailspinDebugger tdb) {
+		this.tdb = tdb;
+	}
+
+	/**
+	 * Starts the emulation thread, paused
+	 */
+	public void start() {
+		if (thread != null) {
+			throw new IllegalStateException("Emulation thread already started");
+		}
+		thread = new Thread(this, "Emulation");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Stops the emulation thread and waits for it to finish. Commands still
+	 * queued are dropped.
+	 */
+	public void shutdown() throws InterruptedException {
+		shutdown = true;
+		Thread t = thread;
+		if (t != null) {
+			LockSupport.unpark(t);
+			t.join();
+		}
+	}
+
+	@Override
+	public void run() {
+		TailspinGB system = tdb.getSystem();
+		FramePacer pacer = system.getPacer();
+		while (!shutdown) {
+			executeCommands();
+			if (running) {
+				if (tdb.runFrame()) {
+					running = false;
+					if (tdb.getWatchHit() != null) {
+						logger.info("Watchpoint triggered: " + tdb.getWatchHit());
+					} else {
+						logger.info("Breakpoint reached at 0x"
+								+ Integer.toHexString(system.getProcessor().getPc()).toUpperCase());
+					}
+				} else {
+					snapshots.update(system);
+					pacer.endFrame();
+				}
+			} else if (steps > 0) {
+				long batch = Math.min(steps, STEP_BATCH);
+				for (long i = 0; i < batch; i++) {
+					tdb.step();
+				}
+				steps -= batch;
+				snapshots.update(system);
+			} else if (commands.isEmpty()) {
+				snapshots.publish(system);
+				LockSupport.park(this);
+			}
+		}
+		logger.fine("Emulation thread stopped");
+	}
+
+	/**
+	 * Executes queued commands. Stops after one that starts stepping, so the
+	 * commands behind it see at least the first batch of its instructions.
+	 */
+	private void executeCommands() {
+		IEmulatorCommand command;
+		boolean stepping = steps > 0;
+		while ((stepping || steps == 0) && (command = commands.poll()) != null) {
+			try {
+				command.execute(tdb);
+			} catch (Exception e) {
+				Thread.UncaughtExceptionHandler handler = errorHandler;
+				if (handler != null) {
+					handler.uncaughtException(Thread.currentThread(), e);
+				} else {
+					logger.log(Level.SEVERE, "Emulator command failed", e);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Queues a command for the emulation thread. May be called from any
+	 * thread, and never blocks.
+	 */
+	public void submit(IEmulatorCommand command) {
+		commands.offer(command);
+		Thread t = thread;
+		if (t != null) {
+			LockSupport.unpark(t);
+		}
+	}
+
+	/**
+	 * Stops running or stepping at the next batch boundary
+	 */
+	public void pause() {
+		submit(new IEmulatorCommand() {
+			@Override
+			public void execute(TailspinDebugger tdb) {
+				running = false;
+				steps = 0;
+			}
+		});
+	}
+
+	/**
+	 * Runs freely, at the frame pacer's speed, until paused or a breakpoint
+	 * is reached
+	 */
+	public void resume() {
+		submit(new IEmulatorCommand() {
+			@Override
+			public void execute(TailspinDebugger tdb) {
+				if (!running) {
+					running = true;
+					steps = 0;
+					tdb.getSystem().getPacer().start();
+				}
+			}
+		});
+	}
+
+	/**
+	 * Pauses, then executes a number of instructions. Commands queued after
+	 * this one are executed once the first STEP_BATCH of them have run.
+	 */
+	public void step(final long instructions) {
+		submit(new IEmulatorCommand() {
+			@Override
+			public void execute(TailspinDebugger tdb) {
+				running = false;
+				steps += instructions;
+			}
+		});
+	}
+
+	/**
+	 * Pauses and resets the system
+	 */
+	public void reset() {
+		submit(new IEmulatorCommand() {
+			@Override
+			public void execute(TailspinDebugger tdb) {
+				running = false;
+				steps = 0;
+				tdb.getSystem().reset();
+			}
+		});
+	}
+
+	public void addBreakpoint(final Breakpoint bp) {
+		submit(new IEmulatorCommand() {
+			@Override
+			public void execute(TailspinDebugger tdb) {
+				tdb.addBreakpoint(bp);
+			}
+		});
+	}
+
+	public void clearBreakpoints() {
+		submit(new IEmulatorCommand() {
+			@Override
+			public void execute(TailspinDebugger tdb) {
+				tdb.clearBreakpoints();
+			}
+		});
+	}
+
+	/**
+	 * Adds a window of memory to the published snapshots
+	 */
+	public void addSnapshotWindow(final char start, final int length) {
+		submit(new IEmulatorCommand() {
+			@Override
+			public void execute(TailspinDebugger tdb) {
+				snapshots.addWindow(start, length);
+			}
+		});
+	}
+
+	/**
+	 * Pauses, resets the system and loads a ROM
+	 *
+	 * @param bootstrap
+	 *            the bootstrap to run, or null to use fast boot
+	 */
+	public void loadRom(final RomImage image, final byte[] bootstrap) {
+		submit(new IEmulatorCommand() {
+			@Override
+			public void execute(TailspinDebugger tdb) throws Exception {
+				running = false;
+				steps = 0;
+				TailspinGB system = tdb.getSystem();
+				system.reset();
+				if (bootstrap != null) {
+					system.getMem().loadBootstrap(bootstrap);
+				}
+				system.setFastBoot(bootstrap == null);
+				system.getMem().loadRom(image);
+				if (system.isFastBoot()) {
+					system.skipBootstrap();
+				}
+			}
+		});
+	}
+
+	/**
+	 * Captures the system's state into state, then runs done on the
+	 * emulation thread, e.g. to hand the state to another thread for writing
+	 *
+	 * @param done
+	 *            may be null
+	 */
+	public void saveState(final SaveState state, final Runnable done) {
+		submit(new IEmulatorCommand() {
+			@Override
+			public void execute(TailspinDebugger tdb) {
+				state.capture(tdb.getSystem());
+				if (done != null) {
+					done.run();
+				}
+			}
+		});
+	}
+
+	/**
+	 * Restores a state. A SaveStateException goes to the error handler.
+	 */
+	public void loadState(final SaveState state) {
+		submit(new IEmulatorCommand() {
+			@Override
+			public void execute(TailspinDebugger tdb) throws Exception {
+				state.restore(tdb.getSystem());
+			}
+		});
+	}
+
+	/**
+	 * Resets the system and starts recording a movie of it, if one is not
+	 * already being recorded
+	 */
+	public void startRecording() {
+		submit(new IEmulatorCommand() {
+			@Override
+			public void execute(TailspinDebugger tdb) {
+				if (recorder == null) {
+					recorder = new MovieRecorder(tdb.getSystem());
+				}
+				if (!recorder.isRecording()) {
+					recorder.start();
+					recording = true;
+				}
+			}
+		});
+	}
+
+	/**
+	 * Stops recording and writes the movie to file. An IOException goes to
+	 * the error handler.
+	 */
+	public void stopRecording(final File file) {
+		submit(new IEmulatorCommand() {
+			@Override
+			public void execute(TailspinDebugger tdb) throws Exception {
+				if (recorder == null || !recorder.isRecording()) {
+					return;
+				}
+				recording = false;
+				Movie movie = recorder.stop();
+				movie.write(file);
+				logger.info("Movie of " + movie.getFrameCount() + " frames written to " + file);
+			}
+		});
+	}
+
+	/**
+	 * @return true if a movie is being recorded. Like isRunning(), the value
+	 *         may be out of date.
+	 */
+	public boolean isRecording() {
+		return recording;
+	}
+
+	/**
+	 * @return true if emulation is running freely. The value may be out of
+	 *         date by the time it is read, since commands are asynchronous.
+	 */
+	public boolean isRunning() {
+		return running;
+	}
+
+	/**
+	 * Sets the handler for exceptions thrown by commands, which is called on
+	 * the emulation thread. Without one they are logged.
+	 */
+	public void setErrorHandler(Thread.UncaughtExceptionHandler errorHandler) {
+		this.errorHandler = errorHandler;
+	}
+
+	/**
+	 * @return the publisher of snapshots for inspecting the system from other
+	 *         threads. Its windows must be changed through
+	 *         addSnapshotWindow() or a command.
+	 */
+	public SnapshotPublisher getSnapshots() {
+		return snapshots;
+	}
+
+	public TailspinDebugger getDebugger() {
+		return tdb;
+	}
+
+}
@@ -26,7 +26,7 @@ public class MemoryBlock implements IInternalByteValue {
 
 	@Override
 	public byte getValue() {
-		return system.getMem().readByte(address);
+		return system.getMem().peekByte(address);
 	}
 
 }
@@ -0,0 +1,316 @@
+/**
+ * RewindBuffer.java
+ *
+ * @author anewkirk
+ *
+ * Licensing information can be found in the root directory of the project.
+ */
+
+package com.echodrop.gameboy.debugger;
+
+import java.util.logging.Logger;
+
+import com.echodrop.gameboy.core.SaveState;
+import com.echodrop.gameboy.core.TailspinGB;
+import com.echodrop.gameboy.exceptions.SaveStateException;
+import com.echodrop.gameboy.interfaces.IGraphicsObserver;
+
+/**
+ * Keeps a window of recent save states so that emulation can be rewound.
+ *
+ * A snapshot is taken every few frames. Only the newest snapshot is kept in
+ * full; each older one is stored as the XOR of it and the snapshot after it,
+ * run length encoded. Between frames very little of RAM and VRAM changes, so
+ * these deltas are mostly zero runs and take a few hundred bytes each. Deltas
+ * go into a fixed size ring that is allocated up front, and the oldest ones
+ * are dropped to make room for new ones.
+ *
+ * Capturing and rewinding must happen on the emulation thread, or while
+ * emulation is stopped.
+ */
+public class RewindBuffer implements IGraphicsObserver {
+
+	private static final Logger logger = Logger.getLogger(RewindBuffer.class.getName());
+
+	public static final int DEFAULT_CAPACITY = 4 * 1024 * 1024;
+	public static final int DEFAULT_MAX_SNAPSHOTS = 8192;
+
+	/**
+	 * Frames between snapshots; about 15 snapshots a second
+	 */
+	public static final int DEFAULT_INTERVAL = 4;
+
+	private final TailspinGB system;
+	private final SaveState state = new SaveState();
+
+	/**
+	 * Encoded deltas, laid out one after another and wrapping around to the
+	 * start of the array. A delta never straddles the end of the array.
+	 */
+	private final byte[] storage;
+
+	/* Ring of deltas, indexed from oldest */
+	private final int[] deltaStart;
+	private final int[] deltaLength;
+	private int oldest;
+	private int count;
+
+	/**
+	 * Where the next delta goes: just past the newest one
+	 */
+	private int writePosition;
+
+	/**
+	 * The newest snapshot, in full
+	 */
+	private byte[] latest;
+	private byte[] current;
+	private byte[] encoded;
+
+	/**
+	 * Length of the snapshots, or 0 before the first one is taken
+	 */
+	private int stateLength;
+
+	/* Position in storage while decoding a delta */
+	private int cursor;
+
+	private int interval = DEFAULT_INTERVAL;
+	private int frames;
+	private boolean enabled;
+
+	public RewindBuffer(TailspinGB system) {
+		this(system, DEFAULT_CAPACITY, DEFAULT_MAX_SNAPSHOTS);
+	}
+
+	/**
+	 * @param capacity
+	 *            bytes available for deltas
+	 * @param maxSnapshots
+	 *            maximum number of snapshots kept, not counting the newest
+	 */
+	public RewindBuffer(TailspinGB system, int capacity, int maxSnapshots) {
+		this.system = system;
+		this.storage = new byte[capacity];
+		this.deltaStart = new int[maxSnapshots];
+		this.deltaLength = new int[maxSnapshots];
+		system.getGpu().registerObserver(this);
+	}
+
+	/**
+	 * Called by the GPU at the end of each frame
+	 */
+	@Override
+	public void updateDisplay() {
+		if (enabled && ++frames >= interval) {
+			frames = 0;
+			capture();
+		}
+	}
+
+	/**
+	 * Takes a snapshot of the current state
+	 */
+	public void capture() {
+		state.capture(system);
+		int length = state.getLength();
+		if (length != stateLength) {
+			/* a different cartridge; older snapshots can't be diffed against this one */
+			clear();
+			stateLength = length;
+			latest = new byte[length];
+			current = new byte[length];
+			encoded = new byte[length * 2 + 16];
+			state.toArray(latest);
+			return;
+		}
+
+		state.toArray(current);
+		store(encodeDelta(current, latest));
+		byte[] swap = latest;
+		latest = current;
+		current = swap;
+	}
+
+	/**
+	 * Restores the state from a number of snapshots ago, discarding the
+	 * snapshots taken after it. 0 restores the newest snapshot.
+	 *
+	 * @throws SaveStateException
+	 *             if a different cartridge has been loaded since the snapshot
+	 *             was taken
+	 */
+	public void rewind(int snapshots) throws SaveStateException {
+		if (snapshots < 0 || snapshots >= getSnapshotCount()) {
+			throw new IllegalArgumentException("Only " + getSnapshotCount() + " snapshots available");
+		}
+		for (int i = 0; i < snapshots; i++) {
+			int newest = (oldest + count - 1) % deltaStart.length;
+			applyDelta(newest, latest);
+			count--;
+		}
+		writePosition = count == 0 ? 0 : end((oldest + count - 1) % deltaStart.length);
+
+		state.fromArray(latest, stateLength);
+		state.restore(system);
+		frames = 0;
+		logger.fine("Rewound " + snapshots + " snapshots");
+	}
+
+	/**
+	 * Discards all snapshots
+	 */
+	public void clear() {
+		oldest = 0;
+		count = 0;
+		writePosition = 0;
+		stateLength = 0;
+		frames = 0;
+	}
+
+	/**
+	 * @return the XOR of a and b, run length encoded into the encoded array as
+	 *         pairs of (matching byte count, differing byte count) followed by
+	 *         the differing bytes
+	 */
+	private int encodeDelta(byte[] a, byte[] b) {
+		int out = 0;
+		int i = 0;
+		while (i < stateLength) {
+			int start = i;
+			while (i < stateLength && a[i] == b[i]) {
+				i++;
+			}
+			int literal = i;
+			while (i < stateLength && a[i] != b[i]) {
+				i++;
+			}
+			out = writeVarint(out, literal - start);
+			out = writeVarint(out, i - literal);
+			for (int j = literal; j < i; j++) {
+				encoded[out++] = (byte) (a[j] ^ b[j]);
+			}
+		}
+		return out;
+	}
+
+	/**
+	 * XORs a stored delta into target
+	 */
+	private void applyDelta(int delta, byte[] target) {
+		cursor = deltaStart[delta];
+		int end = end(delta);
+		int i = 0;
+		while (cursor < end) {
+			i += readVarint();
+			int literal = readVarint();
+			for (int j = 0; j < literal; j++) {
+				target[i++] ^= storage[cursor++];
+			}
+		}
+	}
+
+	/**
+	 * Copies length bytes of the encoded array into the ring as the newest
+	 * delta, dropping the oldest deltas it overwrites
+	 */
+	private void store(int length) {
+		if (length > storage.length) {
+			logger.warning("Snapshot delta does not fit in the rewind buffer");
+			count = 0;
+			writePosition = 0;
+			return;
+		}
+		if (count == deltaStart.length) {
+			dropOldest();
+		}
+
+		/* everything past the write position is older than everything before it */
+		int position = writePosition;
+		if (position + length > storage.length) {
+			while (count > 0 && deltaStart[oldest] >= position) {
+				dropOldest();
+			}
+			position = 0;
+		}
+		while (count > 0 && deltaStart[oldest] >= position && deltaStart[oldest] < position + length) {
+			dropOldest();
+		}
+
+		System.arraycopy(encoded, 0, storage, position, length);
+		int index = (oldest + count) % deltaStart.length;
+		deltaStart[index] = position;
+		deltaLength[index] = length;
+		count++;
+		writePosition = position + length;
+	}
+
+	private void dropOldest() {
+		oldest = (oldest + 1) % deltaStart.length;
+		count--;
+	}
+
+	private int end(int delta) {
+		return deltaStart[delta] + deltaLength[delta];
+	}
+
+	private int writeVarint(int position, int value) {
+		while (value >= 0x80) {
+			encoded[position++] = (byte) (value | 0x80);
+			value >>>= 7;
+		}
+		encoded[position++] = (byte) value;
+		return position;
+	}
+
+	private int readVarint() {
+		int value = 0;
+		int shift = 0;
+		byte b;
+		do {
+			b = storage[cursor++];
+			value |= (b & 0x7F) << shift;
+			shift += 7;
+		} while ((b & 0x80) != 0);
+		return value;
+	}
+
+	/**
+	 * @return the number of states that can be restored, including the newest
+	 */
+	public int getSnapshotCount() {
+		return stateLength == 0 ? 0 : count + 1;
+	}
+
+	/**
+	 * @return bytes of the ring used by deltas
+	 */
+	public int getBytesUsed() {
+		int used = 0;
+		for (int i = 0; i < count; i++) {
+			used += deltaLength[(oldest + i) % deltaStart.length];
+		}
+		return used;
+	}
+
+	public int getInterval() {
+		return interval;
+	}
+
+	/**
+	 * Sets the number of frames between snapshots
+	 */
+	public void setInterval(int interval) {
+		this.interval = Math.max(1, interval);
+	}
+
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	public void setEnabled(boolean enabled) {
+		this.enabled = enabled;
+		this.frames = 0;
+	}
+
+}
@@ -0,0 +1,116 @@
+/**
+ * SnapshotPublisher.java
+ *
+ * @author anewkirk
+ *
+ * Licensing information can be found in the root directory of the project.
+ */
+
+package com.echodrop.gameboy.debugger;
+
+import com.echodrop.gameboy.core.TailspinGB;
+
+/**
+ * Publishes StateSnapshots of a system for other threads to inspect while it
+ * runs. The thread running the system calls update() between instructions,
+ * and a new snapshot is taken when the last one is older than the publishing
+ * period. Readers get the latest with getSnapshot(), a single volatile read,
+ * so they never lock or stop emulation and never see a half-written state.
+ *
+ * The windows of memory to copy may only be changed by the thread running the
+ * system; the rate and getSnapshot() may be used from any thread.
+ */
+public class SnapshotPublisher {
+
+	public static final double DEFAULT_RATE = 60;
+
+	private volatile StateSnapshot snapshot;
+
+	/**
+	 * Nanoseconds between snapshots, or 0 to publish only when asked to
+	 */
+	private volatile long period;
+
+	/**
+	 * When the last snapshot was taken, in System.nanoTime() terms
+	 */
+	private long lastPublished;
+
+	private char[] windowStarts = new char[0];
+	private int[] windowLengths = new int[0];
+
+	public SnapshotPublisher() {
+		setRate(DEFAULT_RATE);
+	}
+
+	/**
+	 * Takes a snapshot if the last one is older than the period
+	 */
+	public void update(TailspinGB system) {
+		long period = this.period;
+		if (period > 0 && System.nanoTime() - lastPublished >= period) {
+			publish(system);
+		}
+	}
+
+	/**
+	 * Takes a snapshot now, e.g. when emulation stops
+	 */
+	public void publish(TailspinGB system) {
+		snapshot = new StateSnapshot(system, windowStarts, windowLengths);
+		lastPublished = System.nanoTime();
+	}
+
+	/**
+	 * @return the latest snapshot, or null if none has been published
+	 */
+	public StateSnapshot getSnapshot() {
+		return snapshot;
+	}
+
+	/**
+	 * Adds a window of memory to the snapshots taken from now on
+	 * 
+	 * @return the index of the window in those snapshots
+	 */
+	public int addWindow(char start, int length) {
+		if (length <= 0 || length > 0x10000) {
+			throw new IllegalArgumentException("Invalid window length: " + length);
+		}
+		int index = windowStarts.length;
+		char[] starts = new char[index + 1];
+		int[] lengths = new int[index + 1];
+		System.arraycopy(windowStarts, 0, starts, 0, index);
+		System.arraycopy(windowLengths, 0, lengths, 0, index);
+		starts[index] = start;
+		lengths[index] = length;
+		windowStarts = starts;
+		windowLengths = lengths;
+		return index;
+	}
+
+	public void clearWindows() {
+		windowStarts = new char[0];
+		windowLengths = new int[0];
+	}
+
+	/**
+	 * @return snapshots per second while running
+	 */
+	public double getRate() {
+		long period = this.period;
+		return period > 0 ? 1e9 / period : 0;
+	}
+
+	/**
+	 * Sets the snapshots per second taken while running, or 0 to only take
+	 * them when asked. May be called from any thread.
+	 */
+	public void setRate(double rate) {
+		if (rate < 0) {
+			throw new IllegalArgumentException("Invalid snapshot rate: " + rate);
+		}
+		this.period = rate > 0 ? (long) (1e9 / rate) : 0;
+	}
+
+}
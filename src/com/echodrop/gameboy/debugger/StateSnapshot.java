@@ -0,0 +1,176 @@
+/**
+ * StateSnapshot.java
+ *
+ * @author anewkirk
+ *
+ * Licensing information can be found in the root directory of the project.
+ */
+
+package com.echodrop.gameboy.debugger;
+
+import com.echodrop.gameboy.core.CPU;
+import com.echodrop.gameboy.core.MMU;
+import com.echodrop.gameboy.core.TailspinGB;
+
+/**
+ * A copy of the registers and some windows of memory, taken between two
+ * instructions. Snapshots never change once taken, so any thread may read one
+ * without locking.
+ */
+public class StateSnapshot {
+
+	private final long cycles;
+	private final long frame;
+	private final char pc;
+	private final char sp;
+	private final byte a;
+	private final byte f;
+	private final byte b;
+	private final byte c;
+	private final byte d;
+	private final byte e;
+	private final byte h;
+	private final byte l;
+	private final boolean interruptsEnabled;
+	private final boolean halted;
+
+	private final char[] windowStarts;
+	private final byte[][] windows;
+
+	/**
+	 * Copies the state of a system. Must be called from the thread running
+	 * it.
+	 * 
+	 * @param windowStarts
+	 *            first address of each memory window to copy
+	 * @param windowLengths
+	 *            length of each window
+	 */
+	public StateSnapshot(TailspinGB system, char[] windowStarts, int[] windowLengths) {
+		CPU cpu = system.getProcessor();
+		this.cycles = system.getScheduler().getCycles();
+		this.frame = system.getGpu().getFrameCount();
+		this.pc = cpu.getPc();
+		this.sp = cpu.getSp();
+		this.a = cpu.getA().getValue();
+		this.f = cpu.getF().getValue();
+		this.b = cpu.getB().getValue();
+		this.c = cpu.getC().getValue();
+		this.d = cpu.getD().getValue();
+		this.e = cpu.getE().getValue();
+		this.h = cpu.getH().getValue();
+		this.l = cpu.getL().getValue();
+		this.interruptsEnabled = cpu.isInterruptsEnabled();
+		this.halted = cpu.isHalted();
+
+		MMU mem = system.getMem();
+		this.windowStarts = windowStarts.clone();
+		this.windows = new byte[windowStarts.length][];
+		for (int i = 0; i < windows.length; i++) {
+			byte[] window = new byte[windowLengths[i]];
+			for (int j = 0; j < window.length; j++) {
+				window[j] = mem.peekByte((char) (windowStarts[i] + j));
+			}
+			windows[i] = window;
+		}
+	}
+
+	/**
+	 * @return the byte at address, from the first window containing it
+	 */
+	public byte readByte(char address) {
+		for (int i = 0; i < windows.length; i++) {
+			int offset = (address - windowStarts[i]) & 0xFFFF;
+			if (offset < windows[i].length) {
+				return windows[i][offset];
+			}
+		}
+		throw new IllegalArgumentException("Address not in a snapshot window: 0x"
+				+ Integer.toHexString(address).toUpperCase());
+	}
+
+	/**
+	 * @return the index of the first window starting at start, or -1 if there
+	 *         is none
+	 */
+	public int findWindow(char start) {
+		for (int i = 0; i < windowStarts.length; i++) {
+			if (windowStarts[i] == start) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	public int getWindowCount() {
+		return windows.length;
+	}
+
+	public char getWindowStart(int window) {
+		return windowStarts[window];
+	}
+
+	/**
+	 * @return a copy of a memory window
+	 */
+	public byte[] getWindow(int window) {
+		return windows[window].clone();
+	}
+
+	public long getCycles() {
+		return cycles;
+	}
+
+	public long getFrame() {
+		return frame;
+	}
+
+	public char getPc() {
+		return pc;
+	}
+
+	public char getSp() {
+		return sp;
+	}
+
+	public byte getA() {
+		return a;
+	}
+
+	public byte getF() {
+		return f;
+	}
+
+	public byte getB() {
+		return b;
+	}
+
+	public byte getC() {
+		return c;
+	}
+
+	public byte getD() {
+		return d;
+	}
+
+	public byte getE() {
+		return e;
+	}
+
+	public byte getH() {
+		return h;
+	}
+
+	public byte getL() {
+		return l;
+	}
+
+	public boolean isInterruptsEnabled() {
+		return interruptsEnabled;
+	}
+
+	public boolean isHalted() {
+		return halted;
+	}
+
+}
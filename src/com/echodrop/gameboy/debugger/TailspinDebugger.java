@@ -9,11 +9,18 @@
 package com.echodrop.gameboy.debugger;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 
 //import com.echodrop.gameboy.core.Register;
+import com.echodrop.gameboy.core.FramePacer;
+import com.echodrop.gameboy.core.RunAhead;
+import com.echodrop.gameboy.core.Scheduler;
 import com.echodrop.gameboy.core.TailspinGB;
+import com.echodrop.gameboy.interfaces.IMemoryWatch;
+import com.echodrop.gameboy.rom.RomFile;
 import com.echodrop.gameboy.ui.swing.SwingScreen;
 import com.echodrop.gameboy.util.GraphicsUtils;
+import com.echodrop.gameboy.util.StringUtils;
 
 /**
  * A simple command line debugger for the Tailspin emulator
@@ -21,12 +28,62 @@ import com.echodrop.gameboy.util.GraphicsUtils;
 public class TailspinDebugger {
 
 	private ArrayList<Breakpoint> breakpoints;
+
+	/**
+	 * One bit per address, set if a breakpoint is at that address, so that
+	 * most instructions are checked with a single bit test
+	 */
+	private final long[] breakpointMap = new long[0x10000 / 64];
+
+	private ArrayList<Watchpoint> watchpoints = new ArrayList<Watchpoint>();
+
+	/**
+	 * Description of the access that triggered a watchpoint during the last
+	 * instruction, or null
+	 */
+	private String watchHit;
+
+	/**
+	 * Checks the accesses to pages with watchpoints. Only called for watched
+	 * pages, so watchpoints cost nothing elsewhere.
+	 */
+	private final IMemoryWatch memoryWatch = new IMemoryWatch() {
+		@Override
+		public void afterRead(char address, byte value) {
+			for (Watchpoint w : watchpoints) {
+				if (w.triggerRead(address)) {
+					watchHit = "Read " + StringUtils.byteToReadableHex(value) + " from "
+							+ StringUtils.charToReadableHex(address);
+					return;
+				}
+			}
+		}
+
+		@Override
+		public void afterWrite(char address, byte oldValue, byte newValue) {
+			for (Watchpoint w : watchpoints) {
+				if (w.triggerWrite(address, oldValue, newValue)) {
+					watchHit = "Write to " + StringUtils.charToReadableHex(address) + ": "
+							+ StringUtils.byteToReadableHex(oldValue) + " -> " + StringUtils.byteToReadableHex(newValue);
+					return;
+				}
+			}
+		}
+	};
+
 	private TailspinGB system;
 	//private ArrayList<Register> availableRegisters = new ArrayList<Register>();
 	private SwingScreen vid;
+	private RewindBuffer rewindBuffer;
+	private WriteJournal journal;
+	private RunAhead runAhead;
 
 	public TailspinDebugger() {
 		this.setSystem(new TailspinGB());
+		this.rewindBuffer = new RewindBuffer(getSystem());
+		rewindBuffer.setEnabled(true);
+		this.journal = new WriteJournal(getSystem());
+		this.runAhead = new RunAhead(getSystem());
 		init();
 	}
 
@@ -35,7 +92,9 @@ public class TailspinDebugger {
 	 */
 	public void init() {
 		setBreakpoints(new ArrayList<Breakpoint>());
+		clearWatchpoints();
 		getSystem().reset();
+		journal.clear();
 	}
 
 	/**
@@ -79,12 +138,114 @@ public class TailspinDebugger {
 		}
 	}
 
+	/**
+	 * Executes one instruction, recording it in the journal if journaling is
+	 * enabled
+	 */
+	public void step() {
+		watchHit = null;
+		if (journal.isEnabled()) {
+			journal.beginInstruction();
+		}
+		getSystem().getProcessor().step();
+	}
+
+	/**
+	 * Runs instructions to the end of the current frame, like
+	 * CPU.runFrame(), journaling them if journaling is enabled and stopping
+	 * early at a breakpoint. Runs ahead instead if run-ahead is on and there
+	 * are no breakpoints and no journal.
+	 * 
+	 * @return true if a breakpoint was reached before the end of the frame
+	 */
+	public boolean runFrame() {
+		boolean checkBreakpoints = !getBreakpoints().isEmpty() || !watchpoints.isEmpty();
+		if (runAhead.getFrames() > 0 && !journal.isEnabled() && !checkBreakpoints) {
+			runAhead.runFrame();
+			return false;
+		}
+		Scheduler scheduler = getSystem().getScheduler();
+		long end = (scheduler.getCycles() / FramePacer.CYCLES_PER_FRAME + 1) * FramePacer.CYCLES_PER_FRAME;
+		while (scheduler.getCycles() < end) {
+			step();
+			if (checkBreakpoints && atBreakPoint()) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Undoes the last instruction executed with journaling enabled
+	 * 
+	 * @return false if there is no journaled instruction to undo
+	 */
+	public boolean stepBack() {
+		watchHit = null;
+		return journal.stepBack();
+	}
+
+	/**
+	 * Steps backwards until a breakpoint is reached or the journal runs out
+	 * 
+	 * @return true if a breakpoint was reached
+	 */
+	public boolean reverseContinue() {
+		watchHit = null;
+		while (journal.stepBack()) {
+			if (atBreakPoint()) {
+				return true;
+			}
+		}
+		return false;
+	}
+
 	public void addBreakpoint(Breakpoint bp) {
 		getBreakpoints().add(bp);
+		mapBreakpoint(bp);
+	}
+
+	/**
+	 * Adds a watchpoint, and sends the accesses to the pages it covers
+	 * through the memory watch
+	 */
+	public void addWatchpoint(Watchpoint w) {
+		watchpoints.add(w);
+		getSystem().getMem().setMemoryWatch(memoryWatch);
+		getSystem().getMem().watchPages(w.getStart() >> 8, w.getEnd() >> 8, w.isReadWatched(),
+				!w.isReadWatched());
+	}
+
+	public void clearWatchpoints() {
+		watchpoints.clear();
+		watchHit = null;
+		getSystem().getMem().setMemoryWatch(null);
+	}
+
+	/**
+	 * @return the watchpoints, which must only be changed through
+	 *         addWatchpoint() and clearWatchpoints()
+	 */
+	public ArrayList<Watchpoint> getWatchpoints() {
+		return watchpoints;
+	}
+
+	/**
+	 * @return a description of the access that triggered a watchpoint during
+	 *         the last instruction, or null if none did
+	 */
+	public String getWatchHit() {
+		return watchHit;
 	}
 
 	public void clearBreakpoints() {
 		getBreakpoints().clear();
+		Arrays.fill(breakpointMap, 0);
+	}
+
+	private void mapBreakpoint(Breakpoint bp) {
+		char address = bp.getAddress();
+		breakpointMap[address >> 6] |= 1L << address;
 	}
 
 	/**
@@ -114,17 +275,44 @@ public class TailspinDebugger {
 		getSystem().getGpu().setFrameBuffer(newFrameBuffer);
 	}
 
+	/**
+	 * @return true if a breakpoint triggers at the current pc, or the last
+	 *         instruction triggered a watchpoint. The breakpoints themselves
+	 *         are only checked if one is at pc.
+	 */
 	public boolean atBreakPoint() {
+		if (watchHit != null) {
+			return true;
+		}
+		char pc = getSystem().getProcessor().getPc();
+		if ((breakpointMap[pc >> 6] & (1L << pc)) == 0) {
+			return false;
+		}
+		int bank = Breakpoint.ANY_BANK;
+		RomFile rom = getSystem().getMem().getLoadedRomFile();
+		if (pc < 0x8000 && rom != null) {
+			bank = rom.getRomBank(pc);
+		}
 		for (Breakpoint b : getBreakpoints()) {
-			char pc = (char) (getSystem().getProcessor().getPc() & 0xFFFF);
-
-			if (b.trigger(pc)) {
+			if (b.trigger(pc, bank)) {
 				return true;
 			}
 		}
 		return false;
 	}
 
+	public WriteJournal getJournal() {
+		return journal;
+	}
+
+	public RunAhead getRunAhead() {
+		return runAhead;
+	}
+
+	public RewindBuffer getRewindBuffer() {
+		return rewindBuffer;
+	}
+
 	public TailspinGB getSystem() {
 		return system;
 	}
@@ -133,12 +321,20 @@ public class TailspinDebugger {
 		this.system = system;
 	}
 
+	/**
+	 * @return the breakpoints, which must only be changed through
+	 *         addBreakpoint(), clearBreakpoints() and setBreakpoints()
+	 */
 	public ArrayList<Breakpoint> getBreakpoints() {
 		return breakpoints;
 	}
 
 	public void setBreakpoints(ArrayList<Breakpoint> breakpoints) {
 		this.breakpoints = breakpoints;
+		Arrays.fill(breakpointMap, 0);
+		for (Breakpoint bp : breakpoints) {
+			mapBreakpoint(bp);
+		}
 	}
 
 }
@@ -0,0 +1,97 @@
+/**
+ * Watchpoint.java
+ * 
+ * @author anewkirk
+ * 
+ * Licensing information can be found in the root directory of the project.
+ */
+
+package com.echodrop.gameboy.debugger;
+
+import com.echodrop.gameboy.util.StringUtils;
+
+/**
+ * Represents a watchpoint for the Tailspin debugger, which stops emulation
+ * after an instruction accesses a range of memory
+ */
+public class Watchpoint {
+
+	public enum Type {
+		/**
+		 * Triggers when the range is read
+		 */
+		READ,
+		/**
+		 * Triggers when the range is written
+		 */
+		WRITE,
+		/**
+		 * Triggers when a write changes a value in the range
+		 */
+		CHANGE;
+	}
+
+	private Type type;
+
+	/**
+	 * First and last address watched
+	 */
+	private char start;
+	private char end;
+
+	public Watchpoint(Type type, char start, char end) {
+		if (end < start) {
+			throw new IllegalArgumentException("Watchpoint ends before it starts");
+		}
+		this.type = type;
+		this.start = start;
+		this.end = end;
+	}
+
+	/**
+	 * @return true if this watchpoint triggers on a read of address
+	 */
+	public boolean triggerRead(char address) {
+		return type == Type.READ && contains(address);
+	}
+
+	/**
+	 * @return true if this watchpoint triggers on a write to address
+	 */
+	public boolean triggerWrite(char address, byte oldValue, byte newValue) {
+		if (!contains(address)) {
+			return false;
+		}
+		return type == Type.WRITE || (type == Type.CHANGE && oldValue != newValue);
+	}
+
+	public boolean contains(char address) {
+		return address >= start && address <= end;
+	}
+
+	public boolean isReadWatched() {
+		return type == Type.READ;
+	}
+
+	public Type getType() {
+		return type;
+	}
+
+	public char getStart() {
+		return start;
+	}
+
+	public char getEnd() {
+		return end;
+	}
+
+	@Override
+	public String toString() {
+		String result = type + " " + StringUtils.charToReadableHex(start);
+		if (end != start) {
+			result += " - " + StringUtils.charToReadableHex(end);
+		}
+		return result;
+	}
+
+}
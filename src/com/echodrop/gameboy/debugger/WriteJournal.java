@@ -0,0 +1,189 @@
+/**
+ * WriteJournal.java
+ *
+ * @author anewkirk
+ *
+ * Licensing information can be found in the root directory of the project.
+ */
+
+package com.echodrop.gameboy.debugger;
+
+import java.nio.ByteBuffer;
+import java.util.logging.Logger;
+
+import com.echodrop.gameboy.core.DmaController;
+import com.echodrop.gameboy.core.MMU;
+import com.echodrop.gameboy.core.TailspinGB;
+import com.echodrop.gameboy.interfaces.IMemoryTrap;
+
+/**
+ * Records enough about each instruction to undo it, so that the debugger can
+ * step backwards without taking snapshots.
+ *
+ * Before each instruction the journal saves the register state of every
+ * component (see TailspinGB.saveRegisterState()) into a fixed size slot of a
+ * preallocated ring. While it is enabled it is also the MMU's write trap, and
+ * it records the address and old value of every memory write in a second
+ * ring. Undoing an instruction puts the old values back, newest first, and
+ * restores the registers.
+ *
+ * I/O register writes are not recorded since the registers are part of the
+ * register state. An OAM DMA transfer bypasses the MMU, so OAM is recorded in
+ * full when one is started.
+ */
+public class WriteJournal implements IMemoryTrap {
+
+	private static final Logger logger = Logger.getLogger(WriteJournal.class.getName());
+
+	public static final int DEFAULT_INSTRUCTIONS = 0x10000;
+	public static final int DEFAULT_WRITES = 0x40000;
+
+	/**
+	 * Bytes reserved for each instruction's register state
+	 */
+	private static final int RECORD_LENGTH = TailspinGB.REGISTER_STATE_LENGTH;
+
+	private final TailspinGB system;
+	private final ByteBuffer records;
+
+	/**
+	 * Sequence number of the first write made by each instruction
+	 */
+	private final long[] firstWrite;
+
+	/**
+	 * Address << 8 | old value of each write
+	 */
+	private final int[] writes;
+
+	/* Sequence numbers; ring indices are these modulo the ring size */
+	private long instructionCount;
+	private long oldestInstruction;
+	private long writeCount;
+
+	private boolean enabled;
+	private boolean undoing;
+
+	public WriteJournal(TailspinGB system) {
+		this(system, DEFAULT_INSTRUCTIONS, DEFAULT_WRITES);
+	}
+
+	public WriteJournal(TailspinGB system, int instructions, int writes) {
+		this.system = system;
+		this.records = ByteBuffer.allocate(instructions * RECORD_LENGTH);
+		this.firstWrite = new long[instructions];
+		this.writes = new int[writes];
+	}
+
+	/**
+	 * Records the register state before the CPU executes an instruction
+	 */
+	public void beginInstruction() {
+		int slot = (int) (instructionCount % firstWrite.length);
+		records.position(slot * RECORD_LENGTH);
+		system.saveRegisterState(records);
+		firstWrite[slot] = writeCount;
+		instructionCount++;
+		if (instructionCount - oldestInstruction > firstWrite.length) {
+			oldestInstruction++;
+		}
+	}
+
+	@Override
+	public void beforeWrite(char address, byte data) {
+		if (undoing) {
+			return;
+		}
+		MMU mem = system.getMem();
+		if (address == DmaController.DMA_ADDRESS) {
+			for (char oam = 0xFE00; oam < 0xFE00 + DmaController.TRANSFER_LENGTH; oam++) {
+				record(oam, system.getGpu().getOam().getMem(oam));
+			}
+			return;
+		}
+
+		/* the cartridge's registers and I/O are restored with the register state */
+		if (address < 0x8000 || (address >= 0xFF00 && address < 0xFF80) || address == 0xFFFF) {
+			return;
+		}
+
+		/* ignored by the MMU */
+		if (mem.isLocked(address)) {
+			return;
+		}
+		record(address, mem.peekByte(address));
+	}
+
+	private void record(char address, byte old) {
+		writes[(int) (writeCount % writes.length)] = address << 8 | (old & 0xFF);
+		writeCount++;
+
+		/* drop instructions whose writes have been overwritten */
+		while (oldestInstruction < instructionCount
+				&& writeCount - firstWrite[(int) (oldestInstruction % firstWrite.length)] > writes.length) {
+			oldestInstruction++;
+		}
+	}
+
+	/**
+	 * Undoes the last recorded instruction
+	 *
+	 * @return false if there is nothing left to undo
+	 */
+	public boolean stepBack() {
+		if (getDepth() == 0) {
+			return false;
+		}
+		instructionCount--;
+		int slot = (int) (instructionCount % firstWrite.length);
+		records.position(slot * RECORD_LENGTH);
+		system.loadRegisterState(records);
+
+		/*
+		 * Registers first, so that page locks and RAM banks are as they were
+		 * when the writes were made
+		 */
+		MMU mem = system.getMem();
+		long first = firstWrite[slot];
+		undoing = true;
+		for (long i = writeCount - 1; i >= first; i--) {
+			int entry = writes[(int) (i % writes.length)];
+			mem.writeByte((char) (entry >>> 8), (byte) entry);
+		}
+		undoing = false;
+		writeCount = first;
+		return true;
+	}
+
+	/**
+	 * @return the number of instructions that can be undone
+	 */
+	public int getDepth() {
+		return (int) (instructionCount - oldestInstruction);
+	}
+
+	/**
+	 * Forgets all recorded instructions
+	 */
+	public void clear() {
+		instructionCount = 0;
+		oldestInstruction = 0;
+		writeCount = 0;
+	}
+
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	/**
+	 * Starts or stops journaling. While journaling is off the MMU's write
+	 * fast path is restored and nothing is recorded.
+	 */
+	public void setEnabled(boolean enabled) {
+		this.enabled = enabled;
+		system.getMem().setWriteTrap(enabled ? this : null);
+		clear();
+		logger.fine("Write journal " + (enabled ? "enabled" : "disabled"));
+	}
+
+}
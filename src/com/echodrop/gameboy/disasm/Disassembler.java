@@ -1,5 +1,104 @@
+/**
+ * Disassembler.java
+ *
+ * @author anewkirk
+ *
+ * Licensing information can be found in the root directory of the project.
+ */
+
 package com.echodrop.gameboy.disasm;
 
+import com.echodrop.gameboy.core.MMU;
+import com.echodrop.gameboy.core.Opcode;
+import com.echodrop.gameboy.core.OpcodeTable;
+import com.echodrop.gameboy.core.Operand;
+import com.echodrop.gameboy.util.StringUtils;
+
+/**
+ * Translates machine code in emulated memory back into assembly, using the
+ * same opcode table that the CPU's interpreter is generated from.
+ */
 public class Disassembler {
-	
-}
\ No newline at end of file
+
+	/**
+	 * @return the instruction at address, or null if the byte there is not a
+	 *         valid opcode
+	 */
+	public static Opcode decode(MMU mem, char address) {
+		int code = mem.peekByte(address) & 0xFF;
+		if (code == 0xCB) {
+			return OpcodeTable.getExtended(mem.peekByte((char) (address + 1)));
+		}
+		return OpcodeTable.get(code);
+	}
+
+	/**
+	 * @return the length in bytes of the instruction at address
+	 */
+	public static int instructionLength(MMU mem, char address) {
+		Opcode o = decode(mem, address);
+		return o == null ? 1 : o.getLength();
+	}
+
+	/**
+	 * @return the instruction at address in assembly form, with immediate
+	 *         operands filled in from memory
+	 */
+	public static String disassemble(MMU mem, char address) {
+		Opcode o = decode(mem, address);
+		if (o == null) {
+			return "DB " + hex8(mem.peekByte(address));
+		}
+
+		StringBuilder result = new StringBuilder(o.getOperation());
+		Operand[] operands = o.getOperands();
+		char immediate = (char) (address + (o.isExtended() ? 2 : 1));
+
+		for (int i = 0; i < operands.length; i++) {
+			result.append(i == 0 ? " " : ",");
+			result.append(formatOperand(mem, o, operands[i], immediate));
+		}
+		return result.toString();
+	}
+
+	private static String formatOperand(MMU mem, Opcode o, Operand operand, char immediate) {
+		switch (operand) {
+		case D8:
+			return hex8(mem.peekByte(immediate));
+		case A8:
+			return "(" + hex16((char) (0xFF00 | (mem.peekByte(immediate) & 0xFF))) + ")";
+		case D16:
+		case A16:
+			return hex16(readWord(mem, immediate));
+		case IND_A16:
+			return "(" + hex16(readWord(mem, immediate)) + ")";
+		case R8:
+			/* show the jump target rather than the offset */
+			return hex16((char) (immediate + 1 + mem.peekByte(immediate)));
+		case SP_R8:
+			byte offset = mem.peekByte(immediate);
+			return "SP" + (offset < 0 ? "-" : "+") + hex8((byte) Math.abs(offset));
+		case BIT:
+			return Integer.toString(o.getParameter());
+		case VECTOR:
+			return StringUtils.zeroLeftPad(Integer.toHexString(o.getParameter()).toUpperCase(), 2) + "H";
+		default:
+			return operand.getText();
+		}
+	}
+
+	private static char readWord(MMU mem, char address) {
+		int low = mem.peekByte(address) & 0xFF;
+		int high = mem.peekByte((char) (address + 1)) & 0xFF;
+		return (char) (high << 8 | low);
+	}
+
+	private static String hex8(byte b) {
+		return "$" + StringUtils.zeroLeftPad(Integer.toHexString(b & 0xFF).toUpperCase(), 2);
+	}
+
+	private static String hex16(char c) {
+		return "$" + StringUtils.zeroLeftPad(Integer.toHexString(c).toUpperCase(), 4);
+	}
+
+}
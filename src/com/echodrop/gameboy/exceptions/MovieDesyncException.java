@@ -0,0 +1,33 @@
+/**
+ * MovieDesyncException.java
+ * 
+ * @author anewkirk
+ * 
+ * Licensing information can be found in the root directory of the project.
+ */
+
+package com.echodrop.gameboy.exceptions;
+
+/**
+ * Thrown when a replayed movie stops matching the recording, or cannot be
+ * replayed at all
+ */
+public class MovieDesyncException extends Exception {
+
+	private static final long serialVersionUID = -2290581734019371651L;
+
+	/**
+	 * The frame at which the replay diverged
+	 */
+	private final int frame;
+
+	public MovieDesyncException(String message, int frame) {
+		super(message);
+		this.frame = frame;
+	}
+
+	public int getFrame() {
+		return frame;
+	}
+
+}
@@ -0,0 +1,23 @@
+/**
+ * SaveStateException.java
+ * 
+ * @author anewkirk
+ * 
+ * Licensing information can be found in the root directory of the project.
+ */
+
+package com.echodrop.gameboy.exceptions;
+
+/**
+ * Thrown when a save state cannot be restored, e.g. because it was written by
+ * an incompatible version or for a different cartridge
+ */
+public class SaveStateException extends Exception {
+
+	private static final long serialVersionUID = 4867213043170915832L;
+
+	public SaveStateException(String message) {
+		super(message);
+	}
+
+}
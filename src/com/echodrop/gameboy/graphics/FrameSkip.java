@@ -0,0 +1,94 @@
+/**
+ * FrameSkip.java
+ *
+ * @author anewkirk
+ *
+ * Licensing information can be found in the root directory of the project.
+ */
+
+package com.echodrop.gameboy.graphics;
+
+import com.echodrop.gameboy.core.FramePacer;
+
+/**
+ * Decides which frames the GPU draws. A skipped frame is emulated as usual,
+ * but is not drawn into the frame buffer and display observers are not told
+ * about it, so the time goes to emulation instead.
+ *
+ * The setting is either a fixed number of frames to skip after each one drawn,
+ * or AUTO. In AUTO, when the speed is unlimited (fast-forward), a frame is
+ * drawn only once a display refresh has passed since the last one drawn, so
+ * the speed is limited by emulation alone. Otherwise a frame is skipped when
+ * the frame pacer reports that the last frame finished late, up to
+ * MAX_AUTO_SKIP frames in a row so that the picture keeps moving.
+ */
+public class FrameSkip {
+
+	public static final int AUTO = -1;
+	public static final int MAX_AUTO_SKIP = 4;
+
+	/**
+	 * Wall clock time between display refreshes
+	 */
+	private static final long DISPLAY_PERIOD = (long) (1e9 / FramePacer.FRAME_RATE);
+
+	/**
+	 * AUTO, or frames skipped after each drawn frame. Set by UI threads.
+	 */
+	private volatile int setting;
+
+	/**
+	 * Frames skipped since the last one drawn
+	 */
+	private int skipped;
+
+	/**
+	 * When the last frame was drawn, in System.nanoTime() terms
+	 */
+	private long lastDrawn;
+
+	/**
+	 * Called by the GPU at each VBLANK it would draw
+	 *
+	 * @return true if the frame should not be drawn
+	 */
+	public boolean skipFrame(FramePacer pacer) {
+		int setting = this.setting;
+		boolean skip;
+		if (setting == AUTO) {
+			if (pacer.isUnlimited()) {
+				skip = System.nanoTime() - lastDrawn < DISPLAY_PERIOD;
+			} else {
+				skip = skipped < MAX_AUTO_SKIP && pacer.isBehind();
+			}
+		} else {
+			skip = skipped < setting;
+		}
+
+		if (skip) {
+			skipped++;
+		} else {
+			skipped = 0;
+			if (setting == AUTO) {
+				lastDrawn = System.nanoTime();
+			}
+		}
+		return skip;
+	}
+
+	public int getSetting() {
+		return setting;
+	}
+
+	/**
+	 * Sets the number of frames to skip after each one drawn, 0 to draw every
+	 * frame, or AUTO. May be called from any thread.
+	 */
+	public void setSetting(int setting) {
+		if (setting < AUTO) {
+			throw new IllegalArgumentException("Invalid frame skip: " + setting);
+		}
+		this.setting = setting;
+	}
+
+}
@@ -8,21 +8,25 @@
 
 package com.echodrop.gameboy.graphics;
 
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.logging.Logger;
 
+import com.echodrop.gameboy.core.InterruptController;
 import com.echodrop.gameboy.core.MemoryRegion;
 import com.echodrop.gameboy.core.Register;
 import com.echodrop.gameboy.core.TailspinGB;
 import com.echodrop.gameboy.exceptions.MemoryAccessException;
 import com.echodrop.gameboy.interfaces.IGraphicsObserver;
+import com.echodrop.gameboy.interfaces.IStateful;
 import com.echodrop.gameboy.util.GraphicsUtils;
 import com.echodrop.gameboy.util.RegisterUtils;
 
 /**
  * Emulation core for GameBoy Graphics Processing Unit
  */
-public class GPU {
+public class GPU implements IStateful {
 
 	private static final Logger logger = Logger.getLogger(GPU.class.getName());
 	private TailspinGB system;
@@ -37,8 +41,20 @@ public class GPU {
 	private Register line;
 	private Register backgroundPalette;
 	private Register lcdControl;
+
+	/**
+	 * Interrupt selection bits of the LCD status register. The mode and
+	 * coincidence bits are computed when STAT is read.
+	 */
+	private Register lcdStatus;
+	private Register lyCompare;
 	private byte[][] frameBuffer;
 
+	/**
+	 * Clock cycles spent in each mode, indexed by mode number
+	 */
+	private static final int[] MODE_DURATIONS = { 204, 456, 80, 172 };
+
 	/**
 	 * GPU state
 	 */
@@ -48,32 +64,99 @@ public class GPU {
 	 * Advanced after each CPU instruction with the Z80 clock_t
 	 */
 	private int modeClock;
+
+	/**
+	 * Notified at every VBLANK
+	 */
 	private ArrayList<IGraphicsObserver> observers;
 
+	/**
+	 * Notified at VBLANK only when the frame is drawn
+	 */
+	private ArrayList<IGraphicsObserver> displayObservers;
+	private FrameSkip frameSkip;
+
+	/**
+	 * Frames completed since the GPU was created. Not part of the saved
+	 * state, so it keeps counting across loads.
+	 */
+	private long frameCount;
+
+	/**
+	 * Whether the frame is drawn into the frame buffer at VBLANK
+	 */
+	private boolean rendering = true;
+
+	/**
+	 * Whether observers are notified at VBLANK
+	 */
+	private boolean notifying = true;
+
+	/**
+	 * Whether the frame was drawn at the last VBLANK
+	 */
+	private boolean frameDrawn;
+
+	/**
+	 * Set to draw the next frame even if rendering is off
+	 */
+	private volatile boolean frameRequested;
+
+	/* Drawing statistics, for reporting the time saved by not drawing */
+	private long framesDrawn;
+	private long framesNotDrawn;
+	private long drawNanos;
+
 	public GPU(TailspinGB system) {
-		this.system = system;
+		this(system, new MemoryRegion((char) 0x8000, (char) 0x9FFF, "vram"),
+				new MemoryRegion((char) 0xFE00, (char) 0xFE9F, "oam"));
 		this.initialize();
 	}
 
 	/**
-	 * Sets the GPU to its initial state
+	 * Creates the GPU of a fork of original's system, sharing original's VRAM
+	 * and OAM copy-on-write. Its registers are left for the fork to restore.
 	 */
-	public void initialize() {
+	public GPU(TailspinGB system, GPU original) {
+		this(system, original.getVram().share(), original.getOam().share());
+	}
+
+	private GPU(TailspinGB system, MemoryRegion vram, MemoryRegion oam) {
+		this.system = system;
 		this.observers = new ArrayList<IGraphicsObserver>();
+		this.displayObservers = new ArrayList<IGraphicsObserver>();
+		this.frameSkip = new FrameSkip();
 		this.setMode(new Register((byte) 0, "GPU Mode"));
 		this.setLine(new Register((byte) 0, "Scanline"));
-		this.setModeClock(0);
-		this.setBackgroundPalette(new Register((byte) 0x010B, "BG Palette"));
+		this.setBackgroundPalette(new Register((byte) 0, "BG Palette"));
 		this.setScrollX(new Register((byte) 0, "SCX"));
 		this.setScrollY(new Register((byte) 0, "SCY"));
 		this.setLcdControl(new Register((byte) 0, "LCDC"));
-		this.setVram(new MemoryRegion((char) 0x8000, (char) 0x9FFF, "vram"));
-		this.setOam(new MemoryRegion((char) 0xFE00, (char) 0xFE9F, "oam"));
+		this.setLcdStatus(new Register((byte) 0, "STAT"));
+		this.setLyCompare(new Register((byte) 0, "LYC"));
+		this.setVram(vram);
+		this.setOam(oam);
 		this.setFrameBuffer(new byte[160][144]);
+	}
+
+	/**
+	 * Sets the GPU to its initial state. State is cleared in place, and
+	 * registered observers are kept.
+	 */
+	public void initialize() {
+		getMode().setValue(0);
+		getLine().setValue(0);
+		this.setModeClock(0);
+		getBackgroundPalette().setValue(0x010B);
+		getScrollX().setValue(0);
+		getScrollY().setValue(0);
+		getLcdControl().setValue(0);
+		getLcdStatus().setValue(0);
+		getLyCompare().setValue(0);
+		getVram().clear();
+		getOam().clear();
 		for (int i = 0; i < 160; i++) {
-			for (int j = 0; j < 144; j++) {
-				frameBuffer[i][j] = 0;
-			}
+			Arrays.fill(frameBuffer[i], (byte) 0);
 		}
 	}
 
@@ -82,78 +165,109 @@ public class GPU {
 	}
 
 	/**
-	 * Called after each CPU instruction
+	 * Called after each CPU instruction. Mode timings are in clock cycles;
+	 * leftover time is carried into the next mode so that large increments
+	 * (e.g. while the CPU is halted) are handled exactly.
 	 * 
 	 * Based on the write-up at
 	 * http://imrannazar.com/GameBoy-Emulation-in-JavaScript:-The-CPU
 	 */
 	public void clockStep() {
-		switch (getMode().getValue()) {
-		
-		// HBLANK
-		case 0:
-			if (getModeClock() >= 204) {
-				setModeClock(0);
+		while (getModeClock() >= getModeDuration()) {
+			setModeClock(getModeClock() - getModeDuration());
+
+			switch (getMode().getValue()) {
+
+			// HBLANK
+			case 0:
 				getLine().setValue(getLine().getValue() + 1);
-				if ((getLine().getValue() & 0xFF) == 143) {
+				checkCoincidence();
+				if ((getLine().getValue() & 0xFF) == 144) {
 
 					// Change mode to VBLANK
 					logger.info("[!] GPU MODE SWITCHING TO VBLANK (mode 1)");
-					mode.setValue(1);
+					enterMode(1);
+					system.getInterrupts().request(InterruptController.VBLANK);
 
 					// update screen after last HBLANK
-					// notifyAllObservers();
-					renderFrame();
+					endFrame();
 
 				} else {
 
 					// Change mode to OAM read
 					logger.info("[!] GPU MODE SWITCHING TO OAM READ (mode 2)");
-					mode.setValue(2);
+					enterMode(2);
 				}
-			}
+				break;
 
-			break;
-
-		// VBLANK
-		case 1:
-			if (getModeClock() >= 456) {
-				setModeClock(0);
+			// VBLANK
+			case 1:
 				getLine().setValue(getLine().getValue() + 1);
 				if ((getLine().getValue() & 0xFF) > 153) {
 
 					// change mode to OAM read
 					logger.info("[!] GPU MODE SWITCHING TO OAM READ (mode 2)");
-					mode.setValue(2);
 					getLine().setValue(0);
+					enterMode(2);
 				}
-			}
-			break;
-
-		// OAM read
-		case 2:
-			if (getModeClock() >= 80) {
-				setModeClock(0);
+				checkCoincidence();
+				break;
 
+			// OAM read
+			case 2:
 				// change to vram read mode
-				mode.setValue(3);
+				enterMode(3);
 				logger.info("[!] GPU MODE SWITCHING TO VRAM READ (mode 3)");
-			}
-			break;
-
-		// VRAM read
-		case 3:
-			if (getModeClock() >= 172) {
+				break;
 
+			// VRAM read
+			case 3:
 				// change mode to HBLANK
-				setModeClock(0);
 				logger.info("\n[!] GPU MODE SWITCHING TO HBLANK (mode 0)\n");
-				mode.setValue(0);
+				enterMode(0);
 
 				// Write scanline to framebuffer
 				// renderScanLine();
+				break;
 			}
-			break;
+		}
+	}
+
+	/**
+	 * @return the number of clock cycles the GPU spends in its current mode
+	 *         (per scanline, for VBLANK)
+	 */
+	private int getModeDuration() {
+		return MODE_DURATIONS[getMode().getValue()];
+	}
+
+	/**
+	 * @return clock cycles until the GPU next changes mode or scanline, rounded
+	 *         up to a whole machine cycle
+	 */
+	public int getCyclesToNextMode() {
+		int remaining = getModeDuration() - getModeClock();
+		return Math.max(4, (remaining + 3) & ~3);
+	}
+
+	/**
+	 * Switches mode, raising the LCD STAT interrupt if it is enabled for the
+	 * new mode
+	 */
+	private void enterMode(int newMode) {
+		mode.setValue(newMode);
+		if (newMode < 3 && (lcdStatus.getValue() & (0x08 << newMode)) != 0) {
+			system.getInterrupts().request(InterruptController.STAT);
+		}
+	}
+
+	/**
+	 * Raises the LCD STAT interrupt if LY has just become equal to LYC and the
+	 * coincidence interrupt is enabled
+	 */
+	private void checkCoincidence() {
+		if (getLine().getValue() == getLyCompare().getValue() && (lcdStatus.getValue() & 0x40) != 0) {
+			system.getInterrupts().request(InterruptController.STAT);
 		}
 	}
 
@@ -165,6 +279,10 @@ public class GPU {
 		case 0xFF40:
 			return getLcdControl().getValue();
 
+		// LCD status register
+		case 0xFF41:
+			return getLcdStatusValue();
+
 		// SCY register
 		case 0xFF42:
 			return getScrollY().getValue();
@@ -177,6 +295,10 @@ public class GPU {
 		case 0xFF44:
 			return getLine().getValue();
 
+		// Scanline compare register
+		case 0xFF45:
+			return getLyCompare().getValue();
+
 		// Background palette
 		case 0xFF47:
 			return getBackgroundPalette().getValue();
@@ -199,6 +321,11 @@ public class GPU {
 			getLcdControl().setValue(data);
 			break;
 
+		// LCD status register; only the interrupt selection bits are writable
+		case 0xFF41:
+			getLcdStatus().setValue(data & 0x78);
+			break;
+
 		// SCY register
 		case 0xFF42:
 			getScrollY().setValue(data);
@@ -214,6 +341,11 @@ public class GPU {
 			getLine().setValue(data);
 			break;
 
+		// scanline compare register
+		case 0xFF45:
+			getLyCompare().setValue(data);
+			break;
+
 		// current scanline register
 		case 0xFF47:
 			getBackgroundPalette().setValue(data);
@@ -221,18 +353,96 @@ public class GPU {
 		}
 	}
 
+	/**
+	 * The frame buffer is not saved; it is redrawn at the next VBLANK
+	 */
+	@Override
+	public void saveState(ByteBuffer buffer) {
+		saveRegisters(buffer);
+		vram.saveState(buffer);
+		oam.saveState(buffer);
+	}
+
+	@Override
+	public void loadState(ByteBuffer buffer) {
+		loadRegisters(buffer);
+		vram.loadState(buffer);
+		oam.loadState(buffer);
+	}
+
+	/**
+	 * Saves the GPU's registers and timing, without VRAM and OAM
+	 */
+	public void saveRegisters(ByteBuffer buffer) {
+		buffer.put(mode.getValue()).put(line.getValue()).put(backgroundPalette.getValue());
+		buffer.put(scrollX.getValue()).put(scrollY.getValue()).put(lcdControl.getValue());
+		buffer.put(lcdStatus.getValue()).put(lyCompare.getValue());
+		buffer.putInt(modeClock);
+	}
+
+	public void loadRegisters(ByteBuffer buffer) {
+		mode.setValue(buffer.get());
+		line.setValue(buffer.get());
+		backgroundPalette.setValue(buffer.get());
+		scrollX.setValue(buffer.get());
+		scrollY.setValue(buffer.get());
+		lcdControl.setValue(buffer.get());
+		lcdStatus.setValue(buffer.get());
+		lyCompare.setValue(buffer.get());
+		modeClock = buffer.getInt();
+	}
+
+	/**
+	 * Registers an observer to be notified at the end of every frame, whether
+	 * or not it is drawn
+	 */
 	public void registerObserver(IGraphicsObserver o) {
+		if (observers.contains(o)) {
+			return;
+		}
 		observers.add(o);
 		logger.info("[+] Graphics observer registered: " + o);
 	}
 
+	/**
+	 * Registers an observer that shows the frame buffer, to be notified only
+	 * of frames that are drawn
+	 */
+	public void registerDisplayObserver(IGraphicsObserver o) {
+		if (displayObservers.contains(o)) {
+			return;
+		}
+		displayObservers.add(o);
+		logger.info("[+] Display observer registered: " + o);
+	}
+
+	public void removeObserver(IGraphicsObserver o) {
+		observers.remove(o);
+		displayObservers.remove(o);
+	}
+
 	public void notifyAllObservers() {
+		notifyObservers(true);
+	}
+
+	/**
+	 * Notifies observers of the end of a frame
+	 * 
+	 * @param drawn
+	 *            whether display observers are notified too
+	 */
+	public void notifyObservers(boolean drawn) {
 		logger.info("[~] GPU notifying all graphics observers");
 		for (int i = 0; i < observers.size(); i++) {
 			observers.get(i).updateDisplay();
 			logger.fine("[+] Notifying observer: " + observers.get(i));
 		}
-
+		if (drawn) {
+			for (int i = 0; i < displayObservers.size(); i++) {
+				displayObservers.get(i).updateDisplay();
+				logger.fine("[+] Notifying observer: " + displayObservers.get(i));
+			}
+		}
 	}
 
 	// private void renderScanLine() {
@@ -241,7 +451,46 @@ public class GPU {
 	// : 0x9800);
 	// }
 
+	/**
+	 * Called on entering VBLANK. The frame is drawn if it was requested, or if
+	 * rendering is on and the frame skip policy does not skip it.
+	 */
+	private void endFrame() {
+		frameCount++;
+		frameDrawn = rendering && !frameSkip.skipFrame(system.getPacer());
+		if (frameRequested) {
+			frameRequested = false;
+			frameDrawn = true;
+		}
+		if (frameDrawn) {
+			long start = System.nanoTime();
+			drawFrame();
+			drawNanos += System.nanoTime() - start;
+			framesDrawn++;
+		} else {
+			framesNotDrawn++;
+		}
+		if (notifying) {
+			notifyObservers(frameDrawn);
+		}
+	}
+
+	/**
+	 * Draws the background into the frame buffer and notifies observers
+	 */
 	public void renderFrame() {
+		drawFrame();
+		notifyAllObservers();
+	}
+
+	private void drawFrame() {
+		drawFrame(getFrameBuffer());
+	}
+
+	/**
+	 * Draws the background into target, a 160x144 frame buffer
+	 */
+	private void drawFrame(byte[][] target) {
 		boolean tileset = RegisterUtils.readBit(3, getLcdControl());
 		char address = (char) (RegisterUtils.readBit(4, getLcdControl()) ? 0x9C00 : 0x9800);
 		byte[][] rendered = new byte[256][256];
@@ -249,7 +498,7 @@ public class GPU {
 		for (int i = 0; i < 1024; i++) {
 			int x = (i % 32) * 8;
 			int y = (i / 32) * 8;
-			byte tileOffset = system.getMem().readByte((char) (address));
+			byte tileOffset = system.getMem().peekByte((char) (address));
 			byte[] tileData = GraphicsUtils.getTile(system.getMem(), tileset, tileOffset);
 			byte[][] pixels = GraphicsUtils.mapTile(getBackgroundPalette().getValue(), tileData);
 
@@ -263,13 +512,99 @@ public class GPU {
 
 		for (int i = 0; i < 160; i++) {
 			for (int j = 0; j < 144; j++) {
-				getFrameBuffer()[i][j] = rendered[i + getScrollX().getValue()][j + getScrollY().getValue()];
+				target[i][j] = rendered[i + getScrollX().getValue()][j + getScrollY().getValue()];
 			}
 		}
-		notifyAllObservers();
 	}
 
-	public void incrementModeClock(byte time) {
+	public long getFrameCount() {
+		return frameCount;
+	}
+
+	/**
+	 * Draws the next frame even if rendering is off, e.g. to take a
+	 * screenshot of a headless system. May be called from any thread.
+	 */
+	public void requestFrame() {
+		frameRequested = true;
+	}
+
+	public long getFramesDrawn() {
+		return framesDrawn;
+	}
+
+	public long getFramesNotDrawn() {
+		return framesNotDrawn;
+	}
+
+	/**
+	 * @return time spent drawing frames at VBLANK
+	 */
+	public long getDrawNanos() {
+		return drawNanos;
+	}
+
+	/**
+	 * Estimates the time saved by the frames that were not drawn, from the
+	 * average time taken by the frames that were. If no frame has been drawn
+	 * the current frame is drawn a few times into a scratch buffer to time it;
+	 * the frame buffer, the drawing statistics and observers are untouched.
+	 * 
+	 * @return estimated nanoseconds saved
+	 */
+	public long estimateSavedNanos() {
+		if (framesNotDrawn == 0) {
+			return 0;
+		}
+		if (framesDrawn > 0) {
+			return framesNotDrawn * drawNanos / framesDrawn;
+		}
+		byte[][] scratch = new byte[160][144];
+		int samples = 8;
+		long start = System.nanoTime();
+		for (int i = 0; i < samples; i++) {
+			drawFrame(scratch);
+		}
+		return framesNotDrawn * (System.nanoTime() - start) / samples;
+	}
+
+	/**
+	 * @return true if the frame was drawn at the last VBLANK, rather than
+	 *         skipped
+	 */
+	public boolean isFrameDrawn() {
+		return frameDrawn;
+	}
+
+	public FrameSkip getFrameSkip() {
+		return frameSkip;
+	}
+
+	public boolean isRendering() {
+		return rendering;
+	}
+
+	/**
+	 * Turns drawing at VBLANK on or off. While it is off the frame buffer
+	 * keeps the last frame drawn; emulation is unaffected.
+	 */
+	public void setRendering(boolean rendering) {
+		this.rendering = rendering;
+	}
+
+	public boolean isNotifying() {
+		return notifying;
+	}
+
+	/**
+	 * Turns notification of observers at VBLANK on or off, e.g. while
+	 * emulating frames that will be thrown away
+	 */
+	public void setNotifying(boolean notifying) {
+		this.notifying = notifying;
+	}
+
+	public void incrementModeClock(int time) {
 		this.setModeClock(this.getModeClock() + time);
 	}
 
@@ -338,6 +673,31 @@ public class GPU {
 		this.lcdControl = lcdControl;
 	}
 
+	public Register getLcdStatus() {
+		return lcdStatus;
+	}
+
+	private void setLcdStatus(Register lcdStatus) {
+		this.lcdStatus = lcdStatus;
+	}
+
+	/**
+	 * @return STAT as read by the CPU: interrupt selection, LY=LYC
+	 *         coincidence and the current mode
+	 */
+	public byte getLcdStatusValue() {
+		int coincidence = getLine().getValue() == getLyCompare().getValue() ? 0x04 : 0;
+		return (byte) (0x80 | getLcdStatus().getValue() | coincidence | getMode().getValue());
+	}
+
+	public Register getLyCompare() {
+		return lyCompare;
+	}
+
+	private void setLyCompare(Register lyCompare) {
+		this.lyCompare = lyCompare;
+	}
+
 	public int getModeClock() {
 		return modeClock;
 	}
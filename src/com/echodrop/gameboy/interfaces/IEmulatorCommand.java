@@ -0,0 +1,26 @@
+/**
+ * IEmulatorCommand.java
+ *
+ * @author anewkirk
+ *
+ * Licensing information can be found in the root directory of the project.
+ */
+
+package com.echodrop.gameboy.interfaces;
+
+import com.echodrop.gameboy.debugger.TailspinDebugger;
+
+/**
+ * Something to be done to a running emulator. Commands are queued by any
+ * thread and executed by the emulation thread between batches of
+ * instructions, so they can use the system freely.
+ */
+public interface IEmulatorCommand {
+
+	/**
+	 * Called on the emulation thread. Exceptions are passed to the emulation
+	 * thread's error handler.
+	 */
+	public void execute(TailspinDebugger tdb) throws Exception;
+
+}
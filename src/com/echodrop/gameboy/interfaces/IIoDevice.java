@@ -0,0 +1,22 @@
+/**
+ * IIoDevice.java
+ * 
+ * @author anewkirk
+ * 
+ * Licensing information can be found in the root directory of the project.
+ */
+
+package com.echodrop.gameboy.interfaces;
+
+/**
+ * A hardware component that is accessed through memory mapped I/O registers
+ * (0xFF00 - 0xFFFF). Devices are registered with the MMU for each address they
+ * handle.
+ */
+public interface IIoDevice {
+
+	public byte readIo(char address);
+
+	public void writeIo(char address, byte data);
+
+}
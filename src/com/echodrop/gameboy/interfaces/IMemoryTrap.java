@@ -0,0 +1,24 @@
+/**
+ * IMemoryTrap.java
+ * 
+ * @author anewkirk
+ * 
+ * Licensing information can be found in the root directory of the project.
+ */
+
+package com.echodrop.gameboy.interfaces;
+
+/**
+ * Receives every write the CPU makes through the MMU. While a trap is set the
+ * MMU takes its slow path for all writes, so a trap costs nothing once it is
+ * removed.
+ */
+public interface IMemoryTrap {
+
+	/**
+	 * Called before data is written to address. Memory still holds the old
+	 * value.
+	 */
+	public void beforeWrite(char address, byte data);
+
+}
@@ -0,0 +1,29 @@
+/**
+ * IMemoryWatch.java
+ * 
+ * @author anewkirk
+ * 
+ * Licensing information can be found in the root directory of the project.
+ */
+
+package com.echodrop.gameboy.interfaces;
+
+/**
+ * Receives the reads and writes the CPU makes to watched pages of memory.
+ * Only watched pages take the MMU's slow path, so the rest of memory runs at
+ * full speed while a watch is set.
+ */
+public interface IMemoryWatch {
+
+	/**
+	 * Called after value is read from a page watched for reads
+	 */
+	public void afterRead(char address, byte value);
+
+	/**
+	 * Called after a write to a page watched for writes, with the values of
+	 * the address before and after it
+	 */
+	public void afterWrite(char address, byte oldValue, byte newValue);
+
+}
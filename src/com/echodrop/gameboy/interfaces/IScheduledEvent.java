@@ -0,0 +1,25 @@
+/**
+ * IScheduledEvent.java
+ * 
+ * @author anewkirk
+ * 
+ * Licensing information can be found in the root directory of the project.
+ */
+
+package com.echodrop.gameboy.interfaces;
+
+/**
+ * A component that asks the Scheduler to call it back once the emulated clock
+ * reaches a certain cycle, instead of being ticked after every instruction.
+ */
+public interface IScheduledEvent {
+
+	/**
+	 * @param cycle
+	 *            the cycle the event was scheduled for. The scheduler's clock
+	 *            may already be slightly past it, since events are only run
+	 *            between instructions.
+	 */
+	public void onEvent(int event, long cycle);
+
+}
@@ -0,0 +1,28 @@
+/**
+ * IStateful.java
+ * 
+ * @author anewkirk
+ * 
+ * Licensing information can be found in the root directory of the project.
+ */
+
+package com.echodrop.gameboy.interfaces;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A component whose state is included in save states. Components write their
+ * fields with plain ByteBuffer puts and read them back in the same order.
+ */
+public interface IStateful {
+
+	public void saveState(ByteBuffer buffer);
+
+	/**
+	 * Restores state written by saveState(). Called with the rest of the
+	 * system in a consistent state, so implementations must not reset or
+	 * reschedule anything that is restored separately.
+	 */
+	public void loadState(ByteBuffer buffer);
+
+}
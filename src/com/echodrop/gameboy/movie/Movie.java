@@ -0,0 +1,245 @@
+/**
+ * Movie.java
+ *
+ * @author anewkirk
+ *
+ * Licensing information can be found in the root directory of the project.
+ */
+
+package com.echodrop.gameboy.movie;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * A recording of joypad input, from power-on, that replays to the same result
+ * every time. Input is stored as the frames at which the held keys change, and
+ * the state hash (see StateHash) is stored at the start and at the end of every
+ * few frames so that a replay can check it is still in step. The cartridge's
+ * state at power-on, its RAM and clock, is stored too, since a battery backed
+ * cartridge does not start out the same everywhere.
+ *
+ * Format (little endian): magic number, format version, cartridge id (see
+ * SaveState), hash interval, frame count, input change count, the starting
+ * hash and the length of the cartridge state, followed by the cartridge state,
+ * the input changes (frame number, keys) and the frame hashes.
+ */
+public class Movie {
+
+	/**
+	 * "TSMV"
+	 */
+	public static final int MAGIC = 0x564D5354;
+	public static final int VERSION = 2;
+	public static final int HEADER_LENGTH = 36;
+
+	/**
+	 * Frames between stored hashes
+	 */
+	public static final int DEFAULT_HASH_INTERVAL = 1;
+
+	private final int cartridgeId;
+	private final long startHash;
+	private final int hashInterval;
+	private int frameCount;
+
+	/**
+	 * The cartridge's RAM and registers at power-on, as written by
+	 * RomFile.saveState()
+	 */
+	private byte[] cartridgeState = new byte[0];
+
+	/* Input changes, in frame order */
+	private int[] changeFrames = new int[64];
+	private byte[] changeButtons = new byte[64];
+	private int changeCount;
+
+	/**
+	 * Hash after every hashInterval frames
+	 */
+	private long[] frameHashes = new long[1024];
+	private int hashCount;
+
+	public Movie(int cartridgeId, long startHash, int hashInterval) {
+		this.cartridgeId = cartridgeId;
+		this.startHash = startHash;
+		this.hashInterval = Math.max(1, hashInterval);
+	}
+
+	/**
+	 * Records the keys held from a frame onwards. Frames are numbered from 0,
+	 * and a hash is taken at the end of frame n - 1 as hash n. Nothing is
+	 * stored if the keys have not changed.
+	 */
+	public void addInput(int frame, int buttons) {
+		if (changeCount > 0 && (changeButtons[changeCount - 1] & 0xFF) == buttons) {
+			return;
+		}
+		if (changeCount == changeFrames.length) {
+			changeFrames = Arrays.copyOf(changeFrames, changeCount * 2);
+			changeButtons = Arrays.copyOf(changeButtons, changeCount * 2);
+		}
+		changeFrames[changeCount] = frame;
+		changeButtons[changeCount] = (byte) buttons;
+		changeCount++;
+	}
+
+	/**
+	 * Records the hash at the end of the next hashed frame
+	 */
+	public void addHash(long hash) {
+		if (hashCount == frameHashes.length) {
+			frameHashes = Arrays.copyOf(frameHashes, hashCount * 2);
+		}
+		frameHashes[hashCount++] = hash;
+	}
+
+	/**
+	 * @return the hash recorded after a number of frames, which must be a
+	 *         multiple of the hash interval
+	 */
+	public long getFrameHash(int frame) {
+		return frameHashes[frame / hashInterval - 1];
+	}
+
+	/**
+	 * @return true if a hash was recorded after a number of frames
+	 */
+	public boolean hasFrameHash(int frame) {
+		return frame > 0 && frame % hashInterval == 0 && frame / hashInterval <= hashCount;
+	}
+
+	public int getChangeCount() {
+		return changeCount;
+	}
+
+	/**
+	 * @return the frame at which an input change takes effect
+	 */
+	public int getChangeFrame(int change) {
+		return changeFrames[change];
+	}
+
+	/**
+	 * @return the keys held from an input change on
+	 */
+	public int getChangeButtons(int change) {
+		return changeButtons[change] & 0xFF;
+	}
+
+	public int getCartridgeId() {
+		return cartridgeId;
+	}
+
+	public long getStartHash() {
+		return startHash;
+	}
+
+	public int getHashInterval() {
+		return hashInterval;
+	}
+
+	public int getFrameCount() {
+		return frameCount;
+	}
+
+	public void setFrameCount(int frameCount) {
+		this.frameCount = frameCount;
+	}
+
+	public byte[] getCartridgeState() {
+		return cartridgeState;
+	}
+
+	public void setCartridgeState(byte[] cartridgeState) {
+		this.cartridgeState = cartridgeState;
+	}
+
+	/**
+	 * Writes the movie to a file
+	 */
+	public void write(File file) throws IOException {
+		ByteBuffer data = ByteBuffer.allocate(HEADER_LENGTH + cartridgeState.length + changeCount * 5 + hashCount * 8)
+				.order(ByteOrder.LITTLE_ENDIAN);
+		data.putInt(MAGIC);
+		data.putInt(VERSION);
+		data.putInt(cartridgeId);
+		data.putInt(hashInterval);
+		data.putInt(frameCount);
+		data.putInt(changeCount);
+		data.putLong(startHash);
+		data.putInt(cartridgeState.length);
+		data.put(cartridgeState);
+		for (int i = 0; i < changeCount; i++) {
+			data.putInt(changeFrames[i]);
+			data.put(changeButtons[i]);
+		}
+		for (int i = 0; i < hashCount; i++) {
+			data.putLong(frameHashes[i]);
+		}
+		data.flip();
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+				StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+			while (data.hasRemaining()) {
+				channel.write(data);
+			}
+		}
+	}
+
+	/**
+	 * @return the movie stored in a file by write()
+	 *
+	 * @throws IOException
+	 *             if the file cannot be read or is not a movie
+	 */
+	public static Movie read(File file) throws IOException {
+		ByteBuffer data;
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			data = ByteBuffer.allocate((int) channel.size()).order(ByteOrder.LITTLE_ENDIAN);
+			while (data.hasRemaining()) {
+				if (channel.read(data) < 0) {
+					break;
+				}
+			}
+			data.flip();
+		}
+
+		if (data.remaining() < HEADER_LENGTH || data.getInt() != MAGIC) {
+			throw new IOException("Not a movie: " + file);
+		}
+		int version = data.getInt();
+		if (version != VERSION) {
+			throw new IOException("Unsupported movie version " + version);
+		}
+		int cartridgeId = data.getInt();
+		int hashInterval = data.getInt();
+		int frameCount = data.getInt();
+		int changes = data.getInt();
+		Movie movie = new Movie(cartridgeId, data.getLong(), hashInterval);
+		movie.setFrameCount(frameCount);
+		int stateLength = data.getInt();
+		if (stateLength < 0 || data.remaining() < stateLength) {
+			throw new IOException("Movie is truncated: " + file);
+		}
+		byte[] cartridgeState = new byte[stateLength];
+		data.get(cartridgeState);
+		movie.setCartridgeState(cartridgeState);
+		if (changes < 0 || data.remaining() < changes * 5) {
+			throw new IOException("Movie is truncated: " + file);
+		}
+		for (int i = 0; i < changes; i++) {
+			int frame = data.getInt();
+			movie.addInput(frame, data.get() & 0xFF);
+		}
+		while (data.remaining() >= 8) {
+			movie.addHash(data.getLong());
+		}
+		return movie;
+	}
+
+}
@@ -0,0 +1,159 @@
+/**
+ * MoviePlayer.java
+ *
+ * @author anewkirk
+ *
+ * Licensing information can be found in the root directory of the project.
+ */
+
+package com.echodrop.gameboy.movie;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.logging.Logger;
+
+import com.echodrop.gameboy.core.CPU;
+import com.echodrop.gameboy.core.Joypad;
+import com.echodrop.gameboy.core.MMU;
+import com.echodrop.gameboy.core.SaveState;
+import com.echodrop.gameboy.core.StateHash;
+import com.echodrop.gameboy.core.TailspinGB;
+import com.echodrop.gameboy.exceptions.MovieDesyncException;
+import com.echodrop.gameboy.interfaces.IGraphicsObserver;
+import com.echodrop.gameboy.rom.RomFile;
+
+/**
+ * Replays a movie as fast as the system can run, without waiting on a display
+ * or on host time, and checks the state hash wherever the movie has one. A
+ * replay stops at the first frame that does not match, so a movie doubles as
+ * a regression test and as a reproducible workload for measuring emulation
+ * speed.
+ */
+public class MoviePlayer implements IGraphicsObserver {
+
+	private static final Logger logger = Logger.getLogger(MoviePlayer.class.getName());
+
+	private final TailspinGB system;
+	private final Movie movie;
+	private StateHash hash;
+	private int frame;
+	private int nextChange;
+	private MovieDesyncException desync;
+	private long elapsed;
+
+	public MoviePlayer(TailspinGB system, Movie movie) {
+		this.system = system;
+		this.movie = movie;
+	}
+
+	/**
+	 * Resets the system, puts the cartridge's RAM and clock back as they were
+	 * when the movie was recorded, and replays the whole movie on the calling
+	 * thread. Cartridge clocks run on emulated time during the replay. The
+	 * restored RAM goes to the save file if the system has one open.
+	 *
+	 * @throws MovieDesyncException
+	 *             if the movie is for another cartridge, or the state stops
+	 *             matching the recording
+	 */
+	public void play() throws MovieDesyncException {
+		if (movie.getCartridgeId() != SaveState.getCartridgeId(system)) {
+			throw new MovieDesyncException("Movie is for a different cartridge", 0);
+		}
+		MMU mem = system.getMem();
+		boolean realTimeClock = mem.isRealTimeClock();
+		mem.setRealTimeClock(false);
+		Joypad joypad = system.getJoypad();
+		try {
+			system.reset();
+			loadCartridgeState();
+			joypad.setLatched(true);
+			hash = new StateHash(system);
+			if (hash.rehash() != movie.getStartHash()) {
+				throw new MovieDesyncException("Movie starts from a different state (bootstrap?)", 0);
+			}
+			run();
+		} finally {
+			joypad.setLatched(false);
+			mem.setRealTimeClock(realTimeClock);
+		}
+		if (desync != null) {
+			throw desync;
+		}
+		logger.info("Replayed " + frame + " frames at " + (int) getFramesPerSecond() + " frames per second");
+	}
+
+	/**
+	 * Restores the cartridge state stored in the movie, if there is one
+	 */
+	private void loadCartridgeState() {
+		RomFile cartridge = system.getMem().getLoadedRomFile();
+		byte[] state = movie.getCartridgeState();
+		if (cartridge != null && state.length > 0) {
+			cartridge.loadState(ByteBuffer.wrap(state).order(ByteOrder.LITTLE_ENDIAN));
+		}
+	}
+
+	/**
+	 * Runs until the end of the movie or the first frame that does not match
+	 */
+	private void run() {
+		frame = 0;
+		nextChange = 0;
+		desync = null;
+		applyInput();
+		system.getGpu().registerObserver(this);
+		CPU processor = system.getProcessor();
+		long start = System.nanoTime();
+		try {
+			while (frame < movie.getFrameCount() && desync == null) {
+				processor.step();
+			}
+		} finally {
+			elapsed = System.nanoTime() - start;
+			system.getGpu().removeObserver(this);
+		}
+	}
+
+	/**
+	 * Called by the GPU at the end of each frame
+	 */
+	@Override
+	public void updateDisplay() {
+		frame++;
+		if (movie.hasFrameHash(frame) && hash.update() != movie.getFrameHash(frame)) {
+			desync = new MovieDesyncException("Replay diverged from the recording at frame " + frame, frame);
+			return;
+		}
+		applyInput();
+	}
+
+	/**
+	 * Latches the keys recorded for the current frame
+	 */
+	private void applyInput() {
+		while (nextChange < movie.getChangeCount() && movie.getChangeFrame(nextChange) <= frame) {
+			system.getJoypad().setButtons(movie.getChangeButtons(nextChange));
+			nextChange++;
+		}
+	}
+
+	/**
+	 * @return frames replayed so far
+	 */
+	public int getFrame() {
+		return frame;
+	}
+
+	/**
+	 * @return nanoseconds taken by the last replay
+	 */
+	public long getElapsed() {
+		return elapsed;
+	}
+
+	public double getFramesPerSecond() {
+		return elapsed == 0 ? 0 : frame * 1e9 / elapsed;
+	}
+
+}
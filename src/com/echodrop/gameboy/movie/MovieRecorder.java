@@ -0,0 +1,140 @@
+/**
+ * MovieRecorder.java
+ *
+ * @author anewkirk
+ *
+ * Licensing information can be found in the root directory of the project.
+ */
+
+package com.echodrop.gameboy.movie;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.logging.Logger;
+
+import com.echodrop.gameboy.core.Joypad;
+import com.echodrop.gameboy.core.MMU;
+import com.echodrop.gameboy.core.SaveState;
+import com.echodrop.gameboy.core.StateHash;
+import com.echodrop.gameboy.core.TailspinGB;
+import com.echodrop.gameboy.interfaces.IGraphicsObserver;
+import com.echodrop.gameboy.rom.RomFile;
+
+/**
+ * Records a movie of a system as it is played. Recording starts from a reset,
+ * and the joypad is latched for as long as it lasts: the keys held on the
+ * host are passed to the game only at the end of each frame, so the frame at
+ * which each change takes effect is exactly the one that is recorded.
+ * Cartridge clocks run on emulated time while recording, since host time could
+ * not be replayed.
+ *
+ * start() and stop() must be called on the emulation thread, or while
+ * emulation is stopped.
+ */
+public class MovieRecorder implements IGraphicsObserver {
+
+	private static final Logger logger = Logger.getLogger(MovieRecorder.class.getName());
+
+	private final TailspinGB system;
+	private StateHash hash;
+	private Movie movie;
+	private int frame;
+
+	/**
+	 * Clock mode to go back to when recording stops
+	 */
+	private boolean realTimeClock;
+
+	public MovieRecorder(TailspinGB system) {
+		this.system = system;
+	}
+
+	/**
+	 * Resets the system and starts recording, with a hash for every frame
+	 */
+	public void start() {
+		start(Movie.DEFAULT_HASH_INTERVAL);
+	}
+
+	/**
+	 * Resets the system and starts recording
+	 */
+	public void start(int hashInterval) {
+		MMU mem = system.getMem();
+		realTimeClock = mem.isRealTimeClock();
+		mem.setRealTimeClock(false);
+		system.reset();
+		Joypad joypad = system.getJoypad();
+		joypad.setLatched(true);
+		joypad.latch();
+
+		hash = new StateHash(system);
+		movie = new Movie(SaveState.getCartridgeId(system), hash.rehash(), hashInterval);
+		movie.setCartridgeState(saveCartridgeState());
+		movie.addInput(0, joypad.getButtons());
+		frame = 0;
+		system.getGpu().registerObserver(this);
+		logger.info("Movie recording started");
+	}
+
+	/**
+	 * Called by the GPU at the end of each frame
+	 */
+	@Override
+	public void updateDisplay() {
+		if (movie == null) {
+			return;
+		}
+		frame++;
+		movie.setFrameCount(frame);
+		if (frame % movie.getHashInterval() == 0) {
+			movie.addHash(hash.update());
+		}
+		Joypad joypad = system.getJoypad();
+		joypad.latch();
+		movie.addInput(frame, joypad.getButtons());
+	}
+
+	/**
+	 * Stops recording and releases the joypad
+	 *
+	 * @return the movie, which ends with the last complete frame
+	 */
+	public Movie stop() {
+		Movie result = movie;
+		movie = null;
+		hash = null;
+		system.getGpu().removeObserver(this);
+		system.getJoypad().setLatched(false);
+		system.getMem().setRealTimeClock(realTimeClock);
+		logger.info("Movie recording stopped after " + frame + " frames");
+		return result;
+	}
+
+	/**
+	 * @return the cartridge's RAM and registers, which a replay starts from
+	 */
+	private byte[] saveCartridgeState() {
+		RomFile cartridge = system.getMem().getLoadedRomFile();
+		if (cartridge == null) {
+			return new byte[0];
+		}
+		ByteBuffer buffer = ByteBuffer.allocate(cartridge.ram.length + TailspinGB.REGISTER_STATE_LENGTH)
+				.order(ByteOrder.LITTLE_ENDIAN);
+		cartridge.saveState(buffer);
+		return Arrays.copyOf(buffer.array(), buffer.position());
+	}
+
+	public boolean isRecording() {
+		return movie != null;
+	}
+
+	/**
+	 * @return frames recorded so far
+	 */
+	public int getFrame() {
+		return frame;
+	}
+
+}
@@ -0,0 +1,231 @@
+/**
+ * BatteryRam.java
+ * 
+ * @author anewkirk
+ * 
+ * Licensing information can be found in the root directory of the project.
+ */
+
+package com.echodrop.gameboy.rom;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.logging.Logger;
+
+/**
+ * Persists a battery backed cartridge's RAM to a memory mapped .sav file.
+ * 
+ * The emulation thread only ever touches the RAM array and a dirty bit per
+ * 256 byte page. A background thread copies dirty pages into the mapping on a
+ * fixed interval and forces them to disk, so the emulation thread never waits
+ * on I/O. Pages are copied into the mapping only once they have changed, and
+ * a final flush happens on close() and at JVM shutdown.
+ * 
+ * A cartridge can also keep a small trailer after the RAM in the same file
+ * (the MBC3 clock state). New trailer contents are handed over as a whole and
+ * written by the next flush.
+ */
+public class BatteryRam {
+
+	private static final Logger logger = Logger.getLogger(BatteryRam.class.getName());
+
+	/**
+	 * Default time between background flushes, in milliseconds
+	 */
+	public static final long DEFAULT_FLUSH_INTERVAL = 1000;
+
+	private static final int PAGE_SHIFT = 8;
+	static final int PAGE_SIZE = 1 << PAGE_SHIFT;
+
+	private final File file;
+	private final byte[] ram;
+	private final FileChannel channel;
+	private final MappedByteBuffer mapping;
+
+	/**
+	 * One bit per page of ram
+	 */
+	private final AtomicLongArray dirty;
+
+	private final int trailerLength;
+
+	/**
+	 * Trailer read from an existing save file, or null
+	 */
+	private byte[] loadedTrailer;
+
+	/**
+	 * Trailer waiting for the next flush, or null
+	 */
+	private final AtomicReference<byte[]> pendingTrailer = new AtomicReference<byte[]>();
+	private final ScheduledExecutorService flusher;
+	private final Thread shutdownHook;
+	private boolean closed;
+
+	/**
+	 * Maps the save file, creating it if necessary, and loads its contents
+	 * into ram
+	 * 
+	 * @param trailerLength
+	 *            number of bytes reserved after the RAM for cartridge state
+	 */
+	public BatteryRam(File file, byte[] ram, int trailerLength, long flushInterval) throws IOException {
+		this.file = file;
+		this.ram = ram;
+		this.trailerLength = trailerLength;
+		this.channel = FileChannel.open(file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE,
+				StandardOpenOption.CREATE);
+		long existingSize = channel.size();
+		this.mapping = channel.map(FileChannel.MapMode.READ_WRITE, 0, ram.length + trailerLength);
+		if (existingSize > 0) {
+			ByteBuffer view = mapping.duplicate();
+			view.get(ram);
+			if (trailerLength > 0 && existingSize >= ram.length + trailerLength) {
+				loadedTrailer = new byte[trailerLength];
+				view.get(loadedTrailer);
+			}
+			logger.info("Save file loaded: " + file);
+		}
+		this.dirty = new AtomicLongArray(Math.max(1, (ram.length / PAGE_SIZE + 63) / 64));
+
+		this.flusher = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "Battery RAM flush");
+				t.setDaemon(true);
+				return t;
+			}
+		});
+		flusher.scheduleWithFixedDelay(new Runnable() {
+			@Override
+			public void run() {
+				flush();
+			}
+		}, flushInterval, flushInterval, TimeUnit.MILLISECONDS);
+
+		this.shutdownHook = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				flush();
+			}
+		});
+		Runtime.getRuntime().addShutdownHook(shutdownHook);
+	}
+
+	/**
+	 * Records that the byte at index in ram has been written. Called on the
+	 * emulation thread after the write.
+	 */
+	public void markDirty(int index) {
+		int page = index >> PAGE_SHIFT;
+		int word = page >> 6;
+		long bit = 1L << page;
+		long bits = dirty.get(word);
+		while ((bits & bit) == 0 && !dirty.compareAndSet(word, bits, bits | bit)) {
+			bits = dirty.get(word);
+		}
+	}
+
+	/**
+	 * @return the trailer stored in the save file when it was opened, or null
+	 *         if there was none
+	 */
+	public byte[] getLoadedTrailer() {
+		return loadedTrailer;
+	}
+
+	/**
+	 * Replaces the trailer as of the next flush. The array must not be
+	 * modified afterwards.
+	 */
+	public void writeTrailer(byte[] trailer) {
+		if (trailer.length == trailerLength) {
+			pendingTrailer.set(trailer);
+		}
+	}
+
+	/**
+	 * Copies dirty pages into the mapping and forces them to disk
+	 */
+	public synchronized void flush() {
+		if (closed) {
+			return;
+		}
+		ByteBuffer view = mapping.duplicate();
+		int pages = 0;
+		for (int word = 0; word < dirty.length(); word++) {
+			/* clear before copying, so a write during the copy marks the page again */
+			long bits = dirty.getAndSet(word, 0);
+			while (bits != 0) {
+				int offset = ((word << 6) + Long.numberOfTrailingZeros(bits)) << PAGE_SHIFT;
+				view.position(offset);
+				view.put(ram, offset, Math.min(PAGE_SIZE, ram.length - offset));
+				bits &= bits - 1;
+				pages++;
+			}
+		}
+		byte[] trailer = pendingTrailer.getAndSet(null);
+		if (trailer != null) {
+			view.position(ram.length);
+			view.put(trailer);
+			pages++;
+		}
+		if (pages > 0) {
+			mapping.force();
+			logger.fine("Flushed " + pages + " page(s) to " + file);
+		}
+	}
+
+	/**
+	 * Stops the background flush, writes any remaining changes and closes the
+	 * save file
+	 */
+	public void close() {
+		flusher.shutdown();
+		try {
+			flusher.awaitTermination(1, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		flush();
+		synchronized (this) {
+			closed = true;
+		}
+		try {
+			channel.close();
+		} catch (IOException e) {
+			logger.warning("Unable to close save file " + file + ": " + e.getMessage());
+		}
+		try {
+			Runtime.getRuntime().removeShutdownHook(shutdownHook);
+		} catch (IllegalStateException e) {
+			// already shutting down; the hook is running or has run
+		}
+	}
+
+	public File getFile() {
+		return file;
+	}
+
+	/**
+	 * @return the save file for a ROM file, i.e. its path with the extension
+	 *         replaced by .sav
+	 */
+	public static File saveFileFor(String romPath) {
+		int dot = romPath.lastIndexOf('.');
+		int separator = romPath.lastIndexOf(File.separatorChar);
+		String base = dot > separator ? romPath.substring(0, dot) : romPath;
+		return new File(base + ".sav");
+	}
+
+}
@@ -1,10 +1,85 @@
+/**
+ * Mbc1Rom.java
+ * 
+ * @author anewkirk
+ * 
+ * Licensing information can be found in the root directory of the project.
+ */
+
 package com.echodrop.gameboy.rom;
 
+import java.nio.ByteBuffer;
+
+/**
+ * MBC1: up to 2MB of ROM and 32KB of RAM. The two bit register at 0x4000
+ * supplies either the upper ROM bank bits or, in mode 1, the RAM bank (and the
+ * bank mapped at 0x0000).
+ */
 public class Mbc1Rom extends RomFile {
 
-	public Mbc1Rom(byte[] rom) {
-		super(rom);
+	/* 5 bit ROM bank register */
+	private int bankLow;
+
+	/* 2 bit upper ROM / RAM bank register */
+	private int bankHigh;
+	private boolean ramEnabled;
+	private boolean advancedMode;
+
+	public Mbc1Rom(RomImage image) {
+		super(image);
 		
 	}
 
+	@Override
+	protected void reset() {
+		bankLow = 1;
+		bankHigh = 0;
+		ramEnabled = false;
+		advancedMode = false;
+		update();
+	}
+
+	@Override
+	protected void update() {
+		int upper = bankHigh << 5;
+		selectRomBanks(advancedMode ? upper : 0, upper | bankLow);
+		selectRam(ramEnabled, advancedMode ? bankHigh : 0);
+	}
+
+	@Override
+	protected void saveRegisters(ByteBuffer buffer) {
+		buffer.put((byte) bankLow).put((byte) bankHigh);
+		buffer.put((byte) (ramEnabled ? 1 : 0)).put((byte) (advancedMode ? 1 : 0));
+	}
+
+	@Override
+	protected void loadRegisters(ByteBuffer buffer) {
+		bankLow = buffer.get();
+		bankHigh = buffer.get();
+		ramEnabled = buffer.get() != 0;
+		advancedMode = buffer.get() != 0;
+	}
+
+	@Override
+	public void writeControl(char address, byte data) {
+		switch (address & 0x6000) {
+		case 0x0000:
+			ramEnabled = (data & 0x0F) == 0x0A;
+			break;
+		case 0x2000:
+			bankLow = data & 0x1F;
+			if (bankLow == 0) {
+				bankLow = 1;
+			}
+			break;
+		case 0x4000:
+			bankHigh = data & 0x03;
+			break;
+		default:
+			advancedMode = (data & 0x01) != 0;
+			break;
+		}
+		update();
+	}
+
 }
@@ -0,0 +1,88 @@
+/**
+ * Mbc2Rom.java
+ * 
+ * @author anewkirk
+ * 
+ * Licensing information can be found in the root directory of the project.
+ */
+
+package com.echodrop.gameboy.rom;
+
+import java.nio.ByteBuffer;
+
+/**
+ * MBC2: up to 256KB of ROM and 512 half-bytes of built in RAM. The RAM is too
+ * unlike ordinary memory to be mapped through the page table (only the low
+ * nibble is stored, and it repeats through 0xA000 - 0xBFFF), so it is always
+ * accessed through readRam/writeRam.
+ */
+public class Mbc2Rom extends RomFile {
+
+	private static final int RAM_SIZE = 0x200;
+
+	private int bank;
+	private boolean ramEnabled;
+
+	public Mbc2Rom(RomImage image) {
+		super(image);
+		this.ram = new byte[RAM_SIZE];
+	}
+
+	@Override
+	protected void reset() {
+		bank = 1;
+		ramEnabled = false;
+		update();
+	}
+
+	@Override
+	protected void update() {
+		selectRomBanks(0, bank);
+		selectRam(false, 0);
+	}
+
+	@Override
+	protected void saveRegisters(ByteBuffer buffer) {
+		buffer.put((byte) bank);
+		buffer.put((byte) (ramEnabled ? 1 : 0));
+	}
+
+	@Override
+	protected void loadRegisters(ByteBuffer buffer) {
+		bank = buffer.get();
+		ramEnabled = buffer.get() != 0;
+	}
+
+	@Override
+	public void writeControl(char address, byte data) {
+		if (address >= 0x4000) {
+			return;
+		}
+		/* bit 8 of the address selects the register */
+		if ((address & 0x0100) == 0) {
+			ramEnabled = (data & 0x0F) == 0x0A;
+		} else {
+			bank = data & 0x0F;
+			if (bank == 0) {
+				bank = 1;
+			}
+		}
+		update();
+	}
+
+	@Override
+	public byte readRam(char address) {
+		if (!ramEnabled) {
+			return (byte) 0xFF;
+		}
+		return (byte) (0xF0 | ram[address & (RAM_SIZE - 1)]);
+	}
+
+	@Override
+	public void writeRam(char address, byte data) {
+		if (ramEnabled) {
+			storeRam(address & (RAM_SIZE - 1), (byte) (data & 0x0F));
+		}
+	}
+
+}
@@ -0,0 +1,332 @@
+/**
+ * Mbc3Rom.java
+ * 
+ * @author anewkirk
+ * 
+ * Licensing information can be found in the root directory of the project.
+ */
+
+package com.echodrop.gameboy.rom;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/**
+ * MBC3: up to 2MB of ROM, 32KB of RAM and a real time clock. Selecting an RTC
+ * register (0x08 - 0x0C) in place of a RAM bank unmaps the RAM so that
+ * accesses reach readRam/writeRam.
+ * 
+ * The clock is never ticked. It is kept as a seconds count at a base time,
+ * and the registers are only worked out from it when the game latches them.
+ * By default time is measured in emulated clock cycles, so the clock is
+ * deterministic and runs at emulation speed; in real time mode it follows the
+ * host clock instead. The clock state is stored after the RAM in the save
+ * file, in the 48 byte layout used by other emulators.
+ */
+public class Mbc3Rom extends RomFile {
+
+	public static final int CYCLES_PER_SECOND = 4194304;
+
+	private static final int RTC_SECONDS = 0x08;
+	private static final int RTC_MINUTES = 0x09;
+	private static final int RTC_HOURS = 0x0A;
+	private static final int RTC_DAY_LOW = 0x0B;
+	private static final int RTC_DAY_HIGH = 0x0C;
+
+	private static final int SECONDS_PER_DAY = 86400;
+
+	/**
+	 * The day counter is 9 bits wide
+	 */
+	private static final int DAY_LIMIT = 512;
+
+	private static final int RTC_SAVE_LENGTH = 48;
+
+	private int bank;
+	private int ramBank;
+	private boolean ramEnabled;
+
+	/**
+	 * Last value written to the latch register; latching happens on a 0
+	 * then 1 sequence
+	 */
+	private int latch;
+
+	/* Seconds, minutes, hours, day low, day high/halt/carry */
+	private byte[] latchedRtc = new byte[5];
+
+	private boolean realTime;
+
+	/**
+	 * Clock value in seconds as of baseTime
+	 */
+	private long baseSeconds;
+
+	/**
+	 * Emulated clock cycle, or host time in milliseconds in real time mode
+	 */
+	private long baseTime;
+
+	/**
+	 * Ticks of the current second elapsed before a reset, carried over to the
+	 * restarted cycle counter
+	 */
+	private long carriedTicks;
+	private boolean halted;
+	private boolean dayCarry;
+
+	public Mbc3Rom(RomImage image) {
+		super(image);
+	}
+
+	@Override
+	protected void reset() {
+		bank = 1;
+		ramBank = 0;
+		ramEnabled = false;
+		latch = 0xFF;
+
+		if (getBattery() == null) {
+			/* nothing persists the clock, so start it from zero like the RAM */
+			baseSeconds = 0;
+			halted = false;
+			dayCarry = false;
+			Arrays.fill(latchedRtc, (byte) 0);
+			carriedTicks = 0;
+		}
+		/* the cycle counter restarts on reset; the clock carries on from where beforeReset() left it */
+		baseTime = now() - carriedTicks;
+		carriedTicks = 0;
+		update();
+	}
+
+	@Override
+	public void beforeReset() {
+		if (mem != null && !halted) {
+			syncClock();
+			carriedTicks = now() - baseTime;
+		}
+	}
+
+	@Override
+	protected void update() {
+		selectRomBanks(0, bank);
+		selectRam(ramEnabled && ramBank < RTC_SECONDS, ramBank);
+	}
+
+	/**
+	 * The part of the current second that has already elapsed is saved in
+	 * nanoseconds, so that a state can be restored in either clock mode
+	 */
+	@Override
+	protected void saveRegisters(ByteBuffer buffer) {
+		buffer.put((byte) bank).put((byte) ramBank);
+		buffer.put((byte) (ramEnabled ? 1 : 0)).put((byte) latch);
+		buffer.put(latchedRtc);
+		syncClock();
+		buffer.putLong(baseSeconds);
+		buffer.putLong(halted ? 0 : (now() - baseTime) * 1000000000L / getTicksPerSecond());
+		buffer.put((byte) (halted ? 1 : 0)).put((byte) (dayCarry ? 1 : 0));
+	}
+
+	@Override
+	protected void loadRegisters(ByteBuffer buffer) {
+		bank = buffer.get() & 0x7F;
+		ramBank = buffer.get();
+		ramEnabled = buffer.get() != 0;
+		latch = buffer.get() & 0xFF;
+		buffer.get(latchedRtc);
+		baseSeconds = buffer.getLong();
+		baseTime = now() - buffer.getLong() * getTicksPerSecond() / 1000000000L;
+		halted = buffer.get() != 0;
+		dayCarry = buffer.get() != 0;
+	}
+
+	@Override
+	public void writeControl(char address, byte data) {
+		switch (address & 0x6000) {
+		case 0x0000:
+			ramEnabled = (data & 0x0F) == 0x0A;
+			break;
+		case 0x2000:
+			bank = data & 0x7F;
+			if (bank == 0) {
+				bank = 1;
+			}
+			break;
+		case 0x4000:
+			ramBank = data & 0x0F;
+			break;
+		default:
+			if (latch == 0 && data == 1) {
+				latchClock();
+			}
+			latch = data;
+			break;
+		}
+		update();
+	}
+
+	private boolean isRtcSelected() {
+		return ramEnabled && ramBank >= RTC_SECONDS && ramBank <= RTC_DAY_HIGH;
+	}
+
+	@Override
+	public byte readRam(char address) {
+		if (!isRtcSelected()) {
+			return (byte) 0xFF;
+		}
+		return latchedRtc[ramBank - RTC_SECONDS];
+	}
+
+	@Override
+	public void writeRam(char address, byte data) {
+		if (isRtcSelected()) {
+			writeClock(ramBank, data & 0xFF);
+		} else {
+			super.writeRam(address, data);
+		}
+	}
+
+	private long now() {
+		return realTime ? System.currentTimeMillis() : getCycles();
+	}
+
+	private long getTicksPerSecond() {
+		return realTime ? 1000 : CYCLES_PER_SECOND;
+	}
+
+	/**
+	 * Moves the base time up to now, keeping any fraction of a second
+	 */
+	private void syncClock() {
+		if (!halted) {
+			long ticksPerSecond = getTicksPerSecond();
+			long seconds = (now() - baseTime) / ticksPerSecond;
+			baseSeconds += seconds;
+			baseTime += seconds * ticksPerSecond;
+		}
+		if (baseSeconds >= (long) DAY_LIMIT * SECONDS_PER_DAY) {
+			dayCarry = true;
+			baseSeconds %= (long) DAY_LIMIT * SECONDS_PER_DAY;
+		}
+	}
+
+	private void latchClock() {
+		syncClock();
+		long days = baseSeconds / SECONDS_PER_DAY;
+		latchedRtc[0] = (byte) (baseSeconds % 60);
+		latchedRtc[1] = (byte) (baseSeconds / 60 % 60);
+		latchedRtc[2] = (byte) (baseSeconds / 3600 % 24);
+		latchedRtc[3] = (byte) days;
+		latchedRtc[4] = (byte) (days >> 8 & 0x01 | (halted ? 0x40 : 0) | (dayCarry ? 0x80 : 0));
+		updateSaveTrailer();
+	}
+
+	private void writeClock(int register, int value) {
+		syncClock();
+		long seconds = baseSeconds % 60;
+		long minutes = baseSeconds / 60 % 60;
+		long hours = baseSeconds / 3600 % 24;
+		long days = baseSeconds / SECONDS_PER_DAY;
+
+		switch (register) {
+		case RTC_SECONDS:
+			seconds = value % 60;
+			/* writing the seconds restarts the current second */
+			baseTime = now();
+			break;
+		case RTC_MINUTES:
+			minutes = value % 60;
+			break;
+		case RTC_HOURS:
+			hours = value % 24;
+			break;
+		case RTC_DAY_LOW:
+			days = (days & 0x100) | value;
+			break;
+		default:
+			days = (days & 0xFF) | (value & 0x01) << 8;
+			dayCarry = (value & 0x80) != 0;
+			boolean halt = (value & 0x40) != 0;
+			if (halted && !halt) {
+				baseTime = now();
+			}
+			halted = halt;
+			break;
+		}
+		baseSeconds = days * SECONDS_PER_DAY + hours * 3600 + minutes * 60 + seconds;
+		updateSaveTrailer();
+	}
+
+	@Override
+	public void setRealTimeClock(boolean realTime) {
+		if (mem != null) {
+			syncClock();
+		}
+		this.realTime = realTime;
+		if (mem != null) {
+			baseTime = now();
+		}
+	}
+
+	public boolean isRealTimeClock() {
+		return realTime;
+	}
+
+	/**
+	 * @return true if this cartridge type has the clock
+	 */
+	public boolean hasTimer() {
+		return cartridgeType == 0x0F || cartridgeType == 0x10;
+	}
+
+	@Override
+	protected int getSaveTrailerLength() {
+		return hasTimer() ? RTC_SAVE_LENGTH : 0;
+	}
+
+	@Override
+	protected byte[] createSaveTrailer() {
+		syncClock();
+		long days = baseSeconds / SECONDS_PER_DAY;
+		int[] current = { (int) (baseSeconds % 60), (int) (baseSeconds / 60 % 60), (int) (baseSeconds / 3600 % 24),
+				(int) (days & 0xFF), (int) (days >> 8 & 0x01 | (halted ? 0x40 : 0) | (dayCarry ? 0x80 : 0)) };
+
+		ByteBuffer trailer = ByteBuffer.allocate(RTC_SAVE_LENGTH).order(ByteOrder.LITTLE_ENDIAN);
+		for (int value : current) {
+			trailer.putInt(value);
+		}
+		for (byte value : latchedRtc) {
+			trailer.putInt(value & 0xFF);
+		}
+		trailer.putLong(System.currentTimeMillis() / 1000);
+		return trailer.array();
+	}
+
+	@Override
+	protected void loadSaveTrailer(byte[] data) {
+		ByteBuffer trailer = ByteBuffer.wrap(data).order(ByteOrder.LITTLE_ENDIAN);
+		long seconds = trailer.getInt();
+		long minutes = trailer.getInt();
+		long hours = trailer.getInt();
+		long days = trailer.getInt() & 0xFF;
+		int dayHigh = trailer.getInt();
+		for (int i = 0; i < latchedRtc.length; i++) {
+			latchedRtc[i] = (byte) trailer.getInt();
+		}
+		long savedAt = trailer.getLong();
+
+		days |= (dayHigh & 0x01) << 8;
+		halted = (dayHigh & 0x40) != 0;
+		dayCarry = (dayHigh & 0x80) != 0;
+		baseSeconds = days * SECONDS_PER_DAY + hours * 3600 + minutes * 60 + seconds;
+
+		/* emulated time stood still while the emulator was not running */
+		if (realTime && !halted) {
+			baseSeconds += Math.max(0, System.currentTimeMillis() / 1000 - savedAt);
+		}
+	}
+
+}
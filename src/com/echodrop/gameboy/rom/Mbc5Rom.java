@@ -0,0 +1,71 @@
+/**
+ * Mbc5Rom.java
+ * 
+ * @author anewkirk
+ * 
+ * Licensing information can be found in the root directory of the project.
+ */
+
+package com.echodrop.gameboy.rom;
+
+import java.nio.ByteBuffer;
+
+/**
+ * MBC5: up to 8MB of ROM (9 bit bank number, bank 0 selectable at 0x4000) and
+ * 128KB of RAM.
+ */
+public class Mbc5Rom extends RomFile {
+
+	private int bank;
+	private int ramBank;
+	private boolean ramEnabled;
+
+	public Mbc5Rom(RomImage image) {
+		super(image);
+	}
+
+	@Override
+	protected void reset() {
+		bank = 1;
+		ramBank = 0;
+		ramEnabled = false;
+		update();
+	}
+
+	@Override
+	protected void update() {
+		selectRomBanks(0, bank);
+		selectRam(ramEnabled, ramBank);
+	}
+
+	@Override
+	protected void saveRegisters(ByteBuffer buffer) {
+		buffer.putShort((short) bank);
+		buffer.put((byte) ramBank);
+		buffer.put((byte) (ramEnabled ? 1 : 0));
+	}
+
+	@Override
+	protected void loadRegisters(ByteBuffer buffer) {
+		bank = buffer.getShort();
+		ramBank = buffer.get();
+		ramEnabled = buffer.get() != 0;
+	}
+
+	@Override
+	public void writeControl(char address, byte data) {
+		if (address < 0x2000) {
+			ramEnabled = (data & 0x0F) == 0x0A;
+		} else if (address < 0x3000) {
+			bank = (bank & 0x100) | (data & 0xFF);
+		} else if (address < 0x4000) {
+			bank = (bank & 0xFF) | ((data & 0x01) << 8);
+		} else if (address < 0x6000) {
+			ramBank = data & 0x0F;
+		} else {
+			return;
+		}
+		update();
+	}
+
+}
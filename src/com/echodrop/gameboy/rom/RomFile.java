@@ -1,9 +1,34 @@
 package com.echodrop.gameboy.rom;
 
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import com.echodrop.gameboy.core.CopyOnWriteBytes;
+import com.echodrop.gameboy.core.MMU;
+import com.echodrop.gameboy.exceptions.MapperNotImplementedException;
+import com.echodrop.gameboy.interfaces.IStateful;
 import com.echodrop.gameboy.util.NumberUtils;
 import com.echodrop.gameboy.util.StringUtils;
 
-public class RomFile {
+/**
+ * A cartridge ROM image and its header. This class also implements cartridges
+ * without a memory bank controller; subclasses implement the MBCs.
+ * 
+ * The whole ROM is kept in a single array. Banks are never copied: switching
+ * bank repoints the MMU's page table at a different part of the array, so a
+ * bank switch costs a handful of field writes.
+ */
+public class RomFile implements IStateful {
+
+	public static final int ROM_BANK_SIZE = 0x4000;
+	public static final int RAM_BANK_SIZE = 0x2000;
+
+	/**
+	 * External RAM size in bytes for each value of the header's RAM size byte
+	 */
+	private static final int[] RAM_SIZES = { 0, 0x800, 0x2000, 0x8000, 0x20000, 0x10000 };
 	
 	public String title;
 	public String mfgCode;
@@ -16,19 +41,486 @@ public class RomFile {
 	
 	public byte[] romData;
 	public byte[] ram;
+
+	/**
+	 * Set while ram is shared copy-on-write with a fork of the cartridge
+	 */
+	private CopyOnWriteBytes sharedRam;
+
+	/**
+	 * One flag per 256 bytes of ram, set when it changes. See StateHash.
+	 */
+	private boolean[] ramDirty = new boolean[0];
+
+	/**
+	 * Shared image that romData belongs to
+	 */
+	private RomImage image;
+
+	/**
+	 * Save file for battery backed RAM, or null if ram is not persisted
+	 */
+	private BatteryRam battery;
+
+	protected MMU mem;
+	protected int romBankCount;
+	protected int ramBankCount;
+
+	/* Currently mapped banks */
+	private int lowBank;
+	private int highBank;
+
+	/**
+	 * Offset of the mapped RAM bank, -1 if no RAM is mapped
+	 */
+	private int ramOffset;
 	
 	public RomFile(byte[] rom) {
-		this.romData = rom;
+		this(RomImage.wrap(rom));
+	}
+
+	public RomFile(RomImage image) {
+		this.image = image;
+		this.romData = image.getData();
+		byte[] rom = romData;
 		this.title = new String(readSection(0x134, 0x143));
 		this.mfgCode = new String(readSection(0x13f, 0x142));
 		this.cartridgeType = romData[0x147];
-		this.romSize = 32000 << romData[0x148];
+		this.romSize = 0x8000L << romData[0x148];
 		this.ramSize = romData[0x149];
 		this.destCode = romData[0x14A];;
 		this.headerChecksum = romData[0x14D];
 		
 		byte[] globalChecksumBytes = readSection(0x14E, 0x150);
 		this.cartridgeChecksum = NumberUtils.bytesToWord(globalChecksumBytes[0], globalChecksumBytes[1]);
+
+		/* RomImage pads the data to a whole number of banks */
+		this.romBankCount = rom.length / ROM_BANK_SIZE;
+
+		int ramBytes = ramSize >= 0 && ramSize < RAM_SIZES.length ? RAM_SIZES[ramSize] : 0;
+		this.ram = new byte[ramBytes == 0 ? 0 : Math.max(ramBytes, RAM_BANK_SIZE)];
+		this.ramBankCount = ram.length / RAM_BANK_SIZE;
+	}
+
+	/**
+	 * @return a RomFile for the cartridge's memory bank controller
+	 * 
+	 * @throws MapperNotImplementedException
+	 *             if the ROM uses an unsupported MBC
+	 */
+	public static RomFile create(RomImage image) throws MapperNotImplementedException {
+		switch (image.getData()[0x147] & 0xFF) {
+		case 0x00:
+		case 0x08:
+		case 0x09:
+			return new RomFile(image);
+		case 0x01:
+		case 0x02:
+		case 0x03:
+			return new Mbc1Rom(image);
+		case 0x05:
+		case 0x06:
+			return new Mbc2Rom(image);
+		case 0x0F:
+		case 0x10:
+		case 0x11:
+		case 0x12:
+		case 0x13:
+			return new Mbc3Rom(image);
+		case 0x19:
+		case 0x1A:
+		case 0x1B:
+		case 0x1C:
+		case 0x1D:
+		case 0x1E:
+			return new Mbc5Rom(image);
+		default:
+			throw new MapperNotImplementedException();
+		}
+	}
+
+	/**
+	 * @return true if the cartridge's external RAM is battery backed
+	 */
+	public boolean hasBattery() {
+		switch (cartridgeType & 0xFF) {
+		case 0x03:
+		case 0x06:
+		case 0x09:
+		case 0x0F:
+		case 0x10:
+		case 0x13:
+		case 0x1B:
+		case 0x1E:
+			return true;
+		default:
+			return false;
+		}
+	}
+
+	/**
+	 * Persists the cartridge's RAM to a save file, loading its current
+	 * contents if it exists. While a save file is open, RAM writes are routed
+	 * through writeRam so that changed pages can be tracked. A cartridge
+	 * without RAM gets a save file only if it keeps state in the trailer.
+	 */
+	public void openSaveFile(File file, long flushInterval) throws IOException {
+		if (ram.length == 0 && getSaveTrailerLength() == 0) {
+			return;
+		}
+		battery = new BatteryRam(file, ram, getSaveTrailerLength(), flushInterval);
+		if (battery.getLoadedTrailer() != null) {
+			loadSaveTrailer(battery.getLoadedTrailer());
+		}
+		if (mem != null) {
+			/* remap the current bank read-only */
+			ramOffset = Integer.MIN_VALUE;
+			update();
+		}
+	}
+
+	/**
+	 * Writes outstanding RAM changes and closes the save file, if one is open
+	 */
+	public void closeSaveFile() {
+		if (battery != null) {
+			updateSaveTrailer();
+			battery.close();
+			battery = null;
+		}
+	}
+
+	/**
+	 * @return the number of bytes of cartridge state kept after the RAM in
+	 *         the save file
+	 */
+	protected int getSaveTrailerLength() {
+		return 0;
+	}
+
+	/**
+	 * Restores cartridge state from the save file's trailer
+	 */
+	protected void loadSaveTrailer(byte[] trailer) {
+	}
+
+	/**
+	 * @return the current cartridge state for the save file's trailer
+	 */
+	protected byte[] createSaveTrailer() {
+		return null;
+	}
+
+	/**
+	 * Queues the current cartridge state to be written with the next flush
+	 */
+	protected void updateSaveTrailer() {
+		if (battery != null && getSaveTrailerLength() > 0) {
+			battery.writeTrailer(createSaveTrailer());
+		}
+	}
+
+	/**
+	 * Saves the cartridge RAM and the memory bank controller's registers
+	 */
+	@Override
+	public final void saveState(ByteBuffer buffer) {
+		buffer.put(ram);
+		saveRegisters(buffer);
+	}
+
+	/**
+	 * Restores the cartridge RAM and registers and maps the selected banks.
+	 * Only pages of RAM that differ from the state are written and marked
+	 * changed, so restoring a recent state (as run-ahead does every frame)
+	 * leaves the save file and state hashes alone where nothing changed.
+	 */
+	@Override
+	public final void loadState(ByteBuffer buffer) {
+		int base = buffer.position();
+		for (int start = 0; start < ram.length; start += 0x100) {
+			int end = Math.min(start + 0x100, ram.length);
+			for (int i = start; i < end; i++) {
+				if (buffer.get(base + i) != ram[i]) {
+					restoreRamPage(buffer, base, start, end);
+					break;
+				}
+			}
+		}
+		buffer.position(base + ram.length);
+		loadRegisters(buffer);
+		remap();
+	}
+
+	/**
+	 * Copies a changed page of RAM from a state at base in buffer
+	 */
+	private void restoreRamPage(ByteBuffer buffer, int base, int start, int end) {
+		unshareRam();
+		for (int i = start; i < end; i++) {
+			ram[i] = buffer.get(base + i);
+		}
+		ramDirty[start >> 8] = true;
+		if (battery != null) {
+			battery.markDirty(start);
+		}
+	}
+
+	/**
+	 * Saves the memory bank controller's registers, without the RAM
+	 */
+	public void saveControlState(ByteBuffer buffer) {
+		saveRegisters(buffer);
+	}
+
+	/**
+	 * Restores registers saved by saveControlState() and maps the selected
+	 * banks
+	 */
+	public void loadControlState(ByteBuffer buffer) {
+		loadRegisters(buffer);
+		update();
+	}
+
+	/**
+	 * Writes the memory bank controller's registers to a save state
+	 */
+	protected void saveRegisters(ByteBuffer buffer) {
+	}
+
+	/**
+	 * Reads the registers written by saveRegisters()
+	 */
+	protected void loadRegisters(ByteBuffer buffer) {
+	}
+
+	/**
+	 * Selects whether a cartridge clock follows host time or emulated time.
+	 * Cartridges without a clock ignore this.
+	 */
+	public void setRealTimeClock(boolean realTime) {
+	}
+
+	/**
+	 * @return clock cycles emulated since the system was reset
+	 */
+	protected long getCycles() {
+		return mem.getSystem().getScheduler().getCycles();
+	}
+
+	public BatteryRam getBattery() {
+		return battery;
+	}
+
+	/**
+	 * Called before the system resets, while the cycle counter still holds
+	 * the time emulated so far. A cartridge clock that counts cycles brings
+	 * itself up to date here, since the counter restarts from zero.
+	 */
+	public void beforeReset() {
+	}
+
+	/**
+	 * Maps the cartridge into memory in its power-on state. RAM that is not
+	 * kept in a save file is cleared, so that every run starts the same way.
+	 */
+	public void attach(MMU mem) {
+		this.mem = mem;
+		if (sharedRam != null) {
+			sharedRam.set(null);
+			sharedRam = null;
+			ram = new byte[ram.length];
+		} else if (battery == null) {
+			Arrays.fill(ram, (byte) 0);
+		}
+		int pages = (ram.length + 0xFF) >> 8;
+		if (ramDirty.length != pages) {
+			ramDirty = new boolean[pages];
+		}
+		markAllRamDirty();
+		/* force everything to be mapped */
+		lowBank = -1;
+		highBank = -1;
+		ramOffset = Integer.MIN_VALUE;
+		reset();
+	}
+
+	/**
+	 * Maps the selected banks again, after the MMU has rebuilt its page table
+	 */
+	public void remap() {
+		lowBank = -1;
+		highBank = -1;
+		ramOffset = Integer.MIN_VALUE;
+		update();
+	}
+
+	/**
+	 * Resets the bank registers and maps the resulting banks
+	 */
+	protected void reset() {
+		update();
+	}
+
+	/**
+	 * Maps the banks selected by the current register values
+	 */
+	protected void update() {
+		selectRomBanks(0, 1);
+		selectRam(true, 0);
+	}
+
+	/**
+	 * Handles a write to 0x0000 - 0x7FFF
+	 */
+	public void writeControl(char address, byte data) {
+	}
+
+	/**
+	 * Handles a read from 0xA000 - 0xBFFF while no RAM bank is mapped there
+	 */
+	public byte readRam(char address) {
+		return (byte) 0xFF;
+	}
+
+	/**
+	 * Handles a write to 0xA000 - 0xBFFF that did not go straight to a mapped
+	 * RAM bank: RAM is disabled, or it is mapped read-only because it is
+	 * battery backed or shared with a fork
+	 */
+	public void writeRam(char address, byte data) {
+		if (ramOffset >= 0) {
+			storeRam(ramOffset + (address & (RAM_BANK_SIZE - 1)), data);
+		}
+	}
+
+	/**
+	 * Writes a byte of cartridge RAM, marking it for the next save file flush
+	 */
+	protected void storeRam(int index, byte data) {
+		if (sharedRam != null) {
+			unshareRam();
+			update();
+		}
+		ram[index] = data;
+		ramDirty[index >> 8] = true;
+		if (battery != null) {
+			battery.markDirty(index);
+		}
+	}
+
+	/**
+	 * Gives a fork of this cartridge, running on another system with the same
+	 * ROM image, a copy-on-write view of this cartridge's RAM. Until one of
+	 * them writes to it, RAM is mapped read-only on both, so that writes go
+	 * through writeRam and make a private copy first.
+	 * 
+	 * RAM that is kept in a save file is copied straight away, since the
+	 * save file goes on writing out this cartridge's array.
+	 */
+	public void shareRam(RomFile fork) {
+		if (ram.length == 0) {
+			return;
+		}
+		if (battery != null) {
+			fork.ram = ram.clone();
+		} else {
+			if (sharedRam == null) {
+				sharedRam = new CopyOnWriteBytes(ram);
+			}
+			fork.sharedRam = sharedRam.share();
+			fork.ram = ram;
+			ramOffset = Integer.MIN_VALUE;
+			update();
+		}
+		fork.markAllRamDirty();
+		if (fork.mem != null) {
+			fork.ramOffset = Integer.MIN_VALUE;
+			fork.update();
+		}
+	}
+
+	/**
+	 * Flags the 256 byte page of ram containing index as changed
+	 */
+	public void markRamDirty(int index) {
+		ramDirty[index >> 8] = true;
+	}
+
+	public void markAllRamDirty() {
+		Arrays.fill(ramDirty, true);
+	}
+
+	/**
+	 * @return whether a page of ram has changed since the last call, clearing
+	 *         its flag
+	 */
+	public boolean takeRamDirty(int page) {
+		boolean dirty = ramDirty[page];
+		ramDirty[page] = false;
+		return dirty;
+	}
+
+	/**
+	 * Makes ram this cartridge's own, copying it if a fork still shares it.
+	 * The current bank must be remapped afterwards.
+	 */
+	private void unshareRam() {
+		if (sharedRam != null) {
+			ram = sharedRam.getWritable();
+			sharedRam = null;
+			ramOffset = Integer.MIN_VALUE;
+		}
+	}
+
+	/**
+	 * Maps ROM banks into 0x0000 - 0x3FFF and 0x4000 - 0x7FFF. Bank numbers
+	 * wrap around the size of the ROM, and the page table is only touched if
+	 * a bank actually changes.
+	 */
+	protected void selectRomBanks(int low, int high) {
+		low %= romBankCount;
+		high %= romBankCount;
+		if (low != lowBank) {
+			lowBank = low;
+			mem.mapRomBank((char) 0x0000, romData, low * ROM_BANK_SIZE);
+		}
+		if (high != highBank) {
+			highBank = high;
+			mem.mapRomBank((char) 0x4000, romData, high * ROM_BANK_SIZE);
+		}
+	}
+
+	/**
+	 * Maps a RAM bank into 0xA000 - 0xBFFF, or unmaps it if RAM is disabled
+	 * or absent, in which case accesses go through readRam/writeRam. Battery
+	 * backed or shared RAM is mapped for reading only.
+	 */
+	protected void selectRam(boolean enabled, int bank) {
+		int offset = enabled && ramBankCount > 0 ? (bank % ramBankCount) * RAM_BANK_SIZE : -1;
+		if (offset != ramOffset) {
+			ramOffset = offset;
+			mem.mapRamBank(offset < 0 ? null : ram, offset, battery == null && sharedRam == null);
+		}
+	}
+
+	public RomImage getImage() {
+		return image;
+	}
+
+	/**
+	 * @return the ROM bank mapped at address, which must be below 0x8000
+	 */
+	public int getRomBank(char address) {
+		return address < 0x4000 ? lowBank : highBank;
+	}
+
+	public int getRomBankCount() {
+		return romBankCount;
+	}
+
+	public int getRamBankCount() {
+		return ramBankCount;
 	}
 	
 	public byte[] readSection(int start, int end) {
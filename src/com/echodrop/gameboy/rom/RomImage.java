@@ -0,0 +1,147 @@
+/**
+ * RomImage.java
+ * 
+ * @author anewkirk
+ * 
+ * Licensing information can be found in the root directory of the project.
+ */
+
+package com.echodrop.gameboy.rom;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.logging.Logger;
+
+/**
+ * An immutable cartridge ROM image that can be shared by any number of
+ * emulator instances.
+ * 
+ * Images opened from a file are cached by path and reference counted: opening
+ * a ROM that is already open returns the same image, so each distinct ROM is
+ * held in memory once no matter how many instances run it. That sharing is
+ * the whole saving: the file is read into a plain array, once, because the
+ * MMU's page table maps pages directly onto byte arrays. The array is never
+ * written to.
+ */
+public class RomImage {
+
+	private static final Logger logger = Logger.getLogger(RomImage.class.getName());
+
+	private static final Map<String, RomImage> openImages = new HashMap<String, RomImage>();
+
+	/**
+	 * Cache key, or null for images that were not opened from a file
+	 */
+	private final String path;
+	private final byte[] data;
+	private int references;
+
+	private RomImage(String path, byte[] data) {
+		this.path = path;
+		this.data = data;
+		this.references = 1;
+	}
+
+	/**
+	 * Opens a ROM file, or takes another reference to it if it is already
+	 * open. Each call must be matched by a call to release().
+	 */
+	public static RomImage open(File file) throws IOException {
+		String key = file.getCanonicalPath();
+		synchronized (openImages) {
+			RomImage image = openImages.get(key);
+			if (image != null && image.references > 0) {
+				image.references++;
+				return image;
+			}
+
+			byte[] data;
+			try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+				int size = (int) channel.size();
+				data = new byte[paddedSize(size)];
+				ByteBuffer buffer = ByteBuffer.wrap(data, 0, size);
+				while (buffer.hasRemaining()) {
+					if (channel.read(buffer) < 0) {
+						break;
+					}
+				}
+			}
+			image = new RomImage(key, data);
+			openImages.put(key, image);
+			logger.info("ROM image loaded: " + key);
+			return image;
+		}
+	}
+
+	/**
+	 * @return an unshared image of a ROM that is already in memory
+	 */
+	public static RomImage wrap(byte[] rom) {
+		return new RomImage(null, rom.length == paddedSize(rom.length) ? rom : Arrays.copyOf(rom,
+				paddedSize(rom.length)));
+	}
+
+	/**
+	 * @return size rounded up to a whole number of banks, at least two, so
+	 *         that any bank number can be mapped without bounds checks
+	 */
+	private static int paddedSize(int size) {
+		int banks = Math.max(2, (size + RomFile.ROM_BANK_SIZE - 1) / RomFile.ROM_BANK_SIZE);
+		return banks * RomFile.ROM_BANK_SIZE;
+	}
+
+	/**
+	 * Takes another reference to an image that is already open
+	 * 
+	 * @return this image
+	 */
+	public RomImage retain() {
+		synchronized (openImages) {
+			if (references == 0) {
+				throw new IllegalStateException("ROM image has been released");
+			}
+			references++;
+			return this;
+		}
+	}
+
+	/**
+	 * Drops a reference to the image; the last release removes it from the
+	 * cache so its memory can be reclaimed once no instance uses it
+	 */
+	public void release() {
+		synchronized (openImages) {
+			if (references == 0) {
+				return;
+			}
+			references--;
+			if (references == 0 && path != null) {
+				openImages.remove(path);
+			}
+		}
+	}
+
+	/**
+	 * @return the ROM contents. Must not be modified.
+	 */
+	public byte[] getData() {
+		return data;
+	}
+
+	public int getReferences() {
+		synchronized (openImages) {
+			return references;
+		}
+	}
+
+	public String getPath() {
+		return path;
+	}
+
+}
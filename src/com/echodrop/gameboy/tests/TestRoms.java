@@ -0,0 +1,93 @@
+/**
+ * TestRoms.java
+ *
+ * @author anewkirk
+ *
+ * Licensing information can be found in the root directory of the project.
+ */
+
+package com.echodrop.gameboy.tests;
+
+import com.echodrop.gameboy.core.TailspinGB;
+import com.echodrop.gameboy.debugger.TailspinDebugger;
+import com.echodrop.gameboy.exceptions.MapperNotImplementedException;
+import com.echodrop.gameboy.rom.RomFile;
+
+/**
+ * Builds the small cartridges the tests run, and systems ready to run them
+ */
+public final class TestRoms {
+
+	private TestRoms() {
+	}
+
+	/**
+	 * @return a 32KB cartridge without a mapper, with program at 0x100
+	 */
+	public static byte[] rom(byte[] program) {
+		return rom(program, 0x00, 2, 0);
+	}
+
+	/**
+	 * @return a cartridge of banks 16KB ROM banks with program at 0x100, whose
+	 *         header gives the cartridge type and RAM size code
+	 */
+	public static byte[] rom(byte[] program, int type, int banks, int ramSize) {
+		byte[] rom = new byte[banks * RomFile.ROM_BANK_SIZE];
+		System.arraycopy(program, 0, rom, 0x100, program.length);
+		rom[0x147] = (byte) type;
+		rom[0x148] = (byte) (Integer.numberOfTrailingZeros(banks) - 1);
+		rom[0x149] = (byte) ramSize;
+		return rom;
+	}
+
+	/**
+	 * @return a cartridge with no program whose banks each start with their
+	 *         own number, for checking which bank is mapped
+	 */
+	public static byte[] bankedRom(int type, int banks, int ramSize) {
+		byte[] rom = rom(new byte[0], type, banks, ramSize);
+		for (int i = 0; i < banks; i++) {
+			rom[i * RomFile.ROM_BANK_SIZE] = (byte) i;
+		}
+		return rom;
+	}
+
+	/**
+	 * @return a system with rom loaded and the bootstrap skipped, so that it
+	 *         starts at 0x100. Save files are disabled.
+	 */
+	public static TailspinGB system(byte[] rom) throws MapperNotImplementedException {
+		TailspinGB system = new TailspinGB();
+		load(system, rom);
+		return system;
+	}
+
+	/**
+	 * @return a debugger whose system is set up as by system(rom)
+	 */
+	public static TailspinDebugger debugger(byte[] rom) throws MapperNotImplementedException {
+		TailspinDebugger tdb = new TailspinDebugger();
+		load(tdb.getSystem(), rom);
+		return tdb;
+	}
+
+	private static void load(TailspinGB system, byte[] rom) throws MapperNotImplementedException {
+		system.getMem().setSaveFilesEnabled(false);
+		system.getMem().loadRom(rom);
+		system.skipBootstrap();
+	}
+
+	public static void run(TailspinGB system, int instructions) {
+		for (int i = 0; i < instructions; i++) {
+			system.getProcessor().step();
+		}
+	}
+
+	public static void runFrames(TailspinGB system, int frames) {
+		for (int i = 0; i < frames; i++) {
+			system.getProcessor().runFrame();
+		}
+	}
+
+}
@@ -0,0 +1,157 @@
+/**
+ * CPUTest.java
+ * 
+ * @author anewkirk
+ * 
+ * Licensing information can be found in the root directory of the project.
+ */
+
+package com.echodrop.gameboy.tests.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import com.echodrop.gameboy.core.CPU;
+import com.echodrop.gameboy.core.InterruptController;
+import com.echodrop.gameboy.core.OpcodeTable;
+import com.echodrop.gameboy.core.TailspinGB;
+import com.echodrop.gameboy.core.Timer;
+import com.echodrop.gameboy.disasm.Disassembler;
+
+public class CPUTest {
+
+	/**
+	 * Loads a program into the bootstrap area and runs it for the given number
+	 * of instructions
+	 */
+	private TailspinGB run(int steps, int... program) {
+		byte[] bios = new byte[program.length];
+		for (int i = 0; i < program.length; i++) {
+			bios[i] = (byte) program[i];
+		}
+		TailspinGB system = new TailspinGB();
+		system.getMem().loadBootstrap(bios);
+		for (int i = 0; i < steps; i++) {
+			system.getProcessor().step();
+		}
+		return system;
+	}
+
+	@Test
+	public void opcodeTableTest() {
+		assertEquals(245, OpcodeTable.getOpcodeCount());
+		assertEquals(256, OpcodeTable.getCbOpcodeCount());
+	}
+
+	@Test
+	public void addFlagsTest() {
+		// LD A,$3A; ADD A,$C6
+		CPU p = run(2, 0x3E, 0x3A, 0xC6, 0xC6).getProcessor();
+		assertEquals(0, p.getA().getValue());
+		assertTrue(p.isZeroFlag());
+		assertTrue(p.isHalfCarryFlag());
+		assertTrue(p.isFullCarryFlag());
+	}
+
+	@Test
+	public void daaTest() {
+		// LD A,$45; ADD A,$38; DAA
+		CPU p = run(3, 0x3E, 0x45, 0xC6, 0x38, 0x27).getProcessor();
+		assertEquals(0x83, p.getA().getValue() & 0xFF);
+	}
+
+	@Test
+	public void stackTest() {
+		// LD SP,$FFFE; LD BC,$1234; PUSH BC; POP AF
+		CPU p = run(4, 0x31, 0xFE, 0xFF, 0x01, 0x34, 0x12, 0xC5, 0xF1).getProcessor();
+		assertEquals(0x12, p.getA().getValue());
+		assertEquals(0x30, p.getF().getValue());
+		assertEquals(0xFFFE, p.getSp());
+	}
+
+	@Test
+	public void extendedOpcodeTest() {
+		// LD H,$80; BIT 7,H; SWAP H
+		CPU p = run(3, 0x26, 0x80, 0xCB, 0x7C, 0xCB, 0x34).getProcessor();
+		assertTrue(!p.isZeroFlag());
+		assertEquals(0x08, p.getH().getValue());
+	}
+
+	@Test
+	public void callTest() {
+		// LD SP,$FFFE; CALL $0007; NOP; RET
+		CPU p = run(3, 0x31, 0xFE, 0xFF, 0xCD, 0x07, 0x00, 0x00, 0xC9).getProcessor();
+		assertEquals(0x0006, p.getPc());
+	}
+
+	@Test
+	public void vblankInterruptTest() {
+		int[] program = new int[0x42];
+		// LD SP,$FFFE; LD A,$01; LDH ($FF),A; EI; HALT
+		int[] main = { 0x31, 0xFE, 0xFF, 0x3E, 0x01, 0xE0, 0xFF, 0xFB, 0x76 };
+		System.arraycopy(main, 0, program, 0, main.length);
+		// VBlank handler: LD B,$42; RETI
+		program[0x40] = 0x06;
+		program[0x41] = 0x42;
+		program = java.util.Arrays.copyOf(program, 0x43);
+		program[0x42] = 0xD9;
+
+		TailspinGB system = run(0, program);
+		CPU p = system.getProcessor();
+		for (int i = 0; i < 5000 && p.getB().getValue() != 0x42; i++) {
+			p.step();
+		}
+		assertEquals(0x42, p.getB().getValue());
+		assertEquals(144, system.getGpu().getLine().getValue() & 0xFF);
+		assertEquals(0, system.getInterrupts().getRequested() & InterruptController.VBLANK);
+
+		p.step();
+		assertEquals(0x0009, p.getPc());
+		assertTrue(p.isInterruptsEnabled());
+	}
+
+	@Test
+	public void timerInterruptTest() {
+		int[] program = new int[0x53];
+		// LD SP,$FFFE; LD A,$04; LDH ($FF),A; LD A,$FE; LDH ($05),A; LD A,$05; LDH ($07),A; EI; HALT
+		int[] main = { 0x31, 0xFE, 0xFF, 0x3E, 0x04, 0xE0, 0xFF, 0x3E, 0xFE, 0xE0, 0x05, 0x3E, 0x05, 0xE0, 0x07,
+				0xFB, 0x76 };
+		System.arraycopy(main, 0, program, 0, main.length);
+		// Timer handler: LD B,$42; RETI
+		program[0x50] = 0x06;
+		program[0x51] = 0x42;
+		program[0x52] = 0xD9;
+
+		TailspinGB system = run(0, program);
+		CPU p = system.getProcessor();
+		for (int i = 0; i < 100 && p.getB().getValue() != 0x42; i++) {
+			p.step();
+		}
+		assertEquals(0x42, p.getB().getValue());
+		assertEquals(0, system.getInterrupts().getRequested() & InterruptController.TIMER);
+		// reloaded from TMA, and counting again at 262144Hz
+		assertTrue((system.getTimer().getTima() & 0xFF) < 4);
+	}
+
+	@Test
+	public void dividerTest() {
+		TailspinGB system = new TailspinGB();
+		system.getScheduler().advance(0x1234);
+		assertEquals(0x12, system.getTimer().getDiv());
+		system.getMem().writeByte(Timer.DIV_ADDRESS, (byte) 0x7F);
+		assertEquals(0, system.getTimer().getDiv());
+		system.getScheduler().advance(0x300);
+		assertEquals(0x03, system.getTimer().getDiv());
+	}
+
+	@Test
+	public void disassemblerTest() {
+		TailspinGB system = run(0, 0x31, 0xFE, 0xFF, 0xCB, 0x7C, 0x20, 0xFB);
+		assertEquals("LD SP,$FFFE", Disassembler.disassemble(system.getMem(), (char) 0));
+		assertEquals("BIT 7,H", Disassembler.disassemble(system.getMem(), (char) 3));
+		assertEquals("JR NZ,$0002", Disassembler.disassemble(system.getMem(), (char) 5));
+	}
+
+}
@@ -0,0 +1,55 @@
+/**
+ * FramePacerTest.java
+ *
+ * @author anewkirk
+ *
+ * Licensing information can be found in the root directory of the project.
+ */
+
+package com.echodrop.gameboy.tests.core;
+
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+import com.echodrop.gameboy.core.FramePacer;
+import com.echodrop.gameboy.core.TailspinGB;
+
+public class FramePacerTest {
+
+	@Test
+	public void runFrameTest() {
+		TailspinGB system = new TailspinGB();
+		system.getMem().loadBootstrap(new byte[0x100]);
+		for (int frame = 1; frame <= 3; frame++) {
+			system.getProcessor().runFrame();
+			long cycles = system.getScheduler().getCycles();
+			assertTrue(cycles >= frame * FramePacer.CYCLES_PER_FRAME);
+			assertTrue(cycles < frame * FramePacer.CYCLES_PER_FRAME + 24);
+		}
+	}
+
+	@Test
+	public void pacingTest() {
+		FramePacer pacer = new FramePacer();
+		assertTrue(pacer.isUnlimited());
+		pacer.setSpeed(4);
+		long period = (long) (1e9 / (FramePacer.FRAME_RATE * 4));
+
+		long start = System.nanoTime();
+		pacer.start();
+		for (int i = 0; i < 8; i++) {
+			pacer.endFrame();
+		}
+		assertTrue(System.nanoTime() - start >= 8 * period);
+
+		try {
+			pacer.setSpeed(0.1);
+			fail("Accepted a speed below the minimum");
+		} catch (IllegalArgumentException e) {
+			assertTrue(pacer.getSpeed() == 4);
+		}
+	}
+
+}
@@ -0,0 +1,301 @@
+/**
+ * MMUTest.java
+ * 
+ * @author anewkirk
+ * 
+ * Licensing information can be found in the root directory of the project.
+ */
+
+package com.echodrop.gameboy.tests.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import org.junit.Test;
+
+import com.echodrop.gameboy.core.DmaController;
+import com.echodrop.gameboy.core.InterruptController;
+import com.echodrop.gameboy.core.Joypad;
+import com.echodrop.gameboy.core.MMU;
+import com.echodrop.gameboy.core.TailspinGB;
+import com.echodrop.gameboy.exceptions.MapperNotImplementedException;
+import com.echodrop.gameboy.rom.BatteryRam;
+import com.echodrop.gameboy.rom.Mbc3Rom;
+import com.echodrop.gameboy.rom.RomFile;
+import com.echodrop.gameboy.rom.RomImage;
+import com.echodrop.gameboy.tests.TestRoms;
+
+public class MMUTest {
+
+	@Test
+	public void echoRamTest() {
+		MMU mem = new TailspinGB().getMem();
+		mem.writeByte((char) 0xC123, (byte) 0x5A);
+		assertEquals(0x5A, mem.readByte((char) 0xE123));
+		mem.writeByte((char) 0xFDFF, (byte) 0x33);
+		assertEquals(0x33, mem.readByte((char) 0xDDFF));
+	}
+
+	@Test
+	public void mbc1Test() throws MapperNotImplementedException {
+		TailspinGB system = new TailspinGB();
+		MMU mem = system.getMem();
+		mem.loadRom(TestRoms.bankedRom(0x03, 64, 3));
+		mem.writeByte((char) 0xFF50, (byte) 1);
+
+		assertEquals(1, mem.readByte((char) 0x4000));
+		mem.writeByte((char) 0x2000, (byte) 0x05);
+		assertEquals(5, mem.readByte((char) 0x4000));
+		mem.writeByte((char) 0x2000, (byte) 0x00);
+		assertEquals(1, mem.readByte((char) 0x4000));
+		mem.writeByte((char) 0x4000, (byte) 0x01);
+		assertEquals(0x21, mem.readByte((char) 0x4000));
+		assertEquals(0, mem.readByte((char) 0x0000));
+
+		// RAM is disabled until 0x0A is written to 0x0000 - 0x1FFF
+		assertEquals(0xFF, mem.readByte((char) 0xA000) & 0xFF);
+		mem.writeByte((char) 0x0000, (byte) 0x0A);
+		mem.writeByte((char) 0xA000, (byte) 0x12);
+		assertEquals(0x12, mem.readByte((char) 0xA000));
+
+		// mode 1: the upper bits select the RAM bank and the bank at 0x0000
+		mem.writeByte((char) 0x6000, (byte) 0x01);
+		assertEquals(0x20, mem.readByte((char) 0x0000));
+		assertEquals(0x00, mem.readByte((char) 0xA000));
+		mem.writeByte((char) 0x4000, (byte) 0x00);
+		assertEquals(0x12, mem.readByte((char) 0xA000));
+	}
+
+	@Test
+	public void bankSwitchUnderBootstrapTest() throws MapperNotImplementedException {
+		MMU mem = new TailspinGB().getMem();
+		byte[] bios = new byte[0x100];
+		bios[0] = 0x5A;
+		mem.loadBootstrap(bios);
+		mem.loadRom(TestRoms.bankedRom(0x01, 64, 0));
+
+		/* mode 1 moves the low window, but not the bootstrap over it */
+		mem.writeByte((char) 0x6000, (byte) 0x01);
+		mem.writeByte((char) 0x4000, (byte) 0x01);
+		assertEquals(0x5A, mem.readByte((char) 0x0000));
+		assertEquals(0x21, mem.readByte((char) 0x4000));
+		mem.writeByte((char) 0xFF50, (byte) 1);
+		assertEquals(0x20, mem.readByte((char) 0x0000));
+		mem.writeByte((char) 0x4000, (byte) 0x00);
+		assertEquals(0, mem.readByte((char) 0x0000));
+		assertEquals(1, mem.readByte((char) 0x4000));
+	}
+
+	@Test
+	public void mbc5Test() throws MapperNotImplementedException {
+		MMU mem = new TailspinGB().getMem();
+		mem.loadRom(TestRoms.bankedRom(0x1B, 512, 4));
+		mem.writeByte((char) 0x2000, (byte) 0x00);
+		assertEquals(0, mem.readByte((char) 0x4000));
+		mem.writeByte((char) 0x2000, (byte) 0x07);
+		mem.writeByte((char) 0x3000, (byte) 0x01);
+		assertEquals(7, mem.readByte((char) 0x4000));
+		assertEquals(7, mem.getRomBank().getMem((char) 0x4000));
+	}
+
+	@Test
+	public void sharedRomImageTest() throws IOException, MapperNotImplementedException {
+		File file = File.createTempFile("tailspin", ".gb");
+		file.deleteOnExit();
+		Files.write(file.toPath(), TestRoms.bankedRom(0x01, 4, 0));
+
+		TailspinGB first = new TailspinGB();
+		TailspinGB second = new TailspinGB();
+		RomImage image = RomImage.open(file);
+		first.getMem().loadRom(image);
+		second.getMem().loadRom(RomImage.open(file));
+		assertSame(image.getData(), second.getMem().getLoadedRomFile().romData);
+		assertEquals(2, image.getReferences());
+
+		second.getMem().writeByte((char) 0x2000, (byte) 0x03);
+		assertEquals(1, first.getMem().readByte((char) 0x4000));
+		assertEquals(3, second.getMem().readByte((char) 0x4000));
+
+		first.getMem().unloadRom();
+		second.getMem().unloadRom();
+		assertEquals(0, image.getReferences());
+		RomImage reopened = RomImage.open(file);
+		assertNotSame(image, reopened);
+		reopened.release();
+	}
+
+	@Test
+	public void batteryRamTest() throws IOException, MapperNotImplementedException {
+		File file = File.createTempFile("tailspin", ".gb");
+		File saveFile = BatteryRam.saveFileFor(file.getPath());
+		file.deleteOnExit();
+		saveFile.deleteOnExit();
+		Files.write(file.toPath(), TestRoms.bankedRom(0x03, 4, 2));
+
+		TailspinGB system = new TailspinGB();
+		MMU mem = system.getMem();
+		mem.loadRom(RomImage.open(file));
+		mem.writeByte((char) 0x0000, (byte) 0x0A);
+		mem.writeByte((char) 0xA000, (byte) 0x42);
+		mem.writeByte((char) 0xBFFF, (byte) 0x24);
+		assertEquals(0x42, mem.readByte((char) 0xA000));
+		system.shutdown();
+
+		byte[] saved = Files.readAllBytes(saveFile.toPath());
+		assertEquals(RomFile.RAM_BANK_SIZE, saved.length);
+		assertEquals(0x42, saved[0]);
+		assertEquals(0x24, saved[0x1FFF]);
+
+		TailspinGB restarted = new TailspinGB();
+		restarted.getMem().loadRom(RomImage.open(file));
+		restarted.getMem().writeByte((char) 0x0000, (byte) 0x0A);
+		assertEquals(0x24, restarted.getMem().readByte((char) 0xBFFF));
+		restarted.shutdown();
+	}
+
+	@Test
+	public void mbc3ClockTest() throws MapperNotImplementedException {
+		TailspinGB system = new TailspinGB();
+		MMU mem = system.getMem();
+		mem.loadRom(TestRoms.bankedRom(0x10, 4, 3));
+		mem.writeByte((char) 0x0000, (byte) 0x0A);
+
+		// 1 hour, 1 minute and 1 second of emulated time
+		for (int i = 0; i < 61; i++) {
+			system.getScheduler().advance(60 * Mbc3Rom.CYCLES_PER_SECOND);
+		}
+		system.getScheduler().advance(Mbc3Rom.CYCLES_PER_SECOND);
+		mem.writeByte((char) 0x6000, (byte) 0x00);
+		mem.writeByte((char) 0x6000, (byte) 0x01);
+
+		int[] expected = { 1, 1, 1, 0, 0 };
+		for (int i = 0; i < expected.length; i++) {
+			mem.writeByte((char) 0x4000, (byte) (0x08 + i));
+			assertEquals(expected[i], mem.readByte((char) 0xA000));
+		}
+
+		// halting stops the clock
+		mem.writeByte((char) 0x4000, (byte) 0x0C);
+		mem.writeByte((char) 0xA000, (byte) 0x40);
+		system.getScheduler().advance(60 * Mbc3Rom.CYCLES_PER_SECOND);
+		mem.writeByte((char) 0x6000, (byte) 0x00);
+		mem.writeByte((char) 0x6000, (byte) 0x01);
+		mem.writeByte((char) 0x4000, (byte) 0x09);
+		assertEquals(1, mem.readByte((char) 0xA000));
+	}
+
+	/**
+	 * Latches the MBC3 clock and reads its seconds register
+	 */
+	private static int readRtcSeconds(MMU mem) {
+		mem.writeByte((char) 0x0000, (byte) 0x0A);
+		mem.writeByte((char) 0x6000, (byte) 0x00);
+		mem.writeByte((char) 0x6000, (byte) 0x01);
+		mem.writeByte((char) 0x4000, (byte) 0x08);
+		return mem.readByte((char) 0xA000);
+	}
+
+	@Test
+	public void mbc3ClockPersistenceTest() throws IOException, MapperNotImplementedException {
+		File file = File.createTempFile("tailspin", ".gb");
+		File saveFile = BatteryRam.saveFileFor(file.getPath());
+		file.deleteOnExit();
+		saveFile.deleteOnExit();
+		/* MBC3+TIMER+BATTERY without RAM */
+		Files.write(file.toPath(), TestRoms.bankedRom(0x0F, 4, 0));
+
+		TailspinGB system = new TailspinGB();
+		system.getMem().loadRom(RomImage.open(file));
+		system.getScheduler().advance(2 * Mbc3Rom.CYCLES_PER_SECOND + Mbc3Rom.CYCLES_PER_SECOND / 2);
+
+		/* emulated time up to a reset is kept, including the part second */
+		system.reset();
+		system.getScheduler().advance(Mbc3Rom.CYCLES_PER_SECOND / 2);
+		assertEquals(3, readRtcSeconds(system.getMem()));
+		system.shutdown();
+		assertEquals(48, Files.readAllBytes(saveFile.toPath()).length);
+
+		TailspinGB restarted = new TailspinGB();
+		restarted.getMem().loadRom(RomImage.open(file));
+		assertEquals(3, readRtcSeconds(restarted.getMem()));
+		restarted.shutdown();
+	}
+
+	@Test
+	public void oamDmaTest() {
+		TailspinGB system = new TailspinGB();
+		MMU mem = system.getMem();
+		for (int i = 0; i < DmaController.TRANSFER_LENGTH; i++) {
+			mem.writeByte((char) (0xC100 + i), (byte) i);
+		}
+		mem.writeByte((char) 0xFF80, (byte) 0x77);
+		mem.writeByte(DmaController.DMA_ADDRESS, (byte) 0xC1);
+
+		byte[] oam = system.getGpu().getOam().getContents();
+		assertEquals(0x00, oam[0x00]);
+		assertEquals(0x9F, oam[0x9F] & 0xFF);
+
+		// only HRAM and I/O are accessible until the transfer completes
+		assertEquals(0xFF, mem.readByte((char) 0xC105) & 0xFF);
+		assertEquals(0xFF, mem.readByte((char) 0xFE00) & 0xFF);
+		assertEquals(0x77, mem.readByte((char) 0xFF80));
+		assertEquals(0xC1, mem.readByte(DmaController.DMA_ADDRESS) & 0xFF);
+
+		system.getScheduler().advance(DmaController.TRANSFER_CYCLES);
+		assertEquals(0x05, mem.readByte((char) 0xC105));
+		assertEquals(0x10, mem.readByte((char) 0xFE10));
+	}
+
+	@Test
+	public void joypadTest() {
+		TailspinGB system = new TailspinGB();
+		MMU mem = system.getMem();
+		system.getJoypad().setInput(Joypad.A | Joypad.START | Joypad.LEFT);
+
+		mem.writeByte(Joypad.P1_ADDRESS, (byte) 0x10);
+		assertEquals(0xD6, mem.readByte(Joypad.P1_ADDRESS) & 0xFF);
+		mem.writeByte(Joypad.P1_ADDRESS, (byte) 0x20);
+		assertEquals(0xED, mem.readByte(Joypad.P1_ADDRESS) & 0xFF);
+		mem.writeByte(Joypad.P1_ADDRESS, (byte) 0x30);
+		assertEquals(0xFF, mem.readByte(Joypad.P1_ADDRESS) & 0xFF);
+
+		// while latched, only latched keys are visible
+		system.getJoypad().setLatched(true);
+		mem.writeByte(Joypad.P1_ADDRESS, (byte) 0x10);
+		assertEquals(0xDF, mem.readByte(Joypad.P1_ADDRESS) & 0xFF);
+		system.getJoypad().latch();
+		assertEquals(0xD6, mem.readByte(Joypad.P1_ADDRESS) & 0xFF);
+	}
+
+	@Test
+	public void joypadInterruptTest() {
+		TailspinGB system = new TailspinGB();
+		MMU mem = system.getMem();
+		Joypad joypad = system.getJoypad();
+		mem.writeByte(Joypad.P1_ADDRESS, (byte) 0x10);
+
+		// a direction key is not selected
+		joypad.press(Joypad.DOWN);
+		system.getScheduler().advance(Joypad.POLL_CYCLES);
+		assertEquals(0, system.getInterrupts().getRequested() & InterruptController.JOYPAD);
+
+		// a button is, and is seen on the next poll
+		joypad.press(Joypad.START);
+		assertEquals(0xD7, mem.readByte(Joypad.P1_ADDRESS) & 0xFF);
+		system.getScheduler().advance(Joypad.POLL_CYCLES);
+		assertEquals(InterruptController.JOYPAD, system.getInterrupts().getRequested() & InterruptController.JOYPAD);
+
+		// holding it does not raise the interrupt again
+		mem.writeByte(InterruptController.IF_ADDRESS, (byte) 0);
+		joypad.release(Joypad.DOWN);
+		system.getScheduler().advance(Joypad.POLL_CYCLES);
+		assertEquals(0, system.getInterrupts().getRequested() & InterruptController.JOYPAD);
+		assertEquals(Joypad.START, joypad.getInput());
+	}
+
+}
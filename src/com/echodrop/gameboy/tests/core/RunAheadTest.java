@@ -0,0 +1,89 @@
+/**
+ * RunAheadTest.java
+ *
+ * @author anewkirk
+ *
+ * Licensing information can be found in the root directory of the project.
+ */
+
+package com.echodrop.gameboy.tests.core;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import com.echodrop.gameboy.core.RunAhead;
+import com.echodrop.gameboy.core.SaveState;
+import com.echodrop.gameboy.core.TailspinGB;
+import com.echodrop.gameboy.exceptions.MapperNotImplementedException;
+import com.echodrop.gameboy.interfaces.IGraphicsObserver;
+import com.echodrop.gameboy.tests.TestRoms;
+
+public class RunAheadTest {
+
+	/**
+	 * Increments C000 and copies it into the first row of background tile 0,
+	 * in both tile sets
+	 */
+	private static final byte[] PROGRAM = { 0x31, (byte) 0xF0, (byte) 0xDF, // LD SP,$DFF0
+			0x21, 0x00, (byte) 0xC0, // LD HL,$C000
+			0x34, // loop: INC (HL)
+			0x7E, // LD A,(HL)
+			(byte) 0xEA, 0x00, (byte) 0x90, // LD ($9000),A
+			(byte) 0xEA, 0x01, (byte) 0x90, // LD ($9001),A
+			(byte) 0xEA, 0x00, (byte) 0x80, // LD ($8000),A
+			0x18, (byte) 0xF3 // JR loop
+	};
+
+	private int notifications;
+
+	private static byte[] getState(TailspinGB system) {
+		SaveState state = new SaveState();
+		state.capture(system);
+		byte[] bytes = new byte[state.getLength()];
+		state.toArray(bytes);
+		return bytes;
+	}
+
+	@Test
+	public void runAheadTest() throws MapperNotImplementedException {
+		TailspinGB system = TestRoms.system(TestRoms.rom(PROGRAM));
+		TailspinGB real = TestRoms.system(TestRoms.rom(PROGRAM));
+		TailspinGB ahead = TestRoms.system(TestRoms.rom(PROGRAM));
+		RunAhead runAhead = new RunAhead(system);
+		runAhead.setFrames(2);
+		TestRoms.runFrames(ahead, 2);
+		system.getGpu().registerObserver(new IGraphicsObserver() {
+			@Override
+			public void updateDisplay() {
+				notifications++;
+			}
+		});
+
+		boolean differs = false;
+		for (int frame = 1; frame <= 10; frame++) {
+			runAhead.runFrame();
+			TestRoms.runFrames(real, 1);
+			TestRoms.runFrames(ahead, 1);
+
+			/* emulation proceeds as normal, one frame at a time... */
+			assertArrayEquals(getState(real), getState(system));
+			assertEquals(frame, notifications);
+
+			/* ...but the screen shows the frame from two frames ahead */
+			byte[][] screen = system.getGpu().getFrameBuffer();
+			for (int x = 0; x < 160; x++) {
+				assertArrayEquals(ahead.getGpu().getFrameBuffer()[x], screen[x]);
+			}
+			differs |= !Arrays.deepEquals(real.getGpu().getFrameBuffer(), screen);
+		}
+		assertTrue(differs);
+		assertTrue(system.getGpu().isRendering());
+		assertTrue(system.getGpu().isNotifying());
+	}
+
+}
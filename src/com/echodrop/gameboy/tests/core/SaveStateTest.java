@@ -0,0 +1,126 @@
+/**
+ * SaveStateTest.java
+ * 
+ * @author anewkirk
+ * 
+ * Licensing information can be found in the root directory of the project.
+ */
+
+package com.echodrop.gameboy.tests.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.junit.Test;
+
+import com.echodrop.gameboy.core.MMU;
+import com.echodrop.gameboy.core.SaveState;
+import com.echodrop.gameboy.core.Scheduler;
+import com.echodrop.gameboy.core.TailspinGB;
+import com.echodrop.gameboy.exceptions.MapperNotImplementedException;
+import com.echodrop.gameboy.exceptions.SaveStateException;
+import com.echodrop.gameboy.rom.RomFile;
+import com.echodrop.gameboy.tests.TestRoms;
+
+public class SaveStateTest {
+
+	/**
+	 * @return a system running an MBC1 cartridge with 32KB of RAM
+	 */
+	private TailspinGB createSystem(int checksum) throws MapperNotImplementedException {
+		byte[] rom = TestRoms.bankedRom(0x03, 8, 0x03);
+		rom[0x14D] = (byte) checksum;
+		return TestRoms.system(rom);
+	}
+
+	@Test
+	public void saveRestoreTest() throws MapperNotImplementedException, SaveStateException {
+		TailspinGB system = createSystem(0);
+		MMU mem = system.getMem();
+		mem.writeByte((char) 0xC000, (byte) 0x11);
+		mem.writeByte((char) 0xFF90, (byte) 0x22);
+		mem.writeByte((char) 0x2000, (byte) 0x05);
+		mem.writeByte((char) 0x0000, (byte) 0x0A);
+		mem.writeByte((char) 0xA000, (byte) 0x33);
+		mem.writeByte((char) 0x8000, (byte) 0x44);
+		mem.writeByte((char) 0xFF07, (byte) 0x05);
+		system.getScheduler().advance(1000);
+
+		SaveState state = new SaveState();
+		state.capture(system);
+		long cycles = system.getScheduler().getCycles();
+		byte div = system.getTimer().getDiv();
+
+		mem.writeByte((char) 0xC000, (byte) 0x99);
+		mem.writeByte((char) 0x2000, (byte) 0x02);
+		mem.writeByte((char) 0xA000, (byte) 0x77);
+		mem.writeByte((char) 0xFF40, (byte) 0x00);
+		mem.writeByte((char) 0xFF07, (byte) 0x00);
+		system.getProcessor().setPc((char) 0x0200);
+		system.getScheduler().advance(5000);
+
+		state.restore(system);
+		assertEquals(cycles, system.getScheduler().getCycles());
+		assertEquals(div, system.getTimer().getDiv());
+		assertEquals(0x0100, system.getProcessor().getPc());
+		assertEquals(0x11, mem.readByte((char) 0xC000));
+		assertEquals(0x22, mem.readByte((char) 0xFF90));
+		assertEquals(5, mem.readByte((char) 0x4000));
+		assertEquals(0x33, mem.readByte((char) 0xA000));
+		assertEquals(0x44, mem.readByte((char) 0x8000));
+		assertEquals(0x91, mem.readByte((char) 0xFF40) & 0xFF);
+		assertEquals(0xFD, mem.readByte((char) 0xFF07) & 0xFF);
+		assertEquals(true, system.getScheduler().isScheduled(Scheduler.TIMER_OVERFLOW));
+	}
+
+	@Test
+	public void fileTest() throws MapperNotImplementedException, SaveStateException, IOException {
+		TailspinGB system = createSystem(0);
+		system.getMem().writeByte((char) 0xD123, (byte) 0x5A);
+		SaveState state = new SaveState();
+		state.capture(system);
+
+		File file = File.createTempFile("tailspin", ".state");
+		file.deleteOnExit();
+		state.write(file);
+		assertEquals(state.getLength(), file.length());
+
+		TailspinGB other = createSystem(0);
+		SaveState.read(file).restore(other);
+		assertEquals(0x5A, other.getMem().readByte((char) 0xD123));
+
+		try {
+			state.restore(createSystem(1));
+			fail("Restored a state over a different cartridge");
+		} catch (SaveStateException e) {
+		}
+	}
+
+	@Test
+	public void cartridgeRamDirtyTest() throws MapperNotImplementedException, SaveStateException {
+		TailspinGB system = createSystem(0);
+		MMU mem = system.getMem();
+		RomFile cartridge = mem.getLoadedRomFile();
+		mem.writeByte((char) 0x0000, (byte) 0x0A);
+		mem.writeByte((char) 0xA000, (byte) 0x33);
+		SaveState state = new SaveState();
+		state.capture(system);
+
+		/* only the page written since the capture is restored and marked */
+		mem.writeByte((char) 0xA180, (byte) 0x77);
+		mem.flushDirtyPages();
+		for (int page = 0; page < 0x80; page++) {
+			cartridge.takeRamDirty(page);
+		}
+		state.restore(system);
+		assertEquals(0, mem.readByte((char) 0xA180));
+		assertEquals(0x33, mem.readByte((char) 0xA000));
+		for (int page = 0; page < 0x80; page++) {
+			assertEquals(page == 1, cartridge.takeRamDirty(page));
+		}
+	}
+
+}
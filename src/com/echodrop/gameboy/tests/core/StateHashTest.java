@@ -0,0 +1,91 @@
+/**
+ * StateHashTest.java
+ * 
+ * @author anewkirk
+ * 
+ * Licensing information can be found in the root directory of the project.
+ */
+
+package com.echodrop.gameboy.tests.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import com.echodrop.gameboy.core.StateHash;
+import com.echodrop.gameboy.core.TailspinGB;
+import com.echodrop.gameboy.exceptions.MapperNotImplementedException;
+import com.echodrop.gameboy.tests.TestRoms;
+
+public class StateHashTest {
+
+	/**
+	 * Increments C000 and copies it to the stack, VRAM and the cartridge RAM
+	 * bank selected by its low bits
+	 */
+	private static final byte[] PROGRAM = { 0x31, (byte) 0xF0, (byte) 0xDF, // LD SP,$DFF0
+			0x21, 0x00, (byte) 0xC0, // LD HL,$C000
+			0x3E, 0x0A, // LD A,$0A
+			(byte) 0xEA, 0x00, 0x00, // LD ($0000),A
+			0x3E, 0x01, // LD A,$01
+			(byte) 0xEA, 0x00, 0x60, // LD ($6000),A
+			0x34, // loop: INC (HL)
+			0x7E, // LD A,(HL)
+			(byte) 0xE6, 0x03, // AND $03
+			(byte) 0xEA, 0x00, 0x40, // LD ($4000),A
+			0x7E, // LD A,(HL)
+			(byte) 0xEA, 0x00, (byte) 0xA0, // LD ($A000),A
+			(byte) 0xEA, 0x00, (byte) 0x80, // LD ($8000),A
+			(byte) 0xF5, // PUSH AF
+			0x18, (byte) 0xEF // JR loop
+	};
+
+	@Test
+	public void incrementalTest() throws MapperNotImplementedException {
+		TailspinGB system = TestRoms.system(TestRoms.rom(PROGRAM, 0x02, 2, 0x03));
+		StateHash hash = new StateHash(system);
+		long previous = hash.update();
+		assertEquals(hash.getUnitCount(), hash.getUnitsHashed());
+
+		for (int frame = 0; frame < 20; frame++) {
+			TestRoms.run(system, 1500);
+			long current = hash.update();
+			assertTrue(current != previous);
+			assertTrue(hash.getUnitsHashed() < hash.getUnitCount() / 2);
+			previous = current;
+
+			/* a fork is in the same state, and is hashed from scratch */
+			TailspinGB fork = system.fork();
+			assertEquals(current, new StateHash(fork).rehash());
+			fork.shutdown();
+		}
+	}
+
+	@Test
+	public void divergenceTest() throws MapperNotImplementedException {
+		TailspinGB system = TestRoms.system(TestRoms.rom(PROGRAM, 0x02, 2, 0x03));
+		TestRoms.run(system, 1000);
+		TailspinGB fork = system.fork();
+		StateHash hash = new StateHash(system);
+		StateHash forkHash = new StateHash(fork);
+
+		TestRoms.run(system, 3000);
+		TestRoms.run(fork, 3000);
+		assertEquals(hash.update(), forkHash.update());
+		assertEquals(-1, hash.findDivergence(forkHash));
+
+		fork.getMem().writeByte((char) 0xC123, (byte) 0x42);
+		assertTrue(hash.update() != forkHash.update());
+		assertEquals("WRAM $C100-$C1FF", hash.describeUnit(hash.findDivergence(forkHash)));
+
+		system.getMem().writeByte((char) 0xC123, (byte) 0x42);
+		fork.getMem().writeByte((char) 0x4000, (byte) 0x02);
+		fork.getMem().writeByte((char) 0xA010, (byte) 0x42);
+		fork.getMem().writeByte((char) 0x4000, (byte) 0x00);
+		hash.update();
+		forkHash.update();
+		assertEquals("cartridge RAM bank 2 $A000-$A0FF", hash.describeUnit(hash.findDivergence(forkHash)));
+	}
+
+}
@@ -0,0 +1,206 @@
+/**
+ * TailspinGBTest.java
+ * 
+ * @author anewkirk
+ * 
+ * Licensing information can be found in the root directory of the project.
+ */
+
+package com.echodrop.gameboy.tests.core;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import com.echodrop.gameboy.core.EmulatorPool;
+import com.echodrop.gameboy.core.InterruptController;
+import com.echodrop.gameboy.core.MemoryRegion;
+import com.echodrop.gameboy.core.Register;
+import com.echodrop.gameboy.core.SaveState;
+import com.echodrop.gameboy.core.TailspinGB;
+import com.echodrop.gameboy.exceptions.MapperNotImplementedException;
+import com.echodrop.gameboy.interfaces.IGraphicsObserver;
+import com.echodrop.gameboy.rom.RomImage;
+import com.echodrop.gameboy.tests.TestRoms;
+
+public class TailspinGBTest {
+
+	private int updates;
+
+	@Test
+	public void resetInPlaceTest() {
+		TailspinGB system = new TailspinGB();
+		Register a = system.getProcessor().getA();
+		MemoryRegion vram = system.getGpu().getVram();
+		byte[][] frameBuffer = system.getGpu().getFrameBuffer();
+		system.getGpu().registerObserver(new IGraphicsObserver() {
+			@Override
+			public void updateDisplay() {
+				updates++;
+			}
+		});
+
+		a.setValue(0x12);
+		system.getMem().writeByte((char) 0x8000, (byte) 0x34);
+		system.getMem().writeByte((char) 0xC000, (byte) 0x56);
+		system.reset();
+
+		assertSame(a, system.getProcessor().getA());
+		assertSame(vram, system.getGpu().getVram());
+		assertSame(frameBuffer, system.getGpu().getFrameBuffer());
+		assertEquals(0, a.getValue());
+		assertEquals(0, system.getMem().readByte((char) 0x8000));
+		assertEquals(0, system.getMem().readByte((char) 0xC000));
+
+		system.getGpu().notifyAllObservers();
+		assertEquals(1, updates);
+	}
+
+	@Test
+	public void poolTest() throws MapperNotImplementedException {
+		byte[] rom = new byte[0x8000];
+		rom[0x4000] = 0x42;
+		rom[0x147] = 0x01;
+		RomImage image = RomImage.wrap(rom);
+		EmulatorPool pool = new EmulatorPool(image);
+		pool.prewarm(2);
+		assertEquals(2, pool.getIdleCount());
+		assertEquals(3, image.getReferences());
+
+		TailspinGB system = pool.acquire();
+		assertEquals(0x42, system.getMem().readByte((char) 0x4000));
+		system.getMem().writeByte((char) 0xC000, (byte) 0x56);
+		pool.release(system);
+		assertEquals(2, pool.getIdleCount());
+
+		TailspinGB reused = pool.acquire();
+		assertSame(system, reused);
+		assertEquals(0, reused.getMem().readByte((char) 0xC000));
+		pool.release(reused);
+
+		pool.close();
+		assertEquals(0, image.getReferences());
+	}
+
+	@Test
+	public void fastBootTest() throws MapperNotImplementedException {
+		byte[] rom = new byte[0x8000];
+		rom[0x0104] = (byte) 0xCE;
+		rom[0x0105] = (byte) 0xED;
+		TailspinGB system = new TailspinGB();
+		system.getMem().loadRom(rom);
+		system.setFastBoot(true);
+		system.reset();
+
+		assertEquals(0x0100, system.getProcessor().getPc());
+		assertEquals(0xFFFE, system.getProcessor().getSp());
+		assertEquals(0x01, system.getProcessor().getA().getValue());
+		assertEquals(0xB0, system.getProcessor().getF().getValue() & 0xFF);
+		assertEquals(0x4D, system.getProcessor().getL().getValue());
+		assertEquals(false, system.getMem().isBiosMapped());
+		assertEquals(0x91, system.getMem().readByte((char) 0xFF40) & 0xFF);
+		assertEquals(0xAB, system.getMem().readByte((char) 0xFF04) & 0xFF);
+		assertEquals(0xE1, system.getMem().readByte(InterruptController.IF_ADDRESS) & 0xFF);
+
+		/* 0xCE: the high nibble 1100 doubles to 11110000 */
+		assertEquals(0xF0, system.getMem().readByte((char) 0x8010) & 0xFF);
+		assertEquals(0xF0, system.getMem().readByte((char) 0x8012) & 0xFF);
+		assertEquals(0xFC, system.getMem().readByte((char) 0x8014) & 0xFF);
+		assertEquals(0xFC, system.getMem().readByte((char) 0x8018) & 0xFF);
+		assertEquals(0x01, system.getMem().readByte((char) 0x9904));
+		assertEquals(0x19, system.getMem().readByte((char) 0x9910));
+	}
+
+	@Test
+	public void forkTest() throws MapperNotImplementedException, InterruptedException {
+		/* increments C000 and copies it to cartridge RAM, VRAM and the stack */
+		byte[] program = { 0x31, (byte) 0xF0, (byte) 0xDF, 0x21, 0x00, (byte) 0xC0, 0x3E, 0x0A, (byte) 0xEA, 0x00,
+				0x00, 0x34, 0x7E, (byte) 0xEA, 0x00, (byte) 0xA0, (byte) 0xEA, 0x00, (byte) 0x80, (byte) 0xF5, 0x18,
+				(byte) 0xF4 };
+		final TailspinGB system = TestRoms.system(TestRoms.rom(program, 0x02, 2, 0x02));
+		TestRoms.run(system, 1000);
+
+		final TailspinGB fork = system.fork();
+		assertArrayEquals(captureState(system), captureState(fork));
+
+		Thread[] threads = { new Thread(new Runnable() {
+			@Override
+			public void run() {
+				TestRoms.run(system, 5000);
+			}
+		}), new Thread(new Runnable() {
+			@Override
+			public void run() {
+				TestRoms.run(fork, 5000);
+			}
+		}) };
+		for (Thread t : threads) {
+			t.start();
+		}
+		for (Thread t : threads) {
+			t.join();
+		}
+		assertArrayEquals(captureState(system), captureState(fork));
+
+		system.getMem().writeByte((char) 0xC100, (byte) 0x55);
+		system.getMem().writeByte((char) 0xA100, (byte) 0x66);
+		fork.getMem().writeByte((char) 0x8100, (byte) 0x77);
+		assertEquals(0, fork.getMem().readByte((char) 0xC100));
+		assertEquals(0, fork.getMem().readByte((char) 0xA100));
+		assertEquals(0, system.getMem().readByte((char) 0x8100));
+		assertEquals(0x55, system.getMem().readByte((char) 0xC100));
+		assertEquals(0x66, system.getMem().readByte((char) 0xA100));
+		assertEquals(0x77, fork.getMem().readByte((char) 0x8100));
+	}
+
+	@Test
+	public void headlessTest() throws MapperNotImplementedException {
+		/* enables the HBLANK STAT interrupt, then copies a counter into tile 0 */
+		byte[] program = { 0x3E, 0x08, (byte) 0xE0, 0x41, 0x21, 0x00, (byte) 0xC0, 0x34, 0x7E, (byte) 0xEA, 0x00,
+				(byte) 0x80, (byte) 0xEA, 0x00, (byte) 0x90, 0x18, (byte) 0xF6 };
+		byte[] rom = TestRoms.rom(program);
+		TailspinGB[] systems = { TestRoms.system(rom), TestRoms.system(rom) };
+		TailspinGB headless = systems[1];
+		headless.setHeadless(true);
+		assertTrue(headless.getPacer().isUnlimited());
+
+		/* timing is unaffected, but nothing is drawn */
+		for (int frame = 0; frame < 10; frame++) {
+			for (TailspinGB system : systems) {
+				system.getProcessor().runFrame();
+			}
+			assertArrayEquals(captureState(systems[0]), captureState(headless));
+		}
+		assertEquals(10, headless.getGpu().getFramesNotDrawn());
+		assertTrue(Arrays.deepEquals(new byte[160][144], headless.getGpu().getFrameBuffer()));
+		assertTrue(!Arrays.deepEquals(new byte[160][144], systems[0].getGpu().getFrameBuffer()));
+
+		/* estimating the time saved draws nothing that can be seen */
+		assertTrue(headless.getGpu().estimateSavedNanos() > 0);
+		assertEquals(0, headless.getGpu().getFramesDrawn());
+		assertTrue(Arrays.deepEquals(new byte[160][144], headless.getGpu().getFrameBuffer()));
+
+		/* unless a frame is asked for */
+		headless.getGpu().requestFrame();
+		for (TailspinGB system : systems) {
+			system.getProcessor().runFrame();
+		}
+		assertTrue(Arrays.deepEquals(systems[0].getGpu().getFrameBuffer(), headless.getGpu().getFrameBuffer()));
+		assertEquals(1, headless.getGpu().getFramesDrawn());
+		assertTrue(headless.getGpu().estimateSavedNanos() > 0);
+	}
+
+	private static byte[] captureState(TailspinGB system) {
+		SaveState state = new SaveState();
+		state.capture(system);
+		byte[] bytes = new byte[state.getLength()];
+		state.toArray(bytes);
+		return bytes;
+	}
+
+}
@@ -0,0 +1,61 @@
+/**
+ * BreakpointTest.java
+ *
+ * @author anewkirk
+ *
+ * Licensing information can be found in the root directory of the project.
+ */
+
+package com.echodrop.gameboy.tests.debugger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import com.echodrop.gameboy.debugger.Breakpoint;
+import com.echodrop.gameboy.debugger.TailspinDebugger;
+import com.echodrop.gameboy.tests.TestRoms;
+
+public class BreakpointTest {
+
+	/* JP $4000, then NOPs */
+	private static final byte[] PROGRAM = { (byte) 0xC3, 0x00, 0x40 };
+
+	private static Breakpoint breakpoint(int address, int bank) {
+		Breakpoint bp = new Breakpoint();
+		bp.setAddress((char) address);
+		bp.setBank(bank);
+		return bp;
+	}
+
+	@Test
+	public void addressTest() throws Exception {
+		TailspinDebugger tdb = TestRoms.debugger(TestRoms.rom(PROGRAM));
+		for (int i = 0; i < 64; i++) {
+			tdb.addBreakpoint(breakpoint(0xC000 + i * 3, Breakpoint.ANY_BANK));
+		}
+		tdb.addBreakpoint(breakpoint(0x4002, Breakpoint.ANY_BANK));
+		assertFalse(tdb.atBreakPoint());
+		assertTrue(tdb.runFrame());
+		assertEquals(0x4002, tdb.getSystem().getProcessor().getPc());
+		assertTrue(tdb.atBreakPoint());
+
+		tdb.clearBreakpoints();
+		assertFalse(tdb.atBreakPoint());
+	}
+
+	@Test
+	public void bankTest() throws Exception {
+		TailspinDebugger tdb = TestRoms.debugger(TestRoms.rom(PROGRAM));
+		tdb.addBreakpoint(breakpoint(0x4000, 2));
+		tdb.step();
+		assertEquals(0x4000, tdb.getSystem().getProcessor().getPc());
+		/* a 32KB ROM always has bank 1 at 0x4000 */
+		assertFalse(tdb.atBreakPoint());
+		tdb.addBreakpoint(breakpoint(0x4000, 1));
+		assertTrue(tdb.atBreakPoint());
+	}
+
+}
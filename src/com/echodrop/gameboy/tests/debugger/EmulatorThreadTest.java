@@ -0,0 +1,113 @@
+/**
+ * EmulatorThreadTest.java
+ *
+ * @author anewkirk
+ *
+ * Licensing information can be found in the root directory of the project.
+ */
+
+package com.echodrop.gameboy.tests.debugger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import com.echodrop.gameboy.debugger.Breakpoint;
+import com.echodrop.gameboy.debugger.EmulatorThread;
+import com.echodrop.gameboy.debugger.StateSnapshot;
+import com.echodrop.gameboy.debugger.TailspinDebugger;
+import com.echodrop.gameboy.interfaces.IEmulatorCommand;
+import com.echodrop.gameboy.movie.Movie;
+import com.echodrop.gameboy.tests.TestRoms;
+
+public class EmulatorThreadTest {
+
+	/* all NOPs */
+	private static final byte[] PROGRAM = {};
+
+	/**
+	 * Waits for the commands queued so far to be executed, and returns the pc
+	 */
+	private static int sync(EmulatorThread emulator) throws InterruptedException {
+		final CountDownLatch latch = new CountDownLatch(1);
+		final int[] pc = new int[1];
+		emulator.submit(new IEmulatorCommand() {
+			@Override
+			public void execute(TailspinDebugger tdb) {
+				pc[0] = tdb.getSystem().getProcessor().getPc();
+				latch.countDown();
+			}
+		});
+		assertTrue(latch.await(10, TimeUnit.SECONDS));
+		return pc[0];
+	}
+
+	@Test
+	public void stepTest() throws Exception {
+		EmulatorThread emulator = new EmulatorThread(TestRoms.debugger(TestRoms.rom(PROGRAM)));
+		emulator.start();
+		try {
+			assertEquals(0x100, sync(emulator));
+			emulator.step(10);
+			assertEquals(0x10A, sync(emulator));
+			assertFalse(emulator.isRunning());
+		} finally {
+			emulator.shutdown();
+		}
+	}
+
+	@Test
+	public void breakpointTest() throws Exception {
+		EmulatorThread emulator = new EmulatorThread(TestRoms.debugger(TestRoms.rom(PROGRAM)));
+		emulator.start();
+		try {
+			Breakpoint bp = new Breakpoint();
+			bp.setAddress((char) 0x1234);
+			emulator.addBreakpoint(bp);
+			emulator.resume();
+			long deadline = System.currentTimeMillis() + 10000;
+			while (sync(emulator) != 0x1234) {
+				assertTrue(System.currentTimeMillis() < deadline);
+				Thread.sleep(1);
+			}
+			assertFalse(emulator.isRunning());
+		} finally {
+			emulator.shutdown();
+		}
+	}
+
+	@Test
+	public void recordingTest() throws Exception {
+		File file = File.createTempFile("tailspin", ".movie");
+		file.deleteOnExit();
+		EmulatorThread emulator = new EmulatorThread(TestRoms.debugger(TestRoms.rom(PROGRAM)));
+		emulator.start();
+		try {
+			emulator.startRecording();
+			emulator.resume();
+			long deadline = System.currentTimeMillis() + 10000;
+			StateSnapshot snapshot = emulator.getSnapshots().getSnapshot();
+			while (snapshot == null || snapshot.getFrame() < 5) {
+				assertTrue(System.currentTimeMillis() < deadline);
+				Thread.sleep(1);
+				snapshot = emulator.getSnapshots().getSnapshot();
+			}
+			emulator.pause();
+			sync(emulator);
+			assertTrue(emulator.isRecording());
+			emulator.stopRecording(file);
+			sync(emulator);
+			assertFalse(emulator.isRecording());
+		} finally {
+			emulator.shutdown();
+		}
+		assertTrue(Movie.read(file).getFrameCount() >= 4);
+	}
+
+}
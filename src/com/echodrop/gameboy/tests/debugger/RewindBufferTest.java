@@ -0,0 +1,92 @@
+/**
+ * RewindBufferTest.java
+ * 
+ * @author anewkirk
+ * 
+ * Licensing information can be found in the root directory of the project.
+ */
+
+package com.echodrop.gameboy.tests.debugger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import com.echodrop.gameboy.core.TailspinGB;
+import com.echodrop.gameboy.debugger.RewindBuffer;
+import com.echodrop.gameboy.exceptions.MapperNotImplementedException;
+import com.echodrop.gameboy.exceptions.SaveStateException;
+import com.echodrop.gameboy.tests.TestRoms;
+
+public class RewindBufferTest {
+
+	/**
+	 * Loop that increments 0xC000
+	 */
+	private static final byte[] PROGRAM = { 0x21, 0x00, (byte) 0xC0, 0x34, 0x18, (byte) 0xFD };
+
+	@Test
+	public void rewindTest() throws MapperNotImplementedException, SaveStateException {
+		TailspinGB system = TestRoms.system(TestRoms.rom(PROGRAM));
+		RewindBuffer rb = new RewindBuffer(system, 0x10000, 64);
+		long[] cycles = new long[10];
+		byte[] counter = new byte[10];
+		for (int i = 0; i < 10; i++) {
+			TestRoms.run(system, 1000 + i);
+			rb.capture();
+			cycles[i] = system.getScheduler().getCycles();
+			counter[i] = system.getMem().readByte((char) 0xC000);
+		}
+		assertEquals(10, rb.getSnapshotCount());
+
+		TestRoms.run(system, 500);
+		rb.rewind(0);
+		assertEquals(cycles[9], system.getScheduler().getCycles());
+
+		rb.rewind(3);
+		assertEquals(cycles[6], system.getScheduler().getCycles());
+		assertEquals(counter[6], system.getMem().readByte((char) 0xC000));
+		assertEquals(7, rb.getSnapshotCount());
+
+		/* history continues from the restored state */
+		TestRoms.run(system, 1000);
+		rb.capture();
+		rb.rewind(1);
+		assertEquals(cycles[6], system.getScheduler().getCycles());
+		rb.rewind(6);
+		assertEquals(cycles[0], system.getScheduler().getCycles());
+		assertEquals(counter[0], system.getMem().readByte((char) 0xC000));
+	}
+
+	@Test
+	public void wrapAroundTest() throws MapperNotImplementedException, SaveStateException {
+		TailspinGB system = TestRoms.system(TestRoms.rom(PROGRAM));
+		RewindBuffer rb = new RewindBuffer(system, 256, 1000);
+		long[] cycles = new long[100];
+		for (int i = 0; i < 100; i++) {
+			TestRoms.run(system, 100);
+			rb.capture();
+			cycles[i] = system.getScheduler().getCycles();
+		}
+		int count = rb.getSnapshotCount();
+		assertTrue(count > 2 && count < 100);
+		assertTrue(rb.getBytesUsed() <= 256);
+
+		rb.rewind(count - 1);
+		assertEquals(cycles[100 - count], system.getScheduler().getCycles());
+	}
+
+	@Test
+	public void frameCaptureTest() throws MapperNotImplementedException {
+		TailspinGB system = TestRoms.system(TestRoms.rom(PROGRAM));
+		RewindBuffer rb = new RewindBuffer(system);
+		rb.setInterval(1);
+		rb.setEnabled(true);
+		while (system.getScheduler().getCycles() < 70224 * 5) {
+			system.getProcessor().step();
+		}
+		assertTrue(rb.getSnapshotCount() >= 4);
+	}
+
+}
@@ -0,0 +1,103 @@
+/**
+ * SnapshotPublisherTest.java
+ *
+ * @author anewkirk
+ *
+ * Licensing information can be found in the root directory of the project.
+ */
+
+package com.echodrop.gameboy.tests.debugger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+import com.echodrop.gameboy.core.TailspinGB;
+import com.echodrop.gameboy.debugger.EmulatorThread;
+import com.echodrop.gameboy.debugger.SnapshotPublisher;
+import com.echodrop.gameboy.debugger.StateSnapshot;
+import com.echodrop.gameboy.debugger.TailspinDebugger;
+import com.echodrop.gameboy.tests.TestRoms;
+
+public class SnapshotPublisherTest {
+
+	/* all NOPs */
+	private static final byte[] PROGRAM = {};
+
+	@Test
+	public void snapshotTest() throws Exception {
+		TailspinGB system = TestRoms.system(TestRoms.rom(PROGRAM));
+		system.getMem().writeByte((char) 0xC010, (byte) 0x42);
+		system.getProcessor().getA().setValue(0x12);
+
+		SnapshotPublisher publisher = new SnapshotPublisher();
+		assertNull(publisher.getSnapshot());
+		assertEquals(0, publisher.addWindow((char) 0xC000, 0x20));
+		publisher.publish(system);
+		StateSnapshot snapshot = publisher.getSnapshot();
+
+		/* later changes don't show in a published snapshot */
+		system.getMem().writeByte((char) 0xC010, (byte) 0);
+		system.getProcessor().getA().setValue(0);
+		system.getProcessor().step();
+
+		assertEquals(0x100, snapshot.getPc());
+		assertEquals(0x12, snapshot.getA());
+		assertEquals(0x42, snapshot.readByte((char) 0xC010));
+		assertEquals(0, snapshot.findWindow((char) 0xC000));
+		assertEquals(-1, snapshot.findWindow((char) 0xD000));
+		try {
+			snapshot.readByte((char) 0xC020);
+			fail("Read outside the windows");
+		} catch (IllegalArgumentException e) {
+		}
+	}
+
+	@Test
+	public void rateTest() throws Exception {
+		TailspinGB system = TestRoms.system(TestRoms.rom(PROGRAM));
+		SnapshotPublisher publisher = new SnapshotPublisher();
+		publisher.setRate(0);
+		publisher.update(system);
+		assertNull(publisher.getSnapshot());
+
+		publisher.publish(system);
+		StateSnapshot first = publisher.getSnapshot();
+		publisher.setRate(1e-3);
+		publisher.update(system);
+		assertSame(first, publisher.getSnapshot());
+
+		publisher.setRate(1e9);
+		Thread.sleep(1);
+		publisher.update(system);
+		assertNotSame(first, publisher.getSnapshot());
+	}
+
+	@Test
+	public void pausedTest() throws Exception {
+		TailspinDebugger tdb = new TailspinDebugger();
+		tdb.getSystem().getMem().loadRom(new byte[0x8000]);
+		tdb.getSystem().skipBootstrap();
+		EmulatorThread emulator = new EmulatorThread(tdb);
+		emulator.start();
+		try {
+			/* a snapshot is published once the steps are done */
+			emulator.step(10);
+			long deadline = System.currentTimeMillis() + 10000;
+			StateSnapshot snapshot = emulator.getSnapshots().getSnapshot();
+			while (snapshot == null || snapshot.getPc() != 0x10A) {
+				assertTrue(System.currentTimeMillis() < deadline);
+				Thread.sleep(1);
+				snapshot = emulator.getSnapshots().getSnapshot();
+			}
+		} finally {
+			emulator.shutdown();
+		}
+	}
+
+}
@@ -0,0 +1,135 @@
+/**
+ * WatchpointTest.java
+ *
+ * @author anewkirk
+ *
+ * Licensing information can be found in the root directory of the project.
+ */
+
+package com.echodrop.gameboy.tests.debugger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import com.echodrop.gameboy.debugger.TailspinDebugger;
+import com.echodrop.gameboy.debugger.Watchpoint;
+import com.echodrop.gameboy.disasm.Disassembler;
+import com.echodrop.gameboy.exceptions.MapperNotImplementedException;
+import com.echodrop.gameboy.tests.TestRoms;
+
+public class WatchpointTest {
+
+	/**
+	 * Writes 0 to C100 and C000 and reads C100, then counts in C000
+	 */
+	private static final byte[] PROGRAM = { (byte) 0xAF, // XOR A
+			(byte) 0xEA, 0x00, (byte) 0xC1, // LD ($C100),A
+			(byte) 0xEA, 0x00, (byte) 0xC0, // LD ($C000),A
+			(byte) 0xFA, 0x00, (byte) 0xC1, // LD A,($C100)
+			0x21, 0x00, (byte) 0xC0, // LD HL,$C000
+			0x34, // loop: INC (HL)
+			0x18, (byte) 0xFD // JR loop
+	};
+
+	private TailspinDebugger createDebugger() throws MapperNotImplementedException {
+		TailspinDebugger tdb = TestRoms.debugger(TestRoms.rom(PROGRAM));
+		/* make the first write to C000 a change */
+		tdb.getSystem().getMem().writeByte((char) 0xC000, (byte) 0x55);
+		return tdb;
+	}
+
+	private static int runToBreak(TailspinDebugger tdb) {
+		for (int i = 0; i < 100; i++) {
+			tdb.step();
+			if (tdb.atBreakPoint()) {
+				return tdb.getSystem().getProcessor().getPc();
+			}
+		}
+		return -1;
+	}
+
+	@Test
+	public void writeTest() throws Exception {
+		TailspinDebugger tdb = createDebugger();
+		tdb.addWatchpoint(new Watchpoint(Watchpoint.Type.WRITE, (char) 0xC000, (char) 0xC000));
+		assertEquals(0x107, runToBreak(tdb));
+		assertNotNull(tdb.getWatchHit());
+		assertEquals(0x10E, runToBreak(tdb));
+		assertEquals(0x10E, runToBreak(tdb));
+	}
+
+	@Test
+	public void readTest() throws Exception {
+		TailspinDebugger tdb = createDebugger();
+		tdb.addWatchpoint(new Watchpoint(Watchpoint.Type.READ, (char) 0xC0F0, (char) 0xC1FF));
+		/* the write to C100 doesn't trigger it */
+		assertEquals(0x10A, runToBreak(tdb));
+		assertEquals(-1, runToBreak(tdb));
+	}
+
+	@Test
+	public void changeTest() throws Exception {
+		TailspinDebugger tdb = createDebugger();
+		tdb.addWatchpoint(new Watchpoint(Watchpoint.Type.CHANGE, (char) 0xC000, (char) 0xC100));
+		/* writing 0 over the 0 at C100 is not a change */
+		assertEquals(0x107, runToBreak(tdb));
+		assertEquals(0, tdb.getSystem().getMem().readByte((char) 0xC000));
+		assertEquals(0x10E, runToBreak(tdb));
+		assertEquals(1, tdb.getSystem().getMem().readByte((char) 0xC000));
+	}
+
+	@Test
+	public void journalTest() throws Exception {
+		TailspinDebugger tdb = createDebugger();
+		tdb.getJournal().setEnabled(true);
+		tdb.addWatchpoint(new Watchpoint(Watchpoint.Type.READ, (char) 0xC100, (char) 0xC100));
+		/* the journal's record of the write to C100 is not a read */
+		assertEquals(0x10A, runToBreak(tdb));
+		assertTrue(tdb.getWatchHit().startsWith("Read"));
+
+		/* undoing the read doesn't trigger it either */
+		assertTrue(tdb.stepBack());
+		assertNull(tdb.getWatchHit());
+		assertTrue(tdb.stepBack());
+		assertTrue(tdb.stepBack());
+		assertNull(tdb.getWatchHit());
+	}
+
+	@Test
+	public void debuggerReadTest() throws Exception {
+		/* JR -2, which never touches VRAM */
+		TailspinDebugger tdb = TestRoms.debugger(TestRoms.rom(new byte[] { 0x18, (byte) 0xFE }));
+		tdb.addWatchpoint(new Watchpoint(Watchpoint.Type.READ, (char) 0x9800, (char) 0x9BFF));
+
+		/* the GPU drawing the background and the disassembler are not the CPU */
+		for (int i = 0; i < 20000; i++) {
+			tdb.step();
+			assertFalse(tdb.atBreakPoint());
+		}
+		assertTrue(tdb.getSystem().getGpu().getFramesDrawn() > 0);
+		Disassembler.decode(tdb.getSystem().getMem(), (char) 0x9800);
+		assertNull(tdb.getWatchHit());
+	}
+
+	@Test
+	public void clearTest() throws Exception {
+		TailspinDebugger tdb = createDebugger();
+		tdb.addWatchpoint(new Watchpoint(Watchpoint.Type.WRITE, (char) 0xC000, (char) 0xC000));
+		tdb.addWatchpoint(new Watchpoint(Watchpoint.Type.READ, (char) 0xC100, (char) 0xC100));
+		tdb.clearWatchpoints();
+		assertEquals(-1, runToBreak(tdb));
+		assertNull(tdb.getWatchHit());
+		assertNull(tdb.getSystem().getMem().getMemoryWatch());
+
+		/* runFrame stops at watchpoints too */
+		tdb.addWatchpoint(new Watchpoint(Watchpoint.Type.CHANGE, (char) 0xC000, (char) 0xC000));
+		assertTrue(tdb.runFrame());
+		assertFalse(tdb.getWatchHit() == null);
+	}
+
+}
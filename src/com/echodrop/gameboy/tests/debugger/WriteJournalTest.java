@@ -0,0 +1,97 @@
+/**
+ * WriteJournalTest.java
+ * 
+ * @author anewkirk
+ * 
+ * Licensing information can be found in the root directory of the project.
+ */
+
+package com.echodrop.gameboy.tests.debugger;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import com.echodrop.gameboy.core.SaveState;
+import com.echodrop.gameboy.debugger.Breakpoint;
+import com.echodrop.gameboy.debugger.TailspinDebugger;
+import com.echodrop.gameboy.exceptions.MapperNotImplementedException;
+import com.echodrop.gameboy.tests.TestRoms;
+
+public class WriteJournalTest {
+
+	/**
+	 * Loop that writes WRAM, the stack, HRAM, cartridge RAM and the MBC1 bank
+	 * register
+	 */
+	private static final byte[] PROGRAM = { 0x31, (byte) 0xF0, (byte) 0xDF, // LD SP,$DFF0
+			0x21, 0x00, (byte) 0xC0, // LD HL,$C000
+			0x3E, 0x0A, // LD A,$0A
+			(byte) 0xEA, 0x00, 0x00, // LD ($0000),A
+			0x34, // loop: INC (HL)
+			0x7E, // LD A,(HL)
+			(byte) 0xEA, 0x00, 0x20, // LD ($2000),A
+			(byte) 0xEA, 0x00, (byte) 0xA0, // LD ($A000),A
+			(byte) 0xF5, // PUSH AF
+			(byte) 0xCD, 0x20, 0x01, // CALL $0120
+			0x18, (byte) 0xF2 // JR loop
+	};
+
+	private TailspinDebugger createDebugger() throws MapperNotImplementedException {
+		byte[] rom = TestRoms.rom(PROGRAM, 0x03, 8, 0x03);
+		rom[0x120] = (byte) 0xE0; // LDH ($80),A
+		rom[0x121] = (byte) 0x80;
+		rom[0x122] = (byte) 0xC9; // RET
+		return TestRoms.debugger(rom);
+	}
+
+	@Test
+	public void stepBackTest() throws MapperNotImplementedException {
+		TailspinDebugger tdb = createDebugger();
+		tdb.getJournal().setEnabled(true);
+
+		int steps = 500;
+		SaveState state = new SaveState();
+		byte[][] states = new byte[steps][];
+		for (int i = 0; i < steps; i++) {
+			state.capture(tdb.getSystem());
+			states[i] = new byte[state.getLength()];
+			state.toArray(states[i]);
+			tdb.step();
+		}
+		assertEquals(steps, tdb.getJournal().getDepth());
+
+		byte[] current = new byte[states[0].length];
+		for (int i = steps - 1; i >= 0; i--) {
+			assertTrue(tdb.stepBack());
+			state.capture(tdb.getSystem());
+			state.toArray(current);
+			assertArrayEquals(states[i], current);
+		}
+		assertFalse(tdb.stepBack());
+	}
+
+	@Test
+	public void reverseContinueTest() throws MapperNotImplementedException {
+		TailspinDebugger tdb = createDebugger();
+		tdb.getJournal().setEnabled(true);
+		for (int i = 0; i < 200; i++) {
+			tdb.step();
+		}
+		tdb.addBreakpoint(new Breakpoint(false, null, (byte) 0, (char) 0x0120));
+		assertTrue(tdb.reverseContinue());
+		assertEquals(0x0120, tdb.getSystem().getProcessor().getPc());
+
+		tdb.clearBreakpoints();
+		assertFalse(tdb.reverseContinue());
+		assertEquals(0x0100, tdb.getSystem().getProcessor().getPc());
+
+		tdb.getJournal().setEnabled(false);
+		assertNull(tdb.getSystem().getMem().getWriteTrap());
+	}
+
+}
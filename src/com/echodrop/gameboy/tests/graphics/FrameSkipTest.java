@@ -0,0 +1,70 @@
+/**
+ * FrameSkipTest.java
+ *
+ * @author anewkirk
+ *
+ * Licensing information can be found in the root directory of the project.
+ */
+
+package com.echodrop.gameboy.tests.graphics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import com.echodrop.gameboy.core.TailspinGB;
+import com.echodrop.gameboy.graphics.FrameSkip;
+import com.echodrop.gameboy.interfaces.IGraphicsObserver;
+
+public class FrameSkipTest {
+
+	private int frames;
+	private int drawn;
+
+	private TailspinGB createSystem() {
+		TailspinGB system = new TailspinGB();
+		system.getMem().loadBootstrap(new byte[0x100]);
+		system.getGpu().registerObserver(new IGraphicsObserver() {
+			@Override
+			public void updateDisplay() {
+				frames++;
+			}
+		});
+		system.getGpu().registerDisplayObserver(new IGraphicsObserver() {
+			@Override
+			public void updateDisplay() {
+				drawn++;
+			}
+		});
+		return system;
+	}
+
+	@Test
+	public void fixedSkipTest() {
+		TailspinGB system = createSystem();
+		system.getGpu().getFrameSkip().setSetting(2);
+		for (int i = 0; i < 9; i++) {
+			system.getProcessor().runFrame();
+		}
+		assertEquals(9, frames);
+		assertEquals(3, drawn);
+	}
+
+	@Test
+	public void autoSkipTest() {
+		TailspinGB system = createSystem();
+		system.getGpu().getFrameSkip().setSetting(FrameSkip.AUTO);
+
+		/* unlimited speed: at most one frame is drawn per display refresh */
+		long start = System.nanoTime();
+		for (int i = 0; i < 60; i++) {
+			system.getProcessor().runFrame();
+		}
+		long refreshes = (System.nanoTime() - start) * 60 / 1000000000L;
+		assertEquals(60, frames);
+		assertTrue(drawn >= 1);
+		assertTrue(drawn <= refreshes + 2);
+	}
+
+}
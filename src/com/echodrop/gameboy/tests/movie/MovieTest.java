@@ -0,0 +1,182 @@
+/**
+ * MovieTest.java
+ * 
+ * @author anewkirk
+ * 
+ * Licensing information can be found in the root directory of the project.
+ */
+
+package com.echodrop.gameboy.tests.movie;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import org.junit.Test;
+
+import com.echodrop.gameboy.core.Joypad;
+import com.echodrop.gameboy.core.MMU;
+import com.echodrop.gameboy.core.StateHash;
+import com.echodrop.gameboy.core.TailspinGB;
+import com.echodrop.gameboy.exceptions.MapperNotImplementedException;
+import com.echodrop.gameboy.exceptions.MovieDesyncException;
+import com.echodrop.gameboy.movie.Movie;
+import com.echodrop.gameboy.movie.MoviePlayer;
+import com.echodrop.gameboy.movie.MovieRecorder;
+import com.echodrop.gameboy.rom.BatteryRam;
+import com.echodrop.gameboy.rom.RomImage;
+import com.echodrop.gameboy.tests.TestRoms;
+
+public class MovieTest {
+
+	/**
+	 * Fills C000 - CFFF over and over with reads of the buttons
+	 */
+	private static final byte[] PROGRAM = { 0x21, 0x00, (byte) 0xC0, // LD HL,$C000
+			0x3E, 0x10, // loop: LD A,$10
+			(byte) 0xE0, 0x00, // LDH ($00),A
+			(byte) 0xF0, 0x00, // LDH A,($00)
+			0x22, // LD (HL+),A
+			0x7C, // LD A,H
+			(byte) 0xFE, (byte) 0xD0, // CP $D0
+			0x20, (byte) 0xF4, // JR NZ,loop
+			0x26, (byte) 0xC0, // LD H,$C0
+			0x18, (byte) 0xF0 // JR loop
+	};
+
+	/**
+	 * Copies the latched RTC seconds and the first byte of cartridge RAM to
+	 * C000 and C001, over and over
+	 */
+	private static final byte[] CLOCK_PROGRAM = { 0x3E, 0x0A, // LD A,$0A
+			(byte) 0xEA, 0x00, 0x00, // LD ($0000),A
+			0x3E, 0x00, // loop: LD A,$00
+			(byte) 0xEA, 0x00, 0x60, // LD ($6000),A
+			0x3E, 0x01, // LD A,$01
+			(byte) 0xEA, 0x00, 0x60, // LD ($6000),A
+			0x3E, 0x08, // LD A,$08
+			(byte) 0xEA, 0x00, 0x40, // LD ($4000),A
+			(byte) 0xFA, 0x00, (byte) 0xA0, // LD A,($A000)
+			(byte) 0xEA, 0x00, (byte) 0xC0, // LD ($C000),A
+			(byte) 0xAF, // XOR A
+			(byte) 0xEA, 0x00, 0x40, // LD ($4000),A
+			(byte) 0xFA, 0x00, (byte) 0xA0, // LD A,($A000)
+			(byte) 0xEA, 0x01, (byte) 0xC0, // LD ($C001),A
+			0x18, (byte) 0xDF // JR loop
+	};
+
+	private static final int FRAMES = 30;
+
+	private TailspinGB createSystem() throws MapperNotImplementedException {
+		TailspinGB system = new TailspinGB();
+		system.setFastBoot(true);
+		system.getMem().loadRom(TestRoms.rom(PROGRAM));
+		return system;
+	}
+
+	/**
+	 * Records FRAMES frames, changing the keys held on the host in the
+	 * middle of frames 5 and 12
+	 */
+	private Movie record(TailspinGB system) {
+		MovieRecorder recorder = new MovieRecorder(system);
+		recorder.start(1);
+		int steps = 0;
+		while (recorder.getFrame() < FRAMES) {
+			system.getProcessor().step();
+			steps++;
+			if (steps == 5 * 10000) {
+				system.getJoypad().setInput(Joypad.A);
+			} else if (steps == 12 * 10000) {
+				system.getJoypad().setInput(Joypad.START | Joypad.B);
+			}
+		}
+		return recorder.stop();
+	}
+
+	@Test
+	public void recordReplayTest() throws MapperNotImplementedException, MovieDesyncException, IOException {
+		TailspinGB recorded = createSystem();
+		Movie movie = record(recorded);
+		assertEquals(FRAMES, movie.getFrameCount());
+		assertEquals(3, movie.getChangeCount());
+
+		File file = File.createTempFile("tailspin", ".tsm");
+		file.deleteOnExit();
+		movie.write(file);
+		Movie read = Movie.read(file);
+
+		TailspinGB replayed = createSystem();
+		MoviePlayer player = new MoviePlayer(replayed, read);
+		player.play();
+		assertEquals(FRAMES, player.getFrame());
+		assertEquals(new StateHash(recorded).rehash(), new StateHash(replayed).rehash());
+	}
+
+	@Test
+	public void batteryClockTest() throws MapperNotImplementedException, MovieDesyncException, IOException {
+		/* MBC3+TIMER+RAM+BATTERY */
+		byte[] rom = TestRoms.rom(CLOCK_PROGRAM, 0x10, 2, 0x02);
+		File file = File.createTempFile("tailspin", ".gb");
+		File saveFile = BatteryRam.saveFileFor(file.getPath());
+		file.deleteOnExit();
+		saveFile.deleteOnExit();
+		Files.write(file.toPath(), rom);
+
+		/* a save and a host clock that the replaying system doesn't have */
+		TailspinGB recorded = new TailspinGB();
+		recorded.setFastBoot(true);
+		MMU mem = recorded.getMem();
+		mem.loadRom(RomImage.open(file));
+		mem.setRealTimeClock(true);
+		mem.writeByte((char) 0x0000, (byte) 0x0A);
+		mem.writeByte((char) 0xA000, (byte) 0x5A);
+
+		MovieRecorder recorder = new MovieRecorder(recorded);
+		recorder.start(1);
+		assertFalse(mem.isRealTimeClock());
+		while (recorder.getFrame() < FRAMES) {
+			recorded.getProcessor().step();
+		}
+		Movie movie = recorder.stop();
+		assertTrue(mem.isRealTimeClock());
+		assertEquals(0x5A, mem.readByte((char) 0xC001));
+
+		TailspinGB replayed = new TailspinGB();
+		replayed.setFastBoot(true);
+		replayed.getMem().loadRom(rom);
+		new MoviePlayer(replayed, movie).play();
+		assertEquals(0x5A, replayed.getMem().readByte((char) 0xC001));
+		assertEquals(mem.readByte((char) 0xC000), replayed.getMem().readByte((char) 0xC000));
+		recorded.shutdown();
+	}
+
+	@Test
+	public void desyncTest() throws MapperNotImplementedException {
+		Movie movie = record(createSystem());
+
+		/* the same movie, with the second change a frame late */
+		Movie late = new Movie(movie.getCartridgeId(), movie.getStartHash(), 1);
+		late.setFrameCount(movie.getFrameCount());
+		for (int i = 0; i < movie.getChangeCount(); i++) {
+			late.addInput(movie.getChangeFrame(i) + (i == 1 ? 1 : 0), movie.getChangeButtons(i));
+		}
+		for (int frame = 1; frame <= movie.getFrameCount(); frame++) {
+			late.addHash(movie.getFrameHash(frame));
+		}
+
+		try {
+			new MoviePlayer(createSystem(), late).play();
+			fail("Replay should have diverged");
+		} catch (MovieDesyncException e) {
+			/* the first hash taken after the frame the change was recorded for */
+			assertEquals(movie.getChangeFrame(1) + 1, e.getFrame());
+		}
+	}
+
+}
@@ -0,0 +1,85 @@
+/**
+ * MpscQueueTest.java
+ *
+ * @author anewkirk
+ *
+ * Licensing information can be found in the root directory of the project.
+ */
+
+package com.echodrop.gameboy.tests.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+import com.echodrop.gameboy.util.MpscQueue;
+
+public class MpscQueueTest {
+
+	private static final int PRODUCERS = 4;
+	private static final int ITEMS = 100000;
+
+	@Test
+	public void orderTest() {
+		MpscQueue<Integer> queue = new MpscQueue<Integer>();
+		assertTrue(queue.isEmpty());
+		assertNull(queue.poll());
+		for (int i = 0; i < 10; i++) {
+			queue.offer(i);
+		}
+		for (int i = 0; i < 10; i++) {
+			assertEquals(Integer.valueOf(i), queue.poll());
+		}
+		assertTrue(queue.isEmpty());
+		assertNull(queue.poll());
+		try {
+			queue.offer(null);
+			fail("Null accepted");
+		} catch (NullPointerException e) {
+		}
+	}
+
+	@Test
+	public void producersTest() throws InterruptedException {
+		final MpscQueue<int[]> queue = new MpscQueue<int[]>();
+		Thread[] producers = new Thread[PRODUCERS];
+		for (int p = 0; p < PRODUCERS; p++) {
+			final int producer = p;
+			producers[p] = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					for (int i = 0; i < ITEMS; i++) {
+						queue.offer(new int[] { producer, i });
+					}
+				}
+			});
+			producers[p].start();
+		}
+
+		/* every item arrives once, in the order its producer offered it */
+		int[] next = new int[PRODUCERS];
+		int received = 0;
+		long deadline = System.currentTimeMillis() + 30000;
+		while (received < PRODUCERS * ITEMS) {
+			int[] item = queue.poll();
+			if (item == null) {
+				if (System.currentTimeMillis() > deadline) {
+					fail("Only received " + received + " items");
+				}
+				Thread.yield();
+				continue;
+			}
+			assertEquals(next[item[0]], item[1]);
+			next[item[0]]++;
+			received++;
+		}
+		for (Thread producer : producers) {
+			producer.join();
+		}
+		assertTrue(queue.isEmpty());
+	}
+
+}
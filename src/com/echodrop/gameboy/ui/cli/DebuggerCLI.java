@@ -8,6 +8,7 @@
 
 package com.echodrop.gameboy.ui.cli;
 
+import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Scanner;
@@ -18,14 +19,20 @@ import com.echodrop.gameboy.core.MMU;
 import com.echodrop.gameboy.core.MemoryRegion;
 import com.echodrop.gameboy.core.Register;
 import com.echodrop.gameboy.core.TailspinGB;
+import com.echodrop.gameboy.core.Timer;
 import com.echodrop.gameboy.debugger.Breakpoint;
 import com.echodrop.gameboy.debugger.DebugAction;
 import com.echodrop.gameboy.debugger.DebugCommand;
 import com.echodrop.gameboy.debugger.MemoryBlock;
+import com.echodrop.gameboy.debugger.RewindBuffer;
 import com.echodrop.gameboy.debugger.TailspinDebugger;
+import com.echodrop.gameboy.debugger.Watchpoint;
+import com.echodrop.gameboy.disasm.Disassembler;
 import com.echodrop.gameboy.exceptions.MapperNotImplementedException;
+import com.echodrop.gameboy.exceptions.SaveStateException;
 import com.echodrop.gameboy.graphics.GPU;
 import com.echodrop.gameboy.logging.SimpleConsoleLogger;
+import com.echodrop.gameboy.rom.RomImage;
 import com.echodrop.gameboy.util.FileUtils;
 import com.echodrop.gameboy.util.GraphicsUtils;
 import com.echodrop.gameboy.util.StringUtils;
@@ -47,7 +54,8 @@ public class DebuggerCLI {
 			bios = FileUtils.readBytes(DEFAULT_BIOS_PATH);
 			system.getMem().loadBootstrap(bios);
 		} catch (IOException e) {
-			System.err.print("[!] Unable to load BIOS from default path: " + DEFAULT_BIOS_PATH);
+			System.err.println("[!] Unable to load BIOS from default path: " + DEFAULT_BIOS_PATH + ", skipping bootstrap");
+			system.setFastBoot(true);
 		}
 
 		system.initLogging(Level.OFF, new SimpleConsoleLogger());
@@ -56,12 +64,12 @@ public class DebuggerCLI {
 		int opcodeCount = system.getProcessor().getOpcodeCount();
 		System.out.println("Opcodes Implemented: " + 
 							 + opcodeCount +
-							"/" + 244 + ": " + opcodeCount/244f*100 + "%");
+							"/" + 245 + ": " + opcodeCount/245f*100 + "%");
 		
 		int cbOpcodeCount = system.getProcessor().getCbOpcodeCount();
 		System.out.println("Extended Opcodes Implemented: " + 
 				 + cbOpcodeCount +
-				"/" + 255 + ": " + cbOpcodeCount/255f*100 + "%");
+				"/" + 256 + ": " + cbOpcodeCount/256f*100 + "%");
 		
 		System.out.println();
 		System.out.println("Type 'help' for a list of commands.");
@@ -79,7 +87,26 @@ public class DebuggerCLI {
 	private static void runCommand(DebugCommand dc) {
 		switch (dc.getCommand()) {
 		case STEP:
-			tdb.getSystem().getProcessor().step();
+			tdb.step();
+			break;
+		case STEPBACK:
+			if (!tdb.stepBack()) {
+				System.out.println("[!] No journaled instructions to undo" + (tdb.getJournal().isEnabled() ? ""
+						: " (journaling is off, enable it with 'journal')"));
+			}
+			break;
+		case REVERSECONTINUE:
+			if (tdb.reverseContinue()) {
+				printWatchHit();
+				System.out.println("[!] Reached breakpoint: 0x"
+						+ Integer.toHexString(system.getProcessor().getPc()).toUpperCase());
+			} else {
+				System.out.println("[!] Reached the start of the journal");
+			}
+			break;
+		case JOURNAL:
+			tdb.getJournal().setEnabled(!tdb.getJournal().isEnabled());
+			System.out.println("[~] Journaling: " + (tdb.getJournal().isEnabled() ? "on" : "off"));
 			break;
 		case SETBRK:
 			char bp;
@@ -93,14 +120,15 @@ public class DebuggerCLI {
 			break;
 		case CONTINUE:
 			if (tdb.atBreakPoint()) {
-				tdb.getSystem().getProcessor().step();
+				tdb.step();
 			}
 			long start = System.currentTimeMillis();
 
 			while (!tdb.atBreakPoint()) {
-				tdb.getSystem().getProcessor().step();
+				tdb.step();
 			}
 			char breakpoint = system.getProcessor().getPc();
+			printWatchHit();
 			System.out.println("[!] Reached breakpoint: 0x" + Integer.toHexString(breakpoint & 0xFFFF).toUpperCase()
 					+ " in " + (System.currentTimeMillis() - start) / 1000f + " seconds.");
 			break;
@@ -132,10 +160,11 @@ public class DebuggerCLI {
 			System.out.println("[~] Log level: Info");
 			break;
 		case LOADROM:
-			byte[] rom;
 			try {
-				rom = FileUtils.readBytes(readFilename());
-				tdb.getSystem().getMem().loadRom(rom);
+				tdb.getSystem().getMem().loadRom(RomImage.open(new File(readFilename())));
+				if (tdb.getSystem().isFastBoot()) {
+					tdb.getSystem().skipBootstrap();
+				}
 			} catch (IOException e) {
 				tdb.getSystem().getLogger().severe("[!] Unable to load rom: " + e.getMessage());
 			} catch (MapperNotImplementedException me) {
@@ -147,6 +176,7 @@ public class DebuggerCLI {
 			try {
 				bios = FileUtils.readBytes(readFilename());
 				tdb.getSystem().getMem().loadBootstrap(bios);
+				tdb.getSystem().setFastBoot(false);
 			} catch (IOException e) {
 				System.err.println(e.getMessage());
 			}
@@ -164,6 +194,20 @@ public class DebuggerCLI {
 			tdb.clearBreakpoints();
 			System.out.println("[!] Cleared all breakpoints");
 			break;
+		case WATCH:
+			Watchpoint watchpoint = readWatchpoint(dc.getArg());
+			tdb.addWatchpoint(watchpoint);
+			System.out.println("[+] Added watchpoint: " + watchpoint);
+			break;
+		case LSWATCH:
+			for (Watchpoint w : tdb.getWatchpoints()) {
+				System.out.println(w);
+			}
+			break;
+		case CLRWATCH:
+			tdb.clearWatchpoints();
+			System.out.println("[!] Cleared all watchpoints");
+			break;
 		case VTILEDMP:
 			tdb.vTileDump();
 			break;
@@ -179,10 +223,18 @@ public class DebuggerCLI {
 		case RENDER:
 			tdb.getSystem().getGpu().renderFrame();
 			break;
+		case DISASM:
+			char address = dc.getArg() == null ? tdb.getSystem().getProcessor().getPc() : dc.getArg();
+			disassemble(address, 10);
+			break;
+		case REWIND:
+			rewind(dc.getArg() == null ? 1 : dc.getArg());
+			break;
 		case HELP:
 			showHelp();
 			break;
 		case EXIT:
+			tdb.getSystem().shutdown();
 			System.exit(0);
 			break;
 		default:
@@ -203,6 +255,35 @@ public class DebuggerCLI {
 		}
 	}
 
+	/**
+	 * Prints count instructions beginning at address
+	 */
+	private static void disassemble(char address, int count) {
+		MMU m = tdb.getSystem().getMem();
+		for (int i = 0; i < count; i++) {
+			System.out.println(StringUtils.charToReadableHex(address) + ": " + Disassembler.disassemble(m, address));
+			address += Disassembler.instructionLength(m, address);
+		}
+	}
+
+	/**
+	 * Restores the state from the specified number of snapshots ago
+	 */
+	private static void rewind(int snapshots) {
+		RewindBuffer rb = tdb.getRewindBuffer();
+		int available = rb.getSnapshotCount() - 1;
+		if (available < 1) {
+			System.out.println("[!] No rewind history");
+			return;
+		}
+		try {
+			rb.rewind(Math.min(snapshots, available));
+			System.out.println("[!] Rewound " + Math.min(snapshots, available) + " of " + available + " snapshots");
+		} catch (SaveStateException e) {
+			System.out.println("[!] Unable to rewind: " + e.getMessage());
+		}
+	}
+
 	/**
 	 * Dumps tileset 1 in text mode to the console
 	 */
@@ -247,7 +328,14 @@ public class DebuggerCLI {
 		System.out.println("Operation flag: " + p.isOperationFlag());
 		System.out.println("Half Carry flag: " + p.isHalfCarryFlag());
 		System.out.println("Full Carry flag: " + p.isFullCarryFlag());
-		System.out.println("Conditional non-exec flag: " + p.isConditionalNotExecFlag());
+		System.out.println("Interrupts enabled: " + p.isInterruptsEnabled());
+		System.out.println("IE: " + StringUtils.byteToReadableHex(tdb.getSystem().getInterrupts().getEnabled()));
+		System.out.println("IF: " + StringUtils.byteToReadableHex(tdb.getSystem().getInterrupts().getRequested()));
+		Timer t = tdb.getSystem().getTimer();
+		System.out.println("Timer DIV: " + StringUtils.byteToReadableHex(t.getDiv()));
+		System.out.println("Timer TIMA: " + StringUtils.byteToReadableHex(t.getTima()));
+		System.out.println("Timer TMA: " + StringUtils.byteToReadableHex(t.getTma()));
+		System.out.println("Timer TAC: " + StringUtils.byteToReadableHex(t.getTac()));
 		System.out.println("BIOS mapped: " + tdb.getSystem().getMem().isBiosMapped());
 		System.out.println("GPU ScrollX: " + StringUtils.byteToReadableHex(g.getScrollX().getValue()));
 		System.out.println("GPU ScrollY: " + StringUtils.byteToReadableHex(g.getScrollY().getValue()));
@@ -255,6 +343,8 @@ public class DebuggerCLI {
 		System.out.println(
 				"GPU Background Palette: " + StringUtils.byteToReadableHex(g.getBackgroundPalette().getValue()));
 		System.out.println("GPU LCD Control: " + StringUtils.byteToReadableHex(g.getLcdControl().getValue()));
+		System.out.println("GPU LCD Status: " + StringUtils.byteToReadableHex(g.getLcdStatusValue()));
+		System.out.println("GPU LY Compare: " + StringUtils.byteToReadableHex(g.getLyCompare().getValue()));
 		System.out.println("GPU Mode: " + StringUtils.byteToReadableHex(g.getMode().getValue()));
 		System.out.println("GPU Modeclock: " + g.getModeClock());
 	}
@@ -326,25 +416,30 @@ public class DebuggerCLI {
 		while (true) {
 			System.out
 					.print("\n[tdbg@" + StringUtils.charToReadableHex(tdb.getSystem().getProcessor().getPc()) + "] > ");
-			String input = sc.nextLine().toUpperCase();
+			String input = sc.nextLine().toUpperCase().replace("-", "");
 			DebugAction commandType = null;
 			Character argument = null;
+
+			// the longest match wins, so that e.g. stepback is not read as step
 			for (DebugAction dct : DebugAction.values()) {
-				if (input.contains(dct.name())) {
+				if (input.contains(dct.name())
+						&& (commandType == null || dct.name().length() > commandType.name().length())) {
 					commandType = dct;
-					String remaining = input.replace(dct.toString(), "");
-					remaining = remaining.replace("0X", "");
-					remaining = remaining.trim();
-					if (!remaining.isEmpty()) {
-						try {
-							argument = (char) Integer.parseInt(remaining, 16);
-						} catch (NumberFormatException e) {
-							// invalid or no argument
-						}
+				}
+			}
+			if (commandType != null) {
+				String remaining = input.replace(commandType.toString(), "");
+				remaining = remaining.replace("0X", "");
+				remaining = remaining.trim();
+				if (!remaining.isEmpty()) {
+					try {
+						argument = (char) Integer.parseInt(remaining, 16);
+					} catch (NumberFormatException e) {
+						// invalid or no argument
 					}
-					c = new DebugCommand(commandType, argument);
-					return c;
 				}
+				c = new DebugCommand(commandType, argument);
+				return c;
 			}
 			if (!input.isEmpty()) {
 				System.out.println("[!] Invalid command: '" + input + "'");
@@ -449,6 +544,41 @@ public class DebuggerCLI {
 		return result;
 	}
 
+	/**
+	 * Prompts the user for the type and address range of a new watchpoint
+	 * 
+	 * @param start
+	 *            the first address watched, or null to prompt for it
+	 */
+	private static Watchpoint readWatchpoint(Character start) {
+		ArrayList<String> typeOptions = new ArrayList<String>();
+		typeOptions.add("Break on read");
+		typeOptions.add("Break on write");
+		typeOptions.add("Break when the value changes");
+		Watchpoint.Type type = Watchpoint.Type.values()[getMenuSelection(typeOptions)];
+
+		while (true) {
+			System.out.println("First address:");
+			char first = start == null ? readHexAddress() : start;
+			System.out.println("Last address:");
+			char last = readHexAddress();
+			if (last >= first) {
+				return new Watchpoint(type, first, last);
+			}
+			System.out.println("[!] The last address must not be before the first, try again.");
+			start = null;
+		}
+	}
+
+	/**
+	 * Prints the access that stopped emulation, if a watchpoint did
+	 */
+	private static void printWatchHit() {
+		if (tdb.getWatchHit() != null) {
+			System.out.println("[!] Watchpoint triggered: " + tdb.getWatchHit());
+		}
+	}
+
 	/**
 	 * Prompts the user for a filename that ends in '.gb'. Does /not/ validate
 	 * said filename.
@@ -484,10 +614,19 @@ public class DebuggerCLI {
 		System.out.println("framedmp: display text representation of current framebuffer state");
 		System.out.println("condbrk: add a new conditional breakpoint");
 		System.out.println("clrbrk: clear all breakpoints");
+		System.out.println("watch [memory address in hexadecimal]: break when a range of memory is read, written or changed");
+		System.out.println("lswatch: list all watchpoints");
+		System.out.println("clrwatch: clear all watchpoints");
 		System.out.println("tiledmp: display tileset data in text format");
 		System.out.println("vtiledmp: render tileset to framebuffer");
 		System.out.println("video: enable video mode");
 		System.out.println("render: draw framebuffer to screen");
+		System.out.println("disasm [memory address in hexadecimal]: disassemble instructions at the address, or at pc");
+		System.out.println("journal: turn instruction journaling on or off (needed for stepback)");
+		System.out.println("stepback: undo the last journaled instruction");
+		System.out.println("reverse-continue: step backwards until a breakpoint is reached");
+		System.out.println("rewind [count in hexadecimal]: go back count snapshots (one every " + RewindBuffer.DEFAULT_INTERVAL
+				+ " frames), or one if no count is given");
 	}
 
 }
@@ -0,0 +1,86 @@
+/**
+ * ReplayCLI.java
+ * 
+ * @author anewkirk
+ * 
+ * Licensing information can be found in the root directory of the project.
+ */
+
+package com.echodrop.gameboy.ui.cli;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.logging.Level;
+
+import com.echodrop.gameboy.core.FramePacer;
+import com.echodrop.gameboy.core.TailspinGB;
+import com.echodrop.gameboy.exceptions.MapperNotImplementedException;
+import com.echodrop.gameboy.exceptions.MovieDesyncException;
+import com.echodrop.gameboy.graphics.GPU;
+import com.echodrop.gameboy.logging.SimpleConsoleLogger;
+import com.echodrop.gameboy.movie.Movie;
+import com.echodrop.gameboy.movie.MoviePlayer;
+import com.echodrop.gameboy.rom.RomImage;
+import com.echodrop.gameboy.util.FileUtils;
+
+/**
+ * Replays a movie headless, as fast as possible, and reports whether it stayed
+ * in step with the recording, how fast it ran and how much time was saved by
+ * not drawing frames.
+ * 
+ * Usage: ReplayCLI rom movie [bootstrap]. Without a bootstrap the system
+ * starts with fast boot, so the movie must have been recorded the same way.
+ * Save files are not used: the cartridge RAM and clock the recording started
+ * from are stored in the movie.
+ */
+public class ReplayCLI {
+
+	public static void main(String[] args) {
+		if (args.length < 2) {
+			System.err.println("Usage: ReplayCLI <rom> <movie> [bootstrap]");
+			System.exit(1);
+		}
+
+		TailspinGB system = new TailspinGB();
+		system.initLogging(Level.OFF, new SimpleConsoleLogger());
+		system.getMem().setSaveFilesEnabled(false);
+		system.setHeadless(true);
+		Movie movie;
+		try {
+			if (args.length > 2) {
+				system.getMem().loadBootstrap(FileUtils.readBytes(args[2]));
+			} else {
+				system.setFastBoot(true);
+			}
+			system.getMem().loadRom(RomImage.open(new File(args[0])));
+			movie = Movie.read(new File(args[1]));
+		} catch (IOException e) {
+			System.err.println("[!] " + e.getMessage());
+			System.exit(1);
+			return;
+		} catch (MapperNotImplementedException e) {
+			System.err.println("[!] The ROM's memory bank controller is not supported");
+			System.exit(1);
+			return;
+		}
+
+		MoviePlayer player = new MoviePlayer(system, movie);
+		try {
+			player.play();
+			double ms = player.getElapsed() / 1e6;
+			System.out.println("[+] Replayed " + player.getFrame() + " frames in " + (long) ms + " ms: "
+					+ (int) player.getFramesPerSecond() + " fps, "
+					+ String.format("%.1f", player.getFramesPerSecond() / FramePacer.FRAME_RATE) + "x real time");
+			GPU gpu = system.getGpu();
+			double savedMs = gpu.estimateSavedNanos() / 1e6;
+			System.out.println("[+] GPU skipped drawing " + gpu.getFramesNotDrawn() + " frames, saving about "
+					+ (long) savedMs + " ms (" + String.format("%.1f", 100 * savedMs / (ms + savedMs)) + "%)");
+		} catch (MovieDesyncException e) {
+			System.err.println("[!] " + e.getMessage());
+			System.exit(2);
+		} finally {
+			system.shutdown();
+		}
+	}
+
+}
@@ -1,16 +1,28 @@
 package com.echodrop.gameboy.ui.jfx;
 
 import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.ResourceBundle;
 
+import com.echodrop.gameboy.debugger.EmulatorThread;
+import com.echodrop.gameboy.debugger.StateSnapshot;
 import com.echodrop.gameboy.debugger.TailspinDebugger;
+import com.echodrop.gameboy.util.StringUtils;
 import com.sun.javafx.geom.BaseBounds;
 import com.sun.javafx.geom.transform.BaseTransform;
 import com.sun.javafx.jmx.MXNodeAlgorithm;
 import com.sun.javafx.jmx.MXNodeAlgorithmContext;
 import com.sun.javafx.sg.prism.NGNode;
 
+import javafx.animation.AnimationTimer;
+import javafx.beans.property.ReadOnlyStringWrapper;
+import javafx.beans.value.ObservableValue;
+import javafx.collections.FXCollections;
+import javafx.collections.ObservableList;
 import javafx.event.ActionEvent;
 import javafx.event.EventHandler;
 import javafx.fxml.FXML;
@@ -18,7 +30,10 @@ import javafx.fxml.Initializable;
 import javafx.scene.Node;
 import javafx.scene.control.Button;
 import javafx.scene.control.ListView;
+import javafx.scene.control.TableColumn;
+import javafx.scene.control.TableColumn.CellDataFeatures;
 import javafx.scene.control.TableView;
+import javafx.util.Callback;
 
 public class DebuggerController implements Initializable {
 
@@ -33,18 +48,64 @@ public class DebuggerController implements Initializable {
 	@FXML
 	private ListView<String> logView;
 	@FXML
-	private TableView<String> memoryView;
+	private TableView<Map<String, String>> memoryView;
 	@FXML
-	private TableView<Map> registerView;
+	private TableView<Map<String, String>> registerView;
 
 	private TailspinDebugger tdb;
-	private EmulatorService es;
+	private EmulatorThread emulator;
 	private TsUiController mainController;
 
+	/**
+	 * First address shown in the memory view
+	 */
+	private char memoryAddress = 0xC000;
+	private StateSnapshot shown;
+
+	private final ObservableList<Map<String, String>> registerRows = FXCollections.observableArrayList();
+	private final ObservableList<Map<String, String>> memoryRows = FXCollections.observableArrayList();
+
+	/**
+	 * Redraws the views once per pulse, if a new snapshot has been published
+	 */
+	private final AnimationTimer viewUpdater = new AnimationTimer() {
+		@Override
+		public void handle(long now) {
+			StateSnapshot snapshot = emulator.getSnapshots().getSnapshot();
+			if (snapshot != null && snapshot != shown) {
+				shown = snapshot;
+				updateRegisterView(snapshot);
+				updateMemoryView(snapshot);
+			}
+		}
+	};
+
 	@Override
 	public void initialize(URL arg0, ResourceBundle arg1) {
 		initControls();
-		updateRegisterView();
+		initTable(registerView, registerRows);
+		initTable(memoryView, memoryRows);
+	}
+
+	/**
+	 * Shows each row's value for a column's title in that column. The columns
+	 * are declared in the FXML without a cell type; every one shows strings.
+	 */
+	@SuppressWarnings("unchecked")
+	private static void initTable(TableView<Map<String, String>> table, ObservableList<Map<String, String>> rows) {
+		for (TableColumn<Map<String, String>, ?> column : table.getColumns()) {
+			final String key = column.getText();
+			TableColumn<Map<String, String>, String> cells = (TableColumn<Map<String, String>, String>) column;
+			cells.setCellValueFactory(
+					new Callback<CellDataFeatures<Map<String, String>, String>, ObservableValue<String>>() {
+						@Override
+						public ObservableValue<String> call(CellDataFeatures<Map<String, String>, String> cell) {
+							return new ReadOnlyStringWrapper(cell.getValue().get(key));
+						}
+					});
+			column.setSortable(false);
+		}
+		table.setItems(rows);
 	}
 
 	private void initControls() {
@@ -52,9 +113,7 @@ public class DebuggerController implements Initializable {
 		stepButton.setOnAction(new EventHandler<ActionEvent>() {
 			@Override
 			public void handle(ActionEvent arg0) {
-				if (!es.isRunning()) {
-					tdb.getSystem().getProcessor().step();
-				}
+				emulator.step(1);
 			}
 		});
 
@@ -80,16 +139,57 @@ public class DebuggerController implements Initializable {
 		});
 	}
 
-	private void updateRegisterView() {
+	private void updateRegisterView(StateSnapshot snapshot) {
+		Map<String, String> row = new HashMap<String, String>();
+		row.put("PC", StringUtils.charToReadableHex(snapshot.getPc()));
+		row.put("SP", StringUtils.charToReadableHex(snapshot.getSp()));
+		row.put("A", StringUtils.byteToReadableHex(snapshot.getA()));
+		row.put("F", StringUtils.byteToReadableHex(snapshot.getF()));
+		row.put("B", StringUtils.byteToReadableHex(snapshot.getB()));
+		row.put("C", StringUtils.byteToReadableHex(snapshot.getC()));
+		row.put("D", StringUtils.byteToReadableHex(snapshot.getD()));
+		row.put("E", StringUtils.byteToReadableHex(snapshot.getE()));
+		row.put("H", StringUtils.byteToReadableHex(snapshot.getH()));
+		row.put("L", StringUtils.byteToReadableHex(snapshot.getL()));
+		registerRows.setAll(Collections.singletonList(row));
+	}
 
+	/**
+	 * Shows the memory window as rows of 16 bytes, keyed by the column titles
+	 * 00-0F, with the row's address in the untitled first column
+	 */
+	private void updateMemoryView(StateSnapshot snapshot) {
+		int index = snapshot.findWindow(memoryAddress);
+		if (index < 0) {
+			return;
+		}
+		byte[] window = snapshot.getWindow(index);
+		char start = snapshot.getWindowStart(index);
+		List<Map<String, String>> rows = new ArrayList<Map<String, String>>();
+		for (int r = 0; r < window.length / 16; r++) {
+			Map<String, String> row = new HashMap<String, String>();
+			row.put("", StringUtils.zeroLeftPad(Integer.toHexString((start + r * 16) >> 4).toUpperCase(), 3));
+			for (int i = 0; i < 16; i++) {
+				String column = StringUtils.zeroLeftPad(Integer.toHexString(i).toUpperCase(), 2);
+				String value = Integer.toHexString(window[r * 16 + i] & 0xFF).toUpperCase();
+				row.put(column, StringUtils.zeroLeftPad(value, 2));
+			}
+			rows.add(row);
+		}
+		memoryRows.setAll(rows);
 	}
 
 	public void setTdb(TailspinDebugger tdb) {
 		this.tdb = tdb;
 	}
 
-	public void setEs(EmulatorService es) {
-		this.es = es;
+	/**
+	 * Sets the emulator whose snapshots are shown, and starts showing them
+	 */
+	public void setEmulator(EmulatorThread emulator) {
+		this.emulator = emulator;
+		emulator.addSnapshotWindow(memoryAddress, 0x100);
+		viewUpdater.start();
 	}
 
 	public void setMainController(TsUiController mainController) {
@@ -3,6 +3,7 @@ package com.echodrop.gameboy.ui.jfx;
 import java.io.FileInputStream;
 import java.util.logging.Level;
 
+import com.echodrop.gameboy.debugger.EmulatorThread;
 import com.echodrop.gameboy.debugger.TailspinDebugger;
 import com.echodrop.gameboy.logging.SimpleListViewLogger;
 
@@ -19,6 +20,7 @@ import javafx.stage.WindowEvent;
 public class JfxUi extends Application {
 
 	private TailspinDebugger tdb;
+	private EmulatorThread emulator;
 	private final String MAIN_FXML_PATH = "layout/UiLayout.fxml";
 	private final String DEBUGGER_FXML_PATH = "layout/DebuggerLayout.fxml";
 	private final String WINDOW_TITLE = "TailspinDMG 0.2";
@@ -57,17 +59,29 @@ public class JfxUi extends Application {
 
 		tdb = new TailspinDebugger();
 		tsuic.setTdb(tdb);
+		tsuic.bindKeys(mainScene);
 		dbgc.setTdb(tdb);
 
-		EmulatorService es = new EmulatorService(tdb);
-		tsuic.setEmuService(es);
-		dbgc.setEs(es);
+		emulator = new EmulatorThread(tdb);
+		tsuic.setEmulator(emulator);
+		dbgc.setEmulator(emulator);
 
 		dbgc.setMainController(tsuic);
 		tsuic.setDebuggerStage(debuggerStage);
 
 		SimpleListViewLogger log = new SimpleListViewLogger(dbgc.getLogView());
 		tdb.getSystem().initLogging(Level.OFF, log);
+		emulator.start();
+	}
+
+	@Override
+	public void stop() throws Exception {
+		if (emulator != null) {
+			emulator.shutdown();
+		}
+		if (tdb != null) {
+			tdb.getSystem().shutdown();
+		}
 	}
 
 	public static void main(String[] args) {
@@ -7,10 +7,18 @@ import java.nio.IntBuffer;
 import java.util.ResourceBundle;
 import java.util.logging.Level;
 
+import com.echodrop.gameboy.core.FramePacer;
+import com.echodrop.gameboy.core.Joypad;
+import com.echodrop.gameboy.core.RunAhead;
+import com.echodrop.gameboy.core.SaveState;
+import com.echodrop.gameboy.debugger.EmulatorThread;
 import com.echodrop.gameboy.debugger.TailspinDebugger;
 import com.echodrop.gameboy.exceptions.MapperNotImplementedException;
+import com.echodrop.gameboy.graphics.FrameSkip;
 import com.echodrop.gameboy.graphics.GPU;
+import com.echodrop.gameboy.interfaces.IEmulatorCommand;
 import com.echodrop.gameboy.interfaces.IGraphicsObserver;
+import com.echodrop.gameboy.rom.RomImage;
 import com.echodrop.gameboy.util.FileUtils;
 
 import javafx.application.Platform;
@@ -18,13 +26,19 @@ import javafx.event.ActionEvent;
 import javafx.event.EventHandler;
 import javafx.fxml.FXML;
 import javafx.fxml.Initializable;
+import javafx.scene.Scene;
 import javafx.scene.canvas.Canvas;
 import javafx.scene.control.Alert;
 import javafx.scene.control.Alert.AlertType;
+import javafx.scene.control.Menu;
 import javafx.scene.control.MenuItem;
+import javafx.scene.control.RadioMenuItem;
+import javafx.scene.control.ToggleGroup;
 import javafx.scene.image.PixelFormat;
 import javafx.scene.image.PixelWriter;
 import javafx.scene.image.WritablePixelFormat;
+import javafx.scene.input.KeyCode;
+import javafx.scene.input.KeyEvent;
 import javafx.scene.layout.AnchorPane;
 import javafx.scene.paint.Color;
 import javafx.stage.FileChooser;
@@ -54,6 +68,12 @@ public class TsUiController implements Initializable, IGraphicsObserver {
 	@FXML
 	private MenuItem resetMenuItem;
 	@FXML
+	private Menu speedMenu;
+	@FXML
+	private Menu frameSkipMenu;
+	@FXML
+	private Menu runAheadMenu;
+	@FXML
 	private MenuItem debuggerMenuItem;
 	@FXML
 	private MenuItem closeMenuItem;
@@ -61,6 +81,10 @@ public class TsUiController implements Initializable, IGraphicsObserver {
 	private MenuItem saveStateMenuItem;
 	@FXML
 	private MenuItem loadStateMenuItem;
+	@FXML
+	private MenuItem recordMovieMenuItem;
+	@FXML
+	private MenuItem stopRecordingMenuItem;
 	
 
 	private int color0 = toInt(Color.WHITE);
@@ -70,14 +94,14 @@ public class TsUiController implements Initializable, IGraphicsObserver {
 
 	private int[] buffer;
 	private byte[][] screen;
-	private byte[] bootstrap;
 	private TailspinDebugger tdb;
 	private PixelWriter pw;
-	private EmulatorService es;
+	private EmulatorThread emulator;
 	private Stage debuggerStage;
 	private WritablePixelFormat<IntBuffer> pixelFormat;
 	private final FileChooser fileChooser = new FileChooser();
 	private String bootstrapPath = "bios.gb";
+	private final double[] speeds = { 0.25, 0.5, FramePacer.REAL_TIME, 2, 4, FramePacer.UNLIMITED };
 
 	@Override
 	public void initialize(URL arg0, ResourceBundle arg1) {
@@ -129,18 +153,10 @@ public class TsUiController implements Initializable, IGraphicsObserver {
 				File rom = fileChooser.showOpenDialog(null);
 				tdb.getSystem().getLogger().setLevel(Level.ALL);
 				if (rom != null) {
-					String filepath = rom.getPath();
 					try {
-						byte[] romData = FileUtils.readBytes(filepath);
-						tdb.getSystem().reset();
-						readBootstrap();
-						registerWithGpu();
-						tdb.getSystem().getMem().loadRom(romData);
+						emulator.loadRom(RomImage.open(rom), readBootstrap());
 					} catch (IOException e) {
 						ioErrorAlert();
-					} catch (MapperNotImplementedException e) {
-						Alert mapperErrorAlert = new Alert(AlertType.ERROR);
-						mapperErrorAlert.setContentText("Unsupported MBC");
 					}
 				}
 			}
@@ -153,11 +169,124 @@ public class TsUiController implements Initializable, IGraphicsObserver {
 				tdb.getSystem().getLogger().setLevel(Level.ALL);
 				if (bios != null) {
 					bootstrapPath = bios.getPath();
-					readBootstrap();
+					final byte[] bootstrap = readBootstrap();
+					emulator.submit(new IEmulatorCommand() {
+						@Override
+						public void execute(TailspinDebugger tdb) {
+							if (bootstrap != null) {
+								tdb.getSystem().getMem().loadBootstrap(bootstrap);
+							}
+							tdb.getSystem().setFastBoot(bootstrap == null);
+						}
+					});
 				}
 			}
 		});
 		
+		saveStateMenuItem.setOnAction(new EventHandler<ActionEvent>() {
+			@Override
+			public void handle(ActionEvent arg0) {
+				final File file = fileChooser.showSaveDialog(null);
+				if (file != null) {
+					final SaveState state = new SaveState();
+					emulator.saveState(state, new Runnable() {
+						@Override
+						public void run() {
+							Platform.runLater(new Runnable() {
+								@Override
+								public void run() {
+									try {
+										state.write(file);
+									} catch (IOException e) {
+										ioErrorAlert();
+									}
+								}
+							});
+						}
+					});
+				}
+			}
+		});
+
+		loadStateMenuItem.setOnAction(new EventHandler<ActionEvent>() {
+			@Override
+			public void handle(ActionEvent arg0) {
+				File file = fileChooser.showOpenDialog(null);
+				if (file != null) {
+					try {
+						emulator.loadState(SaveState.read(file));
+					} catch (IOException e) {
+						ioErrorAlert();
+					}
+				}
+			}
+		});
+
+		recordMovieMenuItem.setOnAction(new EventHandler<ActionEvent>() {
+			@Override
+			public void handle(ActionEvent arg0) {
+				emulator.startRecording();
+				recordMovieMenuItem.setDisable(true);
+				stopRecordingMenuItem.setDisable(false);
+			}
+		});
+
+		stopRecordingMenuItem.setOnAction(new EventHandler<ActionEvent>() {
+			@Override
+			public void handle(ActionEvent arg0) {
+				File file = fileChooser.showSaveDialog(null);
+				if (file != null) {
+					emulator.stopRecording(file);
+					recordMovieMenuItem.setDisable(false);
+					stopRecordingMenuItem.setDisable(true);
+				}
+			}
+		});
+
+		ToggleGroup speedGroup = new ToggleGroup();
+		for (final double speed : speeds) {
+			RadioMenuItem item = new RadioMenuItem(speed == FramePacer.UNLIMITED ? "Unlimited" : speed + "x");
+			item.setToggleGroup(speedGroup);
+			item.setSelected(speed == FramePacer.REAL_TIME);
+			item.setOnAction(new EventHandler<ActionEvent>() {
+				@Override
+				public void handle(ActionEvent arg0) {
+					tdb.getSystem().getPacer().setSpeed(speed);
+				}
+			});
+			speedMenu.getItems().add(item);
+		}
+
+		ToggleGroup frameSkipGroup = new ToggleGroup();
+		for (int i = FrameSkip.AUTO; i <= 3; i++) {
+			final int setting = i;
+			RadioMenuItem item = new RadioMenuItem(i == FrameSkip.AUTO ? "Auto" : i == 0 ? "Off" : Integer.toString(i));
+			item.setToggleGroup(frameSkipGroup);
+			item.setSelected(i == FrameSkip.AUTO);
+			item.setOnAction(new EventHandler<ActionEvent>() {
+				@Override
+				public void handle(ActionEvent arg0) {
+					tdb.getSystem().getGpu().getFrameSkip().setSetting(setting);
+				}
+			});
+			frameSkipMenu.getItems().add(item);
+		}
+
+		ToggleGroup runAheadGroup = new ToggleGroup();
+		for (int i = 0; i <= RunAhead.MAX_FRAMES; i++) {
+			final int frames = i;
+			RadioMenuItem item = new RadioMenuItem(i == 0 ? "Off" : i + (i == 1 ? " frame" : " frames"));
+			item.setToggleGroup(runAheadGroup);
+			item.setSelected(i == 0);
+			item.setOnAction(new EventHandler<ActionEvent>() {
+				@Override
+				public void handle(ActionEvent arg0) {
+					tdb.getRunAhead().setFrames(frames);
+				}
+			});
+			runAheadMenu.getItems().add(item);
+		}
+
 		debuggerMenuItem.setOnAction(new EventHandler<ActionEvent>() {
 			@Override
 			public void handle(ActionEvent arg0) {
@@ -178,26 +307,18 @@ public class TsUiController implements Initializable, IGraphicsObserver {
 	}
 
 	public void startEmu() {
-		if (!es.isRunning()) {
-			tdb.getSystem().getLogger().setLevel(Level.OFF);
-			es.restart();
-		}
+		tdb.getSystem().getLogger().setLevel(Level.OFF);
+		emulator.resume();
 	}
 
 	public void stopEmu() {
-		if (es.isRunning()) {
-			es.cancel();
-			tdb.getSystem().getLogger().setLevel(Level.ALL);
-		}
+		emulator.pause();
+		tdb.getSystem().getLogger().setLevel(Level.ALL);
 	}
 
 	public void resetEmu() {
 		// FIXME: clear the screen on reset
-		if (es.isRunning()) {
-			es.cancel();
-		}
-
-		tdb.getSystem().reset();
+		emulator.reset();
 	}
 
 	@Override
@@ -232,12 +353,42 @@ public class TsUiController implements Initializable, IGraphicsObserver {
 		Platform.runLater(() -> pw.setPixels(0, 0, W, H, pixelFormat, buffer, 0, W));
 	}
 
-	public void setEmuService(EmulatorService es) {
-		this.es = es;
+	/**
+	 * Sets the thread that runs the system. Everything that changes the
+	 * system goes through it as a command.
+	 */
+	public void setEmulator(EmulatorThread emulator) {
+		this.emulator = emulator;
+		emulator.setErrorHandler(new Thread.UncaughtExceptionHandler() {
+			@Override
+			public void uncaughtException(Thread t, final Throwable e) {
+				Platform.runLater(new Runnable() {
+					@Override
+					public void run() {
+						Alert errorAlert = new Alert(AlertType.ERROR);
+						if (e instanceof MapperNotImplementedException) {
+							errorAlert.setContentText("Unsupported MBC");
+						} else {
+							errorAlert.setContentText(e.getMessage());
+						}
+						errorAlert.setHeaderText(null);
+						errorAlert.show();
+					}
+				});
+			}
+		});
+		emulator.submit(new IEmulatorCommand() {
+			@Override
+			public void execute(TailspinDebugger tdb) {
+				tdb.getSystem().getMem().setRealTimeClock(true);
+			}
+		});
 	}
 
 	public void setTdb(TailspinDebugger tdb) {
 		this.tdb = tdb;
+		tdb.getSystem().getPacer().setSpeed(FramePacer.REAL_TIME);
+		tdb.getSystem().getGpu().getFrameSkip().setSetting(FrameSkip.AUTO);
 		registerWithGpu();
 	}
 	
@@ -245,17 +396,81 @@ public class TsUiController implements Initializable, IGraphicsObserver {
 		this.debuggerStage = debuggerStage;
 	}
 
+	/**
+	 * Passes key presses in the main window on to the joypad. The handlers
+	 * run on the JavaFX thread and only touch the joypad's atomic input.
+	 */
+	public void bindKeys(Scene scene) {
+		scene.setOnKeyPressed(new EventHandler<KeyEvent>() {
+			@Override
+			public void handle(KeyEvent event) {
+				int key = toJoypadKey(event.getCode());
+				if (key != 0) {
+					tdb.getSystem().getJoypad().press(key);
+					event.consume();
+				}
+			}
+		});
+
+		scene.setOnKeyReleased(new EventHandler<KeyEvent>() {
+			@Override
+			public void handle(KeyEvent event) {
+				int key = toJoypadKey(event.getCode());
+				if (key != 0) {
+					tdb.getSystem().getJoypad().release(key);
+					event.consume();
+				}
+			}
+		});
+	}
+
+	/**
+	 * @return the joypad key bound to a host key, or 0 if there is none
+	 */
+	private static int toJoypadKey(KeyCode code) {
+		switch (code) {
+		case RIGHT:
+			return Joypad.RIGHT;
+		case LEFT:
+			return Joypad.LEFT;
+		case UP:
+			return Joypad.UP;
+		case DOWN:
+			return Joypad.DOWN;
+		case Z:
+			return Joypad.A;
+		case X:
+			return Joypad.B;
+		case BACK_SPACE:
+		case SHIFT:
+			return Joypad.SELECT;
+		case ENTER:
+			return Joypad.START;
+		default:
+			return 0;
+		}
+	}
+
 	private void registerWithGpu() {
 		GPU gpu = tdb.getSystem().getGpu();
-		gpu.registerObserver(this);
+		gpu.registerDisplayObserver(this);
 	}
 
-	private void readBootstrap() {
+	/**
+	 * Reads the bootstrap
+	 * 
+	 * @return the bootstrap, or null to fall back to fast boot if there isn't
+	 *         one
+	 */
+	private byte[] readBootstrap() {
+		if (!new File(bootstrapPath).isFile()) {
+			return null;
+		}
 		try {
-			this.bootstrap = FileUtils.readBytes(bootstrapPath);
-			tdb.getSystem().getMem().loadBootstrap(bootstrap);
+			return FileUtils.readBytes(bootstrapPath);
 		} catch (IOException e) {
 			ioErrorAlert();
+			return null;
 		}
 	}
 
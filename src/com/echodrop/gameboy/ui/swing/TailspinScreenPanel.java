@@ -13,9 +13,12 @@ import java.awt.Dimension;
 import java.awt.Font;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
+import java.awt.event.KeyAdapter;
+import java.awt.event.KeyEvent;
 
 import javax.swing.JPanel;
 
+import com.echodrop.gameboy.core.Joypad;
 import com.echodrop.gameboy.graphics.GPU;
 import com.echodrop.gameboy.interfaces.IGraphicsObserver;
 
@@ -29,16 +32,55 @@ public class TailspinScreenPanel extends JPanel implements IGraphicsObserver {
 	private long startMillis;
 	private int frameCount = 0;
 
-	public TailspinScreenPanel(GPU gpu) {
+	public TailspinScreenPanel(GPU gpu, final Joypad joypad) {
 		this.gpu = gpu;
-		gpu.registerObserver(this);
+		gpu.registerDisplayObserver(this);
 		screen = gpu.getFrameBuffer();
 		this.setBackground(Color.WHITE);
 		setPreferredSize(new Dimension(160 * pixelSize, 144 * pixelSize));
+		setFocusable(true);
+		addKeyListener(new KeyAdapter() {
+			@Override
+			public void keyPressed(KeyEvent e) {
+				joypad.press(toJoypadKey(e.getKeyCode()));
+			}
+
+			@Override
+			public void keyReleased(KeyEvent e) {
+				joypad.release(toJoypadKey(e.getKeyCode()));
+			}
+		});
 		updateDisplay();
 		startMillis = System.currentTimeMillis();
 	}
 
+	/**
+	 * @return the joypad key bound to a host key, or 0 if there is none
+	 */
+	private static int toJoypadKey(int keyCode) {
+		switch (keyCode) {
+		case KeyEvent.VK_RIGHT:
+			return Joypad.RIGHT;
+		case KeyEvent.VK_LEFT:
+			return Joypad.LEFT;
+		case KeyEvent.VK_UP:
+			return Joypad.UP;
+		case KeyEvent.VK_DOWN:
+			return Joypad.DOWN;
+		case KeyEvent.VK_Z:
+			return Joypad.A;
+		case KeyEvent.VK_X:
+			return Joypad.B;
+		case KeyEvent.VK_BACK_SPACE:
+		case KeyEvent.VK_SHIFT:
+			return Joypad.SELECT;
+		case KeyEvent.VK_ENTER:
+			return Joypad.START;
+		default:
+			return 0;
+		}
+	}
+
 	@Override
 	protected void paintComponent(Graphics g) {
 		if (screen != null) {
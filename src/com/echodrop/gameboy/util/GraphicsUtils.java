@@ -29,7 +29,7 @@ public class GraphicsUtils {
 		char memOffset = (char) (tileset ? 0x8000 : 0x9000);
 		byte[] tile = new byte[16];
 		for (int i = 0; i < 16; i++) {
-			tile[i] = mem.readByte((char) (memOffset + (tileNumber * 16) + i));
+			tile[i] = mem.peekByte((char) (memOffset + (tileNumber * 16) + i));
 		}
 		return tile;
 	}
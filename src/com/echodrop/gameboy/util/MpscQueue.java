@@ -0,0 +1,89 @@
+/**
+ * MpscQueue.java
+ *
+ * @author anewkirk
+ *
+ * Licensing information can be found in the root directory of the project.
+ */
+
+package com.echodrop.gameboy.util;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * An unbounded, lock-free queue for any number of producer threads and a
+ * single consumer thread.
+ *
+ * The queue is a singly linked list with a dummy node at the head. A producer
+ * swaps its node in as the new tail with one atomic exchange and then links the
+ * old tail to it, so producers never retry or wait on each other. The consumer
+ * owns the head and follows the links. Between a producer's exchange and its
+ * link the queue can briefly look shorter than it is to the consumer; the
+ * element shows up on a later poll.
+ */
+public class MpscQueue<E> {
+
+	private static class Node<E> {
+
+		private E value;
+		private volatile Node<E> next;
+
+		private Node(E value) {
+			this.value = value;
+		}
+
+	}
+
+	/**
+	 * Last node, swapped by producers
+	 */
+	private final AtomicReference<Node<E>> tail;
+
+	/**
+	 * Dummy node before the first element; only touched by the consumer
+	 */
+	private Node<E> head;
+
+	public MpscQueue() {
+		head = new Node<E>(null);
+		tail = new AtomicReference<Node<E>>(head);
+	}
+
+	/**
+	 * Adds an element at the end of the queue. May be called from any thread.
+	 */
+	public void offer(E value) {
+		if (value == null) {
+			throw new NullPointerException();
+		}
+		Node<E> node = new Node<E>(value);
+		Node<E> previous = tail.getAndSet(node);
+		previous.next = node;
+	}
+
+	/**
+	 * Removes the element at the front of the queue. Must only be called from
+	 * the consumer thread.
+	 *
+	 * @return the element, or null if the queue is empty
+	 */
+	public E poll() {
+		Node<E> next = head.next;
+		if (next == null) {
+			return null;
+		}
+		E value = next.value;
+		next.value = null;
+		head = next;
+		return value;
+	}
+
+	/**
+	 * @return true if the consumer would find nothing to poll. Must only be
+	 *         called from the consumer thread.
+	 */
+	public boolean isEmpty() {
+		return head.next == null;
+	}
+
+}